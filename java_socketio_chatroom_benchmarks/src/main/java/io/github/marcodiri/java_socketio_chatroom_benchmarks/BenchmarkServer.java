@@ -0,0 +1,90 @@
+package io.github.marcodiri.java_socketio_chatroom_benchmarks;
+
+import io.github.marcodiri.java_socketio_chatroom_client.ChatroomClient;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodec;
+import io.github.marcodiri.java_socketio_chatroom_server.ChatroomServer;
+import io.github.marcodiri.java_socketio_chatroom_server.ServerConfiguration;
+import io.github.marcodiri.java_socketio_chatroom_server.cluster.local.LocalClusterBus;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
+import io.socket.client.IO;
+import io.socket.client.Socket;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A chat server on a free local port and the sockets connected to it, all
+ * in the benchmark's JVM. Sockets are set up like the chat client's and
+ * use WebSocket only, as a long-running client would after upgrading.
+ */
+final class BenchmarkServer {
+
+	private static final long TIMEOUT_SECONDS = 10;
+
+	private final ChatroomServer server;
+	private final URI uri;
+	private final List<Socket> sockets = new ArrayList<>();
+
+	BenchmarkServer(ServerRepository repository) throws Exception {
+		this(repository, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE);
+	}
+
+	BenchmarkServer(ServerRepository repository, int historyPageSize) throws Exception {
+		ServerConfiguration configuration = new ServerConfiguration();
+		configuration.setPort(freePort());
+		server = new ChatroomServer(repository, new LocalClusterBus(), configuration);
+		server.setHistoryPageSize(historyPageSize);
+		server.start();
+		uri = URI.create("http://localhost:" + configuration.getPort());
+	}
+
+	/**
+	 * @return A socket asking for the codec, not connected yet so that
+	 *         listeners can be added before any event arrives
+	 */
+	Socket socket(MessageCodec codec) {
+		IO.Options options = ChatroomClient.options(true, codec);
+		options.reconnection = false;
+		Socket socket = IO.socket(uri, options);
+		sockets.add(socket);
+		return socket;
+	}
+
+	/**
+	 * Connect the socket and join the default room.
+	 */
+	void join(Socket socket, String username) throws InterruptedException {
+		CountDownLatch joined = new CountDownLatch(1);
+		socket.once("connected", args -> socket.emit("join", username));
+		socket.once("joined", args -> joined.countDown());
+		socket.connect();
+		await(joined, username + " to join");
+	}
+
+	void stop() throws Exception {
+		for (Socket socket : sockets) {
+			socket.close();
+		}
+		server.stop();
+	}
+
+	/**
+	 * @throws IllegalStateException If the latch is not released in time,
+	 *                               which would otherwise stall the benchmark
+	 */
+	static void await(CountDownLatch latch, String what) throws InterruptedException {
+		if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+			throw new IllegalStateException("Timed out waiting for " + what);
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
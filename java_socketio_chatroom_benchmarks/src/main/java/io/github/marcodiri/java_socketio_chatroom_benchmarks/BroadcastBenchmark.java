@@ -0,0 +1,78 @@
+package io.github.marcodiri.java_socketio_chatroom_benchmarks;
+
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodec;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodecs;
+import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.memory.ServerMemoryRepository;
+import io.socket.client.Socket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from a socket sending a message until every socket of the room,
+ * the sender included, has received and decoded it: the server's message
+ * handler, the encoding, the fan-out to all the sockets and the decoding on
+ * the client side. A payload the codec cannot read fails the iteration
+ * instead of being counted.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastBenchmark {
+
+	@Param({"1", "10", "100"})
+	private int sockets;
+
+	@Param({"json", "binary"})
+	private String codecName;
+
+	private BenchmarkServer server;
+	private MessageCodec codec;
+	private Socket sender;
+	private volatile CountDownLatch received = new CountDownLatch(0);
+
+	@Setup
+	public void setup() throws Exception {
+		server = new BenchmarkServer(new ServerMemoryRepository());
+		codec = MessageCodecs.forName(codecName);
+		for (int i = 0; i < sockets; i++) {
+			Socket socket = server.socket(codec);
+			socket.on("msg", args -> {
+				codec.decode(args[0], ServerMessage::new);
+				received.countDown();
+			});
+			server.join(socket, "user" + i);
+			if (sender == null)
+				sender = socket;
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		server.stop();
+	}
+
+	@Benchmark
+	public void broadcast() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(sockets);
+		received = latch;
+		sender.emit("msg", codec.encode(new ServerMessage(System.currentTimeMillis(), "user0", "A chat message of ordinary length")));
+		BenchmarkServer.await(latch, "the message to reach every socket");
+	}
+}
@@ -0,0 +1,83 @@
+package io.github.marcodiri.java_socketio_chatroom_benchmarks;
+
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodec;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodecs;
+import io.github.marcodiri.java_socketio_chatroom_server.ChatroomServer;
+import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.memory.ServerMemoryRepository;
+import io.socket.client.Socket;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for a socket to request a page of history and receive all of it
+ * decoded, with the room's history in memory so that the server's
+ * handler and the encoding are measured rather than a database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HistoryBenchmark {
+
+	@Param({"50", "500"})
+	private int pageSize;
+
+	@Param({"json", "binary"})
+	private String codecName;
+
+	private BenchmarkServer server;
+	private Socket socket;
+	private volatile CountDownLatch received;
+
+	@Setup
+	public void setup() throws Exception {
+		ServerMemoryRepository repository = new ServerMemoryRepository();
+		long now = System.currentTimeMillis();
+		for (int i = 0; i < pageSize; i++) {
+			repository.save(ChatroomServer.DEFAULT_ROOM, new ServerMessage(now - pageSize + i, "user" + i % 10, "History message " + i));
+		}
+		server = new BenchmarkServer(repository, pageSize);
+		MessageCodec codec = MessageCodecs.forName(codecName);
+		socket = server.socket(codec);
+		socket.on("history", args -> {
+			int messages = codec.decodeAll(args[0], ServerMessage::new).size();
+			for (int i = 0; i < messages; i++) {
+				received.countDown();
+			}
+		});
+		// joining sends the latest page, which must not count towards the first request
+		received = new CountDownLatch(pageSize);
+		server.join(socket, "reader");
+		BenchmarkServer.await(received, "the history sent on join");
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		server.stop();
+	}
+
+	@Benchmark
+	public void loadHistory() throws InterruptedException {
+		CountDownLatch latch = new CountDownLatch(pageSize);
+		received = latch;
+		socket.emit("loadHistory", new JSONObject().put("before", Long.MAX_VALUE));
+		BenchmarkServer.await(latch, "a page of history");
+	}
+}
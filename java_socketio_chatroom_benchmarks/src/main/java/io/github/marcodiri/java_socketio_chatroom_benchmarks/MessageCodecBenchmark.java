@@ -0,0 +1,84 @@
+package io.github.marcodiri.java_socketio_chatroom_benchmarks;
+
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodec;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodecs;
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a message into the payload of a socket.io event and back,
+ * for a single message and for a page of history.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageCodecBenchmark {
+
+	@Param({"json", "binary"})
+	private String codecName;
+
+	@Param({"50"})
+	private int pageSize;
+
+	private MessageCodec codec;
+	private Message message;
+	private List<Message> page;
+	private Object encodedMessage;
+	private Object encodedPage;
+
+	@Setup
+	public void setup() {
+		codec = MessageCodecs.forName(codecName);
+		message = new ServerMessage(System.currentTimeMillis(), "user", "A chat message of ordinary length");
+		page = new ArrayList<>(pageSize);
+		for (int i = 0; i < pageSize; i++) {
+			page.add(new ServerMessage(message.getTimestamp() + i, "user" + i, "History message " + i));
+		}
+		encodedMessage = codec.encode(message);
+		encodedPage = codec.encodeAll(page);
+	}
+
+	@Benchmark
+	public JSONObject toJSON() {
+		return message.toJSON();
+	}
+
+	@Benchmark
+	public Object encode() {
+		return codec.encode(message);
+	}
+
+	@Benchmark
+	public Object encodeAll() {
+		return codec.encodeAll(page);
+	}
+
+	@Benchmark
+	public Message decode() {
+		return codec.decode(encodedMessage, ServerMessage::new);
+	}
+
+	@Benchmark
+	public List<ServerMessage> decodeAll() {
+		return codec.decodeAll(encodedPage, ServerMessage::new);
+	}
+}
@@ -0,0 +1,75 @@
+package io.github.marcodiri.java_socketio_chatroom_benchmarks;
+
+import io.github.marcodiri.java_socketio_chatroom_server.ChatroomServer;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.memory.ServerMemoryRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cost of the username check run when a socket joins, with a given number
+ * of users already online. The server is not started: the check does not
+ * touch the network. Run with {@code -t} to measure contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UsernameBenchmark {
+
+	private static final String TAKEN_USERNAME = "taken";
+
+	@Param({"0", "10000"})
+	private int onlineUsers;
+
+	private ChatroomServer server;
+
+	private final AtomicInteger threads = new AtomicInteger();
+
+	@State(Scope.Thread)
+	public static class Socket {
+		private String id;
+		private String username;
+
+		@Setup
+		public void setup(UsernameBenchmark benchmark) {
+			int thread = benchmark.threads.getAndIncrement();
+			id = "benchmark-socket-" + thread;
+			username = "benchmark-user-" + thread;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		server = new ChatroomServer(new ServerMemoryRepository());
+		server.claimUsername("owner", TAKEN_USERNAME);
+		for (int i = 0; i < onlineUsers; i++) {
+			server.claimUsername("socket" + i, "user" + i);
+		}
+	}
+
+	@Benchmark
+	public boolean claimAndReleaseFreeUsername(Socket socket) {
+		boolean claimed = server.claimUsername(socket.id, socket.username);
+		server.releaseUsername(socket.id);
+		return claimed;
+	}
+
+	@Benchmark
+	public boolean claimTakenUsername(Socket socket) {
+		return server.claimUsername(socket.id, TAKEN_USERNAME);
+	}
+}
@@ -2,24 +2,26 @@ package io.github.marcodiri.java_socketio_chatroom_client;
 
 import io.github.marcodiri.java_socketio_chatroom_client.model.ClientMessage;
 import io.github.marcodiri.java_socketio_chatroom_client.view.ClientView;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodecs;
 import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
 import io.github.marcodiri.java_socketio_chatroom_server.ChatroomServer;
+import io.github.marcodiri.java_socketio_chatroom_server.ServerConfiguration;
+import io.github.marcodiri.java_socketio_chatroom_server.cluster.local.LocalClusterBus;
 import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
 import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
 import io.socket.client.IO;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.net.SocketException;
 import java.net.URI;
-import java.sql.Timestamp;
 import java.util.Collections;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 import static org.awaitility.Awaitility.await;
 import static org.mockito.Mockito.verify;
@@ -29,7 +31,6 @@ public class ChatroomClientIT {
 
 	@Mock
 	private ServerRepository mongoRepository;
-	@InjectMocks
 	private ChatroomServer chatroomServer;
 	private AutoCloseable closeable;
 
@@ -40,6 +41,7 @@ public class ChatroomClientIT {
 	@Before
 	public void setup() {
 		closeable = MockitoAnnotations.openMocks(this);
+		chatroomServer = new ChatroomServer(mongoRepository);
 
 		try {
 			chatroomServer.start();
@@ -59,14 +61,14 @@ public class ChatroomClientIT {
 
 	@Test
 	public void testRetrieveMsgInRepositoryOnConnection() {
-		Message serverMessage = new ServerMessage(new Timestamp(0), "user", "message");
-		when(mongoRepository.findAll()).thenReturn(Collections.singletonList(serverMessage));
+		Message serverMessage = new ServerMessage(0, "user", "message");
+		when(mongoRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(Collections.singletonList(serverMessage));
 
 		chatroomClient.connect("user");
 
 		Message clientMessage = new ClientMessage(serverMessage.toJSON());
 		try {
-			await().atMost(2, SECONDS).untilAsserted(() -> verify(view).addMessage(clientMessage));
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(view).addMessages(Collections.singletonList(clientMessage)));
 		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
 			fail("Expected " + clientMessage);
 		}
@@ -81,7 +83,7 @@ public class ChatroomClientIT {
 			fail("Client cannot connect to server");
 		}
 
-		ClientMessage clientMessage = new ClientMessage(new Timestamp(0), "user", "message");
+		ClientMessage clientMessage = new ClientMessage(0, "user", "message");
 		try {
 			chatroomClient.sendMessage(clientMessage);
 		} catch (SocketException e) {
@@ -91,10 +93,62 @@ public class ChatroomClientIT {
 		Message serverMessage = new ServerMessage(clientMessage.getTimestamp(), clientMessage.getUser(), clientMessage.getUserMessage());
 
 		try {
-			await().atMost(2, SECONDS).untilAsserted(() -> verify(mongoRepository).save(serverMessage));
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(mongoRepository).save(ChatroomServer.DEFAULT_ROOM, serverMessage));
 		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
 			fail("Expected " + serverMessage);
 		}
 	}
 
+	@Test
+	public void testBinaryClientReceivesHistoryAndSavesMessages() throws Exception {
+		Message history = new ServerMessage(0, "other", "history");
+		when(mongoRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(Collections.singletonList(history));
+		ChatroomClient binaryClient = new ChatroomClient(URI.create("http://localhost:3000"), ChatroomClient.options(false, MessageCodecs.BINARY), view);
+
+		try {
+			binaryClient.connect("user");
+			await().atMost(2, SECONDS).until(binaryClient::isConnected);
+			assertThat(binaryClient.getCodec()).isSameAs(MessageCodecs.BINARY);
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(view).addMessages(Collections.singletonList(
+					new ClientMessage(history.getTimestamp(), history.getUser(), history.getUserMessage()))));
+
+			ClientMessage clientMessage = new ClientMessage(1, "user", "message");
+			binaryClient.sendMessage(clientMessage);
+
+			Message serverMessage = new ServerMessage(clientMessage.getTimestamp(), clientMessage.getUser(), clientMessage.getUserMessage());
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(mongoRepository).save(ChatroomServer.DEFAULT_ROOM, serverMessage));
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(view).addMessage(clientMessage));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		} finally {
+			binaryClient.disconnect();
+		}
+	}
+
+	@Test
+	public void testWebsocketOnlyClientChatsWithWebsocketOnlyServer() throws Exception {
+		ServerConfiguration configuration = new ServerConfiguration();
+		configuration.setPort(3001);
+		configuration.setWebsocketOnly(true);
+		ChatroomServer websocketServer = new ChatroomServer(mongoRepository, new LocalClusterBus(), configuration);
+		websocketServer.start();
+		ChatroomClient websocketClient = new ChatroomClient(URI.create("http://localhost:3001"), ChatroomClient.options(true), view);
+
+		try {
+			websocketClient.connect("user");
+			await().atMost(2, SECONDS).until(websocketClient::isConnected);
+
+			ClientMessage clientMessage = new ClientMessage(0, "user", "message");
+			websocketClient.sendMessage(clientMessage);
+
+			Message serverMessage = new ServerMessage(clientMessage.getTimestamp(), clientMessage.getUser(), clientMessage.getUserMessage());
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(mongoRepository).save(ChatroomServer.DEFAULT_ROOM, serverMessage));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		} finally {
+			websocketClient.disconnect();
+			websocketServer.stop();
+		}
+	}
+
 }
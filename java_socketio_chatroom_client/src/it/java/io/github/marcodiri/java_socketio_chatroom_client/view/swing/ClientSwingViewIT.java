@@ -14,12 +14,10 @@ import org.assertj.swing.fixture.JTextComponentFixture;
 import org.assertj.swing.junit.testcase.AssertJSwingJUnitTestCase;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.net.URI;
-import java.sql.Timestamp;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import static java.util.Arrays.asList;
@@ -27,6 +25,7 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
 import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,7 +34,6 @@ public class ClientSwingViewIT extends AssertJSwingJUnitTestCase {
 
 	@Mock
 	private ServerRepository serverRepository;
-	@InjectMocks
 	private ChatroomServer server;
 	private AutoCloseable closeable;
 
@@ -45,6 +43,7 @@ public class ClientSwingViewIT extends AssertJSwingJUnitTestCase {
 	@Override
 	public void onSetUp() {
 		closeable = MockitoAnnotations.openMocks(this);
+		server = new ChatroomServer(serverRepository);
 
 		try {
 			server.start();
@@ -73,13 +72,13 @@ public class ClientSwingViewIT extends AssertJSwingJUnitTestCase {
 	public void testMessagesArePrintedOnConnect() {
 		DateFormat dateFormat = new SimpleDateFormat("HH:mm");
 
-		Timestamp timestamp1 = new Timestamp(0);
+		long timestamp1 = 0;
 		Message olderMessage = new ServerMessage(timestamp1, "user1", "message1");
 
-		Timestamp timestamp2 = new Timestamp(1);
+		long timestamp2 = 1;
 		Message newerMessage = new ServerMessage(timestamp2, "user2", "message2");
 
-		when(serverRepository.findAll()).thenReturn(asList(olderMessage, newerMessage));
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(asList(olderMessage, newerMessage));
 
 		window.textBox("txtUsername").enterText("user3");
 		window.button(JButtonMatcher.withText("Connect")).click();
@@ -112,7 +111,7 @@ public class ClientSwingViewIT extends AssertJSwingJUnitTestCase {
 
 		ArgumentCaptor<Message> retrievedMessage = ArgumentCaptor.forClass(Message.class);
 		try {
-			await().atMost(2, SECONDS).untilAsserted(() -> verify(serverRepository).save(retrievedMessage.capture()));
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(serverRepository).save(eq(ChatroomServer.DEFAULT_ROOM), retrievedMessage.capture()));
 		} catch (org.awaitility.core.ConditionTimeoutException e) {
 			fail(e.getMessage());
 		}
@@ -122,7 +121,7 @@ public class ClientSwingViewIT extends AssertJSwingJUnitTestCase {
 
 	@Test
 	public void testErrorMessageIfUsernameIsAlreadyTaken() {
-		server.getUsernameList().put("id1", "user1");
+		server.claimUsername("id1", "user1");
 
 		window.textBox("txtUsername").enterText("user1");
 		window.button(JButtonMatcher.withText("Connect")).click();
@@ -1,11 +1,15 @@
 package io.github.marcodiri.java_socketio_chatroom_client;
 
+import io.github.marcodiri.java_socketio_chatroom_client.model.ClientMessage;
 import io.github.marcodiri.java_socketio_chatroom_client.view.swing.ClientSwingView;
 import io.github.marcodiri.java_socketio_chatroom_client.view.swing.components.MessageBoard;
-import io.socket.client.IO;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.BinaryMessageCodec;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodecs;
 
 import java.awt.*;
 import java.net.URI;
+import java.time.ZoneId;
+import java.util.Locale;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -19,10 +23,18 @@ public class App {
 		if (args.length > 0)
 			serverHost = args[0];
 		String finalServerHost = serverHost;
+		String locale = System.getProperty("time.locale");
+		String zone = System.getProperty("time.zone");
+		ClientMessage.configureTimeFormat(System.getProperty("time.pattern", ClientMessage.DEFAULT_TIME_PATTERN),
+				locale != null ? Locale.forLanguageTag(locale) : Locale.getDefault(),
+				zone != null ? ZoneId.of(zone) : ZoneId.systemDefault());
 		EventQueue.invokeLater(() -> {
-			MessageBoard board = new MessageBoard();
+			MessageBoard board = new MessageBoard(Integer.parseInt(
+					System.getProperty("scrollback.size", String.valueOf(MessageBoard.DEFAULT_SCROLLBACK_LIMIT))));
 			ClientSwingView frame = new ClientSwingView(board);
-			ChatroomClient client = new ChatroomClient(URI.create("http://" + finalServerHost + ":3000"), IO.Options.builder().build(), frame);
+			ChatroomClient client = new ChatroomClient(URI.create("http://" + finalServerHost + ":3000"),
+					ChatroomClient.options(Boolean.parseBoolean(System.getProperty("websocket.only", "false")),
+							MessageCodecs.forName(System.getProperty("message.codec", BinaryMessageCodec.NAME))), frame);
 			frame.setClient(client);
 			frame.setVisible(true);
 		});
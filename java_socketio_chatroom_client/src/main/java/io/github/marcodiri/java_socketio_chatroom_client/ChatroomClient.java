@@ -2,6 +2,8 @@ package io.github.marcodiri.java_socketio_chatroom_client;
 
 import java.net.SocketException;
 import java.net.URI;
+import java.sql.Timestamp;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.logging.log4j.LogManager;
@@ -10,12 +12,28 @@ import org.json.JSONObject;
 
 import io.github.marcodiri.java_socketio_chatroom_client.model.ClientMessage;
 import io.github.marcodiri.java_socketio_chatroom_client.view.ClientView;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodec;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodecs;
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
 import io.socket.client.IO;
 import io.socket.client.IO.Options;
 import io.socket.client.Socket;
+import io.socket.client.SocketOptionBuilder;
+import io.socket.engineio.client.transports.WebSocket;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 
 public class ChatroomClient {
 
+	/**
+	 * Shared by every client, like the one socket.io would create, so that
+	 * all connections use the same connection pool and dispatcher threads
+	 */
+	private static final OkHttpClient HTTP_CLIENT = new OkHttpClient.Builder()
+			.socketFactory(new NoDelaySocketFactory())
+			.dispatcher(unboundedDispatcher())
+			.build();
+
 	private final Socket socket;
 
 	private ChatroomClientHandlers chatroomClientHandlers;
@@ -27,11 +45,16 @@ public class ChatroomClient {
 
 	String username = null;
 
+	volatile MessageCodec codec = MessageCodecs.JSON;
+
 	public ChatroomClient(URI uri, Options options, ClientView view) {
 		this.socket = IO.socket(uri, options);
 		this.chatroomClientHandlers = new ChatroomClientHandlers();
 		this.view = view;
-		socket.on("connected", objects -> chatroomClientHandlers.connectedHandler());
+		socket.on("connected", objects -> {
+			useCodec(objects);
+			chatroomClientHandlers.connectedHandler();
+		});
 		socket.on(Socket.EVENT_DISCONNECT, objects -> chatroomClientHandlers.disconnectedHandler());
 	}
 
@@ -40,6 +63,44 @@ public class ChatroomClient {
 		this.chatroomClientHandlers = chatroomClientHandlers;
 	}
 
+	/**
+	 * @param websocketOnly Connect straight over WebSocket, skipping the
+	 *                      long-polling handshake; required by servers
+	 *                      started in websocket-only mode
+	 */
+	public static Options options(boolean websocketOnly) {
+		return options(websocketOnly, MessageCodecs.JSON);
+	}
+
+	/**
+	 * @param codec Encoding of messages to ask the server for; the client
+	 *              falls back to JSON if the server does not confirm it
+	 */
+	public static Options options(boolean websocketOnly, MessageCodec codec) {
+		SocketOptionBuilder builder = IO.Options.builder()
+				.setQuery(MessageCodecs.QUERY_PARAMETER + "=" + codec.getName());
+		if (websocketOnly) {
+			builder.setTransports(new String[]{WebSocket.NAME}).setUpgrade(false);
+		}
+		Options options = builder.build();
+		options.webSocketFactory = HTTP_CLIENT;
+		options.callFactory = HTTP_CLIENT;
+		return options;
+	}
+
+	/**
+	 * An open WebSocket holds one of the dispatcher's running calls for as
+	 * long as it is connected, and a polling transport one of its host's;
+	 * the default limits of 64 calls and 5 per host would leave the clients
+	 * of a JVM past them unable to connect.
+	 */
+	private static Dispatcher unboundedDispatcher() {
+		Dispatcher dispatcher = new Dispatcher();
+		dispatcher.setMaxRequests(Integer.MAX_VALUE);
+		dispatcher.setMaxRequestsPerHost(Integer.MAX_VALUE);
+		return dispatcher;
+	}
+
 	ChatroomClientHandlers getChatroomClientHandlers() {
 		return chatroomClientHandlers;
 	}
@@ -48,6 +109,13 @@ public class ChatroomClient {
 		return socket;
 	}
 
+	/**
+	 * @return The codec agreed with the server for the current connection
+	 */
+	public MessageCodec getCodec() {
+		return codec;
+	}
+
 	public boolean isConnected() {
 		return connected.get();
 	}
@@ -65,14 +133,64 @@ public class ChatroomClient {
 
 	public void sendMessage(ClientMessage msg) throws SocketException {
 		if (isConnected()) {
-			socket.emit("msg", msg.toJSON());
+			socket.emit("msg", codec.encode(msg));
 			LOGGER.info("Message sent to Server");
-			LOGGER.debug(() -> String.format("Sent {event: \"msg\", message: \"%s\"} to Server", msg.toJSON()));
+			LOGGER.debug(() -> String.format("Sent {event: \"msg\", message: \"%s\"} to Server", msg));
 		} else {
 			throw new SocketException("Unable to send message when not connected to server");
 		}
 	}
 
+	public void requestHistory(Timestamp before) throws SocketException {
+		if (isConnected()) {
+			JSONObject request = new JSONObject().put("before", before.getTime());
+			socket.emit("loadHistory", request);
+			LOGGER.info("Older messages requested to Server");
+			LOGGER.debug(() -> String.format("Sent {event: \"loadHistory\", message: \"%s\"} to Server", request));
+		} else {
+			throw new SocketException("Unable to request history when not connected to server");
+		}
+	}
+
+	public void createRoom(String roomName) throws SocketException {
+		if (isConnected()) {
+			socket.emit("createRoom", roomName);
+			LOGGER.info("Room creation requested to Server");
+			LOGGER.debug(() -> String.format("Sent {event: \"createRoom\", message: \"%s\"} to Server", roomName));
+		} else {
+			throw new SocketException("Unable to create a room when not connected to server");
+		}
+	}
+
+	public void joinRoom(String roomName) throws SocketException {
+		if (isConnected()) {
+			socket.emit("joinRoom", roomName);
+			LOGGER.info("Room change requested to Server");
+			LOGGER.debug(() -> String.format("Sent {event: \"joinRoom\", message: \"%s\"} to Server", roomName));
+		} else {
+			throw new SocketException("Unable to join a room when not connected to server");
+		}
+	}
+
+	public void leaveRoom() throws SocketException {
+		if (isConnected()) {
+			socket.emit("leaveRoom");
+			LOGGER.info("Room leave requested to Server");
+			LOGGER.debug(() -> "Sent {event: \"leaveRoom\"} to Server");
+		} else {
+			throw new SocketException("Unable to leave the room when not connected to server");
+		}
+	}
+
+	/**
+	 * Servers name the codec they picked in the {@code connected} event;
+	 * servers that do not know about codecs send none and speak JSON.
+	 */
+	private void useCodec(Object[] connectedArgs) {
+		codec = MessageCodecs.forName(connectedArgs.length > 0 ? connectedArgs[0].toString() : null);
+		LOGGER.info("Using the {} message codec", codec.getName());
+	}
+
 	class ChatroomClientHandlers {
 
 		void connectedHandler() throws NullPointerException {
@@ -81,7 +199,9 @@ public class ChatroomClient {
 				LOGGER.info("Socket successfully connected to Server");
 
 				socket.on("joined", arg -> handleJoin(((JSONObject) arg[0]).getString("roomName")));
-				socket.on("msg", arg -> handleMessage(new ClientMessage((JSONObject) arg[0])));
+				socket.on("left", arg -> handleLeave(((JSONObject) arg[0]).getString("roomName")));
+				socket.on("msg", arg -> handleMessage(codec.decode(arg[0], ClientMessage::new)));
+				socket.on("history", arg -> handleHistory(codec.decodeAll(arg[0], ClientMessage::new)));
 				socket.on("error", arg -> handleError(((JSONObject) arg[0]).getString("message")));
 
 				socket.emit("join", username);
@@ -107,12 +227,24 @@ public class ChatroomClient {
 			view.addMessage(message);
 		}
 
+		void handleHistory(List<Message> messages) {
+			LOGGER.info("History received from Server");
+			LOGGER.debug(() -> String.format("Received {event: \"history\", message: \"%s\"} from Server", messages));
+			view.addMessages(messages);
+		}
+
 		void handleJoin(String roomName) {
 			LOGGER.info("Socket successfully joined the room");
 			LOGGER.debug(() -> String.format("Received {event: \"joined\", message: \"%s\"} from Server", roomName));
 			view.roomJoined(roomName);
 		}
 
+		void handleLeave(String roomName) {
+			LOGGER.info("Socket successfully left the room");
+			LOGGER.debug(() -> String.format("Received {event: \"left\", message: \"%s\"} from Server", roomName));
+			view.roomLeft(roomName);
+		}
+
 		void handleError(String errorMessage) {
 			LOGGER.info("Error received from Server");
 			LOGGER.debug(() -> String.format("Received {event: \"error\", message: \"%s\"} from Server", errorMessage));
@@ -0,0 +1,47 @@
+package io.github.marcodiri.java_socketio_chatroom_client;
+
+import javax.net.SocketFactory;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * Disables Nagle's algorithm on the sockets of the client. socket.io sends
+ * a binary packet as two WebSocket frames and OkHttp leaves Nagle enabled,
+ * so the second frame waited for the server's delayed ACK, about 40 ms,
+ * before every message sent with a binary codec.
+ */
+final class NoDelaySocketFactory extends SocketFactory {
+
+	private final SocketFactory delegate = SocketFactory.getDefault();
+
+	@Override
+	public Socket createSocket() throws IOException {
+		return noDelay(delegate.createSocket());
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+		return noDelay(delegate.createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+		return noDelay(delegate.createSocket(host, port, localHost, localPort));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress host, int port) throws IOException {
+		return noDelay(delegate.createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+		return noDelay(delegate.createSocket(address, port, localAddress, localPort));
+	}
+
+	private static Socket noDelay(Socket socket) throws IOException {
+		socket.setTcpNoDelay(true);
+		return socket;
+	}
+}
@@ -3,24 +3,44 @@ package io.github.marcodiri.java_socketio_chatroom_client.model;
 import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
 import org.json.JSONObject;
 
-import java.sql.Timestamp;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 
 public final class ClientMessage extends Message {
 
-	public ClientMessage(Timestamp timestamp, String user, String message) {
+	public static final String DEFAULT_TIME_PATTERN = "HH:mm";
+
+	private static volatile DateTimeFormatter timeFormat = DateTimeFormatter
+			.ofPattern(DEFAULT_TIME_PATTERN, Locale.getDefault())
+			.withZone(ZoneId.systemDefault());
+
+	public ClientMessage(long timestamp, String user, String message) {
 		super(timestamp, user, message);
 	}
 
 	public ClientMessage(JSONObject jsonMsg) {
-		super(new Timestamp(jsonMsg.getLong("timestamp")), jsonMsg.getString("user"), jsonMsg.getString("message"));
+		super(jsonMsg.getLong("timestamp"), jsonMsg.getString("user"), jsonMsg.getString("message"));
+	}
+
+	/**
+	 * Set how message times are shown. Messages already formatted keep their text,
+	 * so this is meant to be called once at startup.
+	 *
+	 * @param pattern A {@link DateTimeFormatter} pattern
+	 * @throws IllegalArgumentException If the pattern is invalid
+	 */
+	public static void configureTimeFormat(String pattern, Locale locale, ZoneId zone) {
+		timeFormat = DateTimeFormatter.ofPattern(pattern, locale).withZone(zone);
+	}
+
+	public static DateTimeFormatter getTimeFormat() {
+		return timeFormat;
 	}
 
 	@Override
-	public String getFormattedMessage() {
-		DateFormat dateFormat = new SimpleDateFormat("HH:mm");
-		return dateFormat.format(this.getTimestamp()) + " " + this.getUser() + ": " + this.getUserMessage();
+	protected String formatMessage() {
+		return timeFormat.format(getInstant()) + " " + this.getUser() + ": " + this.getUserMessage();
 	}
 
 }
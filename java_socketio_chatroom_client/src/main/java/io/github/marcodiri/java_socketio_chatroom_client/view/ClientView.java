@@ -2,10 +2,16 @@ package io.github.marcodiri.java_socketio_chatroom_client.view;
 
 import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
 
+import java.util.List;
+
 public interface ClientView {
 	void addMessage(Message msg);
 
+	void addMessages(List<Message> msgs);
+
 	void roomJoined(String roomName);
 
+	void roomLeft(String roomName);
+
 	void showError(String errorMsg);
 }
@@ -17,6 +17,7 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.net.SocketException;
 import java.sql.Timestamp;
+import java.util.List;
 
 @SuppressWarnings("serial")
 public class ClientSwingView extends JFrame implements ClientView {
@@ -25,8 +26,10 @@ public class ClientSwingView extends JFrame implements ClientView {
 	private JTextField txtMessage;
 	private JButton btnConnect;
 	private JButton btnDisconnect;
+	private JButton btnLoadOlder;
 	private JScrollPane scrollPane;
 	private MessageBoard msgsBoard;
+	private transient MessageInbox inbox;
 	private JButton btnSend;
 
 	private transient ChatroomClient client;
@@ -35,6 +38,7 @@ public class ClientSwingView extends JFrame implements ClientView {
 	private Component verticalStrut;
 	private Component verticalStrut_1;
 	private Component verticalStrut_2;
+	private Component verticalStrut_3;
 	private JTextPane txtErrorMessage;
 
 	transient ViewSnapshot snapshot;
@@ -138,8 +142,10 @@ public class ClientSwingView extends JFrame implements ClientView {
 			client.disconnect();
 			btnDisconnect.setEnabled(false);
 			btnConnect.setEnabled(true);
+			btnLoadOlder.setEnabled(false);
 			txtMessage.setEnabled(false);
 			msgsBoard.setEnabled(false);
+			inbox.clear();
 			msgsBoard.clearBoard();
 			txtUsername.setEnabled(true);
 		});
@@ -151,6 +157,21 @@ public class ClientSwingView extends JFrame implements ClientView {
 		verticalBox.add(btnDisconnect);
 		btnDisconnect.setEnabled(false);
 
+		btnLoadOlder = new JButton("Load older");
+		btnLoadOlder.setSize(new Dimension(112, 25));
+		btnLoadOlder.setPreferredSize(new Dimension(112, 25));
+		btnLoadOlder.setMinimumSize(new Dimension(112, 25));
+		btnLoadOlder.setMaximumSize(new Dimension(112, 25));
+		btnLoadOlder.setAlignmentX(Component.CENTER_ALIGNMENT);
+		btnLoadOlder.setName("btnLoadOlder");
+		btnLoadOlder.addActionListener(e -> loadOlderMessages());
+
+		verticalStrut_3 = Box.createVerticalStrut(20);
+		verticalStrut_3.setMaximumSize(new Dimension(32767, 5));
+		verticalBox.add(verticalStrut_3);
+		verticalBox.add(btnLoadOlder);
+		btnLoadOlder.setEnabled(false);
+
 		verticalStrut_2 = Box.createVerticalStrut(20);
 		verticalBox.add(verticalStrut_2);
 
@@ -174,6 +195,7 @@ public class ClientSwingView extends JFrame implements ClientView {
 		contentPane.add(scrollPane, gbc_scrollPane);
 
 		msgsBoard = board;
+		inbox = new MessageInbox(msgs -> msgsBoard.newMessagesNotify(msgs), () -> msgsBoard.clearBoard());
 		scrollPane.setViewportView(msgsBoard);
 		msgsBoard.setEnabled(false);
 		msgsBoard.setEditable(false);
@@ -218,18 +240,40 @@ public class ClientSwingView extends JFrame implements ClientView {
 	public void addMessage(Message msg) {
 		LOGGER.info("Adding new Message to board");
 		LOGGER.debug(msg::toString);
-		SwingUtilities.invokeLater(() -> msgsBoard.newMessageNotify(msg));
+		inbox.add(msg);
+	}
+
+	@Override
+	public void addMessages(List<Message> msgs) {
+		LOGGER.info("Adding {} Messages to board", msgs.size());
+		inbox.addAll(msgs);
 	}
 
 	@Override
 	public void roomJoined(String roomName) {
+		// the history of the joined room follows this event: the board is
+		// cleared in order with the messages, after those of the previous
+		// room and before the history
+		inbox.reset();
 		SwingUtilities.invokeLater(() -> {
 			btnDisconnect.setEnabled(true);
+			btnLoadOlder.setEnabled(true);
 			txtMessage.setEnabled(true);
 			msgsBoard.setEnabled(true);
 		});
 	}
 
+	@Override
+	public void roomLeft(String roomName) {
+		inbox.reset();
+		SwingUtilities.invokeLater(() -> {
+			btnLoadOlder.setEnabled(false);
+			txtMessage.setEnabled(false);
+			btnSend.setEnabled(false);
+			msgsBoard.setEnabled(false);
+		});
+	}
+
 	@Override
 	public void showError(String errorMsg) {
 		SwingUtilities.invokeLater(() -> {
@@ -249,7 +293,7 @@ public class ClientSwingView extends JFrame implements ClientView {
 		txtErrorMessage.setText("");
 		snapshot = null;
 		ClientMessage msg = new ClientMessage(
-				new Timestamp(System.currentTimeMillis()),
+				System.currentTimeMillis(),
 				txtUsername.getText(),
 				txtMessage.getText()
 		);
@@ -263,6 +307,17 @@ public class ClientSwingView extends JFrame implements ClientView {
 		}
 	}
 
+	private void loadOlderMessages() {
+		txtErrorMessage.setText("");
+		Timestamp oldest = msgsBoard.getOldestTimestamp();
+		try {
+			client.requestHistory(oldest != null ? oldest : new Timestamp(System.currentTimeMillis()));
+		} catch (SocketException ex) {
+			LOGGER.error(ex.getMessage());
+			showError(ex.getMessage());
+		}
+	}
+
 	static class ViewSnapshot {
 		private Runnable snapshot;
 
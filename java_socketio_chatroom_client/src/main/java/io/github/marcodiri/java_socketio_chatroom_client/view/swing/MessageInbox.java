@@ -0,0 +1,126 @@
+package io.github.marcodiri.java_socketio_chatroom_client.view.swing;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+
+import javax.swing.*;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Collects messages coming from the socket thread and hands them to the
+ * Event Dispatch Thread in a single batch per frame. At most one drain is
+ * pending at any time and two drains are at least {@code frameInterval}
+ * milliseconds apart, so a burst of messages costs one board update per
+ * frame instead of one per message.
+ * <p>
+ * A {@link #reset()} is queued with the messages, so the board is reset
+ * after every message added before it and before every message added
+ * after it, whichever drain they end up in.
+ */
+class MessageInbox {
+
+	static final int DEFAULT_FRAME_INTERVAL = 16;
+
+	private static final Object RESET = new Object();
+
+	// Messages and RESET markers
+	private final Queue<Object> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+	private final Consumer<List<Message>> sink;
+	private final Runnable resetSink;
+	private final int frameInterval;
+
+	private volatile long lastDrain = System.nanoTime() - TimeUnit.SECONDS.toNanos(1);
+
+	private static final Logger LOGGER = LogManager.getLogger(MessageInbox.class);
+
+	MessageInbox(Consumer<List<Message>> sink) {
+		this(sink, DEFAULT_FRAME_INTERVAL);
+	}
+
+	MessageInbox(Consumer<List<Message>> sink, int frameInterval) {
+		this(sink, () -> {}, frameInterval);
+	}
+
+	/**
+	 * @param resetSink Run on the Event Dispatch Thread for a {@link #reset()}
+	 */
+	MessageInbox(Consumer<List<Message>> sink, Runnable resetSink) {
+		this(sink, resetSink, DEFAULT_FRAME_INTERVAL);
+	}
+
+	MessageInbox(Consumer<List<Message>> sink, Runnable resetSink, int frameInterval) {
+		this.sink = sink;
+		this.resetSink = resetSink;
+		this.frameInterval = frameInterval;
+	}
+
+	void add(Message msg) {
+		pending.add(msg);
+		scheduleDrain();
+	}
+
+	void addAll(List<Message> msgs) {
+		pending.addAll(msgs);
+		scheduleDrain();
+	}
+
+	void clear() {
+		pending.clear();
+	}
+
+	/**
+	 * Drop the messages not drained yet and run the reset sink before any
+	 * message added from now on is drained.
+	 */
+	void reset() {
+		pending.add(RESET);
+		scheduleDrain();
+	}
+
+	private void scheduleDrain() {
+		if (!drainScheduled.compareAndSet(false, true))
+			return;
+		long delay = TimeUnit.NANOSECONDS.toMillis(lastDrain - System.nanoTime() + 999_999) + frameInterval;
+		if (delay <= 0) {
+			SwingUtilities.invokeLater(this::drain);
+		} else {
+			Timer timer = new Timer((int) delay, e -> drain());
+			timer.setRepeats(false);
+			timer.start();
+		}
+	}
+
+	private void drain() {
+		lastDrain = System.nanoTime();
+		drainScheduled.set(false);
+		List<Message> batch = new ArrayList<>();
+		boolean reset = false;
+		Object entry;
+		while ((entry = pending.poll()) != null) {
+			if (entry == RESET) {
+				batch.clear();
+				reset = true;
+			} else {
+				batch.add((Message) entry);
+			}
+		}
+		if (reset) {
+			LOGGER.debug("Resetting board");
+			resetSink.run();
+		}
+		if (!batch.isEmpty()) {
+			LOGGER.debug("Draining {} Messages to board", batch.size());
+			sink.accept(batch);
+		}
+	}
+}
@@ -3,43 +3,228 @@ package io.github.marcodiri.java_socketio_chatroom_client.view.swing.components;
 import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
 
 import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.StyledDocument;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.awt.Container;
+import java.awt.Rectangle;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
+/**
+ * Text pane that shows messages ordered by timestamp, one per line.
+ * Messages are inserted directly into the document at their sorted position,
+ * so the common in-order case is a plain append and the cost of a message
+ * does not grow with the length of the history.
+ * <p>
+ * At most {@code scrollbackLimit} messages are kept: new messages evict the
+ * oldest ones from both the history and the document. A batch entirely older
+ * than what is shown is a page the user asked for: nothing is evicted from
+ * then on, until the user has scrolled away from the newest messages and
+ * back to them, or the board is cleared.
+ */
 @SuppressWarnings("serial")
 public class MessageBoard extends JTextPane {
 
+	public static final int DEFAULT_SCROLLBACK_LIMIT = 1000;
+
+	private static final String LINE_SEPARATOR = "\n";
+
+	private static final Comparator<Message> BY_TIMESTAMP = Comparator.comparingLong(Message::getTimestamp);
+
 	private final transient List<Message> history = new ArrayList<>();
+	private final transient List<Position> lineStarts = new ArrayList<>();
+	private final int scrollbackLimit;
+	private boolean olderPagesLoaded = false;
+	private boolean scrolledAway = false;
 
 	private static final Logger LOGGER = LogManager.getLogger(MessageBoard.class);
 
+	public MessageBoard() {
+		this(DEFAULT_SCROLLBACK_LIMIT);
+	}
+
+	public MessageBoard(int scrollbackLimit) {
+		if (scrollbackLimit <= 0)
+			throw new IllegalArgumentException("Scrollback limit must be positive");
+		this.scrollbackLimit = scrollbackLimit;
+	}
+
 	List<Message> getHistory() {
 		return history;
 	}
 
+	/**
+	 * @return The timestamp of the oldest message on the board, or
+	 *         {@code null} if the board is empty
+	 */
+	public Timestamp getOldestTimestamp() {
+		return history.isEmpty() ? null : new Timestamp(history.get(0).getTimestamp());
+	}
+
 	public void newMessageNotify(Message msg) {
-		history.add(msg);
-		history.sort(Comparator.comparingLong(lhs -> lhs.getTimestamp().getTime()));
-		StringBuilder formattedText = new StringBuilder();
-		for (Message m : history) {
-			if (formattedText.length() > 0) {
-				formattedText.insert(formattedText.length(), System.lineSeparator());
+		insert(msg);
+		trim();
+		LOGGER.info("Message added to board");
+	}
+
+	/**
+	 * Messages already on the board are skipped: a page of older messages
+	 * starts at the millisecond of the oldest one shown, so that messages
+	 * sharing it are not missed.
+	 */
+	public void newMessagesNotify(List<Message> msgs) {
+		List<Message> sorted = new ArrayList<>(msgs);
+		sorted.removeIf(this::isShown);
+		sorted.sort(BY_TIMESTAMP);
+		if (sorted.isEmpty())
+			return;
+		boolean olderPage = isAtOrBeforeFirst(sorted.get(sorted.size() - 1));
+		if (isAfterLast(sorted.get(0))) {
+			appendAll(sorted);
+		} else {
+			for (Message msg : sorted) {
+				insert(msg);
 			}
-			formattedText.append(m.getFormattedMessage());
 		}
-		setText(formattedText.toString());
-		LOGGER.info("Message added to board");
+		if (olderPage) {
+			olderPagesLoaded = true;
+			scrolledAway = false;
+		}
+		trim();
+		LOGGER.info("{} Messages added to board", msgs.size());
 	}
 
 	public void clearBoard() {
 		setText("");
 		history.clear();
+		lineStarts.clear();
+		olderPagesLoaded = false;
 		LOGGER.info("Board cleared");
 	}
 
+	private boolean isShown(Message msg) {
+		for (int i = upperBound(msg) - 1; i >= 0 && BY_TIMESTAMP.compare(history.get(i), msg) == 0; i--) {
+			if (history.get(i).equals(msg))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean isAtOrBeforeFirst(Message msg) {
+		return !history.isEmpty() && BY_TIMESTAMP.compare(msg, history.get(0)) <= 0;
+	}
+
+	private boolean isAfterLast(Message msg) {
+		return history.isEmpty() || BY_TIMESTAMP.compare(history.get(history.size() - 1), msg) <= 0;
+	}
+
+	private void insert(Message msg) {
+		if (isAfterLast(msg)) {
+			appendAll(Collections.singletonList(msg));
+			return;
+		}
+		int index = upperBound(msg);
+		int offset = lineStarts.get(index).getOffset();
+		String text = msg.getFormattedMessage() + LINE_SEPARATOR;
+		// a mark sitting exactly on the insertion offset may not move, so the
+		// shifted line gets a fresh one too
+		List<Position> starts = insertString(offset, text, Arrays.asList(offset, offset + text.length()));
+		history.add(index, msg);
+		lineStarts.add(index, starts.get(0));
+		lineStarts.set(index + 1, starts.get(1));
+	}
+
+	private void appendAll(List<Message> msgs) {
+		int offset = getStyledDocument().getLength();
+		StringBuilder text = new StringBuilder();
+		List<Integer> offsets = new ArrayList<>(msgs.size());
+		for (Message msg : msgs) {
+			if (!history.isEmpty() || text.length() > 0) {
+				text.append(LINE_SEPARATOR);
+			}
+			offsets.add(offset + text.length());
+			text.append(msg.getFormattedMessage());
+		}
+		List<Position> starts = insertString(offset, text.toString(), offsets);
+		history.addAll(msgs);
+		lineStarts.addAll(starts);
+	}
+
+	private void trim() {
+		if (olderPagesLoaded) {
+			if (!isScrolledToNewest())
+				scrolledAway = true;
+			else if (scrolledAway)
+				olderPagesLoaded = false;
+		}
+		int evicted = history.size() - scrollbackLimit;
+		if (evicted <= 0 || olderPagesLoaded)
+			return;
+		int end = lineStarts.get(evicted).getOffset();
+		try {
+			getStyledDocument().remove(0, end);
+		} catch (BadLocationException e) {
+			throw new IllegalStateException("Board is out of sync with its document", e);
+		}
+		history.subList(0, evicted).clear();
+		lineStarts.subList(0, evicted).clear();
+		LOGGER.debug("{} Messages evicted from board", evicted);
+	}
+
+	/**
+	 * @return Whether the board is in a viewport showing its last line
+	 */
+	private boolean isScrolledToNewest() {
+		Container parent = getParent();
+		if (!(parent instanceof JViewport))
+			return false;
+		Rectangle visible = ((JViewport) parent).getViewRect();
+		return visible.y + visible.height >= getHeight();
+	}
+
+	/**
+	 * @return The index of the first message strictly newer than {@code msg},
+	 *         so that messages with the same timestamp keep arrival order
+	 */
+	private int upperBound(Message msg) {
+		int low = 0;
+		int high = history.size();
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (BY_TIMESTAMP.compare(history.get(mid), msg) <= 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Inserts {@code text} at {@code offset} and marks the given line starts,
+	 * which then follow later edits of the document.
+	 */
+	private List<Position> insertString(int offset, String text, List<Integer> lineOffsets) {
+		StyledDocument doc = getStyledDocument();
+		try {
+			doc.insertString(offset, text, null);
+			List<Position> positions = new ArrayList<>(lineOffsets.size());
+			for (int lineOffset : lineOffsets) {
+				positions.add(doc.createPosition(lineOffset));
+			}
+			return positions;
+		} catch (BadLocationException e) {
+			throw new IllegalStateException("Board is out of sync with its document", e);
+		}
+	}
+
 }
@@ -2,18 +2,20 @@ package io.github.marcodiri.java_socketio_chatroom_client;
 
 import io.github.marcodiri.java_socketio_chatroom_client.model.ClientMessage;
 import io.github.marcodiri.java_socketio_chatroom_client.view.ClientView;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodecs;
 import io.github.marcodiri.java_socketio_chatroom_server_mock.ChatroomServerMock;
 import io.socket.client.IO;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.net.URI;
-import java.sql.Timestamp;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.*;
 import static org.awaitility.Awaitility.await;
@@ -69,6 +71,22 @@ public class ChatroomClientHandlersTest {
 		}
 	}
 	
+	@Test
+	public void testConnectedHandlerCallsRoomLeftOnLeftEvent() {
+		client.username = "user";
+		connectClient();
+
+		handlers.connectedHandler();
+
+		String roomName = "RoomName";
+		serverMock.sendEvent("left", new JSONObject("{roomName: " + roomName + "}"));
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(view).roomLeft(roomName));
+		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
+			fail("handleLeave not called");
+		}
+	}
+
 	@Test
 	public void testConnectedHandlerEmitsJoinEventWithCorrectUsername() {
 		client.username = "user";
@@ -104,7 +122,7 @@ public class ChatroomClientHandlersTest {
 
 		handlers.connectedHandler();
 		
-		ClientMessage msg = new ClientMessage(new Timestamp(0), "user", "message");
+		ClientMessage msg = new ClientMessage(0, "user", "message");
 		try {
 			serverMock.sendEvent("msg", msg.toJSON());
 		} catch (NullPointerException e) {
@@ -118,6 +136,52 @@ public class ChatroomClientHandlersTest {
 		}
 	}
 
+	@Test
+	public void testConnectedHandlerCallsAddMessagesOnHistoryEvent() {
+		client.username = "user";
+		connectClient();
+
+		handlers.connectedHandler();
+
+		ClientMessage msg1 = new ClientMessage(0, "user1", "message1");
+		ClientMessage msg2 = new ClientMessage(1, "user2", "message2");
+		try {
+			serverMock.sendEvent("history", new JSONArray().put(msg1.toJSON()).put(msg2.toJSON()));
+		} catch (NullPointerException e) {
+			fail("Socket is null");
+		}
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(view).addMessages(asList(msg1, msg2)));
+		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
+			fail("handleHistory not called");
+		}
+	}
+
+	@Test
+	public void testConnectedHandlerDecodesMessagesWithTheAgreedCodec() {
+		client.username = "user";
+		client.codec = MessageCodecs.BINARY;
+		connectClient();
+
+		handlers.connectedHandler();
+
+		ClientMessage msg = new ClientMessage(0, "user", "message");
+		ClientMessage msg1 = new ClientMessage(1, "user1", "message1");
+		ClientMessage msg2 = new ClientMessage(2, "user2", "message2");
+		serverMock.sendEvent("msg", MessageCodecs.BINARY.encode(msg));
+		serverMock.sendEvent("history", MessageCodecs.BINARY.encodeAll(asList(msg1, msg2)));
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> {
+				verify(view).addMessage(msg);
+				verify(view).addMessages(asList(msg1, msg2));
+			});
+		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
+			fail("Binary messages were not decoded");
+		}
+	}
+
 	@Test
 	public void testConnectedHandlerCallsShowErrorOnErrorEvent() {
 		client.username = "user";
@@ -147,7 +211,9 @@ public class ChatroomClientHandlersTest {
 		handlers.connectedHandler();
 
 		assertThat(client.getSocket().hasListeners("msg")).isTrue();
+		assertThat(client.getSocket().hasListeners("history")).isTrue();
 		assertThat(client.getSocket().hasListeners("joined")).isTrue();
+		assertThat(client.getSocket().hasListeners("left")).isTrue();
 		assertThat(client.getSocket().hasListeners("error")).isTrue();
 		
 		try {
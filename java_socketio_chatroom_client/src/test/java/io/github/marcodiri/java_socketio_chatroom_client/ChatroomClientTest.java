@@ -10,6 +10,7 @@ import static org.mockito.Mockito.*;
 import java.net.SocketException;
 import java.net.URI;
 import java.sql.Timestamp;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import io.socket.client.Socket;
@@ -19,8 +20,13 @@ import org.junit.Before;
 import org.junit.Test;
 import io.github.marcodiri.java_socketio_chatroom_client.model.ClientMessage;
 import io.github.marcodiri.java_socketio_chatroom_client.view.ClientView;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodecs;
 import io.github.marcodiri.java_socketio_chatroom_server_mock.ChatroomServerMock;
 import io.socket.client.IO;
+import io.socket.client.IO.Options;
+import io.socket.engineio.client.transports.WebSocket;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 
 public class ChatroomClientTest {
 
@@ -121,7 +127,7 @@ public class ChatroomClientTest {
 
 	@Test
 	public void testSendMessageWhenClientNotConnected() {
-		ClientMessage msg = new ClientMessage(new Timestamp(0), USERNAME, "message");
+		ClientMessage msg = new ClientMessage(0, USERNAME, "message");
 
 		assertThatThrownBy(() -> client.sendMessage(msg)).isInstanceOf(SocketException.class)
 				.hasMessage("Unable to send message when not connected to server");
@@ -138,7 +144,7 @@ public class ChatroomClientTest {
 		assertClientConnected();
 		client.connected.set(true);
 
-		ClientMessage msg = new ClientMessage(new Timestamp(0), USERNAME, "message");
+		ClientMessage msg = new ClientMessage(0, USERNAME, "message");
 		try {
 			client.sendMessage(msg);
 		} catch (SocketException e) {
@@ -153,6 +159,211 @@ public class ChatroomClientTest {
 		}
 	}
 
+	@Test
+	public void testRequestHistoryWhenClientNotConnected() {
+		assertThatThrownBy(() -> client.requestHistory(new Timestamp(0))).isInstanceOf(SocketException.class)
+				.hasMessage("Unable to request history when not connected to server");
+	}
+
+	@Test
+	public void testRequestHistoryWhenClientConnected() {
+		AtomicReference<JSONObject> receivedRequest = new AtomicReference<>();
+
+		serverMock.handleNamespaceEvent("connection", arg -> serverMock.getSocket().send("connected"));
+		serverMock.handleEvent("loadHistory", arg -> receivedRequest.set((JSONObject) arg[0]));
+
+		client.getSocket().connect();
+		assertClientConnected();
+		client.connected.set(true);
+
+		try {
+			client.requestHistory(new Timestamp(5));
+		} catch (SocketException e) {
+			fail(e.getMessage());
+		}
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(receivedRequest.get()).isNotNull());
+			assertThat(receivedRequest.get().getLong("before")).isEqualTo(5L);
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testCreateRoomWhenClientNotConnected() {
+		assertThatThrownBy(() -> client.createRoom("room")).isInstanceOf(SocketException.class)
+				.hasMessage("Unable to create a room when not connected to server");
+	}
+
+	@Test
+	public void testCreateRoomWhenClientConnected() {
+		AtomicReference<String> receivedRoom = new AtomicReference<>();
+
+		serverMock.handleNamespaceEvent("connection", arg -> serverMock.getSocket().send("connected"));
+		serverMock.handleEvent("createRoom", arg -> receivedRoom.set((String) arg[0]));
+
+		client.getSocket().connect();
+		assertClientConnected();
+		client.connected.set(true);
+
+		try {
+			client.createRoom("room");
+		} catch (SocketException e) {
+			fail(e.getMessage());
+		}
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(receivedRoom.get()).isEqualTo("room"));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testJoinRoomWhenClientNotConnected() {
+		assertThatThrownBy(() -> client.joinRoom("room")).isInstanceOf(SocketException.class)
+				.hasMessage("Unable to join a room when not connected to server");
+	}
+
+	@Test
+	public void testJoinRoomWhenClientConnected() {
+		AtomicReference<String> receivedRoom = new AtomicReference<>();
+
+		serverMock.handleNamespaceEvent("connection", arg -> serverMock.getSocket().send("connected"));
+		serverMock.handleEvent("joinRoom", arg -> receivedRoom.set((String) arg[0]));
+
+		client.getSocket().connect();
+		assertClientConnected();
+		client.connected.set(true);
+
+		try {
+			client.joinRoom("room");
+		} catch (SocketException e) {
+			fail(e.getMessage());
+		}
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(receivedRoom.get()).isEqualTo("room"));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testLeaveRoomWhenClientNotConnected() {
+		assertThatThrownBy(() -> client.leaveRoom()).isInstanceOf(SocketException.class)
+				.hasMessage("Unable to leave the room when not connected to server");
+	}
+
+	@Test
+	public void testLeaveRoomWhenClientConnected() {
+		AtomicBoolean leaveReceived = new AtomicBoolean(false);
+
+		serverMock.handleNamespaceEvent("connection", arg -> serverMock.getSocket().send("connected"));
+		serverMock.handleEvent("leaveRoom", arg -> leaveReceived.set(true));
+
+		client.getSocket().connect();
+		assertClientConnected();
+		client.connected.set(true);
+
+		try {
+			client.leaveRoom();
+		} catch (SocketException e) {
+			fail(e.getMessage());
+		}
+
+		try {
+			await().atMost(2, SECONDS).untilTrue(leaveReceived);
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testOptionsForWebsocketOnlyUseOnlyTheWebsocketTransport() {
+		Options options = ChatroomClient.options(true);
+
+		assertThat(options.transports).containsExactly(WebSocket.NAME);
+		assertThat(options.upgrade).isFalse();
+	}
+
+	@Test
+	public void testDefaultOptionsKeepPollingAndUpgrade() {
+		Options options = ChatroomClient.options(false);
+
+		assertThat(options.transports).isNull();
+		assertThat(options.upgrade).isTrue();
+		assertThat(options.query).isEqualTo("codec=json");
+	}
+
+	@Test
+	public void testOptionsShareOneHttpClientWithNagleDisabled() {
+		Options options = ChatroomClient.options(false);
+
+		assertThat(options.callFactory)
+				.isSameAs(options.webSocketFactory)
+				.isSameAs(ChatroomClient.options(true).callFactory)
+				.isInstanceOf(OkHttpClient.class);
+		assertThat(((OkHttpClient) options.callFactory).socketFactory()).isInstanceOf(NoDelaySocketFactory.class);
+	}
+
+	@Test
+	public void testOptionsDoNotLimitConcurrentConnections() {
+		Dispatcher dispatcher = ((OkHttpClient) ChatroomClient.options(true).webSocketFactory).dispatcher();
+
+		assertThat(dispatcher.getMaxRequests()).isEqualTo(Integer.MAX_VALUE);
+		assertThat(dispatcher.getMaxRequestsPerHost()).isEqualTo(Integer.MAX_VALUE);
+	}
+
+	@Test
+	public void testOptionsAskForTheGivenCodec() {
+		Options options = ChatroomClient.options(false, MessageCodecs.BINARY);
+
+		assertThat(options.query).isEqualTo("codec=binary");
+	}
+
+	@Test
+	public void testConnectedEventSelectsTheCodecNamedByTheServer() {
+		AtomicReference<Object> receivedMsg = new AtomicReference<>();
+		serverMock.handleNamespaceEvent("connection", arg -> serverMock.getSocket().send("connected", "binary"));
+		serverMock.handleEvent("msg", arg -> receivedMsg.set(arg[0]));
+
+		client.getSocket().connect();
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(handlers).connectedHandler());
+		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
+			fail("connectedHandler not called");
+		}
+		assertThat(client.getCodec()).isSameAs(MessageCodecs.BINARY);
+
+		client.connected.set(true);
+		ClientMessage msg = new ClientMessage(0, USERNAME, "message");
+		try {
+			client.sendMessage(msg);
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(receivedMsg.get()).isInstanceOf(byte[].class));
+		} catch (SocketException | org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+		ClientMessage decoded = MessageCodecs.BINARY.decode(receivedMsg.get(), ClientMessage::new);
+		assertThat(decoded).isEqualTo(msg);
+	}
+
+	@Test
+	public void testConnectedEventWithoutCodecFallsBackToJson() {
+		client.codec = MessageCodecs.BINARY;
+		serverMock.handleNamespaceEvent("connection", arg -> serverMock.getSocket().send("connected"));
+
+		client.getSocket().connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(handlers).connectedHandler());
+		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
+			fail("connectedHandler not called");
+		}
+		assertThat(client.getCodec()).isSameAs(MessageCodecs.JSON);
+	}
+
 	private void assertClientConnected() {
 		try {
 			await().atMost(2, SECONDS).until(() -> client.getSocket().connected());
@@ -0,0 +1,56 @@
+package io.github.marcodiri.java_socketio_chatroom_client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NoDelaySocketFactoryTest {
+
+	private final NoDelaySocketFactory factory = new NoDelaySocketFactory();
+	private final InetAddress loopback = InetAddress.getLoopbackAddress();
+	private ServerSocket server;
+
+	@Before
+	public void startServer() throws IOException {
+		server = new ServerSocket(0, 50, loopback);
+	}
+
+	@After
+	public void stopServer() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void testUnconnectedSocketHasNagleDisabled() throws IOException {
+		try (Socket socket = factory.createSocket()) {
+			assertThat(socket.getTcpNoDelay()).isTrue();
+		}
+	}
+
+	@Test
+	public void testSocketsConnectedByHostNameHaveNagleDisabled() throws IOException {
+		try (Socket socket = factory.createSocket(loopback.getHostAddress(), server.getLocalPort())) {
+			assertThat(socket.getTcpNoDelay()).isTrue();
+		}
+		try (Socket socket = factory.createSocket(loopback.getHostAddress(), server.getLocalPort(), loopback, 0)) {
+			assertThat(socket.getTcpNoDelay()).isTrue();
+		}
+	}
+
+	@Test
+	public void testSocketsConnectedByAddressHaveNagleDisabled() throws IOException {
+		try (Socket socket = factory.createSocket(loopback, server.getLocalPort())) {
+			assertThat(socket.getTcpNoDelay()).isTrue();
+		}
+		try (Socket socket = factory.createSocket(loopback, server.getLocalPort(), loopback, 0)) {
+			assertThat(socket.getTcpNoDelay()).isTrue();
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package io.github.marcodiri.java_socketio_chatroom_client.model;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ClientMessageTest {
+
+	@After
+	public void restoreTimeFormat() {
+		ClientMessage.configureTimeFormat(ClientMessage.DEFAULT_TIME_PATTERN, Locale.getDefault(), ZoneId.systemDefault());
+	}
+
+	@Test
+	public void testDefaultFormatShowsLocalHoursAndMinutes() {
+		long timestamp = 1_600_000_000_000L;
+		ClientMessage message = new ClientMessage(timestamp, "user", "message");
+
+		assertThat(message.getFormattedMessage())
+				.isEqualTo(new SimpleDateFormat("HH:mm").format(timestamp) + " user: message");
+	}
+
+	@Test
+	public void testConfiguredLocaleAndZoneAreUsed() {
+		ClientMessage.configureTimeFormat("EEE HH:mm", Locale.ENGLISH, ZoneId.of("Asia/Tokyo"));
+
+		assertThat(new ClientMessage(0, "user", "message").getFormattedMessage())
+				.isEqualTo("Thu 09:00 user: message");
+	}
+
+	@Test
+	public void testInvalidPatternIsRejected() {
+		assertThatThrownBy(() -> ClientMessage.configureTimeFormat("HH:mm qqqqqq", Locale.ENGLISH, ZoneId.systemDefault()))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThat(ClientMessage.getTimeFormat().getZone()).isEqualTo(ZoneId.systemDefault());
+	}
+}
@@ -16,13 +16,17 @@ import org.assertj.swing.junit.testcase.AssertJSwingJUnitTestCase;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.net.SocketException;
 import java.sql.Timestamp;
+import java.util.List;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.*;
 import static org.awaitility.Awaitility.await;
@@ -64,6 +68,7 @@ public class ClientSwingViewTest extends AssertJSwingJUnitTestCase {
 		window.button(JButtonMatcher.withText("Send")).requireDisabled();
 		window.button(JButtonMatcher.withText("Connect")).requireDisabled();
 		window.button(JButtonMatcher.withText("Disconnect")).requireDisabled();
+		window.button(JButtonMatcher.withText("Load older")).requireDisabled();
 		window.textBox("msgsTextPane").requireDisabled();
 	}
 
@@ -72,6 +77,7 @@ public class ClientSwingViewTest extends AssertJSwingJUnitTestCase {
 		clientSwingView.roomJoined("RoomName");
 		try {
 			await().atMost(2, SECONDS).untilAsserted(() -> window.button(JButtonMatcher.withText("Disconnect")).requireEnabled());
+			await().atMost(2, SECONDS).untilAsserted(() -> window.button(JButtonMatcher.withText("Load older")).requireEnabled());
 			await().atMost(2, SECONDS).untilAsserted(() -> window.textBox("txtMessage").requireEnabled());
 			await().atMost(2, SECONDS).untilAsserted(() -> window.textBox("msgsTextPane").requireEnabled());
 		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
@@ -79,14 +85,76 @@ public class ClientSwingViewTest extends AssertJSwingJUnitTestCase {
 		}
 	}
 
+	@Test
+	public void testRoomJoinedClearsMessagesOfThePreviousRoom() {
+		GuiActionRunner.execute(() -> msgsBoard.newMessageNotify(new ClientMessage(0, "user", "message")));
+
+		clientSwingView.roomJoined("OtherRoom");
+
+		await().atMost(2, SECONDS).untilAsserted(() -> verify(msgsBoard).clearBoard());
+		window.textBox("msgsTextPane").requireText("");
+	}
+
+	@Test
+	public void testHistoryOfTheJoinedRoomIsShownAfterTheBoardIsCleared() {
+		Message oldMsg = new ClientMessage(0, "user", "old");
+		Message newMsg = new ClientMessage(1, "user", "new");
+
+		// on the EDT, so that no drain can run in between
+		GuiActionRunner.execute(() -> {
+			clientSwingView.addMessage(oldMsg);
+			clientSwingView.roomJoined("OtherRoom");
+			clientSwingView.addMessages(singletonList(newMsg));
+		});
+
+		await().atMost(2, SECONDS).untilAsserted(() -> verify(msgsBoard).newMessagesNotify(singletonList(newMsg)));
+		InOrder inOrder = inOrder(msgsBoard);
+		inOrder.verify(msgsBoard).clearBoard();
+		inOrder.verify(msgsBoard).newMessagesNotify(singletonList(newMsg));
+		verify(msgsBoard, never()).newMessagesNotify(singletonList(oldMsg));
+	}
+
+	@Test
+	public void testRoomLeft() {
+		clientSwingView.roomJoined("RoomName");
+		await().atMost(2, SECONDS).untilAsserted(() -> window.textBox("txtMessage").requireEnabled());
+		GuiActionRunner.execute(() -> msgsBoard.newMessageNotify(new ClientMessage(0, "user", "message")));
+
+		clientSwingView.roomLeft("RoomName");
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> window.textBox("txtMessage").requireDisabled());
+			await().atMost(2, SECONDS).untilAsserted(() -> window.button(JButtonMatcher.withText("Load older")).requireDisabled());
+			await().atMost(2, SECONDS).untilAsserted(() -> window.button(JButtonMatcher.withText("Send")).requireDisabled());
+			await().atMost(2, SECONDS).untilAsserted(() -> window.textBox("msgsTextPane").requireDisabled());
+		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
+			fail("Component not disabled after room left");
+		}
+		window.button(JButtonMatcher.withText("Disconnect")).requireEnabled();
+		window.textBox("msgsTextPane").requireText("");
+	}
+
 	@Test
 	public void testAddMessage() {
-		Message msg = new ClientMessage(new Timestamp(0), "user", "message");
+		Message msg = new ClientMessage(0, "user", "message");
 		clientSwingView.addMessage(msg);
 		try {
-			await().atMost(2, SECONDS).untilAsserted(() -> verify(msgsBoard).newMessageNotify(msg));
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(msgsBoard).newMessagesNotify(singletonList(msg)));
 		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
-			fail("Expected call to newMessageNotify with message: " + msg);
+			fail("Expected call to newMessagesNotify with message: " + msg);
+		}
+	}
+
+	@Test
+	public void testAddMessages() {
+		List<Message> msgs = asList(
+				new ClientMessage(0, "user1", "message1"),
+				new ClientMessage(1, "user2", "message2"));
+		clientSwingView.addMessages(msgs);
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(msgsBoard).newMessagesNotify(msgs));
+		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
+			fail("Expected call to newMessagesNotify with messages: " + msgs);
 		}
 	}
 
@@ -174,12 +242,14 @@ public class ClientSwingViewTest extends AssertJSwingJUnitTestCase {
 	public void testDisconnectBtnDisablesControlsAndEnablesTxtUsername() {
 		JButtonFixture btnConnect = window.button(JButtonMatcher.withText("Connect"));
 		JButtonFixture btnDisconnect = window.button(JButtonMatcher.withText("Disconnect"));
+		JButtonFixture btnLoadOlder = window.button(JButtonMatcher.withText("Load older"));
 		JTextComponentFixture txtMessage = window.textBox("txtMessage");
 		JTextComponentFixture msgsTextPane = window.textBox("msgsTextPane");
 		JTextComponentFixture txtUsername = window.textBox("txtUsername");
 
 		setEnabled(btnConnect.target(), false);
 		setEnabled(btnDisconnect.target(), true);
+		setEnabled(btnLoadOlder.target(), true);
 		setEnabled(txtMessage.target(), true);
 		setEnabled(msgsTextPane.target(), true);
 		setEnabled(txtUsername.target(), false);
@@ -188,6 +258,7 @@ public class ClientSwingViewTest extends AssertJSwingJUnitTestCase {
 
 		btnConnect.requireEnabled();
 		btnDisconnect.requireDisabled();
+		btnLoadOlder.requireDisabled();
 		txtMessage.requireDisabled();
 		msgsTextPane.requireDisabled();
 		msgsTextPane.requireEmpty();
@@ -204,6 +275,48 @@ public class ClientSwingViewTest extends AssertJSwingJUnitTestCase {
 		verify(client).disconnect();
 	}
 
+	@Test
+	public void testLoadOlderBtnRequestsHistoryBeforeOldestMessage() throws SocketException {
+		JButtonFixture btnLoadOlder = window.button(JButtonMatcher.withText("Load older"));
+		Message msg = new ClientMessage(5, "user", "message");
+		GuiActionRunner.execute(() -> msgsBoard.newMessageNotify(msg));
+
+		setEnabled(btnLoadOlder.target(), true);
+		btnLoadOlder.click();
+
+		verify(client).requestHistory(new Timestamp(5));
+	}
+
+	@Test
+	public void testLoadOlderBtnRequestsLatestHistoryWhenBoardIsEmpty() throws SocketException {
+		JButtonFixture btnLoadOlder = window.button(JButtonMatcher.withText("Load older"));
+		long before = System.currentTimeMillis();
+
+		setEnabled(btnLoadOlder.target(), true);
+		btnLoadOlder.click();
+
+		ArgumentCaptor<Timestamp> captor = ArgumentCaptor.forClass(Timestamp.class);
+		verify(client).requestHistory(captor.capture());
+		assertThat(captor.getValue().getTime()).isGreaterThanOrEqualTo(before);
+	}
+
+	@Test
+	public void testLoadOlderBtnShowsErrorWhenClientThrows() throws SocketException {
+		JButtonFixture btnLoadOlder = window.button(JButtonMatcher.withText("Load older"));
+		JTextComponentFixture txtErrorMessage = window.textBox("txtErrorMessage");
+		String error = "Error";
+		doThrow(new SocketException(error)).when(client).requestHistory(any(Timestamp.class));
+
+		setEnabled(btnLoadOlder.target(), true);
+		btnLoadOlder.click();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(txtErrorMessage.text()).isEqualTo(error));
+		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
+			fail("Error message not displayed or invalid message");
+		}
+	}
+
 	@Test
 	public void testTxtUsernameEnablesConnectBtnWhenIsNotEmpty() {
 		JButtonFixture btnConnect = window.button(JButtonMatcher.withText("Connect"));
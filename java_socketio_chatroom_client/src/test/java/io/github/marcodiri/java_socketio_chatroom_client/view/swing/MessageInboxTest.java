@@ -0,0 +1,123 @@
+package io.github.marcodiri.java_socketio_chatroom_client.view.swing;
+
+import io.github.marcodiri.java_socketio_chatroom_client.model.ClientMessage;
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+public class MessageInboxTest {
+
+	private final List<List<Message>> batches = new CopyOnWriteArrayList<>();
+	private final List<Long> drainTimes = new CopyOnWriteArrayList<>();
+
+	@Test
+	public void testAddDeliversMessageOnEventDispatchThread() {
+		AtomicBoolean onEdt = new AtomicBoolean(false);
+		MessageInbox inbox = new MessageInbox(batch -> {
+			onEdt.set(SwingUtilities.isEventDispatchThread());
+			batches.add(batch);
+		});
+		Message msg = new ClientMessage(0, "user", "message");
+
+		inbox.add(msg);
+
+		await().atMost(2, SECONDS).until(() -> !batches.isEmpty());
+		assertThat(batches).containsExactly(asList(msg));
+		assertThat(onEdt).isTrue();
+	}
+
+	@Test
+	public void testAddAllDeliversMessagesInOneBatch() {
+		MessageInbox inbox = new MessageInbox(batches::add);
+		Message msg1 = new ClientMessage(0, "user1", "message1");
+		Message msg2 = new ClientMessage(1, "user2", "message2");
+
+		inbox.addAll(asList(msg1, msg2));
+
+		await().atMost(2, SECONDS).until(() -> !batches.isEmpty());
+		assertThat(batches).containsExactly(asList(msg1, msg2));
+	}
+
+	@Test
+	public void testBurstIsDrainedAtMostOncePerFrame() throws InterruptedException {
+		int frameInterval = 50;
+		MessageInbox inbox = new MessageInbox(batch -> {
+			drainTimes.add(System.nanoTime());
+			batches.add(batch);
+		}, frameInterval);
+
+		List<Message> sent = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			Message msg = new ClientMessage(i, "user", "message" + i);
+			sent.add(msg);
+			inbox.add(msg);
+			Thread.sleep(1);
+		}
+
+		await().atMost(2, SECONDS).until(() -> batches.stream().mapToInt(List::size).sum() == sent.size());
+		List<Message> received = new ArrayList<>();
+		batches.forEach(received::addAll);
+		assertThat(received).isEqualTo(sent);
+		assertThat(batches.size()).isLessThan(sent.size() / 10);
+		// allow one frame of slack for scheduling jitter on the first drain
+		long span = drainTimes.get(drainTimes.size() - 1) - drainTimes.get(0);
+		assertThat((long) batches.size()).isLessThanOrEqualTo(span / MILLISECONDS.toNanos(frameInterval) + 2);
+	}
+
+	@Test
+	public void testResetRunsInOrderWithTheMessages() throws Exception {
+		List<Object> events = new CopyOnWriteArrayList<>();
+		MessageInbox inbox = new MessageInbox(events::add, () -> events.add("reset"));
+		Message oldMsg = new ClientMessage(0, "user", "old");
+		Message newMsg = new ClientMessage(1, "user", "new");
+
+		SwingUtilities.invokeAndWait(() -> {
+			inbox.add(oldMsg);
+			inbox.reset();
+			inbox.add(newMsg);
+		});
+
+		await().atMost(2, SECONDS).until(() -> events.size() == 2);
+		assertThat(events).containsExactly("reset", asList(newMsg));
+	}
+
+	@Test
+	public void testResetAfterADrainKeepsTheDrainedMessages() {
+		List<Object> events = new CopyOnWriteArrayList<>();
+		MessageInbox inbox = new MessageInbox(events::add, () -> events.add("reset"));
+		Message oldMsg = new ClientMessage(0, "user", "old");
+		Message newMsg = new ClientMessage(1, "user", "new");
+
+		inbox.add(oldMsg);
+		await().atMost(2, SECONDS).until(() -> events.size() == 1);
+		inbox.reset();
+		inbox.addAll(asList(newMsg));
+
+		await().atMost(2, SECONDS).until(() -> events.size() == 3);
+		assertThat(events).containsExactly(asList(oldMsg), "reset", asList(newMsg));
+	}
+
+	@Test
+	public void testClearDropsPendingMessages() throws Exception {
+		MessageInbox inbox = new MessageInbox(batches::add);
+
+		SwingUtilities.invokeAndWait(() -> {
+			inbox.add(new ClientMessage(0, "user", "message"));
+			inbox.clear();
+		});
+		SwingUtilities.invokeAndWait(() -> {});
+
+		assertThat(batches).isEmpty();
+	}
+}
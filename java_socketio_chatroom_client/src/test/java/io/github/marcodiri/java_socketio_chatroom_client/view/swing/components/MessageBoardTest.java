@@ -5,11 +5,19 @@ import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.swing.*;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import java.awt.Point;
 import java.sql.Timestamp;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class MessageBoardTest {
 
@@ -22,7 +30,7 @@ public class MessageBoardTest {
 
 	@Test
 	public void testNewMessageNotifyWhenBoardIsEmpty() {
-		Timestamp timestamp = new Timestamp(0);
+		long timestamp = 0;
 		DateFormat dateFormat = new SimpleDateFormat("HH:mm");
 
 		Message msg = new ClientMessage(timestamp, "user", "message");
@@ -37,10 +45,10 @@ public class MessageBoardTest {
 	@Test
 	public void testNewMessageNotifyWhenHistoryIsNotEmpty() {
 		DateFormat dateFormat = new SimpleDateFormat("HH:mm");
-		Timestamp timestamp = new Timestamp(0);
+		long timestamp = 0;
 
 		Message previousMessage = new ClientMessage(timestamp, "user1", "message1");
-		board.getHistory().add(previousMessage);
+		board.newMessageNotify(previousMessage);
 		Message msg = new ClientMessage(timestamp, "user2", "message2");
 		board.newMessageNotify(msg);
 		assertThat(board.getHistory()).contains(previousMessage, msg);
@@ -53,10 +61,10 @@ public class MessageBoardTest {
 	public void testNewMessageNotifyPrintsMessagesInSortedOrder() {
 		DateFormat dateFormat = new SimpleDateFormat("HH:mm");
 
-		Timestamp timestamp1 = new Timestamp(0);
+		long timestamp1 = 0;
 		Message olderMessage = new ClientMessage(timestamp1, "user1", "message1");
 
-		Timestamp timestamp2 = new Timestamp(1);
+		long timestamp2 = 1;
 		Message newerMessage = new ClientMessage(timestamp2, "user2", "message2");
 
 		board.newMessageNotify(newerMessage);
@@ -68,13 +76,260 @@ public class MessageBoardTest {
 		assertThat(board.getText()).isEqualTo(expectedText);
 	}
 
+	@Test
+	public void testNewMessagesNotifyPrintsAllMessagesInSortedOrder() {
+		DateFormat dateFormat = new SimpleDateFormat("HH:mm");
+
+		long timestamp1 = 0;
+		Message olderMessage = new ClientMessage(timestamp1, "user1", "message1");
+
+		long timestamp2 = 1;
+		Message newerMessage = new ClientMessage(timestamp2, "user2", "message2");
+
+		board.newMessagesNotify(asList(newerMessage, olderMessage));
+
+		assertThat(board.getHistory()).containsExactly(olderMessage, newerMessage);
+		String expectedText = dateFormat.format(timestamp1) + " user1: message1" + System.lineSeparator()
+				+ dateFormat.format(timestamp2) + " user2: message2";
+		assertThat(board.getText()).isEqualTo(expectedText);
+	}
+
+	@Test
+	public void testNewMessageNotifyInsertsOlderMessagesAtTheirPosition() {
+		Message msg0 = new ClientMessage(0, "user0", "message0");
+		Message msg1 = new ClientMessage(1, "user1", "message1");
+		Message msg2 = new ClientMessage(2, "user2", "message2");
+		Message msg3 = new ClientMessage(3, "user3", "message3");
+
+		board.newMessageNotify(msg3);
+		board.newMessageNotify(msg1);
+		board.newMessageNotify(msg0);
+		board.newMessageNotify(msg2);
+
+		assertThat(board.getHistory()).containsExactly(msg0, msg1, msg2, msg3);
+		assertThat(board.getText()).isEqualTo(formatAll(msg0, msg1, msg2, msg3));
+	}
+
+	@Test
+	public void testNewMessageNotifyKeepsArrivalOrderOfMessagesWithSameTimestamp() {
+		Message first = new ClientMessage(1, "user1", "first");
+		Message second = new ClientMessage(1, "user2", "second");
+		Message newer = new ClientMessage(2, "user3", "newer");
+
+		board.newMessageNotify(newer);
+		board.newMessageNotify(first);
+		board.newMessageNotify(second);
+
+		assertThat(board.getHistory()).containsExactly(first, second, newer);
+		assertThat(board.getText()).isEqualTo(formatAll(first, second, newer));
+	}
+
+	@Test
+	public void testNewMessagesNotifyMergesOlderMessagesIntoHistory() {
+		Message msg0 = new ClientMessage(0, "user0", "message0");
+		Message msg1 = new ClientMessage(1, "user1", "message1");
+		Message msg2 = new ClientMessage(2, "user2", "message2");
+		Message msg3 = new ClientMessage(3, "user3", "message3");
+
+		board.newMessagesNotify(asList(msg1, msg2));
+		board.newMessagesNotify(asList(msg3, msg0));
+
+		assertThat(board.getHistory()).containsExactly(msg0, msg1, msg2, msg3);
+		assertThat(board.getText()).isEqualTo(formatAll(msg0, msg1, msg2, msg3));
+	}
+
+	@Test
+	public void testNewMessagesNotifySkipsMessagesAlreadyShown() {
+		Message older = new ClientMessage(0, "user0", "message0");
+		Message sameMillisecond = new ClientMessage(1, "user1", "message1");
+		Message shown = new ClientMessage(1, "user2", "message2");
+		Message newer = new ClientMessage(2, "user3", "message3");
+		board.newMessagesNotify(asList(shown, newer));
+
+		// a page of older messages includes the millisecond of the oldest shown
+		board.newMessagesNotify(asList(older, sameMillisecond, new ClientMessage(1, "user2", "message2")));
+
+		assertThat(board.getHistory()).containsExactly(older, shown, sameMillisecond, newer);
+		assertThat(board.getText()).isEqualTo(formatAll(older, shown, sameMillisecond, newer));
+	}
+
+	@Test
+	public void testNewMessagesNotifyWithNoMessages() {
+		board.newMessagesNotify(new ArrayList<>());
+
+		assertThat(board.getHistory()).isEmpty();
+		assertThat(board.getText()).isEmpty();
+	}
+
+	@Test
+	public void testNewMessageNotifyWhenDocumentRejectsInsert() {
+		board.setStyledDocument(new DefaultStyledDocument() {
+			@Override
+			public void insertString(int offs, String str, AttributeSet a) throws BadLocationException {
+				throw new BadLocationException(str, offs);
+			}
+		});
+		Message msg = new ClientMessage(0, "user", "message");
+
+		assertThatThrownBy(() -> board.newMessageNotify(msg))
+				.isInstanceOf(IllegalStateException.class)
+				.hasCauseInstanceOf(BadLocationException.class);
+		assertThat(board.getHistory()).isEmpty();
+	}
+
+	@Test
+	public void testClearBoardAlsoResetsLinePositions() {
+		Message msg0 = new ClientMessage(0, "user0", "message0");
+		Message msg1 = new ClientMessage(1, "user1", "message1");
+		board.newMessageNotify(msg1);
+		board.clearBoard();
+
+		board.newMessageNotify(msg1);
+		board.newMessageNotify(msg0);
+
+		assertThat(board.getText()).isEqualTo(formatAll(msg0, msg1));
+	}
+
+	@Test
+	public void testConstructorRejectsNonPositiveScrollbackLimit() {
+		assertThatThrownBy(() -> new MessageBoard(0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Scrollback limit must be positive");
+	}
+
+	@Test
+	public void testNewMessageNotifyEvictsOldestMessagesOverScrollbackLimit() {
+		board = new MessageBoard(2);
+		Message msg0 = new ClientMessage(0, "user0", "message0");
+		Message msg1 = new ClientMessage(1, "user1", "message1");
+		Message msg2 = new ClientMessage(2, "user2", "message2");
+
+		board.newMessageNotify(msg0);
+		board.newMessageNotify(msg1);
+		board.newMessageNotify(msg2);
+
+		assertThat(board.getHistory()).containsExactly(msg1, msg2);
+		assertThat(board.getText()).isEqualTo(formatAll(msg1, msg2));
+	}
+
+	@Test
+	public void testNewMessagesNotifyKeepsNewestMessagesOfBatchWithinScrollbackLimit() {
+		board = new MessageBoard(2);
+		Message msg0 = new ClientMessage(0, "user0", "message0");
+		Message msg1 = new ClientMessage(1, "user1", "message1");
+		Message msg2 = new ClientMessage(2, "user2", "message2");
+
+		board.newMessagesNotify(asList(msg0, msg1, msg2));
+
+		assertThat(board.getHistory()).containsExactly(msg1, msg2);
+		assertThat(board.getText()).isEqualTo(formatAll(msg1, msg2));
+	}
+
+	@Test
+	public void testNewMessagesNotifyKeepsOlderPagesWhileTheUserReadsThem() {
+		board = new MessageBoard(2);
+		Message msg0 = new ClientMessage(0, "user0", "message0");
+		Message msg1 = new ClientMessage(1, "user1", "message1");
+		Message msg2 = new ClientMessage(2, "user2", "message2");
+		Message msg3 = new ClientMessage(3, "user3", "message3");
+		Message msg4 = new ClientMessage(4, "user4", "message4");
+		board.newMessagesNotify(asList(msg2, msg3));
+
+		board.newMessagesNotify(asList(msg0, msg1));
+		board.newMessageNotify(msg4);
+
+		assertThat(board.getHistory()).containsExactly(msg0, msg1, msg2, msg3, msg4);
+		assertThat(board.getText()).isEqualTo(formatAll(msg0, msg1, msg2, msg3, msg4));
+	}
+
+	@Test
+	public void testNewMessageNotifyEvictsOlderPagesOnceTheUserScrolledBackToTheNewest() {
+		board = new MessageBoard(2);
+		JScrollPane scrollPane = new JScrollPane(board);
+		scrollPane.setSize(200, 40);
+		Message msg0 = new ClientMessage(0, "user0", "message0");
+		Message msg1 = new ClientMessage(1, "user1", "message1");
+		Message msg2 = new ClientMessage(2, "user2", "message2");
+		Message msg3 = new ClientMessage(3, "user3", "message3");
+		Message msg4 = new ClientMessage(4, "user4", "message4");
+		Message msg5 = new ClientMessage(5, "user5", "message5");
+		board.newMessagesNotify(asList(msg2, msg3));
+		board.newMessagesNotify(asList(msg0, msg1));
+		JViewport viewport = scrollPane.getViewport();
+		viewport.doLayout();
+
+		viewport.setViewPosition(new Point(0, 0));
+		board.newMessageNotify(msg4);
+		assertThat(board.getHistory()).containsExactly(msg0, msg1, msg2, msg3, msg4);
+
+		viewport.doLayout();
+		viewport.setViewPosition(new Point(0, board.getHeight() - viewport.getExtentSize().height));
+		board.newMessageNotify(msg5);
+		assertThat(board.getHistory()).containsExactly(msg4, msg5);
+		assertThat(board.getText()).isEqualTo(formatAll(msg4, msg5));
+	}
+
+	@Test
+	public void testClearBoardForgetsOlderPages() {
+		board = new MessageBoard(2);
+		Message msg0 = new ClientMessage(0, "user0", "message0");
+		Message msg1 = new ClientMessage(1, "user1", "message1");
+		Message msg2 = new ClientMessage(2, "user2", "message2");
+		board.newMessagesNotify(asList(msg1, msg2));
+		board.newMessagesNotify(asList(msg0));
+
+		board.clearBoard();
+		board.newMessagesNotify(asList(msg0, msg1, msg2));
+
+		assertThat(board.getHistory()).containsExactly(msg1, msg2);
+	}
+
+	@Test
+	public void testNewMessageNotifyWhenDocumentRejectsEviction() {
+		board = new MessageBoard(1);
+		board.setStyledDocument(new DefaultStyledDocument() {
+			@Override
+			public void remove(int offs, int len) throws BadLocationException {
+				throw new BadLocationException("", offs);
+			}
+		});
+		board.newMessageNotify(new ClientMessage(0, "user0", "message0"));
+		Message msg = new ClientMessage(1, "user1", "message1");
+
+		assertThatThrownBy(() -> board.newMessageNotify(msg))
+				.isInstanceOf(IllegalStateException.class)
+				.hasCauseInstanceOf(BadLocationException.class);
+	}
+
+	@Test
+	public void testGetOldestTimestamp() {
+		assertThat(board.getOldestTimestamp()).isNull();
+
+		board.newMessageNotify(new ClientMessage(5, "user1", "message1"));
+		board.newMessageNotify(new ClientMessage(3, "user2", "message2"));
+
+		assertThat(board.getOldestTimestamp()).isEqualTo(new Timestamp(3));
+	}
+
 	@Test
 	public void testClearBoard() {
 		board.setText("Text");
-		board.getHistory().add(new ClientMessage(new Timestamp(0), "user", "message"));
+		board.getHistory().add(new ClientMessage(0, "user", "message"));
 		board.clearBoard();
 		assertThat(board.getText()).isEmpty();
 		assertThat(board.getHistory().isEmpty()).isTrue();
 	}
 
+	private static String formatAll(Message... msgs) {
+		DateFormat dateFormat = new SimpleDateFormat("HH:mm");
+		StringBuilder text = new StringBuilder();
+		for (Message msg : msgs) {
+			if (text.length() > 0) {
+				text.append(System.lineSeparator());
+			}
+			text.append(dateFormat.format(msg.getTimestamp())).append(" ").append(msg.getUser()).append(": ").append(msg.getUserMessage());
+		}
+		return text.toString();
+	}
+
 }
@@ -0,0 +1,174 @@
+package io.github.marcodiri.java_socketio_chatroom_core.codec;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact encoding sent as a socket.io binary attachment. A payload starts
+ * with a format version byte; a list then holds the number of messages as a
+ * varint. Each message is its timestamp as 8 big-endian bytes followed by
+ * the user and the text, each as a varint length and UTF-8 bytes.
+ * <p>
+ * Buffers are sized exactly before writing, so encoding allocates the
+ * payload once, and decoding reads the strings straight out of it.
+ */
+public final class BinaryMessageCodec implements MessageCodec {
+
+	public static final String NAME = "binary";
+
+	static final byte VERSION = 1;
+
+	/**
+	 * Timestamp plus two empty strings: bounds the count a list can claim.
+	 */
+	private static final int MIN_RECORD_SIZE = Long.BYTES + 2;
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public byte[] encode(Message message) {
+		byte[] user = utf8(message.getUser());
+		byte[] text = utf8(message.getUserMessage());
+		ByteBuffer buffer = ByteBuffer.allocate(1 + recordSize(user, text));
+		buffer.put(VERSION);
+		putRecord(buffer, message, user, text);
+		return buffer.array();
+	}
+
+	@Override
+	public byte[] encodeAll(List<? extends Message> messages) {
+		byte[][] strings = new byte[messages.size() * 2][];
+		int size = 1 + varintSize(messages.size());
+		int i = 0;
+		for (Message message : messages) {
+			strings[i] = utf8(message.getUser());
+			strings[i + 1] = utf8(message.getUserMessage());
+			size += recordSize(strings[i], strings[i + 1]);
+			i += 2;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.put(VERSION);
+		putVarint(buffer, messages.size());
+		i = 0;
+		for (Message message : messages) {
+			putRecord(buffer, message, strings[i], strings[i + 1]);
+			i += 2;
+		}
+		return buffer.array();
+	}
+
+	@Override
+	public <M extends Message> M decode(Object payload, MessageFactory<M> factory) {
+		ByteBuffer buffer = open(payload);
+		try {
+			M message = readRecord(buffer, factory);
+			checkConsumed(buffer);
+			return message;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated binary message", e);
+		}
+	}
+
+	@Override
+	public <M extends Message> List<M> decodeAll(Object payload, MessageFactory<M> factory) {
+		ByteBuffer buffer = open(payload);
+		try {
+			int count = readVarint(buffer);
+			if (count > buffer.remaining() / MIN_RECORD_SIZE)
+				throw new IllegalArgumentException("Binary message list claims " + count + " messages in " + buffer.remaining() + " bytes");
+			List<M> messages = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				messages.add(readRecord(buffer, factory));
+			}
+			checkConsumed(buffer);
+			return messages;
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated binary message", e);
+		}
+	}
+
+	private static byte[] utf8(String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int recordSize(byte[] user, byte[] text) {
+		return Long.BYTES + varintSize(user.length) + user.length + varintSize(text.length) + text.length;
+	}
+
+	private static void putRecord(ByteBuffer buffer, Message message, byte[] user, byte[] text) {
+		buffer.putLong(message.getTimestamp());
+		putVarint(buffer, user.length);
+		buffer.put(user);
+		putVarint(buffer, text.length);
+		buffer.put(text);
+	}
+
+	private static int varintSize(int value) {
+		int size = 1;
+		while ((value >>>= 7) != 0) {
+			size++;
+		}
+		return size;
+	}
+
+	private static void putVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static ByteBuffer open(Object payload) {
+		if (!(payload instanceof byte[]))
+			throw new IllegalArgumentException("Expected a binary payload but got " + payload);
+		ByteBuffer buffer = ByteBuffer.wrap((byte[]) payload);
+		if (!buffer.hasRemaining() || buffer.get() != VERSION)
+			throw new IllegalArgumentException("Unsupported binary message format");
+		return buffer;
+	}
+
+	private static <M extends Message> M readRecord(ByteBuffer buffer, MessageFactory<M> factory) {
+		long timestamp = buffer.getLong();
+		String user = readString(buffer);
+		String text = readString(buffer);
+		return factory.create(timestamp, user, text);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = readVarint(buffer);
+		if (length > buffer.remaining())
+			throw new IllegalArgumentException("Truncated binary message");
+		String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return value;
+	}
+
+	private static int readVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				// the fifth byte may only carry the top three bits of a non-negative int
+				if (shift == 28 && (b & 0x78) != 0)
+					break;
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed length in binary message");
+	}
+
+	private static void checkConsumed(ByteBuffer buffer) {
+		if (buffer.hasRemaining())
+			throw new IllegalArgumentException(buffer.remaining() + " unexpected trailing bytes in binary message");
+	}
+}
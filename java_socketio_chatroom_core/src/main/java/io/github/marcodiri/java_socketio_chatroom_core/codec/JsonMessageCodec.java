@@ -0,0 +1,69 @@
+package io.github.marcodiri.java_socketio_chatroom_core.codec;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The original wire format: a message is a {@link JSONObject} with
+ * {@code timestamp}, {@code user} and {@code message} keys and a list of
+ * messages is a {@link JSONArray} of them. Understood by every client.
+ * <p>
+ * Encoded messages are serialized immediately and only once, however many
+ * sockets they are then sent to.
+ */
+public final class JsonMessageCodec implements MessageCodec {
+
+	public static final String NAME = "json";
+
+	@Override
+	public String getName() {
+		return NAME;
+	}
+
+	@Override
+	public JSONObject encode(Message message) {
+		return new PreEncodedJSONObject(message.toJSON());
+	}
+
+	@Override
+	public JSONArray encodeAll(List<? extends Message> messages) {
+		JSONArray array = new JSONArray();
+		for (Message message : messages) {
+			array.put(message.toJSON());
+		}
+		return array;
+	}
+
+	@Override
+	public <M extends Message> M decode(Object payload, MessageFactory<M> factory) {
+		if (!(payload instanceof JSONObject))
+			throw new IllegalArgumentException("Expected a JSON object but got " + payload);
+		return fromJSON((JSONObject) payload, factory);
+	}
+
+	@Override
+	public <M extends Message> List<M> decodeAll(Object payload, MessageFactory<M> factory) {
+		if (!(payload instanceof JSONArray))
+			throw new IllegalArgumentException("Expected a JSON array but got " + payload);
+		JSONArray array = (JSONArray) payload;
+		List<M> messages = new ArrayList<>(array.length());
+		for (int i = 0; i < array.length(); i++) {
+			messages.add(decode(array.get(i), factory));
+		}
+		return messages;
+	}
+
+	private static <M extends Message> M fromJSON(JSONObject json, MessageFactory<M> factory) {
+		try {
+			return factory.create(json.getLong("timestamp"), json.getString("user"), json.getString("message"));
+		} catch (JSONException e) {
+			throw new IllegalArgumentException("Malformed JSON message: " + json, e);
+		}
+	}
+}
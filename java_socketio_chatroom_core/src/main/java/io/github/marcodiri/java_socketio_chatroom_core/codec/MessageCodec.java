@@ -0,0 +1,40 @@
+package io.github.marcodiri.java_socketio_chatroom_core.codec;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+
+import java.util.List;
+
+/**
+ * Converts messages to and from the payload of a socket.io event. Payloads
+ * are whatever socket.io can carry as an event argument: a JSON value or a
+ * {@code byte[]}, which is sent as a binary attachment.
+ */
+public interface MessageCodec {
+	/**
+	 * @return The name clients use to request this codec
+	 */
+	String getName();
+
+	/**
+	 * @return A payload serialized once, which can be sent or broadcast to
+	 *         any number of sockets without being serialized again
+	 */
+	Object encode(Message message);
+
+	/**
+	 * Encode the messages as a single payload, in order.
+	 */
+	Object encodeAll(List<? extends Message> messages);
+
+	/**
+	 * @throws IllegalArgumentException If the payload was not produced by
+	 *                                  {@link #encode(Message)}
+	 */
+	<M extends Message> M decode(Object payload, MessageFactory<M> factory);
+
+	/**
+	 * @throws IllegalArgumentException If the payload was not produced by
+	 *                                  {@link #encodeAll(List)}
+	 */
+	<M extends Message> List<M> decodeAll(Object payload, MessageFactory<M> factory);
+}
@@ -0,0 +1,39 @@
+package io.github.marcodiri.java_socketio_chatroom_core.codec;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The codecs both ends know about. A client asks for one with the
+ * {@value #QUERY_PARAMETER} query parameter of the handshake and the server
+ * names the codec it picked in its {@code connected} event; JSON is used
+ * whenever either side does not recognise the other's choice.
+ */
+public final class MessageCodecs {
+
+	public static final String QUERY_PARAMETER = "codec";
+
+	public static final MessageCodec JSON = new JsonMessageCodec();
+	public static final MessageCodec BINARY = new BinaryMessageCodec();
+
+	private static final List<MessageCodec> ALL = Collections.unmodifiableList(Arrays.asList(JSON, BINARY));
+
+	private MessageCodecs() {
+	}
+
+	/**
+	 * @return The codec called {@code name}, or {@link #JSON} if there is none
+	 */
+	public static MessageCodec forName(String name) {
+		for (MessageCodec codec : ALL) {
+			if (codec.getName().equals(name))
+				return codec;
+		}
+		return JSON;
+	}
+
+	public static List<MessageCodec> all() {
+		return ALL;
+	}
+}
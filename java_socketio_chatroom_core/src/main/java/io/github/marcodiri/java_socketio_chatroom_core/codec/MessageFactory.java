@@ -0,0 +1,15 @@
+package io.github.marcodiri.java_socketio_chatroom_core.codec;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+
+/**
+ * Builds the concrete {@link Message} a {@link MessageCodec} decodes into,
+ * usually a constructor reference such as {@code ServerMessage::new}.
+ */
+@FunctionalInterface
+public interface MessageFactory<M extends Message> {
+	/**
+	 * @param timestamp Milliseconds since the epoch
+	 */
+	M create(long timestamp, String user, String message);
+}
@@ -0,0 +1,126 @@
+package io.github.marcodiri.java_socketio_chatroom_core.codec;
+
+import org.json.JSONObject;
+import org.json.JSONString;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A JSON object serialized up front. org.json writes {@link JSONString}
+ * values verbatim, so every socket.io packet this object is put in, one per
+ * recipient of a broadcast, copies the same text instead of serializing the
+ * message again.
+ * <p>
+ * The object can be read like any other but not modified, which would
+ * leave the cached text stale: every mutator throws
+ * {@link UnsupportedOperationException}. Its values are the strings and
+ * numbers of a message, so nothing reachable from it is mutable either.
+ */
+final class PreEncodedJSONObject extends JSONObject implements JSONString {
+
+	private final String json;
+
+	PreEncodedJSONObject(JSONObject source) {
+		for (String key : source.keySet()) {
+			super.put(key, source.get(key));
+		}
+		this.json = super.toString();
+	}
+
+	@Override
+	public String toJSONString() {
+		return json;
+	}
+
+	@Override
+	public String toString() {
+		return json;
+	}
+
+	@Override
+	public Set<String> keySet() {
+		return Collections.unmodifiableSet(super.keySet());
+	}
+
+	@Override
+	public JSONObject accumulate(String key, Object value) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public JSONObject append(String key, Object value) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public JSONObject increment(String key) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public void clear() {
+		throw unmodifiable();
+	}
+
+	@Override
+	public JSONObject put(String key, boolean value) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public JSONObject put(String key, Collection<?> value) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public JSONObject put(String key, double value) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public JSONObject put(String key, float value) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public JSONObject put(String key, int value) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public JSONObject put(String key, long value) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public JSONObject put(String key, Map<?, ?> value) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public JSONObject put(String key, Object value) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public JSONObject putOnce(String key, Object value) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public JSONObject putOpt(String key, Object value) {
+		throw unmodifiable();
+	}
+
+	@Override
+	public Object remove(String key) {
+		throw unmodifiable();
+	}
+
+	private static UnsupportedOperationException unmodifiable() {
+		return new UnsupportedOperationException("A pre-encoded JSON object cannot be modified");
+	}
+}
@@ -3,21 +3,33 @@ package io.github.marcodiri.java_socketio_chatroom_core.model;
 import org.json.JSONObject;
 
 import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.Objects;
 
 public abstract class Message {
-	protected final Timestamp timestamp;
+	protected final long timestamp;
 	protected final String user;
 	protected final String userMessage;
+	private String formattedMessage;
 
-	protected Message(Timestamp timestamp, String user, String message) {
-		this.timestamp = new Timestamp(timestamp.getTime());
+	/**
+	 * @param timestamp Milliseconds since the epoch
+	 */
+	protected Message(long timestamp, String user, String message) {
+		this.timestamp = timestamp;
 		this.user = user;
 		this.userMessage = message;
 	}
 
-	public Timestamp getTimestamp() {
-		return new Timestamp(timestamp.getTime());
+	/**
+	 * @return Milliseconds since the epoch
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public Instant getInstant() {
+		return Instant.ofEpochMilli(timestamp);
 	}
 
 	public String getUser() {
@@ -28,12 +40,27 @@ public abstract class Message {
 		return userMessage;
 	}
 
-	public abstract String getFormattedMessage();
+	/**
+	 * @return The message as shown to users, formatted on the first call
+	 *         and reused afterwards
+	 */
+	public final String getFormattedMessage() {
+		// Racing threads at worst both format the message; Strings are
+		// safely published, so neither can see a partial value
+		String formatted = formattedMessage;
+		if (formatted == null) {
+			formatted = formatMessage();
+			formattedMessage = formatted;
+		}
+		return formatted;
+	}
+
+	protected abstract String formatMessage();
 
 	public JSONObject toJSON() {
 		JSONObject obj = new JSONObject();
 
-		obj.put("timestamp", timestamp.getTime());
+		obj.put("timestamp", timestamp);
 		obj.put("user", user);
 		obj.put("message", userMessage);
 
@@ -43,7 +70,7 @@ public abstract class Message {
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder("Message{");
-		sb.append("timestamp=").append(timestamp);
+		sb.append("timestamp=").append(new Timestamp(timestamp));
 		sb.append(", user=").append(user);
 		sb.append(", message=").append(userMessage);
 		sb.append('}');
@@ -52,7 +79,10 @@ public abstract class Message {
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(timestamp, user, userMessage);
+		int result = Long.hashCode(timestamp);
+		result = 31 * result + Objects.hashCode(user);
+		result = 31 * result + Objects.hashCode(userMessage);
+		return result;
 	}
 
 	@Override
@@ -62,6 +92,6 @@ public abstract class Message {
 		if (o == null || getClass() != o.getClass())
 			return false;
 		Message msg = (Message) o;
-		return Objects.equals(timestamp, msg.timestamp) && Objects.equals(user, msg.user) && Objects.equals(userMessage, msg.userMessage);
+		return timestamp == msg.timestamp && Objects.equals(user, msg.user) && Objects.equals(userMessage, msg.userMessage);
 	}
 }
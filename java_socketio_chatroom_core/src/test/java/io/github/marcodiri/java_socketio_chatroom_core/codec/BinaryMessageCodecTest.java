@@ -0,0 +1,130 @@
+package io.github.marcodiri.java_socketio_chatroom_core.codec;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinaryMessageCodecTest {
+
+	private final BinaryMessageCodec codec = new BinaryMessageCodec();
+
+	@Test
+	public void testEncodeLayout() {
+		TestMessage message = new TestMessage(42, "ab", "c");
+
+		ByteBuffer expected = ByteBuffer.allocate(1 + 8 + 1 + 2 + 1 + 1)
+				.put(BinaryMessageCodec.VERSION).putLong(42)
+				.put((byte) 2).put((byte) 'a').put((byte) 'b')
+				.put((byte) 1).put((byte) 'c');
+
+		assertThat(codec.getName()).isEqualTo("binary");
+		assertThat(codec.encode(message)).isEqualTo(expected.array());
+	}
+
+	@Test
+	public void testDecodeReadsWhatEncodeWrote() {
+		TestMessage message = new TestMessage(1_600_000_000_000L, "üser", "héllo 👋");
+
+		assertThat(codec.decode(codec.encode(message), TestMessage::new)).isEqualTo(message);
+	}
+
+	@Test
+	public void testLongTextsUseMultiByteLengths() {
+		char[] text = new char[70_000];
+		Arrays.fill(text, 'x');
+		TestMessage message = new TestMessage(0, "user", new String(text));
+
+		byte[] payload = codec.encode(message);
+
+		// 70000 needs a three byte varint
+		assertThat(payload).hasSize(1 + 8 + 1 + 4 + 3 + 70_000);
+		assertThat(codec.decode(payload, TestMessage::new)).isEqualTo(message);
+	}
+
+	@Test
+	public void testDecodeAllReadsWhatEncodeAllWrote() {
+		List<TestMessage> messages = new LinkedList<>();
+		for (int i = 0; i < 200; i++) {
+			messages.add(new TestMessage(i, "user" + i, "message" + i));
+		}
+
+		assertThat(codec.decodeAll(codec.encodeAll(messages), TestMessage::new)).isEqualTo(messages);
+		assertThat(codec.decodeAll(codec.encodeAll(Collections.emptyList()), TestMessage::new)).isEmpty();
+	}
+
+	@Test
+	public void testPayloadIsSmallerThanJson() {
+		List<TestMessage> messages = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			messages.add(new TestMessage(1_600_000_000_000L + i, "user", "message " + i));
+		}
+
+		int jsonSize = new JsonMessageCodec().encodeAll(messages).toString().getBytes(StandardCharsets.UTF_8).length;
+
+		assertThat(codec.encodeAll(messages).length).isLessThan(jsonSize / 2);
+	}
+
+	@Test
+	public void testDecodeRejectsOtherPayloads() {
+		assertThatThrownBy(() -> codec.decode("text", TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessageStartingWith("Expected a binary payload");
+		assertThatThrownBy(() -> codec.decode(new byte[0], TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Unsupported binary message format");
+		assertThatThrownBy(() -> codec.decodeAll(new byte[]{2, 0}, TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Unsupported binary message format");
+	}
+
+	@Test
+	public void testDecodeRejectsTruncatedPayloads() {
+		byte[] payload = codec.encode(new TestMessage(0, "user", "message"));
+		byte[] list = codec.encodeAll(Collections.singletonList(new TestMessage(0, "user", "message")));
+
+		assertThatThrownBy(() -> codec.decode(Arrays.copyOf(payload, 5), TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Truncated binary message");
+		assertThatThrownBy(() -> codec.decode(Arrays.copyOf(payload, payload.length - 1), TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Truncated binary message");
+		assertThatThrownBy(() -> codec.decodeAll(Arrays.copyOf(list, list.length - 1), TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Truncated binary message");
+		assertThatThrownBy(() -> codec.decodeAll(new byte[]{BinaryMessageCodec.VERSION, (byte) 0x80}, TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Truncated binary message");
+	}
+
+	@Test
+	public void testDecodeRejectsTrailingBytes() {
+		byte[] payload = codec.encode(new TestMessage(0, "user", "message"));
+		byte[] list = codec.encodeAll(Collections.emptyList());
+
+		assertThatThrownBy(() -> codec.decode(Arrays.copyOf(payload, payload.length + 2), TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("2 unexpected trailing bytes in binary message");
+		assertThatThrownBy(() -> codec.decodeAll(Arrays.copyOf(list, list.length + 1), TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("1 unexpected trailing bytes in binary message");
+	}
+
+	@Test
+	public void testDecodeAllRejectsCountsLargerThanThePayload() {
+		byte[] payload = {BinaryMessageCodec.VERSION, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+
+		assertThatThrownBy(() -> codec.decodeAll(payload, TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Binary message list claims 2147483647 messages in 0 bytes");
+	}
+
+	@Test
+	public void testDecodeRejectsLengthsOutsideTheIntRange() {
+		byte[] negative = {BinaryMessageCodec.VERSION, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F};
+		byte[] tooLong = {BinaryMessageCodec.VERSION, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x81, 0x00};
+
+		assertThatThrownBy(() -> codec.decodeAll(negative, TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Malformed length in binary message");
+		assertThatThrownBy(() -> codec.decodeAll(tooLong, TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Malformed length in binary message");
+	}
+}
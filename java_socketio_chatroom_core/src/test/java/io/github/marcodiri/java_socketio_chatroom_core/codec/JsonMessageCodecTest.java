@@ -0,0 +1,100 @@
+package io.github.marcodiri.java_socketio_chatroom_core.codec;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONString;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JsonMessageCodecTest {
+
+	private final JsonMessageCodec codec = new JsonMessageCodec();
+
+	@Test
+	public void testEncodeKeepsTheOriginalFormat() {
+		TestMessage message = new TestMessage(42, "user", "message");
+
+		JSONObject json = codec.encode(message);
+
+		assertThat(codec.getName()).isEqualTo("json");
+		assertThat(json.similar(message.toJSON())).isTrue();
+	}
+
+	@Test
+	public void testEncodeSerializesTheMessageOnce() {
+		TestMessage message = new TestMessage(42, "user", "message");
+
+		JSONObject json = codec.encode(message);
+		String text = json.toString();
+
+		assertThat(json).isInstanceOf(JSONString.class);
+		assertThat(((JSONString) json).toJSONString()).isSameAs(text);
+		assertThat(new JSONArray().put("msg").put(json).toString()).isEqualTo("[\"msg\"," + text + "]");
+		assertThat(new JSONObject(text).similar(message.toJSON())).isTrue();
+	}
+
+	@Test
+	public void testEncodedMessageCannotBeModified() {
+		JSONObject json = codec.encode(new TestMessage(42, "user", "message"));
+
+		String text = json.toString();
+
+		assertThatThrownBy(() -> json.put("user", "other")).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> json.put("timestamp", 0L)).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> json.put("timestamp", 0)).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> json.put("timestamp", 0.0)).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> json.put("flag", true)).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> json.put("list", Arrays.asList(1, 2))).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> json.putOpt("user", "other")).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> json.putOnce("other", "other")).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> json.accumulate("user", "other")).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> json.append("other", "other")).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> json.increment("timestamp")).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> json.remove("user")).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(json::clear).isInstanceOf(UnsupportedOperationException.class);
+		assertThatThrownBy(() -> json.keySet().remove("user")).isInstanceOf(UnsupportedOperationException.class);
+		assertThat(json.getString("user")).isEqualTo("user");
+		assertThat(json.toString()).isEqualTo(text);
+		assertThat(new JSONObject(text).similar(json)).isTrue();
+	}
+
+	@Test
+	public void testDecodeReadsWhatEncodeWrote() {
+		TestMessage message = new TestMessage(42, "user", "message");
+
+		assertThat(codec.decode(codec.encode(message), TestMessage::new)).isEqualTo(message);
+	}
+
+	@Test
+	public void testDecodeAllReadsWhatEncodeAllWrote() {
+		List<TestMessage> messages = Arrays.asList(
+				new TestMessage(1, "user1", "message1"),
+				new TestMessage(2, "user2", "message2"));
+
+		JSONArray array = codec.encodeAll(messages);
+
+		assertThat(array.length()).isEqualTo(2);
+		assertThat(codec.decodeAll(array, TestMessage::new)).isEqualTo(messages);
+	}
+
+	@Test
+	public void testDecodeRejectsOtherPayloads() {
+		assertThatThrownBy(() -> codec.decode(new byte[0], TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessageStartingWith("Expected a JSON object");
+		assertThatThrownBy(() -> codec.decodeAll(new JSONObject(), TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessageStartingWith("Expected a JSON array");
+	}
+
+	@Test
+	public void testDecodeRejectsMissingKeys() {
+		JSONObject json = new JSONObject().put("timestamp", 42).put("user", "user");
+
+		assertThatThrownBy(() -> codec.decode(json, TestMessage::new))
+				.isInstanceOf(IllegalArgumentException.class).hasMessageStartingWith("Malformed JSON message");
+	}
+}
@@ -0,0 +1,25 @@
+package io.github.marcodiri.java_socketio_chatroom_core.codec;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageCodecsTest {
+
+	@Test
+	public void testForNameFindsEveryCodec() {
+		assertThat(MessageCodecs.forName("json")).isSameAs(MessageCodecs.JSON);
+		assertThat(MessageCodecs.forName("binary")).isSameAs(MessageCodecs.BINARY);
+	}
+
+	@Test
+	public void testForNameFallsBackToJson() {
+		assertThat(MessageCodecs.forName("protobuf")).isSameAs(MessageCodecs.JSON);
+		assertThat(MessageCodecs.forName(null)).isSameAs(MessageCodecs.JSON);
+	}
+
+	@Test
+	public void testAllListsJsonFirst() {
+		assertThat(MessageCodecs.all()).containsExactly(MessageCodecs.JSON, MessageCodecs.BINARY);
+	}
+}
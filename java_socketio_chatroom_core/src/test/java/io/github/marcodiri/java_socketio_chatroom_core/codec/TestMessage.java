@@ -0,0 +1,15 @@
+package io.github.marcodiri.java_socketio_chatroom_core.codec;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+
+final class TestMessage extends Message {
+
+	TestMessage(long timestamp, String user, String message) {
+		super(timestamp, user, message);
+	}
+
+	@Override
+	protected String formatMessage() {
+		return getUser() + ": " + getUserMessage();
+	}
+}
@@ -0,0 +1,63 @@
+package io.github.marcodiri.java_socketio_chatroom_core.model;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MessageTest {
+
+	private static final class PlainMessage extends Message {
+		private int formatCalls;
+
+		PlainMessage(long timestamp, String user, String message) {
+			super(timestamp, user, message);
+		}
+
+		@Override
+		protected String formatMessage() {
+			formatCalls++;
+			return user + ": " + userMessage;
+		}
+	}
+
+	@Test
+	public void testTimestampAccessors() {
+		Message message = new PlainMessage(1_600_000_000_123L, "user", "message");
+
+		assertThat(message.getTimestamp()).isEqualTo(1_600_000_000_123L);
+		assertThat(message.getInstant()).isEqualTo(Instant.parse("2020-09-13T12:26:40.123Z"));
+	}
+
+	@Test
+	public void testEqualityIsByValue() {
+		Message message = new PlainMessage(1, "user", "message");
+
+		assertThat(message)
+				.isEqualTo(new PlainMessage(1, "user", "message"))
+				.hasSameHashCodeAs(new PlainMessage(1, "user", "message"))
+				.isNotEqualTo(new PlainMessage(2, "user", "message"))
+				.isNotEqualTo(new PlainMessage(1, "other", "message"))
+				.isNotEqualTo(new PlainMessage(1, "user", "other"));
+		assertThat(new PlainMessage(1, null, null)).isEqualTo(new PlainMessage(1, null, null));
+	}
+
+	@Test
+	public void testToJSON() {
+		Message message = new PlainMessage(42, "user", "message");
+
+		assertThat(message.toJSON().similar(new JSONObject()
+				.put("timestamp", 42L).put("user", "user").put("message", "message"))).isTrue();
+	}
+
+	@Test
+	public void testFormattedMessageIsComputedOnce() {
+		PlainMessage message = new PlainMessage(0, "user", "message");
+
+		assertThat(message.getFormattedMessage()).isEqualTo("user: message");
+		assertThat(message.getFormattedMessage()).isSameAs(message.getFormattedMessage());
+		assertThat(message.formatCalls).isEqualTo(1);
+	}
+}
@@ -9,6 +9,7 @@ import java.sql.Timestamp;
 import javax.swing.JFrame;
 
 import io.github.marcodiri.java_socketio_chatroom_server.App;
+import io.github.marcodiri.java_socketio_chatroom_server.ChatroomServer;
 import org.assertj.swing.annotation.GUITest;
 import org.assertj.swing.core.GenericTypeMatcher;
 import org.assertj.swing.core.matcher.JButtonMatcher;
@@ -139,6 +140,7 @@ public class SingleChatroomClientE2E extends AssertJSwingJUnitTestCase {
 
 	private void addTestMessageToDatabase(Timestamp timestamp, String user, String message) {
 		mongoClient.getDatabase(CHATROOM_DB_NAME).getCollection(MESSAGES_COLLECTION_NAME).insertOne(new Document()
+				.append("room", ChatroomServer.DEFAULT_ROOM)
 				.append("timestamp", timestamp.getTime()).append("user", user).append("message", message));
 	}
 
@@ -0,0 +1,104 @@
+package io.github.marcodiri.java_socketio_chatroom_loadtest;
+
+import io.github.marcodiri.java_socketio_chatroom_server.ChatroomServer;
+import io.github.marcodiri.java_socketio_chatroom_server.ServerConfiguration;
+import io.github.marcodiri.java_socketio_chatroom_server.cluster.local.LocalClusterBus;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class App {
+
+	private static final Logger LOGGER = LogManager.getLogger(App.class);
+
+	public static void main(String[] args) throws InterruptedException {
+		LoadTestConfiguration configuration;
+		try {
+			configuration = LoadTestConfiguration.fromProperties(System.getProperties());
+		} catch (IllegalArgumentException e) {
+			LOGGER.fatal("Load test configuration could not be loaded: {}", e.getMessage());
+			return;
+		}
+		System.out.println(configuration);
+
+		if (configuration.isCompareThreadModes()) {
+			compareThreadModes(configuration);
+			return;
+		}
+		LoadReport report = configuration.isEmbedded()
+				? runEmbedded(configuration, configuration.isVirtualThreads())
+				: run(configuration);
+		if (report != null) {
+			report.print(System.out);
+			writeHistogram(configuration, report);
+		}
+	}
+
+	/**
+	 * Run the same load against an embedded server with platform threads and
+	 * then with virtual threads, skipping the latter on runtimes without them.
+	 */
+	private static void compareThreadModes(LoadTestConfiguration configuration) throws InterruptedException {
+		List<String> titles = new ArrayList<>();
+		List<LoadReport> reports = new ArrayList<>();
+		for (boolean virtualThreads : new boolean[]{false, true}) {
+			LoadReport report = runEmbedded(configuration, virtualThreads);
+			if (report != null) {
+				titles.add(virtualThreads ? "virtual" : "platform");
+				reports.add(report);
+			}
+		}
+		if (!reports.isEmpty())
+			LoadReport.printComparison(System.out, titles, reports);
+	}
+
+	private static LoadReport runEmbedded(LoadTestConfiguration configuration, boolean virtualThreads)
+			throws InterruptedException {
+		ServerConfiguration serverConfiguration = new ServerConfiguration();
+		serverConfiguration.setPort(configuration.getServer().getPort());
+		serverConfiguration.setVirtualThreads(virtualThreads);
+		ChatroomServer server;
+		try {
+			server = new ChatroomServer(new DiscardingRepository(), new LocalClusterBus(), serverConfiguration);
+			server.start();
+		} catch (Exception e) {
+			LOGGER.fatal("Embedded server could not be started with {} threads: {}",
+					virtualThreads ? "virtual" : "platform", e.getMessage());
+			return null;
+		}
+		System.out.printf("Embedded server started with %s threads%n", virtualThreads ? "virtual" : "platform");
+		try {
+			return run(configuration);
+		} finally {
+			try {
+				server.stop();
+			} catch (Exception e) {
+				LOGGER.fatal("Embedded server could not be stopped: {}", e.getMessage());
+			}
+		}
+	}
+
+	private static LoadReport run(LoadTestConfiguration configuration) throws InterruptedException {
+		try {
+			return new LoadGenerator(configuration, System.out).run();
+		} catch (IllegalStateException e) {
+			LOGGER.fatal("Load test could not be run: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	private static void writeHistogram(LoadTestConfiguration configuration, LoadReport report) {
+		if (configuration.getHistogramFile() == null)
+			return;
+		try {
+			report.writeHistogram(Paths.get(configuration.getHistogramFile()));
+		} catch (IOException e) {
+			LOGGER.fatal("Latency histogram could not be written: {}", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,35 @@
+package io.github.marcodiri.java_socketio_chatroom_loadtest;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Repository of the embedded server: keeps no history, so that the load
+ * test measures the server rather than a database.
+ */
+final class DiscardingRepository implements ServerRepository {
+
+	@Override
+	public List<Message> findAll() {
+		return new ArrayList<>();
+	}
+
+	@Override
+	public List<Message> findLatest(String room, int limit) {
+		return new ArrayList<>();
+	}
+
+	@Override
+	public List<Message> findBefore(String room, Timestamp timestamp, int limit) {
+		return new ArrayList<>();
+	}
+
+	@Override
+	public void save(String room, Message message) {
+		// history is not part of the load
+	}
+}
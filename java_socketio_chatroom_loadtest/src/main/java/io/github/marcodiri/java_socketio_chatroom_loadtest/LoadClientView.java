@@ -0,0 +1,62 @@
+package io.github.marcodiri.java_socketio_chatroom_loadtest;
+
+import io.github.marcodiri.java_socketio_chatroom_client.view.ClientView;
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+
+import java.util.List;
+
+/**
+ * View of a load generator connection: records the latency of the messages
+ * it receives instead of showing them.
+ */
+final class LoadClientView implements ClientView {
+
+	private final LoadStatistics statistics;
+	private String room;
+
+	LoadClientView(LoadStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	@Override
+	public void addMessage(Message msg) {
+		long receivedNanos = System.nanoTime();
+		long sentNanos = LoadMessages.sentNanos(msg.getUserMessage());
+		if (sentNanos != LoadMessages.FOREIGN)
+			statistics.messageReceived(sentNanos, receivedNanos);
+	}
+
+	@Override
+	public void addMessages(List<Message> msgs) {
+		// history is not part of the load
+	}
+
+	@Override
+	public synchronized void roomJoined(String roomName) {
+		room = roomName;
+		notifyAll();
+	}
+
+	@Override
+	public synchronized void roomLeft(String roomName) {
+		if (roomName.equals(room))
+			room = null;
+	}
+
+	@Override
+	public void showError(String errorMsg) {
+		statistics.error();
+	}
+
+	/**
+	 * @param deadline {@link System#nanoTime()} to stop waiting at
+	 * @return Whether the connection is in {@code roomName}
+	 */
+	synchronized boolean awaitRoom(String roomName, long deadline) throws InterruptedException {
+		long remaining;
+		while (!roomName.equals(room) && (remaining = deadline - System.nanoTime()) > 0) {
+			wait(Math.max(1, remaining / 1_000_000));
+		}
+		return roomName.equals(room);
+	}
+}
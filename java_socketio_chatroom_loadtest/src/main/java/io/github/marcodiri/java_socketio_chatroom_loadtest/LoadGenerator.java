@@ -0,0 +1,224 @@
+package io.github.marcodiri.java_socketio_chatroom_loadtest;
+
+import io.github.marcodiri.java_socketio_chatroom_client.ChatroomClient;
+import io.github.marcodiri.java_socketio_chatroom_client.model.ClientMessage;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodec;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodecs;
+import io.github.marcodiri.java_socketio_chatroom_server.ChatroomServer;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.PrintStream;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a server with many {@link ChatroomClient}s at a fixed message rate
+ * and measures how long messages take to reach every client of their room.
+ * <p>
+ * Connections are spread evenly over the rooms: the first one of each room
+ * creates it and the others join it. The senders take turns, one message
+ * every {@code 1 / rate} seconds. Latency is measured from the time each
+ * message was meant to be sent rather than from the time it was, so that a
+ * stalled server delays the messages queued behind it and its stalls show up
+ * in the results instead of slowing the load down.
+ * <p>
+ * All the clients of a JVM share the single event thread of socket.io, which
+ * receives every message; past some thousands of deliveries per second it
+ * falls behind and its queue adds to the latencies. Split larger loads over
+ * several load generator processes, each with its own share of the rate.
+ */
+public class LoadGenerator {
+
+	/**
+	 * Time allowed for the messages sent at the end of the run to arrive.
+	 */
+	static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	private final LoadTestConfiguration configuration;
+	private final PrintStream progress;
+	private final String runId = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+	private final LoadStatistics statistics = new LoadStatistics();
+	private final List<ChatroomClient> clients = new ArrayList<>();
+	private final List<LoadClientView> views = new ArrayList<>();
+
+	/**
+	 * @param progress Where to print the connect time and the latencies of
+	 *                 every second of the run, or {@code null}
+	 */
+	public LoadGenerator(LoadTestConfiguration configuration, PrintStream progress) {
+		this.configuration = configuration;
+		this.progress = progress;
+	}
+
+	/**
+	 * Connect the clients, run the load and disconnect the clients.
+	 *
+	 * @throws IllegalStateException If not every client joined its room
+	 *                               within the connect timeout
+	 */
+	public LoadReport run() throws InterruptedException {
+		try {
+			long connectNanos = connect();
+			send();
+			drain();
+			return new LoadReport(configuration, statistics, connectNanos);
+		} finally {
+			disconnect();
+		}
+	}
+
+	/**
+	 * @return Time it took every client to join its room
+	 */
+	private long connect() throws InterruptedException {
+		MessageCodec codec = MessageCodecs.forName(configuration.getCodec());
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.SECONDS.toNanos(configuration.getConnectTimeout());
+
+		for (int i = 0; i < configuration.getConnections(); i++) {
+			LoadClientView view = new LoadClientView(statistics);
+			ChatroomClient client = new ChatroomClient(configuration.getServer(), ChatroomClient.options(true, codec), view);
+			clients.add(client);
+			views.add(view);
+			client.connect(username(i));
+		}
+		awaitRooms(0, ChatroomServer.DEFAULT_ROOM, deadline);
+
+		for (int room = 1; room < configuration.getRooms(); room++) {
+			sendRoomRequest(clients.get(room), roomName(room), true);
+		}
+		for (int room = 1; room < configuration.getRooms(); room++) {
+			awaitRoom(room, roomName(room), deadline);
+		}
+		for (int i = configuration.getRooms(); i < clients.size(); i++) {
+			sendRoomRequest(clients.get(i), roomName(i % configuration.getRooms()), false);
+		}
+		for (int room = 1; room < configuration.getRooms(); room++) {
+			awaitRooms(room, roomName(room), deadline);
+		}
+
+		long connectNanos = System.nanoTime() - start;
+		if (progress != null)
+			progress.printf("%d connections joined %d rooms in %d ms%n", clients.size(), configuration.getRooms(),
+					TimeUnit.NANOSECONDS.toMillis(connectNanos));
+		return connectNanos;
+	}
+
+	private void sendRoomRequest(ChatroomClient client, String room, boolean create) {
+		try {
+			if (create)
+				client.createRoom(room);
+			else
+				client.joinRoom(room);
+		} catch (SocketException e) {
+			throw new IllegalStateException("Connection lost while joining room " + room, e);
+		}
+	}
+
+	/**
+	 * Wait for every client of a room to be in it.
+	 */
+	private void awaitRooms(int room, String roomName, long deadline) throws InterruptedException {
+		for (int i = room; i < clients.size(); i += configuration.getRooms()) {
+			awaitRoom(i, roomName, deadline);
+		}
+	}
+
+	private void awaitRoom(int client, String roomName, long deadline) throws InterruptedException {
+		if (!views.get(client).awaitRoom(roomName, deadline))
+			throw new IllegalStateException(String.format("Connection %d did not join room %s within %d s",
+					client, roomName, configuration.getConnectTimeout()));
+	}
+
+	private void send() {
+		long interval = TimeUnit.SECONDS.toNanos(1) / configuration.getRate();
+		long start = System.nanoTime();
+		long measureStart = start + TimeUnit.SECONDS.toNanos(configuration.getWarmup());
+		long end = measureStart + TimeUnit.SECONDS.toNanos(configuration.getDuration());
+		statistics.measure(measureStart, end);
+
+		ScheduledExecutorService reporter = startProgressReport();
+		try {
+			long next = start;
+			for (long sent = 0; next < end; sent++, next = start + sent * interval) {
+				long delay = next - System.nanoTime();
+				if (delay > 0)
+					LockSupport.parkNanos(delay);
+				int sender = (int) (sent % configuration.getSenders());
+				sendMessage(sender, next);
+			}
+		} finally {
+			if (reporter != null)
+				reporter.shutdownNow();
+		}
+	}
+
+	private void sendMessage(int sender, long sentNanos) {
+		ChatroomClient client = clients.get(sender);
+		String text = LoadMessages.create(sentNanos, configuration.getMessageSize());
+		try {
+			client.sendMessage(new ClientMessage(System.currentTimeMillis(), username(sender), text));
+			statistics.messageSent(sentNanos, roomSize(sender % configuration.getRooms()));
+		} catch (SocketException e) {
+			statistics.error();
+		}
+	}
+
+	private ScheduledExecutorService startProgressReport() {
+		if (progress == null)
+			return null;
+		ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "load-progress");
+			thread.setDaemon(true);
+			return thread;
+		});
+		long start = System.nanoTime();
+		reporter.scheduleAtFixedRate(() -> {
+			Histogram interval = statistics.interval();
+			progress.printf("%4d s  %8d deliveries  p50 %8.3f ms  p99 %8.3f ms  max %8.3f ms%n",
+					TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), interval.getTotalCount(),
+					interval.getValueAtPercentile(50) / 1000.0, interval.getValueAtPercentile(99) / 1000.0,
+					interval.getMaxValue() / 1000.0);
+		}, 1, 1, TimeUnit.SECONDS);
+		return reporter;
+	}
+
+	/**
+	 * Wait for the messages still in flight, up to {@link #DRAIN_TIMEOUT_NANOS}.
+	 */
+	private void drain() throws InterruptedException {
+		long deadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+		while (statistics.getReceived() < statistics.getExpected() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	private void disconnect() {
+		for (ChatroomClient client : clients) {
+			client.disconnect();
+		}
+		clients.clear();
+		views.clear();
+	}
+
+	private int roomSize(int room) {
+		int connections = configuration.getConnections();
+		int rooms = configuration.getRooms();
+		return connections / rooms + (room < connections % rooms ? 1 : 0);
+	}
+
+	private String username(int client) {
+		return "load-" + runId + "-" + client;
+	}
+
+	private String roomName(int room) {
+		return room == 0 ? ChatroomServer.DEFAULT_ROOM : "load-" + runId + "-room-" + room;
+	}
+}
@@ -0,0 +1,50 @@
+package io.github.marcodiri.java_socketio_chatroom_loadtest;
+
+/**
+ * Text of the messages sent by the load generator: the {@link System#nanoTime()}
+ * the message was meant to be sent at, padded to the configured size, so that
+ * receivers in the same JVM can compute its latency.
+ */
+final class LoadMessages {
+
+	/**
+	 * Returned for messages not sent by a load generator; {@link System#nanoTime()}
+	 * may be negative, so no valid time can be used instead.
+	 */
+	static final long FOREIGN = Long.MIN_VALUE;
+
+	private LoadMessages() {
+	}
+
+	/**
+	 * @param sentNanos {@link System#nanoTime()} the message was meant to be
+	 *                  sent at
+	 * @param size      Characters of the message; longer if the time does
+	 *                  not fit
+	 */
+	static String create(long sentNanos, int size) {
+		StringBuilder sb = new StringBuilder(Math.max(size, 20));
+		sb.append(sentNanos).append(' ');
+		while (sb.length() < size) {
+			sb.append('x');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return The time the message was meant to be sent at, or
+	 *         {@link #FOREIGN} if it was not sent by a load generator
+	 */
+	static long sentNanos(String message) {
+		if (message == null)
+			return FOREIGN;
+		int end = message.indexOf(' ');
+		if (end <= 0)
+			return FOREIGN;
+		try {
+			return Long.parseLong(message.substring(0, end));
+		} catch (NumberFormatException e) {
+			return FOREIGN;
+		}
+	}
+}
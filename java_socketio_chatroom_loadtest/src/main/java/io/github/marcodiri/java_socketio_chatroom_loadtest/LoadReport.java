@@ -0,0 +1,142 @@
+package io.github.marcodiri.java_socketio_chatroom_loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Results of a load test run: connections, messages, throughput and the
+ * latency distribution of the deliveries.
+ */
+public class LoadReport {
+
+	private static final double MICROS_PER_MILLI = 1000.0;
+
+	private final int connections;
+	private final long connectMillis;
+	private final int duration;
+	private final long sent;
+	private final long expected;
+	private final long received;
+	private final long errors;
+	private final Histogram latencies;
+
+	LoadReport(LoadTestConfiguration configuration, LoadStatistics statistics, long connectNanos) {
+		this.connections = configuration.getConnections();
+		this.connectMillis = TimeUnit.NANOSECONDS.toMillis(connectNanos);
+		this.duration = configuration.getDuration();
+		this.sent = statistics.getSent();
+		this.expected = statistics.getExpected();
+		this.received = statistics.getReceived();
+		this.errors = statistics.getErrors();
+		this.latencies = statistics.total();
+	}
+
+	public long getSent() {
+		return sent;
+	}
+
+	public long getExpected() {
+		return expected;
+	}
+
+	public long getReceived() {
+		return received;
+	}
+
+	public long getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return Messages delivered per second over the measured duration
+	 */
+	public double getThroughput() {
+		return (double) received / duration;
+	}
+
+	/**
+	 * @return Latency of the deliveries at {@code percentile}, in
+	 *         milliseconds
+	 */
+	public double getLatency(double percentile) {
+		return latencies.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+	}
+
+	/**
+	 * @return Rows of a name and a value, in the order they are printed
+	 */
+	List<String[]> rows() {
+		List<String[]> rows = new ArrayList<>();
+		rows.add(row("Connections", String.valueOf(connections)));
+		rows.add(row("Connect time (ms)", String.valueOf(connectMillis)));
+		rows.add(row("Messages sent", String.valueOf(sent)));
+		rows.add(row("Deliveries expected", String.valueOf(expected)));
+		rows.add(row("Deliveries received", String.valueOf(received)));
+		rows.add(row("Throughput (deliveries/s)", String.format("%.1f", getThroughput())));
+		rows.add(row("Latency p50 (ms)", millis(getLatency(50))));
+		rows.add(row("Latency p90 (ms)", millis(getLatency(90))));
+		rows.add(row("Latency p99 (ms)", millis(getLatency(99))));
+		rows.add(row("Latency p99.9 (ms)", millis(getLatency(99.9))));
+		rows.add(row("Latency max (ms)", millis(latencies.getMaxValue() / MICROS_PER_MILLI)));
+		rows.add(row("Latency mean (ms)", millis(latencies.getMean() / MICROS_PER_MILLI)));
+		rows.add(row("Errors", String.valueOf(errors)));
+		return rows;
+	}
+
+	public void print(PrintStream out) {
+		for (String[] row : rows()) {
+			out.printf("%-28s %14s%n", row[0], row[1]);
+		}
+	}
+
+	/**
+	 * Print the reports of several runs of the same load side by side.
+	 *
+	 * @param titles  Heading of each report's column
+	 * @param reports Reports, as many as titles
+	 */
+	public static void printComparison(PrintStream out, List<String> titles, List<LoadReport> reports) {
+		out.printf("%-28s", "");
+		for (String title : titles) {
+			out.printf(" %14s", title);
+		}
+		out.println();
+		List<List<String[]>> columns = new ArrayList<>();
+		for (LoadReport report : reports) {
+			columns.add(report.rows());
+		}
+		for (int row = 0; row < columns.get(0).size(); row++) {
+			out.printf("%-28s", columns.get(0).get(row)[0]);
+			for (List<String[]> column : columns) {
+				out.printf(" %14s", column.get(row)[1]);
+			}
+			out.println();
+		}
+	}
+
+	/**
+	 * Write the latency distribution in HdrHistogram's percentile
+	 * distribution format, in milliseconds, for plotting.
+	 */
+	public void writeHistogram(Path file) throws IOException {
+		try (OutputStream out = Files.newOutputStream(file); PrintStream ps = new PrintStream(out, false, "UTF-8")) {
+			latencies.outputPercentileDistribution(ps, MICROS_PER_MILLI);
+		}
+	}
+
+	private static String[] row(String name, String value) {
+		return new String[]{name, value};
+	}
+
+	private static String millis(double millis) {
+		return String.format("%.3f", millis);
+	}
+}
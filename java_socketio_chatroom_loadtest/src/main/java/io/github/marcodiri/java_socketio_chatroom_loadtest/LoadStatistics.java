@@ -0,0 +1,100 @@
+package io.github.marcodiri.java_socketio_chatroom_loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histogram of a load test run, safe to update from
+ * any thread. Only the messages meant to be sent within the window given
+ * to {@link #measure(long, long)} are counted, so that the warmup does not
+ * skew the results.
+ */
+final class LoadStatistics {
+
+	private static final int SIGNIFICANT_DIGITS = 3;
+
+	private final Recorder recorder = new Recorder(SIGNIFICANT_DIGITS);
+	private final Histogram total = new Histogram(SIGNIFICANT_DIGITS);
+	private final LongAdder sent = new LongAdder();
+	private final LongAdder expected = new LongAdder();
+	private final LongAdder received = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+
+	private volatile long measureStart = Long.MAX_VALUE;
+	private volatile long measureEnd = Long.MAX_VALUE;
+
+	/**
+	 * @param from {@link System#nanoTime()} of the first message to measure
+	 * @param to   {@link System#nanoTime()} the measured messages end at,
+	 *             exclusive
+	 */
+	void measure(long from, long to) {
+		measureStart = from;
+		measureEnd = to;
+	}
+
+	boolean isMeasured(long sentNanos) {
+		return sentNanos >= measureStart && sentNanos < measureEnd;
+	}
+
+	/**
+	 * @param recipients Connections the message should be delivered to
+	 */
+	void messageSent(long sentNanos, int recipients) {
+		if (isMeasured(sentNanos)) {
+			sent.increment();
+			expected.add(recipients);
+		}
+	}
+
+	void messageReceived(long sentNanos, long receivedNanos) {
+		if (isMeasured(sentNanos)) {
+			received.increment();
+			recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(0, receivedNanos - sentNanos)));
+		}
+	}
+
+	void error() {
+		errors.increment();
+	}
+
+	/**
+	 * Move the latencies recorded since the last call into the total.
+	 *
+	 * @return The latencies recorded since the last call, in microseconds
+	 */
+	Histogram interval() {
+		Histogram interval = recorder.getIntervalHistogram();
+		synchronized (total) {
+			total.add(interval);
+		}
+		return interval;
+	}
+
+	/**
+	 * @return Every latency recorded so far, in microseconds
+	 */
+	Histogram total() {
+		interval();
+		return total;
+	}
+
+	long getSent() {
+		return sent.sum();
+	}
+
+	long getExpected() {
+		return expected.sum();
+	}
+
+	long getReceived() {
+		return received.sum();
+	}
+
+	long getErrors() {
+		return errors.sum();
+	}
+}
@@ -0,0 +1,250 @@
+package io.github.marcodiri.java_socketio_chatroom_loadtest;
+
+import io.github.marcodiri.java_socketio_chatroom_core.codec.BinaryMessageCodec;
+
+import java.net.URI;
+import java.util.Properties;
+
+/**
+ * Shape of the load: how many connections, spread over how many rooms,
+ * how many of them send and how fast, and for how long.
+ * <p>
+ * {@link #fromProperties(Properties)} reads the following keys:
+ * <ul>
+ * <li>{@code loadtest.server}: URI of the server</li>
+ * <li>{@code loadtest.embedded}; {@code true} starts a server on the port of
+ * {@code loadtest.server} in the load test's JVM</li>
+ * <li>{@code loadtest.virtual.threads}; {@code true} starts the embedded
+ * server in virtual thread mode</li>
+ * <li>{@code loadtest.compare.thread.modes}; {@code true} runs the load
+ * twice against an embedded server, with platform and then virtual threads,
+ * and compares the results</li>
+ * <li>{@code loadtest.connections}, {@code loadtest.rooms}: connections are
+ * spread evenly over the rooms, each message reaching every connection of
+ * its room</li>
+ * <li>{@code loadtest.senders}: connections sending messages, spread over
+ * the rooms</li>
+ * <li>{@code loadtest.rate}: messages per second sent by all the senders
+ * together</li>
+ * <li>{@code loadtest.message.size}: characters per message</li>
+ * <li>{@code loadtest.codec}: message codec of every connection</li>
+ * <li>{@code loadtest.warmup}, {@code loadtest.duration} in seconds: the load
+ * runs for both, and only the second is measured</li>
+ * <li>{@code loadtest.connect.timeout} in seconds: time allowed for every
+ * connection to join its room</li>
+ * <li>{@code loadtest.histogram.file}: if set, the latency histogram of a
+ * single run is written there in HdrHistogram's percentile distribution
+ * format</li>
+ * </ul>
+ */
+public class LoadTestConfiguration {
+
+	public static final String DEFAULT_SERVER = "http://localhost:3000";
+	public static final int DEFAULT_CONNECTIONS = 100;
+	public static final int DEFAULT_ROOMS = 1;
+	public static final int DEFAULT_SENDERS = 10;
+	public static final int DEFAULT_RATE = 100;
+	public static final int DEFAULT_MESSAGE_SIZE = 64;
+	public static final int DEFAULT_WARMUP = 5;
+	public static final int DEFAULT_DURATION = 30;
+	public static final int DEFAULT_CONNECT_TIMEOUT = 30;
+
+	private URI server = URI.create(DEFAULT_SERVER);
+	private boolean embedded = false;
+	private boolean virtualThreads = false;
+	private boolean compareThreadModes = false;
+	private int connections = DEFAULT_CONNECTIONS;
+	private int rooms = DEFAULT_ROOMS;
+	private int senders = DEFAULT_SENDERS;
+	private int rate = DEFAULT_RATE;
+	private int messageSize = DEFAULT_MESSAGE_SIZE;
+	private String codec = BinaryMessageCodec.NAME;
+	private int warmup = DEFAULT_WARMUP;
+	private int duration = DEFAULT_DURATION;
+	private int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+	private String histogramFile = null;
+
+	/**
+	 * @param properties Source of the {@code loadtest.*} keys; missing keys
+	 *                   keep their default value
+	 * @throws IllegalArgumentException If a value is not valid or the values
+	 *                                  do not fit together
+	 */
+	public static LoadTestConfiguration fromProperties(Properties properties) {
+		LoadTestConfiguration configuration = new LoadTestConfiguration();
+		String server = properties.getProperty("loadtest.server");
+		if (server != null)
+			configuration.setServer(server.trim());
+		configuration.setEmbedded(Boolean.parseBoolean(properties.getProperty("loadtest.embedded", "false").trim()));
+		configuration.setVirtualThreads(Boolean.parseBoolean(properties.getProperty("loadtest.virtual.threads", "false").trim()));
+		configuration.setCompareThreadModes(Boolean.parseBoolean(properties.getProperty("loadtest.compare.thread.modes", "false").trim()));
+		configuration.setConnections(
+				intProperty(properties, "loadtest.connections", configuration.connections),
+				intProperty(properties, "loadtest.rooms", configuration.rooms),
+				intProperty(properties, "loadtest.senders", configuration.senders));
+		configuration.setRate(intProperty(properties, "loadtest.rate", configuration.rate));
+		configuration.setMessageSize(intProperty(properties, "loadtest.message.size", configuration.messageSize));
+		configuration.setCodec(properties.getProperty("loadtest.codec", configuration.codec).trim());
+		configuration.setWarmup(intProperty(properties, "loadtest.warmup", configuration.warmup));
+		configuration.setDuration(intProperty(properties, "loadtest.duration", configuration.duration));
+		configuration.setConnectTimeout(intProperty(properties, "loadtest.connect.timeout", configuration.connectTimeout));
+		configuration.setHistogramFile(properties.getProperty("loadtest.histogram.file"));
+		return configuration;
+	}
+
+	public URI getServer() {
+		return server;
+	}
+
+	public void setServer(String server) {
+		URI uri;
+		try {
+			uri = URI.create(server);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid server URI: " + server, e);
+		}
+		if (uri.getHost() == null || uri.getPort() == -1)
+			throw new IllegalArgumentException("Server URI must have a host and a port: " + server);
+		this.server = uri;
+	}
+
+	public boolean isEmbedded() {
+		return embedded;
+	}
+
+	public void setEmbedded(boolean embedded) {
+		this.embedded = embedded;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	public boolean isCompareThreadModes() {
+		return compareThreadModes;
+	}
+
+	/**
+	 * @param compareThreadModes Whether to run the load against an embedded
+	 *                           server in each thread mode; implies an
+	 *                           embedded server
+	 */
+	public void setCompareThreadModes(boolean compareThreadModes) {
+		this.compareThreadModes = compareThreadModes;
+	}
+
+	public int getConnections() {
+		return connections;
+	}
+
+	public int getRooms() {
+		return rooms;
+	}
+
+	public int getSenders() {
+		return senders;
+	}
+
+	public void setConnections(int connections, int rooms, int senders) {
+		if (connections <= 0)
+			throw new IllegalArgumentException("Connections must be positive");
+		if (rooms <= 0 || rooms > connections)
+			throw new IllegalArgumentException("Rooms must be between 1 and the number of connections");
+		if (senders <= 0 || senders > connections)
+			throw new IllegalArgumentException("Senders must be between 1 and the number of connections");
+		this.connections = connections;
+		this.rooms = rooms;
+		this.senders = senders;
+	}
+
+	public int getRate() {
+		return rate;
+	}
+
+	public void setRate(int rate) {
+		if (rate <= 0)
+			throw new IllegalArgumentException("Rate must be positive");
+		this.rate = rate;
+	}
+
+	public int getMessageSize() {
+		return messageSize;
+	}
+
+	public void setMessageSize(int messageSize) {
+		if (messageSize <= 0)
+			throw new IllegalArgumentException("Message size must be positive");
+		this.messageSize = messageSize;
+	}
+
+	public String getCodec() {
+		return codec;
+	}
+
+	public void setCodec(String codec) {
+		this.codec = codec;
+	}
+
+	public int getWarmup() {
+		return warmup;
+	}
+
+	public void setWarmup(int warmup) {
+		if (warmup < 0)
+			throw new IllegalArgumentException("Warmup must not be negative");
+		this.warmup = warmup;
+	}
+
+	public int getDuration() {
+		return duration;
+	}
+
+	public void setDuration(int duration) {
+		if (duration <= 0)
+			throw new IllegalArgumentException("Duration must be positive");
+		this.duration = duration;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		if (connectTimeout <= 0)
+			throw new IllegalArgumentException("Connect timeout must be positive");
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * @return The file to write the latency histogram to, or {@code null}
+	 */
+	public String getHistogramFile() {
+		return histogramFile;
+	}
+
+	public void setHistogramFile(String histogramFile) {
+		this.histogramFile = histogramFile;
+	}
+
+	@Override
+	public String toString() {
+		return "LoadTestConfiguration{server=" + server + ", connections=" + connections + ", rooms=" + rooms
+				+ ", senders=" + senders + ", rate=" + rate + ", messageSize=" + messageSize + ", codec=" + codec
+				+ ", warmup=" + warmup + ", duration=" + duration + "}";
+	}
+
+	private static int intProperty(Properties properties, String key, int defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+		}
+	}
+}
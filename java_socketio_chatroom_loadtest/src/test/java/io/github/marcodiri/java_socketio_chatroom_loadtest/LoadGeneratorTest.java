@@ -0,0 +1,79 @@
+package io.github.marcodiri.java_socketio_chatroom_loadtest;
+
+import io.github.marcodiri.java_socketio_chatroom_core.codec.JsonMessageCodec;
+import io.github.marcodiri.java_socketio_chatroom_server.ChatroomServer;
+import io.github.marcodiri.java_socketio_chatroom_server.ServerConfiguration;
+import io.github.marcodiri.java_socketio_chatroom_server.cluster.local.LocalClusterBus;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LoadGeneratorTest {
+
+	private static final int PORT = 3000;
+
+	private ChatroomServer server;
+	private LoadTestConfiguration configuration;
+
+	@Before
+	public void setup() throws Exception {
+		ServerConfiguration serverConfiguration = new ServerConfiguration();
+		serverConfiguration.setPort(PORT);
+		server = new ChatroomServer(new DiscardingRepository(), new LocalClusterBus(), serverConfiguration);
+		server.start();
+
+		configuration = new LoadTestConfiguration();
+		configuration.setServer("http://localhost:" + PORT);
+		configuration.setConnections(6, 1, 2);
+		configuration.setRate(20);
+		configuration.setWarmup(0);
+		configuration.setDuration(1);
+		configuration.setConnectTimeout(10);
+	}
+
+	@After
+	public void teardown() throws Exception {
+		server.stop();
+	}
+
+	@Test
+	public void testEveryMessageReachesEveryConnectionOfTheRoom() throws InterruptedException {
+		LoadReport report = new LoadGenerator(configuration, null).run();
+
+		assertThat(report.getSent()).isEqualTo(20);
+		assertThat(report.getExpected()).isEqualTo(6 * 20);
+		assertThat(report.getReceived()).isEqualTo(report.getExpected());
+		assertThat(report.getErrors()).isZero();
+		assertThat(report.getThroughput()).isEqualTo(6 * 20.0);
+		assertThat(report.getLatency(100)).isPositive();
+	}
+
+	@Test
+	public void testMessagesOnlyReachTheConnectionsOfTheirRoom() throws InterruptedException {
+		configuration.setConnections(7, 3, 3);
+		configuration.setCodec(JsonMessageCodec.NAME);
+
+		LoadReport report = new LoadGenerator(configuration, null).run();
+
+		// rooms of 3, 2 and 2 connections, each with one sender
+		assertThat(report.getSent()).isEqualTo(20);
+		assertThat(report.getExpected()).isEqualTo(7 * 3 + 7 * 2 + 6 * 2);
+		assertThat(report.getReceived()).isEqualTo(report.getExpected());
+		assertThat(report.getErrors()).isZero();
+		assertThat(server.getRooms()).hasSize(3);
+	}
+
+	@Test
+	public void testConnectionsThatDoNotJoinInTimeFailTheRun() {
+		configuration.setServer("http://localhost:" + (PORT + 1));
+		configuration.setConnectTimeout(1);
+
+		assertThatThrownBy(() -> new LoadGenerator(configuration, null).run())
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessage("Connection 0 did not join room Chatroom within 1 s");
+	}
+}
@@ -0,0 +1,28 @@
+package io.github.marcodiri.java_socketio_chatroom_loadtest;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadMessagesTest {
+
+	@Test
+	public void testCreatedMessagesHaveTheRequestedSize() {
+		assertThat(LoadMessages.create(123_456_789L, 64)).hasSize(64).startsWith("123456789 ");
+		assertThat(LoadMessages.create(123_456_789L, 1)).isEqualTo("123456789 ");
+	}
+
+	@Test
+	public void testSentNanosIsReadBack() {
+		assertThat(LoadMessages.sentNanos(LoadMessages.create(987_654_321L, 32))).isEqualTo(987_654_321L);
+		assertThat(LoadMessages.sentNanos(LoadMessages.create(-5L, 32))).isEqualTo(-5L);
+	}
+
+	@Test
+	public void testForeignMessagesAreNotRead() {
+		assertThat(LoadMessages.sentNanos(null)).isEqualTo(LoadMessages.FOREIGN);
+		assertThat(LoadMessages.sentNanos("hello")).isEqualTo(LoadMessages.FOREIGN);
+		assertThat(LoadMessages.sentNanos(" hello")).isEqualTo(LoadMessages.FOREIGN);
+		assertThat(LoadMessages.sentNanos("hello world")).isEqualTo(LoadMessages.FOREIGN);
+	}
+}
@@ -0,0 +1,65 @@
+package io.github.marcodiri.java_socketio_chatroom_loadtest;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadStatisticsTest {
+
+	@Test
+	public void testNothingIsMeasuredBeforeTheWindowIsSet() {
+		LoadStatistics statistics = new LoadStatistics();
+
+		statistics.messageSent(100, 3);
+		statistics.messageReceived(100, 2_000);
+
+		assertThat(statistics.getSent()).isZero();
+		assertThat(statistics.getExpected()).isZero();
+		assertThat(statistics.getReceived()).isZero();
+		assertThat(statistics.total().getTotalCount()).isZero();
+	}
+
+	@Test
+	public void testOnlyMessagesMeantToBeSentWithinTheWindowAreMeasured() {
+		LoadStatistics statistics = new LoadStatistics();
+		statistics.measure(1_000, 2_000);
+
+		statistics.messageSent(999, 3);
+		statistics.messageSent(1_000, 3);
+		statistics.messageSent(1_999, 2);
+		statistics.messageSent(2_000, 3);
+		statistics.messageReceived(999, 10_000);
+		statistics.messageReceived(1_000, 3_001_000);
+		statistics.messageReceived(1_999, 1_001_999);
+
+		assertThat(statistics.getSent()).isEqualTo(2);
+		assertThat(statistics.getExpected()).isEqualTo(5);
+		assertThat(statistics.getReceived()).isEqualTo(2);
+		assertThat(statistics.total().getTotalCount()).isEqualTo(2);
+		assertThat(statistics.total().getMaxValue()).isEqualTo(3_000);
+	}
+
+	@Test
+	public void testIntervalsAddUpToTheTotal() {
+		LoadStatistics statistics = new LoadStatistics();
+		statistics.measure(0, Long.MAX_VALUE);
+
+		statistics.messageReceived(0, 1_000);
+		assertThat(statistics.interval().getTotalCount()).isEqualTo(1);
+		statistics.messageReceived(0, 2_000);
+		statistics.messageReceived(0, 3_000);
+		assertThat(statistics.interval().getTotalCount()).isEqualTo(2);
+
+		assertThat(statistics.total().getTotalCount()).isEqualTo(3);
+	}
+
+	@Test
+	public void testErrorsAreCounted() {
+		LoadStatistics statistics = new LoadStatistics();
+
+		statistics.error();
+		statistics.error();
+
+		assertThat(statistics.getErrors()).isEqualTo(2);
+	}
+}
@@ -0,0 +1,130 @@
+package io.github.marcodiri.java_socketio_chatroom_loadtest;
+
+import io.github.marcodiri.java_socketio_chatroom_core.codec.BinaryMessageCodec;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LoadTestConfigurationTest {
+
+	@Test
+	public void testDefaults() {
+		LoadTestConfiguration configuration = LoadTestConfiguration.fromProperties(new Properties());
+
+		assertThat(configuration.getServer()).isEqualTo(URI.create(LoadTestConfiguration.DEFAULT_SERVER));
+		assertThat(configuration.isEmbedded()).isFalse();
+		assertThat(configuration.isVirtualThreads()).isFalse();
+		assertThat(configuration.isCompareThreadModes()).isFalse();
+		assertThat(configuration.getConnections()).isEqualTo(LoadTestConfiguration.DEFAULT_CONNECTIONS);
+		assertThat(configuration.getRooms()).isEqualTo(LoadTestConfiguration.DEFAULT_ROOMS);
+		assertThat(configuration.getSenders()).isEqualTo(LoadTestConfiguration.DEFAULT_SENDERS);
+		assertThat(configuration.getRate()).isEqualTo(LoadTestConfiguration.DEFAULT_RATE);
+		assertThat(configuration.getMessageSize()).isEqualTo(LoadTestConfiguration.DEFAULT_MESSAGE_SIZE);
+		assertThat(configuration.getCodec()).isEqualTo(BinaryMessageCodec.NAME);
+		assertThat(configuration.getWarmup()).isEqualTo(LoadTestConfiguration.DEFAULT_WARMUP);
+		assertThat(configuration.getDuration()).isEqualTo(LoadTestConfiguration.DEFAULT_DURATION);
+		assertThat(configuration.getConnectTimeout()).isEqualTo(LoadTestConfiguration.DEFAULT_CONNECT_TIMEOUT);
+		assertThat(configuration.getHistogramFile()).isNull();
+	}
+
+	@Test
+	public void testFromPropertiesReadsEveryKey() {
+		Properties properties = new Properties();
+		properties.setProperty("loadtest.server", " http://example.com:4000 ");
+		properties.setProperty("loadtest.embedded", "true");
+		properties.setProperty("loadtest.virtual.threads", "TRUE");
+		properties.setProperty("loadtest.compare.thread.modes", "true ");
+		properties.setProperty("loadtest.connections", "1000");
+		properties.setProperty("loadtest.rooms", "10");
+		properties.setProperty("loadtest.senders", " 50 ");
+		properties.setProperty("loadtest.rate", "2000");
+		properties.setProperty("loadtest.message.size", "256");
+		properties.setProperty("loadtest.codec", "json");
+		properties.setProperty("loadtest.warmup", "0");
+		properties.setProperty("loadtest.duration", "60");
+		properties.setProperty("loadtest.connect.timeout", "120");
+		properties.setProperty("loadtest.histogram.file", "latency.hgrm");
+
+		LoadTestConfiguration configuration = LoadTestConfiguration.fromProperties(properties);
+
+		assertThat(configuration.getServer()).isEqualTo(URI.create("http://example.com:4000"));
+		assertThat(configuration.isEmbedded()).isTrue();
+		assertThat(configuration.isVirtualThreads()).isTrue();
+		assertThat(configuration.isCompareThreadModes()).isTrue();
+		assertThat(configuration.getConnections()).isEqualTo(1000);
+		assertThat(configuration.getRooms()).isEqualTo(10);
+		assertThat(configuration.getSenders()).isEqualTo(50);
+		assertThat(configuration.getRate()).isEqualTo(2000);
+		assertThat(configuration.getMessageSize()).isEqualTo(256);
+		assertThat(configuration.getCodec()).isEqualTo("json");
+		assertThat(configuration.getWarmup()).isZero();
+		assertThat(configuration.getDuration()).isEqualTo(60);
+		assertThat(configuration.getConnectTimeout()).isEqualTo(120);
+		assertThat(configuration.getHistogramFile()).isEqualTo("latency.hgrm");
+		assertThat(configuration).hasToString("LoadTestConfiguration{server=http://example.com:4000, "
+				+ "connections=1000, rooms=10, senders=50, rate=2000, messageSize=256, codec=json, warmup=0, "
+				+ "duration=60}");
+	}
+
+	@Test
+	public void testFromPropertiesRejectsNonNumericValues() {
+		Properties properties = new Properties();
+		properties.setProperty("loadtest.rate", "fast");
+
+		assertThatThrownBy(() -> LoadTestConfiguration.fromProperties(properties))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Invalid value for loadtest.rate: fast");
+	}
+
+	@Test
+	public void testServerMustHaveHostAndPort() {
+		LoadTestConfiguration configuration = new LoadTestConfiguration();
+
+		assertThatThrownBy(() -> configuration.setServer("http://localhost"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Server URI must have a host and a port: http://localhost");
+		assertThatThrownBy(() -> configuration.setServer("http://local host:3000"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Invalid server URI: http://local host:3000");
+	}
+
+	@Test
+	public void testConnectionsRoomsAndSendersMustFitTogether() {
+		LoadTestConfiguration configuration = new LoadTestConfiguration();
+
+		assertThatThrownBy(() -> configuration.setConnections(0, 1, 1))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Connections must be positive");
+		assertThatThrownBy(() -> configuration.setConnections(10, 11, 1))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Rooms must be between 1 and the number of connections");
+		assertThatThrownBy(() -> configuration.setConnections(10, 0, 1))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Rooms must be between 1 and the number of connections");
+		assertThatThrownBy(() -> configuration.setConnections(10, 1, 11))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Senders must be between 1 and the number of connections");
+		assertThat(configuration.getConnections()).isEqualTo(LoadTestConfiguration.DEFAULT_CONNECTIONS);
+	}
+
+	@Test
+	public void testSettersRejectOutOfRangeValues() {
+		LoadTestConfiguration configuration = new LoadTestConfiguration();
+
+		assertThatThrownBy(() -> configuration.setRate(0))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Rate must be positive");
+		assertThatThrownBy(() -> configuration.setMessageSize(0))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Message size must be positive");
+		assertThatThrownBy(() -> configuration.setWarmup(-1))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Warmup must not be negative");
+		assertThatThrownBy(() -> configuration.setDuration(0))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Duration must be positive");
+		assertThatThrownBy(() -> configuration.setConnectTimeout(0))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Connect timeout must be positive");
+	}
+}
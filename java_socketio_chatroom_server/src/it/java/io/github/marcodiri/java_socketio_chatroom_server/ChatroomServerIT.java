@@ -8,11 +8,11 @@ import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerReposi
 import io.github.marcodiri.java_socketio_chatroom_server.repository.mongo.ServerMongoRepository;
 import io.socket.client.IO;
 import io.socket.client.Socket;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.*;
 
 import java.net.URI;
-import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
@@ -66,16 +66,18 @@ public class ChatroomServerIT {
 
 	@Test
 	public void testClientJoinRetrievesMessagesFromMongoDb() {
-		ServerMessage msg1 = new ServerMessage(new Timestamp(0), "user1", "message1");
-		ServerMessage msg2 = new ServerMessage(new Timestamp(1), "user2", "message2");
-		serverRepository.save(msg1);
-		serverRepository.save(msg2);
+		ServerMessage msg1 = new ServerMessage(0, "user1", "message1");
+		ServerMessage msg2 = new ServerMessage(1, "user2", "message2");
+		serverRepository.save(ChatroomServer.DEFAULT_ROOM, msg1);
+		serverRepository.save(ChatroomServer.DEFAULT_ROOM, msg2);
 
 		List<ServerMessage> retrievedMessages = new ArrayList<>();
-		clientSocket.on("msg", arg -> {
-			JSONObject jsonMsg = (JSONObject) arg[0];
-			ServerMessage incomingMessage = new ServerMessage(new Timestamp(jsonMsg.getLong("timestamp")), jsonMsg.getString("user"), jsonMsg.getString("message"));
-			retrievedMessages.add(incomingMessage);
+		clientSocket.on("history", arg -> {
+			JSONArray jsonMsgs = (JSONArray) arg[0];
+			for (int i = 0; i < jsonMsgs.length(); i++) {
+				JSONObject jsonMsg = jsonMsgs.getJSONObject(i);
+				retrievedMessages.add(new ServerMessage(jsonMsg.getLong("timestamp"), jsonMsg.getString("user"), jsonMsg.getString("message")));
+			}
 		});
 		clientSocket.on("connected", objects -> clientSocket.emit("join", "user"));
 		clientSocket.connect();
@@ -90,8 +92,8 @@ public class ChatroomServerIT {
 
 	@Test
 	public void testMessagesAreSavedInMongoDb() {
-		ServerMessage originalMessage1 = new ServerMessage(new Timestamp(0), "user1", "message1");
-		ServerMessage originalMessage2 = new ServerMessage(new Timestamp(1), "user2", "message2");
+		ServerMessage originalMessage1 = new ServerMessage(0, "user1", "message1");
+		ServerMessage originalMessage2 = new ServerMessage(1, "user2", "message2");
 
 		clientSocket.on("connected", objects -> {
 			clientSocket.emit("join", "user");
@@ -4,6 +4,7 @@ import com.mongodb.MongoClient;
 import com.mongodb.ServerAddress;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import io.github.marcodiri.java_socketio_chatroom_server.ChatroomServer;
 import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
 import org.bson.Document;
 import org.junit.After;
@@ -12,6 +13,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -22,6 +24,7 @@ import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class ServerMongoRepositoryIT {
+	private static final String ROOM = "room";
 	private static final int mongoPort = Integer.parseInt(System.getProperty("mongo.port", "27017"));
 	private static ServerMongoRepository serverRepository;
 	private static MongoCollection<Document> messagesCollection;
@@ -51,16 +54,18 @@ public class ServerMongoRepositoryIT {
 
 	@Test
 	public void testFindAll() {
-		Timestamp ts1 = new Timestamp(0);
-		Timestamp ts2 = new Timestamp(1);
+		long ts1 = 0;
+		long ts2 = 1;
 
 		messagesCollection.insertMany(asList(
 				new Document()
-						.append("timestamp", ts1.getTime())
+						.append("room", ROOM)
+						.append("timestamp", ts1)
 						.append("user", "user1")
 						.append("message", "message1"),
 				new Document()
-						.append("timestamp", ts2.getTime())
+						.append("room", ROOM)
+						.append("timestamp", ts2)
 						.append("user", "user2")
 						.append("message", "message2")
 		));
@@ -72,17 +77,229 @@ public class ServerMongoRepositoryIT {
 				);
 	}
 
+	@Test
+	public void testTimestampsStoredAsOtherNumbersAreRead() {
+		messagesCollection.insertMany(asList(
+				new Document()
+						.append("room", ROOM)
+						.append("timestamp", 0)
+						.append("user", "user1")
+						.append("message", "message1"),
+				new Document()
+						.append("room", ROOM)
+						.append("timestamp", 1.0)
+						.append("user", "user2")
+						.append("message", "message2")
+		));
+
+		assertThat(serverRepository.findLatest(ROOM, 2))
+				.containsExactly(
+						new ServerMessage(0, "user1", "message1"),
+						new ServerMessage(1, "user2", "message2")
+				);
+	}
+
+	@Test
+	public void testFindAllIsSortedByTimestamp() {
+		messagesCollection.insertMany(asList(
+				new Document()
+						.append("room", "other")
+						.append("timestamp", 1L)
+						.append("user", "user2")
+						.append("message", "message2"),
+				new Document()
+						.append("room", ROOM)
+						.append("timestamp", 0L)
+						.append("user", "user1")
+						.append("message", "message1")
+		));
+
+		assertThat(serverRepository.findAll())
+				.containsExactly(
+						new ServerMessage(0, "user1", "message1"),
+						new ServerMessage(1, "user2", "message2")
+				);
+	}
+
+	@Test
+	public void testIndexesAreCreatedOnOpen() {
+		ServerMongoRepository repository = new ServerMongoRepository(client);
+		assertThat(client.getDatabase(CHATROOM_DB_NAME).listCollectionNames()).doesNotContain(MESSAGES_COLLECTION_NAME);
+
+		repository.open();
+
+		assertThat(StreamSupport.stream(messagesCollection.listIndexes().spliterator(), false)
+				.map(index -> index.get("key", Document.class)))
+				.contains(new Document("room", 1).append("timestamp", -1))
+				.doesNotContain(new Document("timestamp", 1));
+	}
+
+	@Test
+	public void testQueriesAreTimed() {
+		long queries = serverRepository.getQueryCount();
+		long nanos = serverRepository.getQueryNanos();
+
+		serverRepository.findAll();
+		serverRepository.findLatest(ROOM, 1);
+		serverRepository.findBefore(ROOM, new Timestamp(1), 1);
+
+		assertThat(serverRepository.getQueryCount()).isEqualTo(queries + 3);
+		assertThat(serverRepository.getQueryNanos()).isGreaterThan(nanos);
+	}
+
+	@Test
+	public void testMessagesSavedWithoutARoomAreMovedToTheDefaultRoomOnOpen() {
+		messagesCollection.insertMany(asList(
+				new Document()
+						.append("timestamp", 0L)
+						.append("user", "user1")
+						.append("message", "message1"),
+				new Document()
+						.append("room", ROOM)
+						.append("timestamp", 1L)
+						.append("user", "user2")
+						.append("message", "message2")
+		));
+
+		serverRepository.open();
+
+		assertThat(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, 10))
+				.containsExactly(new ServerMessage(0, "user1", "message1"));
+		assertThat(serverRepository.findLatest(ROOM, 10))
+				.containsExactly(new ServerMessage(1, "user2", "message2"));
+	}
+
+	@Test
+	public void testSavesAreTimed() {
+		long saves = serverRepository.getSaveCount();
+		long nanos = serverRepository.getSaveNanos();
+
+		serverRepository.save(ROOM, new ServerMessage(1, "user", "message"));
+		serverRepository.saveAll(ROOM, asList(new ServerMessage(2, "user", "message"), new ServerMessage(3, "user", "message")));
+		serverRepository.saveAll(ROOM, new ArrayList<>());
+
+		assertThat(serverRepository.getSaveCount()).isEqualTo(saves + 2);
+		assertThat(serverRepository.getSaveNanos()).isGreaterThan(nanos);
+	}
+
+	@Test
+	public void testFindLatestReturnsMostRecentMessagesInChronologicalOrder() {
+		messagesCollection.insertMany(asList(
+				new Document()
+						.append("room", ROOM)
+						.append("timestamp", 2L)
+						.append("user", "user3")
+						.append("message", "message3"),
+				new Document()
+						.append("room", ROOM)
+						.append("timestamp", 0L)
+						.append("user", "user1")
+						.append("message", "message1"),
+				new Document()
+						.append("room", ROOM)
+						.append("timestamp", 1L)
+						.append("user", "user2")
+						.append("message", "message2")
+		));
+
+		assertThat(serverRepository.findLatest(ROOM, 2))
+				.containsExactly(
+						new ServerMessage(1, "user2", "message2"),
+						new ServerMessage(2, "user3", "message3")
+				);
+	}
+
+	@Test
+	public void testFindBeforeReturnsOlderPageInChronologicalOrder() {
+		messagesCollection.insertMany(asList(
+				new Document()
+						.append("room", ROOM)
+						.append("timestamp", 0L)
+						.append("user", "user1")
+						.append("message", "message1"),
+				new Document()
+						.append("room", ROOM)
+						.append("timestamp", 1L)
+						.append("user", "user2")
+						.append("message", "message2"),
+				new Document()
+						.append("room", ROOM)
+						.append("timestamp", 2L)
+						.append("user", "user3")
+						.append("message", "message3"),
+				new Document()
+						.append("room", ROOM)
+						.append("timestamp", 3L)
+						.append("user", "user4")
+						.append("message", "message4")
+		));
+
+		assertThat(serverRepository.findBefore(ROOM, new Timestamp(3), 2))
+				.containsExactly(
+						new ServerMessage(1, "user2", "message2"),
+						new ServerMessage(2, "user3", "message3")
+				);
+	}
+
+	@Test
+	public void testFindLatestAndFindBeforeOnlyReturnMessagesOfTheRoom() {
+		messagesCollection.insertMany(asList(
+				new Document()
+						.append("room", ROOM)
+						.append("timestamp", 0L)
+						.append("user", "user1")
+						.append("message", "message1"),
+				new Document()
+						.append("room", "other")
+						.append("timestamp", 1L)
+						.append("user", "user2")
+						.append("message", "message2")
+		));
+
+		assertThat(serverRepository.findLatest(ROOM, 5))
+				.containsExactly(new ServerMessage(0, "user1", "message1"));
+		assertThat(serverRepository.findBefore("other", new Timestamp(5), 5))
+				.containsExactly(new ServerMessage(1, "user2", "message2"));
+	}
+
+	@Test
+	public void testFindWithNoLimitReturnsNoMessages() {
+		messagesCollection.insertOne(new Document()
+				.append("room", ROOM)
+				.append("timestamp", 0L)
+				.append("user", "user")
+				.append("message", "message"));
+
+		assertThat(serverRepository.findLatest(ROOM, 0)).isEmpty();
+		assertThat(serverRepository.findBefore(ROOM, new Timestamp(1), 0)).isEmpty();
+	}
+
 	@Test
 	public void testSave() {
-		ServerMessage msg = new ServerMessage(new Timestamp(0), "user", "message");
-		serverRepository.save(msg);
+		ServerMessage msg = new ServerMessage(0, "user", "message");
+		serverRepository.save(ROOM, msg);
 		assertThat(readAllMessages()).containsExactly(msg);
+		assertThat(messagesCollection.find().first().getString("room")).isEqualTo(ROOM);
+	}
+
+	@Test
+	public void testSaveAll() {
+		ServerMessage msg1 = new ServerMessage(0, "user1", "message1");
+		ServerMessage msg2 = new ServerMessage(1, "user2", "message2");
+		serverRepository.saveAll(ROOM, asList(msg1, msg2));
+		assertThat(readAllMessages()).containsExactly(msg1, msg2);
+	}
+
+	@Test
+	public void testSaveAllWithNoMessages() {
+		serverRepository.saveAll(ROOM, new ArrayList<>());
+		assertThat(readAllMessages()).isEmpty();
 	}
 
 	private List<ServerMessage> readAllMessages() {
 		return StreamSupport.stream(messagesCollection.find().spliterator(), false)
 				.map(d -> new ServerMessage(
-						new Timestamp(Long.parseLong(d.get("timestamp").toString())),
+						d.getLong("timestamp"),
 						"" + d.get("user"),
 						"" + d.get("message")))
 				.collect(Collectors.toList());
@@ -5,20 +5,103 @@ import org.apache.logging.log4j.Logger;
 
 import com.mongodb.MongoClient;
 import com.mongodb.ServerAddress;
+import io.github.marcodiri.java_socketio_chatroom_server.cluster.local.LocalClusterBus;
+import io.github.marcodiri.java_socketio_chatroom_server.metrics.ServerMetrics;
 import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.cache.ServerCacheRepository;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.file.FsyncPolicy;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.file.ServerFileRepository;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.memory.ServerMemoryRepository;
 import io.github.marcodiri.java_socketio_chatroom_server.repository.mongo.ServerMongoRepository;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.writebehind.ServerWriteBehindRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
 
 public class App {
 
 	private static final Logger LOGGER = LogManager.getLogger(App.class);
 
 	public static void main(String[] args) {
-		int mongoPort = Integer.parseInt(System.getProperty("mongo.port", "27017"));
-		MongoClient client = new MongoClient(new ServerAddress("localhost", mongoPort));
+		ServerConfiguration configuration;
+		try {
+			configuration = ServerConfiguration.fromProperties(serverProperties());
+		} catch (IOException | IllegalArgumentException e) {
+			LOGGER.fatal("Server configuration could not be loaded: {}", e.getMessage());
+			return;
+		}
 
-		ServerRepository mongoRepository = new ServerMongoRepository(client);
+		MongoClient client = null;
+		ServerMongoRepository mongoRepository = null;
+		ServerCacheRepository cacheRepository = null;
+		ServerRepository repository;
+		String repositoryType = System.getProperty("history.repository", "mongo");
+		switch (repositoryType) {
+		case "mongo":
+			try {
+				int mongoPort = intProperty("mongo.port", 27017);
+				int batchSize = intProperty("history.write.batch.size", 100);
+				long flushInterval = longProperty("history.write.flush.interval", 100);
+				int queueSize = intProperty("history.write.queue.size", 10000);
+				int cacheSize = intProperty("history.cache.size", 1000);
+				client = new MongoClient(new ServerAddress("localhost", mongoPort));
+				mongoRepository = new ServerMongoRepository(client);
+				repository = new ServerWriteBehindRepository(mongoRepository, batchSize, flushInterval, queueSize);
+				if (cacheSize > 0) {
+					cacheRepository = new ServerCacheRepository(repository, cacheSize);
+					repository = cacheRepository;
+				}
+			} catch (IllegalArgumentException e) {
+				LOGGER.fatal("Mongo history repository could not be configured: {}", e.getMessage());
+				if (client != null)
+					client.close();
+				return;
+			}
+			break;
+		case "memory":
+			// already in memory: neither batching writes nor caching reads helps
+			try {
+				repository = new ServerMemoryRepository(
+						intProperty("history.memory.room.size", ServerMemoryRepository.DEFAULT_MAX_ROOM_MESSAGES));
+			} catch (IllegalArgumentException e) {
+				LOGGER.fatal("Memory history repository could not be configured: {}", e.getMessage());
+				return;
+			}
+			break;
+		case "file":
+			// reads are mapped from the page cache, so a cache would only copy them
+			try {
+				repository = new ServerFileRepository(
+						Paths.get(System.getProperty("history.file.dir", "history")),
+						intProperty("history.file.segment.size", ServerFileRepository.DEFAULT_SEGMENT_SIZE),
+						FsyncPolicy.forName(System.getProperty("history.file.fsync", FsyncPolicy.PERIODIC.getName())),
+						longProperty("history.file.fsync.interval", ServerFileRepository.DEFAULT_FSYNC_INTERVAL));
+			} catch (IllegalArgumentException e) {
+				LOGGER.fatal("File history repository could not be configured: {}", e.getMessage());
+				return;
+			}
+			break;
+		default:
+			LOGGER.fatal("Unknown history repository: {}", repositoryType);
+			return;
+		}
 
-		ChatroomServer chatroomServer = new ChatroomServer(mongoRepository);
+		ChatroomServer chatroomServer;
+		try {
+			chatroomServer = new ChatroomServer(repository, new LocalClusterBus(), configuration);
+			chatroomServer.setHistoryPageSize(intProperty("history.page.size", ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE));
+			chatroomServer.setHistoryChunkSize(intProperty("history.chunk.size", ChatroomServer.DEFAULT_HISTORY_CHUNK_SIZE));
+			chatroomServer.setMaxRooms(intProperty("rooms.max", ChatroomServer.DEFAULT_MAX_ROOMS));
+		} catch (IllegalStateException | IllegalArgumentException e) {
+			LOGGER.fatal("Server could not be created: {}", e.getMessage());
+			if (client != null)
+				client.close();
+			return;
+		}
+		registerRepositoryMetrics(chatroomServer.getMetrics(), mongoRepository, cacheRepository);
 		try {
 			chatroomServer.start();
 		} catch (Exception e) {
@@ -35,6 +118,72 @@ public class App {
 		}
 	}
 
+	/**
+	 * The file named by the {@code server.config} system property, if any,
+	 * with system properties taking precedence over its entries.
+	 */
+	private static Properties serverProperties() throws IOException {
+		Properties properties = new Properties();
+		String configFile = System.getProperty("server.config");
+		if (configFile != null) {
+			try (InputStream in = Files.newInputStream(Paths.get(configFile))) {
+				properties.load(in);
+			}
+		}
+		properties.putAll(System.getProperties());
+		return properties;
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the system property is set but is
+	 *                                  not a number
+	 */
+	private static int intProperty(String key, int defaultValue) {
+		String value = System.getProperty(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the system property is set but is
+	 *                                  not a number
+	 */
+	private static long longProperty(String key, long defaultValue) {
+		String value = System.getProperty(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+		}
+	}
+
+	private static void registerRepositoryMetrics(ServerMetrics metrics,
+			ServerMongoRepository mongoRepository, ServerCacheRepository cacheRepository) {
+		if (mongoRepository != null) {
+			metrics.counter("chatroom_mongo_queries_total", "Find queries run on MongoDB",
+					mongoRepository::getQueryCount);
+			metrics.counter("chatroom_mongo_query_seconds_total", "Time spent running find queries on MongoDB",
+					() -> mongoRepository.getQueryNanos() / 1e9);
+			metrics.counter("chatroom_mongo_saves_total", "Inserts of a message or a batch of messages run on MongoDB",
+					mongoRepository::getSaveCount);
+			metrics.counter("chatroom_mongo_save_seconds_total", "Time spent running inserts on MongoDB",
+					() -> mongoRepository.getSaveNanos() / 1e9);
+		}
+		if (cacheRepository != null) {
+			metrics.counter("chatroom_history_cache_hits_total", "History reads served from the cache",
+					cacheRepository::getHits);
+			metrics.counter("chatroom_history_cache_misses_total", "History reads passed to the repository",
+					cacheRepository::getMisses);
+		}
+	}
+
 	private static void stopServer(ChatroomServer chatroomServer) {
 		try {
 			chatroomServer.stop();
@@ -1,8 +1,16 @@
 package io.github.marcodiri.java_socketio_chatroom_server;
 
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodec;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodecs;
 import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.cluster.ClusterBus;
+import io.github.marcodiri.java_socketio_chatroom_server.cluster.local.LocalClusterBus;
+import io.github.marcodiri.java_socketio_chatroom_server.metrics.Counter;
+import io.github.marcodiri.java_socketio_chatroom_server.metrics.LatencyTimer;
+import io.github.marcodiri.java_socketio_chatroom_server.metrics.ServerMetrics;
 import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
 import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.metrics.ServerMetricsRepository;
 import io.socket.socketio.server.SocketIoNamespace;
 import io.socket.socketio.server.SocketIoSocket;
 
@@ -10,53 +18,162 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.json.JSONObject;
 
+import javax.management.JMException;
 import java.sql.Timestamp;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
 
 public class ChatroomServer {
 
-	private static final String CHATROOM_NAME = "Chatroom";
+	public static final String DEFAULT_ROOM = "Chatroom";
+
+	public static final int DEFAULT_HISTORY_PAGE_SIZE = 50;
+	public static final int DEFAULT_HISTORY_CHUNK_SIZE = 500;
+
+	public static final int MAX_ROOM_NAME_LENGTH = 64;
+	public static final int DEFAULT_MAX_ROOMS = 1000;
+
+	/**
+	 * Domain of the metrics MBean, registered as
+	 * {@code <domain>:type=ChatroomServer,port=<port>} while the server runs
+	 */
+	public static final String MBEAN_DOMAIN = "io.github.marcodiri.java_socketio_chatroom_server";
+
+	private static final char CODEC_ROOM_SEPARATOR = '\0';
 
 	private final ServerWrapper serverWrapper;
 
 	private final SocketIoNamespace namespace;
+	private final Executor blockingExecutor;
 	private final ServerRepository repository;
+	private final ClusterBus clusterBus;
 
 	private final ConcurrentHashMap<String, String> usernameList;
+	private final ConcurrentHashMap<String, String> usernameOwners;
+	private final ConcurrentHashMap<String, String> socketRooms;
+	private final ConcurrentHashMap<String, SocketOutbox> outboxes;
+
+	private final ServerMetrics metrics = new ServerMetrics();
+	private final String mBeanName;
+	private final Counter connections;
+	private final Counter disconnections;
+	private final Counter messagesReceived;
+	private final Counter clusterMessagesReceived;
+	private final Counter messagesDelivered;
+	private final Counter historyRequests;
+	private final Counter errorsSent;
+	private final LatencyTimer messageHandling;
+	private final LatencyTimer broadcasts;
+
+	private int historyPageSize = DEFAULT_HISTORY_PAGE_SIZE;
+	private int historyChunkSize = DEFAULT_HISTORY_CHUNK_SIZE;
+	private int maxRooms = DEFAULT_MAX_ROOMS;
 
 	private static final Logger LOGGER = LogManager.getLogger(ChatroomServer.class);
 
 	public ChatroomServer(ServerRepository repository) {
-		this.serverWrapper = new ServerWrapper();
+		this(repository, new LocalClusterBus());
+	}
+
+	/**
+	 * @param clusterBus Shares messages, usernames and rooms with the other
+	 *                   servers of the cluster
+	 */
+	public ChatroomServer(ServerRepository repository, ClusterBus clusterBus) {
+		this(repository, clusterBus, new ServerConfiguration());
+	}
+
+	/**
+	 * @param configuration Port, thread pool and connector settings
+	 */
+	public ChatroomServer(ServerRepository repository, ClusterBus clusterBus, ServerConfiguration configuration) {
+		this.serverWrapper = new ServerWrapper(configuration, metrics);
 		this.namespace = serverWrapper.getSocketIoServer().namespace("/");
-		this.repository = repository;
+		this.blockingExecutor = serverWrapper.getBlockingExecutor();
+		this.repository = new ServerMetricsRepository(repository, metrics);
+		this.clusterBus = clusterBus;
 		this.usernameList = new ConcurrentHashMap<>();
+		this.usernameOwners = new ConcurrentHashMap<>();
+		this.socketRooms = new ConcurrentHashMap<>();
+		this.outboxes = new ConcurrentHashMap<>();
+		this.clusterBus.setMessageListener(this::broadcastFromCluster);
+
+		this.mBeanName = MBEAN_DOMAIN + ":type=ChatroomServer,port=" + configuration.getPort();
+		this.connections = metrics.counter("chatroom_connections_total", "Connections accepted");
+		this.disconnections = metrics.counter("chatroom_disconnections_total", "Connections closed");
+		metrics.gauge("chatroom_connections", "Open connections",
+				() -> connections.get() - disconnections.get());
+		metrics.gauge("chatroom_users", "Connections with a username", usernameList::size);
+		metrics.gauge("chatroom_rooms", "Rooms of the cluster", () -> clusterBus.getRooms().size());
+		this.messagesReceived = metrics.counter("chatroom_messages_received_total", "Messages received from clients");
+		this.clusterMessagesReceived = metrics.counter("chatroom_cluster_messages_received_total",
+				"Messages received from the other servers of the cluster");
+		this.messagesDelivered = metrics.counter("chatroom_messages_delivered_total",
+				"Messages sent to clients, one per recipient");
+		this.historyRequests = metrics.counter("chatroom_history_requests_total", "Requests for older messages");
+		this.errorsSent = metrics.counter("chatroom_errors_sent_total", "Errors sent to clients");
+		this.messageHandling = metrics.timer("chatroom_message_handling_seconds",
+				"Time to decode a message from a client, broadcast it and publish it to the cluster");
+		this.broadcasts = metrics.timer("chatroom_broadcast_seconds",
+				"Time to send a message to every client of its room");
 	}
 
 	public void start() throws Exception {
+		repository.open();
+		clusterBus.open();
+		clusterBus.createRoom(DEFAULT_ROOM);
 		handleConnections();
 		serverWrapper.startServer();
+		try {
+			metrics.registerMBean(mBeanName);
+		} catch (JMException e) {
+			LOGGER.warn("Metrics could not be registered with JMX: {}", e.getMessage());
+		}
 		LOGGER.info("Server started");
 	}
 
 	public void stop() throws Exception {
-		serverWrapper.stopServer();
+		try {
+			serverWrapper.stopServer();
+		} finally {
+			try {
+				repository.close();
+			} finally {
+				try {
+					clusterBus.close();
+				} finally {
+					metrics.unregisterMBean();
+				}
+			}
+		}
 		usernameList.clear();
+		usernameOwners.clear();
+		socketRooms.clear();
+		outboxes.clear();
 		LOGGER.info("Server stopped");
 	}
 
 	private void handleConnections() {
 		namespace.on("connection", args -> {
 			final SocketIoSocket socket = (SocketIoSocket) args[0];
+			connections.increment();
+			outboxes.put(socket.getId(), new SocketOutbox((event, payload) -> socket.send(event, payload)));
 			LOGGER.info(String.format("New incoming connection from %s", socket.getId()));
 			handleClientJoin(socket);
+			handleClientRoomCreate(socket);
+			handleClientRoomJoin(socket);
+			handleClientRoomLeave(socket);
 			handleClientMessage(socket);
+			handleClientHistoryRequest(socket);
 			handleClientDisconnect(socket);
-			socket.send("connected");
-			LOGGER.debug(() -> String.format("Sent {event: \"connected\"} to Socket %s", socket.getId()));
+			String codec = codecOf(socket).getName();
+			send(socket, "connected", codec);
+			LOGGER.debug(() -> String.format("Sent {event: \"connected\", message: \"%s\"} to Socket %s", codec, socket.getId()));
 		});
 	}
 
@@ -64,35 +181,109 @@ public class ChatroomServer {
 		socket.on("join", arg -> {
 			LOGGER.info(String.format("Socket %s is trying to join the room", socket.getId()));
 			LOGGER.debug(() -> String.format("Received {event: \"join\", message: \"%s\"} from Socket %s", arg[0], socket.getId()));
-			if (!socketIsInRoom(socket)) {
-				if (usernameList.containsValue(arg[0].toString())) {
+			if (!usernameList.containsKey(socket.getId())) {
+				if (claimUsername(socket.getId(), arg[0].toString())) {
+					switchRoom(socket, DEFAULT_ROOM);
+				} else {
 					sendError(socket, "Username is already taken");
+				}
+			}
+		});
+	}
+
+	private void handleClientRoomCreate(SocketIoSocket socket) {
+		socket.on("createRoom", arg -> {
+			LOGGER.info(String.format("Socket %s is trying to create a room", socket.getId()));
+			LOGGER.debug(() -> String.format("Received {event: \"createRoom\", message: \"%s\"} from Socket %s", arg[0], socket.getId()));
+			if (usernameList.containsKey(socket.getId())) {
+				String room = arg[0].toString();
+				String invalidName = invalidRoomName(room);
+				if (invalidName != null) {
+					sendError(socket, invalidName);
+				} else if (clusterBus.getRooms().size() >= maxRooms) {
+					sendError(socket, "Too many rooms");
+				} else if (clusterBus.createRoom(room)) {
+					LOGGER.info("Room {} created", room);
+					switchRoom(socket, room);
 				} else {
-					socket.joinRoom(CHATROOM_NAME);
-					usernameList.put(socket.getId(), (String) arg[0]);
-					socket.send("joined", new JSONObject("{roomName: " + CHATROOM_NAME + "}"));
-					LOGGER.info(String.format("Socket %s joined the room", socket.getId()));
-					LOGGER.debug(() -> String.format("Sent {event: \"joined\", message: \"{roomName: %s}\"} to Socket %s", CHATROOM_NAME, socket.getId()));
-					List<Message> history = repository.findAll();
-					for (Message message : history) {
-						socket.send("msg", message.toJSON());
-						LOGGER.debug(() -> String.format("Sent {event: \"msg\", message: \"%s\"} to Socket %s", message.toJSON(), socket.getId()));
-					}
+					sendError(socket, "Room already exists");
 				}
 			}
 		});
 	}
 
+	private void handleClientRoomJoin(SocketIoSocket socket) {
+		socket.on("joinRoom", arg -> {
+			LOGGER.info(String.format("Socket %s is trying to join a room", socket.getId()));
+			LOGGER.debug(() -> String.format("Received {event: \"joinRoom\", message: \"%s\"} from Socket %s", arg[0], socket.getId()));
+			if (usernameList.containsKey(socket.getId())) {
+				String room = arg[0].toString();
+				if (clusterBus.hasRoom(room)) {
+					switchRoom(socket, room);
+				} else {
+					sendError(socket, "Room does not exist");
+				}
+			}
+		});
+	}
+
+	private void handleClientRoomLeave(SocketIoSocket socket) {
+		socket.on("leaveRoom", arg -> {
+			LOGGER.debug(() -> String.format("Received {event: \"leaveRoom\"} from Socket %s", socket.getId()));
+			String room = socketRooms.remove(socket.getId());
+			if (room != null) {
+				socket.leaveRoom(codecRoom(room, codecOf(socket)));
+				send(socket, "left", new JSONObject().put("roomName", room));
+				LOGGER.info(String.format("Socket %s left room %s", socket.getId(), room));
+			}
+		});
+	}
+
 	private void handleClientMessage(SocketIoSocket socket) {
 		socket.on("msg", arg -> {
 			LOGGER.info(String.format("Message received from Socket %s", socket.getId()));
 			LOGGER.debug(() -> String.format("Received {event: \"msg\", message: \"%s\"} from Socket %s", arg[0], socket.getId()));
-			if (socketIsInRoom(socket)) {
-				namespace.broadcast(CHATROOM_NAME, "msg", arg[0]);
-				LOGGER.info("Message broadcast to clients");
-				JSONObject jsonMsg = (JSONObject) arg[0];
-				Message incomingMessage = new ServerMessage(new Timestamp(jsonMsg.getLong("timestamp")), jsonMsg.getString("user"), jsonMsg.getString("message"));
-				repository.save(incomingMessage);
+			String room = currentRoom(socket);
+			if (room != null) {
+				messagesReceived.increment();
+				long start = System.nanoTime();
+				Message incomingMessage;
+				try {
+					incomingMessage = codecOf(socket).decode(arg[0], ServerMessage::new);
+				} catch (IllegalArgumentException e) {
+					LOGGER.warn("Invalid message from Socket {}: {}", socket.getId(), e.getMessage());
+					sendError(socket, "Invalid message");
+					return;
+				}
+				broadcast(room, incomingMessage);
+				clusterBus.publish(room, incomingMessage);
+				messageHandling.recordSince(start);
+				LOGGER.info("Message broadcast to clients of room {}", room);
+				blockingExecutor.execute(() -> repository.save(room, incomingMessage));
+			}
+		});
+	}
+
+	private void handleClientHistoryRequest(SocketIoSocket socket) {
+		socket.on("loadHistory", arg -> {
+			LOGGER.info(String.format("Socket %s requested older messages", socket.getId()));
+			Object request = arg.length > 0 ? arg[0] : null;
+			LOGGER.debug(() -> String.format("Received {event: \"loadHistory\", message: \"%s\"} from Socket %s", request, socket.getId()));
+			String room = currentRoom(socket);
+			if (room != null) {
+				Object bound = request instanceof JSONObject ? ((JSONObject) request).opt("before") : null;
+				if (!(bound instanceof Number)) {
+					LOGGER.warn("Invalid history request from Socket {}: {}", socket.getId(), request);
+					sendError(socket, "Invalid message");
+					return;
+				}
+				historyRequests.increment();
+				// the bound is inclusive: messages sharing the millisecond of the
+				// oldest one the client shows would otherwise never be paged in,
+				// and the client drops the ones it already has
+				long oldest = ((Number) bound).longValue();
+				Timestamp before = new Timestamp(oldest == Long.MAX_VALUE ? oldest : oldest + 1);
+				blockingExecutor.execute(() -> sendHistory(socket, room, repository.findBefore(room, before, historyPageSize)));
 			}
 		});
 	}
@@ -100,7 +291,10 @@ public class ChatroomServer {
 	private void handleClientDisconnect(SocketIoSocket socket) {
 		socket.on("disconnect", arg -> {
 			LOGGER.debug(() -> String.format("Received {event: \"disconnect\"} from Socket %s", socket.getId()));
-			usernameList.remove(socket.getId());
+			disconnections.increment();
+			socketRooms.remove(socket.getId());
+			outboxes.remove(socket.getId());
+			releaseUsername(socket.getId());
 			LOGGER.info(String.format("Socket %s removed from room", socket.getId()));
 		});
 	}
@@ -109,20 +303,219 @@ public class ChatroomServer {
 		return serverWrapper.isStarted();
 	}
 
+	/**
+	 * @return The metrics of the server, also served at {@code /metrics} and
+	 *         registered with JMX while it runs, to which more can be added
+	 */
+	public ServerMetrics getMetrics() {
+		return metrics;
+	}
+
 	SocketIoNamespace getNamespace() {
 		return namespace;
 	}
 
+	/**
+	 * @return A read-only view of the usernames in use, keyed by socket id
+	 */
 	public Map<String, String> getUsernameList() {
-		return usernameList;
+		return Collections.unmodifiableMap(usernameList);
+	}
+
+	/**
+	 * Atomically assigns {@code username} to the socket. Of two sockets
+	 * claiming the same name at the same time exactly one wins, even when
+	 * they are connected to different servers of the cluster.
+	 *
+	 * @return {@code false} if the name is taken or the socket already has one
+	 */
+	public boolean claimUsername(String socketId, String username) {
+		if (usernameOwners.putIfAbsent(username, socketId) != null) {
+			return false;
+		}
+		if (!clusterBus.claimUsername(username)) {
+			usernameOwners.remove(username, socketId);
+			return false;
+		}
+		if (usernameList.putIfAbsent(socketId, username) != null) {
+			clusterBus.releaseUsername(username);
+			usernameOwners.remove(username, socketId);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Frees the username of the socket, if it has one.
+	 */
+	public void releaseUsername(String socketId) {
+		String username = usernameList.remove(socketId);
+		if (username != null) {
+			usernameOwners.remove(username, socketId);
+			clusterBus.releaseUsername(username);
+		}
+	}
+
+	public void setHistoryPageSize(int historyPageSize) {
+		if (historyPageSize <= 0)
+			throw new IllegalArgumentException("History page size must be positive");
+		this.historyPageSize = historyPageSize;
+	}
+
+	public void setHistoryChunkSize(int historyChunkSize) {
+		if (historyChunkSize <= 0)
+			throw new IllegalArgumentException("History chunk size must be positive");
+		this.historyChunkSize = historyChunkSize;
+	}
+
+	/**
+	 * @param maxRooms Rooms of the cluster above which clients cannot create
+	 *                 more; concurrent creations may exceed it by a few
+	 */
+	public void setMaxRooms(int maxRooms) {
+		if (maxRooms <= 0)
+			throw new IllegalArgumentException("Maximum rooms must be positive");
+		this.maxRooms = maxRooms;
+	}
+
+	/**
+	 * @return A read-only view of the rooms of the cluster
+	 */
+	public Set<String> getRooms() {
+		return clusterBus.getRooms();
+	}
+
+	/**
+	 * @return Why a client cannot create a room with that name, or
+	 *         {@code null} if it can
+	 */
+	private static String invalidRoomName(String room) {
+		if (room.trim().isEmpty())
+			return "Room name must not be empty";
+		if (room.length() > MAX_ROOM_NAME_LENGTH)
+			return "Room name is too long";
+		if (room.indexOf(CODEC_ROOM_SEPARATOR) >= 0)
+			return "Invalid room name";
+		return null;
+	}
+
+	/**
+	 * @return The chat room the socket is in, or {@code null} if it is in none
+	 */
+	private String currentRoom(SocketIoSocket socket) {
+		return socketRooms.get(socket.getId());
+	}
+
+	/**
+	 * Moves the socket to the room and sends it the latest history of the
+	 * room. The room changes before "joined" is queued, and
+	 * {@link #sendHistory(SocketIoSocket, String, List)} checks the room
+	 * when each chunk leaves the outbox, so history read on another thread
+	 * for a room the socket has left since is never sent after it joined
+	 * another.
+	 */
+	private void switchRoom(SocketIoSocket socket, String room) {
+		MessageCodec codec = codecOf(socket);
+		String previous = socketRooms.put(socket.getId(), room);
+		if (previous != null) {
+			socket.leaveRoom(codecRoom(previous, codec));
+		}
+		socket.joinRoom(codecRoom(room, codec));
+		send(socket, "joined", new JSONObject().put("roomName", room));
+		LOGGER.info(String.format("Socket %s joined room %s", socket.getId(), room));
+		LOGGER.debug(() -> String.format("Sent {event: \"joined\", message: \"{roomName: %s}\"} to Socket %s", room, socket.getId()));
+		blockingExecutor.execute(() -> sendHistory(socket, room, repository.findLatest(room, historyPageSize)));
+	}
+
+	private void broadcastFromCluster(String room, Message message) {
+		clusterMessagesReceived.increment();
+		broadcast(room, message);
+		LOGGER.debug(() -> String.format("Message from the cluster broadcast to clients of room %s", room));
+	}
+
+	/**
+	 * Sends the message to every socket in the room, encoding it once for
+	 * each codec that has sockets there.
+	 * <p>
+	 * Each recipient gets its own packet through
+	 * {@link #send(SocketIoSocket, String, Object)}, so that a broadcast
+	 * keeps its place among the other events queued for that socket.
+	 * Binary payloads need it anyway: socket.io swaps the attachments of a
+	 * packet for placeholders while encoding it, so a shared packet would
+	 * reach only its first recipient intact.
+	 */
+	private void broadcast(String room, Message message) {
+		long start = System.nanoTime();
+		for (MessageCodec codec : MessageCodecs.all()) {
+			SocketIoSocket[] recipients = namespace.getAdapter().listClients(codecRoom(room, codec));
+			if (recipients.length > 0) {
+				Object payload = codec.encode(message);
+				for (SocketIoSocket recipient : recipients) {
+					send(recipient, "msg", payload);
+				}
+				messagesDelivered.add(recipients.length);
+			}
+		}
+		broadcasts.recordSince(start);
+	}
+
+	/**
+	 * Sends the history of the room in chunks, unless the socket is no
+	 * longer in that room: in virtual thread mode the history is read on a
+	 * thread of its own, and the socket may have moved on meanwhile.
+	 */
+	private void sendHistory(SocketIoSocket socket, String room, List<Message> history) {
+		MessageCodec codec = codecOf(socket);
+		for (int from = 0; from < history.size(); from += historyChunkSize) {
+			List<Message> chunk = history.subList(from, Math.min(from + historyChunkSize, history.size()));
+			if (!room.equals(currentRoom(socket))) {
+				LOGGER.debug("Dropped the history of room {} for Socket {}, which left it", room, socket.getId());
+				return;
+			}
+			send(socket, "history", codec.encodeAll(chunk), () -> room.equals(currentRoom(socket)));
+			LOGGER.debug(() -> String.format("Sent {event: \"history\", message: \"%s\"} to Socket %s", chunk, socket.getId()));
+		}
+	}
+
+	/**
+	 * Sends the event through the socket's {@link SocketOutbox}, which keeps
+	 * other threads' sends to the socket from interleaving with it. Every
+	 * event for a single socket goes through here; the event is dropped if
+	 * the socket has disconnected.
+	 */
+	private void send(SocketIoSocket socket, String event, Object payload) {
+		send(socket, event, payload, () -> true);
+	}
+
+	/**
+	 * @param condition Checked right before the event is sent
+	 */
+	private void send(SocketIoSocket socket, String event, Object payload, BooleanSupplier condition) {
+		SocketOutbox outbox = outboxes.get(socket.getId());
+		if (outbox != null) {
+			outbox.send(event, payload, condition);
+		}
+	}
+
+	/**
+	 * @return The codec the socket asked for in its handshake, JSON by default
+	 */
+	private static MessageCodec codecOf(SocketIoSocket socket) {
+		return MessageCodecs.forName(socket.getInitialQuery().get(MessageCodecs.QUERY_PARAMETER));
 	}
 
-	private boolean socketIsInRoom(SocketIoSocket socket) {
-		return Arrays.asList(namespace.getAdapter().listClientRooms(socket)).contains(CHATROOM_NAME);
+	/**
+	 * Sockets of a chat room are split into one socket.io room per codec, so
+	 * that a broadcast reaches only the sockets that can decode it. JSON
+	 * sockets use the chat room name itself.
+	 */
+	private static String codecRoom(String room, MessageCodec codec) {
+		return codec == MessageCodecs.JSON ? room : room + CODEC_ROOM_SEPARATOR + codec.getName();
 	}
 
 	private void sendError(SocketIoSocket socket, String errorMessage) {
-		socket.send("error", new JSONObject("{message: " + errorMessage + "}"));
+		errorsSent.increment();
+		send(socket, "error", new JSONObject("{message: " + errorMessage + "}"));
 		LOGGER.info("Sent error [{}] to Socket {}", errorMessage, socket.getId());
 		LOGGER.debug(() -> String.format("Sent {event: \"error\", message: \"%s\"} to Socket %s", errorMessage, socket.getId()));
 	}
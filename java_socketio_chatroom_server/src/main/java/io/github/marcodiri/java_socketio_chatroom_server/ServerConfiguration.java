@@ -0,0 +1,204 @@
+package io.github.marcodiri.java_socketio_chatroom_server;
+
+import java.util.Properties;
+
+/**
+ * Network settings of the server: the listening port, the size of the
+ * request thread pool and the tuning of the connector. Values not set keep
+ * Jetty's defaults, except for the port.
+ * <p>
+ * {@link #fromProperties(Properties)} reads the following keys:
+ * <ul>
+ * <li>{@code server.port}</li>
+ * <li>{@code server.threads.min}, {@code server.threads.max}</li>
+ * <li>{@code server.acceptors}, {@code server.selectors}; -1 lets Jetty
+ * choose from the number of cores</li>
+ * <li>{@code server.idle.timeout} in milliseconds</li>
+ * <li>{@code server.accept.queue.size}; 0 uses the OS default backlog</li>
+ * <li>{@code server.virtual.threads}; {@code true} runs requests and
+ * blocking repository calls on virtual threads instead of the thread pool,
+ * which requires Java 21</li>
+ * <li>{@code server.websocket.only}; {@code true} refuses HTTP long-polling,
+ * so clients must connect with the websocket transport directly</li>
+ * <li>{@code server.compression.threshold}: polling responses and, for
+ * WebSocket clients that negotiate permessage-deflate, messages of at least
+ * this many bytes are compressed; -1 disables compression</li>
+ * </ul>
+ */
+public class ServerConfiguration {
+
+	public static final int DEFAULT_PORT = 3000;
+	public static final int DEFAULT_MIN_THREADS = 8;
+	public static final int DEFAULT_MAX_THREADS = 200;
+	public static final int DEFAULT_ACCEPTORS = -1;
+	public static final int DEFAULT_SELECTORS = -1;
+	public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+	public static final int DEFAULT_ACCEPT_QUEUE_SIZE = 0;
+	public static final int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+
+	private int port = DEFAULT_PORT;
+	private int minThreads = DEFAULT_MIN_THREADS;
+	private int maxThreads = DEFAULT_MAX_THREADS;
+	private int acceptors = DEFAULT_ACCEPTORS;
+	private int selectors = DEFAULT_SELECTORS;
+	private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+	private int acceptQueueSize = DEFAULT_ACCEPT_QUEUE_SIZE;
+	private boolean virtualThreads = false;
+	private boolean websocketOnly = false;
+	private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+
+	/**
+	 * @param properties Source of the {@code server.*} keys; missing keys
+	 *                   keep their default value
+	 * @throws IllegalArgumentException If a value is not a number or is out
+	 *                                  of range
+	 */
+	public static ServerConfiguration fromProperties(Properties properties) {
+		ServerConfiguration configuration = new ServerConfiguration();
+		configuration.setPort(intProperty(properties, "server.port", configuration.port));
+		configuration.setThreads(
+				intProperty(properties, "server.threads.min", configuration.minThreads),
+				intProperty(properties, "server.threads.max", configuration.maxThreads));
+		configuration.setAcceptors(intProperty(properties, "server.acceptors", configuration.acceptors));
+		configuration.setSelectors(intProperty(properties, "server.selectors", configuration.selectors));
+		configuration.setIdleTimeout(longProperty(properties, "server.idle.timeout", configuration.idleTimeout));
+		configuration.setAcceptQueueSize(intProperty(properties, "server.accept.queue.size", configuration.acceptQueueSize));
+		configuration.setVirtualThreads(Boolean.parseBoolean(properties.getProperty("server.virtual.threads", "false").trim()));
+		configuration.setCompressionThreshold(intProperty(properties, "server.compression.threshold", configuration.compressionThreshold));
+		configuration.setWebsocketOnly(Boolean.parseBoolean(properties.getProperty("server.websocket.only", "false").trim()));
+		return configuration;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	public void setPort(int port) {
+		if (port < 0 || port > 65535)
+			throw new IllegalArgumentException("Port must be between 0 and 65535");
+		this.port = port;
+	}
+
+	public int getMinThreads() {
+		return minThreads;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public void setThreads(int minThreads, int maxThreads) {
+		if (minThreads <= 0)
+			throw new IllegalArgumentException("Minimum threads must be positive");
+		if (maxThreads < minThreads)
+			throw new IllegalArgumentException("Maximum threads must not be less than minimum threads");
+		this.minThreads = minThreads;
+		this.maxThreads = maxThreads;
+	}
+
+	public int getAcceptors() {
+		return acceptors;
+	}
+
+	public void setAcceptors(int acceptors) {
+		if (acceptors < -1)
+			throw new IllegalArgumentException("Acceptors must be -1 or more");
+		this.acceptors = acceptors;
+	}
+
+	public int getSelectors() {
+		return selectors;
+	}
+
+	public void setSelectors(int selectors) {
+		if (selectors < -1 || selectors == 0)
+			throw new IllegalArgumentException("Selectors must be -1 or positive");
+		this.selectors = selectors;
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	public void setIdleTimeout(long idleTimeout) {
+		if (idleTimeout <= 0)
+			throw new IllegalArgumentException("Idle timeout must be positive");
+		this.idleTimeout = idleTimeout;
+	}
+
+	public int getAcceptQueueSize() {
+		return acceptQueueSize;
+	}
+
+	public void setAcceptQueueSize(int acceptQueueSize) {
+		if (acceptQueueSize < 0)
+			throw new IllegalArgumentException("Accept queue size must not be negative");
+		this.acceptQueueSize = acceptQueueSize;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	/**
+	 * @param virtualThreads Whether requests and blocking calls run on
+	 *                       virtual threads; the thread counts are then unused
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	public boolean isWebsocketOnly() {
+		return websocketOnly;
+	}
+
+	public void setWebsocketOnly(boolean websocketOnly) {
+		this.websocketOnly = websocketOnly;
+	}
+
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	/**
+	 * @param compressionThreshold Minimum size in bytes of a compressed
+	 *                             response or message, or -1 to disable
+	 *                             compression
+	 */
+	public void setCompressionThreshold(int compressionThreshold) {
+		if (compressionThreshold < -1)
+			throw new IllegalArgumentException("Compression threshold must be -1 or more");
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	@Override
+	public String toString() {
+		return "ServerConfiguration{port=" + port + ", threads=" + minThreads + "-" + maxThreads
+				+ ", acceptors=" + acceptors + ", selectors=" + selectors
+				+ ", idleTimeout=" + idleTimeout + ", acceptQueueSize=" + acceptQueueSize
+				+ ", virtualThreads=" + virtualThreads + ", websocketOnly=" + websocketOnly
+				+ ", compressionThreshold=" + compressionThreshold + "}";
+	}
+
+	private static int intProperty(Properties properties, String key, int defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+		}
+	}
+
+	private static long longProperty(Properties properties, String key, long defaultValue) {
+		String value = properties.getProperty(key);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid value for " + key + ": " + value, e);
+		}
+	}
+}
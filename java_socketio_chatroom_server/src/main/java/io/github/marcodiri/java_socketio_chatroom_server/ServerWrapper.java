@@ -1,5 +1,6 @@
 package io.github.marcodiri.java_socketio_chatroom_server;
 
+import io.github.marcodiri.java_socketio_chatroom_server.metrics.ServerMetrics;
 import io.socket.engineio.server.EngineIoServer;
 import io.socket.engineio.server.EngineIoServerOptions;
 import io.socket.engineio.server.JettyWebSocketHandler;
@@ -10,10 +11,18 @@ import org.apache.logging.log4j.Logger;
 import org.eclipse.jetty.http.pathmap.ServletPathSpec;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.DecoratedObjectFactory;
+import org.eclipse.jetty.util.Decorator;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.eclipse.jetty.websocket.server.WebSocketUpgradeFilter;
+import org.eclipse.jetty.websocket.servlet.WebSocketServletFactory;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -21,6 +30,13 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 
 public class ServerWrapper {
@@ -28,13 +44,39 @@ public class ServerWrapper {
 	private final Server mServer;
 	private final EngineIoServer mEngineIoServer;
 	private final SocketIoServer mSocketIoServer;
+	private final Executor mBlockingExecutor;
 
 	private static final Logger LOGGER = LogManager.getLogger(ServerWrapper.class);
 
+	/**
+	 * @param metrics Served as text at {@code /metrics}
+	 */
 	@SuppressWarnings("serial")
-	ServerWrapper() {
+	ServerWrapper(ServerConfiguration configuration, ServerMetrics metrics) {
 
-		mServer = new Server(3000);
+		ThreadPool threadPool;
+		if (configuration.isVirtualThreads()) {
+			VirtualThreadPool virtualThreadPool = new VirtualThreadPool();
+			threadPool = virtualThreadPool;
+			mBlockingExecutor = task -> {
+				// while the server stops, a handler still has to save a message
+				// it already broadcast: it does so on its own thread instead
+				if (!virtualThreadPool.tryExecute(task))
+					task.run();
+			};
+		} else {
+			QueuedThreadPool queuedThreadPool = new QueuedThreadPool(configuration.getMaxThreads(), configuration.getMinThreads());
+			queuedThreadPool.setName("chatroom-server");
+			threadPool = queuedThreadPool;
+			mBlockingExecutor = Runnable::run;
+		}
+		mServer = new Server(threadPool);
+		ServerConnector connector = new ServerConnector(mServer, configuration.getAcceptors(), configuration.getSelectors());
+		connector.setPort(configuration.getPort());
+		connector.setIdleTimeout(configuration.getIdleTimeout());
+		connector.setAcceptQueueSize(configuration.getAcceptQueueSize());
+		mServer.addConnector(connector);
+		LOGGER.info("Server configured with {}", configuration);
 		mEngineIoServer = new EngineIoServer(EngineIoServerOptions.newFromDefault().setPingTimeout(30000));
 		mSocketIoServer = new SocketIoServer(mEngineIoServer);
 
@@ -44,31 +86,112 @@ public class ServerWrapper {
 		ServletContextHandler servletContextHandler = new ServletContextHandler(ServletContextHandler.SESSIONS);
 		servletContextHandler.setContextPath("/");
 
+		boolean websocketOnly = configuration.isWebsocketOnly();
 		servletContextHandler.addServlet(new ServletHolder(new HttpServlet() {
 			@Override
 			protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
-				mEngineIoServer.handleRequest(new HttpServletRequestWrapper(request), response);
+				// WebSocket upgrades are taken by the filter below, so only
+				// polling requests reach the servlet
+				if (websocketOnly) {
+					rejectPolling(response);
+				} else {
+					mEngineIoServer.handleRequest(new HttpServletRequestWrapper(request), response);
+				}
 			}
 		}), "/socket.io/*");
+		servletContextHandler.addServlet(new ServletHolder(new HttpServlet() {
+			@Override
+			protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+				response.setContentType(ServerMetrics.TEXT_CONTENT_TYPE);
+				metrics.writeText(response.getWriter());
+			}
+		}), "/metrics");
 
 		try {
 			WebSocketUpgradeFilter webSocketUpgradeFilter = WebSocketUpgradeFilter.configure(servletContextHandler);
 			webSocketUpgradeFilter.addMapping(
 					new ServletPathSpec("/socket.io/*"),
 					(servletUpgradeRequest, servletUpgradeResponse) -> new JettyWebSocketHandler(mEngineIoServer));
+			configureWebSocketCompression(webSocketUpgradeFilter.getFactory(),
+					servletContextHandler.getObjectFactory(), configuration);
 		} catch (ServletException ex) {
 			LOGGER.warn("WebSocket is not available");
 		}
 
+		Handler handler = servletContextHandler;
+		if (configuration.getCompressionThreshold() >= 0) {
+			// polling responses; okhttp clients ask for gzip and inflate
+			// transparently
+			GzipHandler gzipHandler = new GzipHandler();
+			gzipHandler.setMinGzipSize(configuration.getCompressionThreshold());
+			gzipHandler.setHandler(servletContextHandler);
+			handler = gzipHandler;
+		}
+
 		HandlerList handlerList = new HandlerList();
-		handlerList.setHandlers(new Handler[]{servletContextHandler});
+		handlerList.setHandlers(new Handler[]{handler});
 		mServer.setHandler(handlerList);
 	}
 
+	/**
+	 * Keeps permessage-deflate as the only compression extension, or none
+	 * when compression is disabled. Jetty's own permessage-deflate
+	 * compresses every message whatever its size, so it is replaced by one
+	 * that applies the compression threshold to each message; Jetty creates
+	 * the extension through the context's object factory, which hands it
+	 * the threshold.
+	 * <p>
+	 * Jetty 9.4 deprecates its extension registry for the API of Jetty 10,
+	 * but has no other way to replace an extension; the deprecated calls are
+	 * kept to this method.
+	 */
+	@SuppressWarnings("deprecation")
+	private static void configureWebSocketCompression(WebSocketServletFactory factory, DecoratedObjectFactory objectFactory,
+			ServerConfiguration configuration) {
+		org.eclipse.jetty.websocket.api.extensions.ExtensionFactory extensions = factory.getExtensionFactory();
+		extensions.unregister("deflate-frame");
+		extensions.unregister("x-webkit-deflate-frame");
+		int threshold = configuration.getCompressionThreshold();
+		if (threshold < 0) {
+			extensions.unregister("permessage-deflate");
+			return;
+		}
+		extensions.register("permessage-deflate", ThresholdPerMessageDeflateExtension.class);
+		objectFactory.addDecorator(new Decorator() {
+			@Override
+			public <T> T decorate(T o) {
+				if (o instanceof ThresholdPerMessageDeflateExtension) {
+					((ThresholdPerMessageDeflateExtension) o).setThreshold(threshold);
+				}
+				return o;
+			}
+
+			@Override
+			public void destroy(Object o) {
+				// nothing to release
+			}
+		});
+	}
+
+	private static void rejectPolling(HttpServletResponse response) throws IOException {
+		response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+		response.setContentType("application/json");
+		response.getWriter().write("{\"code\":0,\"message\":\"Transport unknown\"}");
+	}
+
 	SocketIoServer getSocketIoServer() {
 		return mSocketIoServer;
 	}
 
+	/**
+	 * @return Where handlers run blocking calls: a new virtual thread per
+	 *         task in virtual thread mode, or the calling thread once the
+	 *         server is stopping, otherwise the calling thread
+	 */
+	Executor getBlockingExecutor() {
+		return mBlockingExecutor;
+	}
+
 	void startServer() throws Exception {
 		mServer.start();
 	}
@@ -80,4 +203,92 @@ public class ServerWrapper {
 	boolean isStarted() {
 		return mServer.isStarted();
 	}
+
+	/**
+	 * Jetty thread pool that runs every task on a new virtual thread. The
+	 * executor is looked up reflectively because the project targets Java 8;
+	 * the mode fails fast on runtimes older than Java 21.
+	 */
+	private static class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+		private static final long STOP_TIMEOUT = 5000;
+
+		private final Method executorFactory;
+		private volatile ExecutorService executor;
+
+		VirtualThreadPool() {
+			try {
+				executorFactory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException("Virtual threads require Java 21 or later", e);
+			}
+		}
+
+		@Override
+		protected void doStart() throws Exception {
+			try {
+				executor = (ExecutorService) executorFactory.invoke(null);
+			} catch (InvocationTargetException e) {
+				throw new IllegalStateException("Virtual thread executor could not be created", e.getCause());
+			}
+			super.doStart();
+		}
+
+		@Override
+		protected void doStop() throws Exception {
+			executor.shutdown();
+			if (!executor.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+				executor.shutdownNow();
+			}
+			super.doStop();
+		}
+
+		/**
+		 * Drops the task when the pool is not running: the connections of a
+		 * stopping server have nothing left to do. Blocking calls of handlers
+		 * go through {@link #tryExecute(Runnable)} instead.
+		 */
+		@Override
+		public void execute(Runnable task) {
+			if (!tryExecute(task))
+				LOGGER.debug("Dropped a task submitted to the {} virtual thread pool", getState());
+		}
+
+		/**
+		 * @return {@code false} if the pool is not running and the task was
+		 *         not started
+		 */
+		boolean tryExecute(Runnable task) {
+			ExecutorService current = executor;
+			if (current == null || current.isShutdown())
+				return false;
+			try {
+				current.execute(task);
+				return true;
+			} catch (RejectedExecutionException e) {
+				// shut down after the check
+				return false;
+			}
+		}
+
+		@Override
+		public void join() throws InterruptedException {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int getThreads() {
+			return -1;
+		}
+
+		@Override
+		public int getIdleThreads() {
+			return -1;
+		}
+
+		@Override
+		public boolean isLowOnThreads() {
+			return false;
+		}
+	}
 }
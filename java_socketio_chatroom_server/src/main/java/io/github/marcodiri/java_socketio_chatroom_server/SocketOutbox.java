@@ -0,0 +1,89 @@
+package io.github.marcodiri.java_socketio_chatroom_server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Sends the events of one socket one at a time, in the order they were
+ * queued, whatever thread queues them: a binary packet goes out as a header
+ * frame followed by its attachment frames, which the client must receive in
+ * a row.
+ * <p>
+ * Whichever thread finds the outbox idle sends everything queued until it
+ * is empty again; the others only queue their event. No lock is held while
+ * sending, since engine.io runs the handlers of a polling socket under the
+ * same lock its sends take, and a handler waiting for another thread's send
+ * to that socket would wait forever.
+ */
+class SocketOutbox {
+
+	private static final BooleanSupplier ALWAYS = () -> true;
+
+	private static class Event {
+		private final String name;
+		private final Object payload;
+		private final BooleanSupplier condition;
+
+		private Event(String name, Object payload, BooleanSupplier condition) {
+			this.name = name;
+			this.payload = payload;
+			this.condition = condition;
+		}
+	}
+
+	private final Queue<Event> pending = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean sending = new AtomicBoolean(false);
+	private final BiConsumer<String, Object> sender;
+
+	private static final Logger LOGGER = LogManager.getLogger(SocketOutbox.class);
+
+	/**
+	 * @param sender Sends an event with its payload to the socket
+	 */
+	SocketOutbox(BiConsumer<String, Object> sender) {
+		this.sender = sender;
+	}
+
+	void send(String event, Object payload) {
+		send(event, payload, ALWAYS);
+	}
+
+	/**
+	 * @param condition Checked right before the event is sent, after every
+	 *                  event queued before it; the event is dropped if it
+	 *                  no longer holds
+	 */
+	void send(String event, Object payload, BooleanSupplier condition) {
+		pending.add(new Event(event, payload, condition));
+		// an event queued while another thread gives up sending is picked
+		// up by the next iteration
+		while (!pending.isEmpty() && sending.compareAndSet(false, true)) {
+			try {
+				Event next;
+				while ((next = pending.poll()) != null) {
+					sendNow(next);
+				}
+			} finally {
+				sending.set(false);
+			}
+		}
+	}
+
+	private void sendNow(Event event) {
+		if (!event.condition.getAsBoolean()) {
+			LOGGER.debug("Dropped event {}, whose condition no longer holds", event.name);
+			return;
+		}
+		try {
+			sender.accept(event.name, event.payload);
+		} catch (RuntimeException e) {
+			LOGGER.warn("Could not send event {}", event.name, e);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package io.github.marcodiri.java_socketio_chatroom_server;
+
+import org.eclipse.jetty.websocket.api.BatchMode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.common.extensions.compress.PerMessageDeflateExtension;
+
+/**
+ * permessage-deflate that sends messages smaller than a threshold
+ * uncompressed, which RFC 7692 allows once the extension is negotiated:
+ * most chat events are a few hundred bytes, and deflating them costs more
+ * than the bytes it saves.
+ * <p>
+ * A message skips the deflater only while no compressed frame is waiting
+ * to be written, so messages still leave in the order they were sent.
+ * Jetty creates the extension reflectively, hence the public no-argument
+ * constructor; the server sets the threshold right after.
+ */
+public class ThresholdPerMessageDeflateExtension extends PerMessageDeflateExtension {
+
+	private final Object lock = new Object();
+	private volatile int threshold;
+	// compressed frames not written yet, guarded by lock
+	private int pending;
+
+	void setThreshold(int threshold) {
+		this.threshold = threshold;
+	}
+
+	@Override
+	public void outgoingFrame(Frame frame, WriteCallback callback, BatchMode batchMode) {
+		synchronized (lock) {
+			if (pending == 0 && isWholeMessageBelowThreshold(frame)) {
+				nextOutgoingFrame(frame, callback, batchMode);
+				return;
+			}
+			pending++;
+		}
+		super.outgoingFrame(frame, new WriteCallback() {
+			@Override
+			public void writeFailed(Throwable x) {
+				written();
+				if (callback != null)
+					callback.writeFailed(x);
+			}
+
+			@Override
+			public void writeSuccess() {
+				written();
+				if (callback != null)
+					callback.writeSuccess();
+			}
+		}, batchMode);
+	}
+
+	private void written() {
+		synchronized (lock) {
+			pending--;
+		}
+	}
+
+	private boolean isWholeMessageBelowThreshold(Frame frame) {
+		return frame.isFin()
+				&& (frame.getType() == Frame.Type.TEXT || frame.getType() == Frame.Type.BINARY)
+				&& frame.getPayloadLength() < threshold;
+	}
+
+	@Override
+	public String toString() {
+		return super.toString() + "[threshold=" + threshold + "]";
+	}
+}
@@ -0,0 +1,60 @@
+package io.github.marcodiri.java_socketio_chatroom_server.cluster;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Connects a server node to the other nodes of a cluster. Messages sent in
+ * a room are published to the other nodes, and usernames and rooms are
+ * shared so that clients of different nodes see the same chat.
+ */
+public interface ClusterBus {
+	/**
+	 * Called by the server before it starts accepting connections.
+	 */
+	void open();
+
+	/**
+	 * Called by the server after it stopped accepting connections. Releases
+	 * the usernames claimed through this node.
+	 */
+	void close();
+
+	/**
+	 * @param listener Called with the room and the message for every message
+	 *                 published by another node
+	 */
+	void setMessageListener(BiConsumer<String, Message> listener);
+
+	/**
+	 * Deliver a message to the other nodes. The publishing node is not
+	 * notified of its own messages.
+	 */
+	void publish(String room, Message message);
+
+	/**
+	 * Atomically reserve a username across the cluster.
+	 *
+	 * @return {@code false} if any node already holds the username
+	 */
+	boolean claimUsername(String username);
+
+	/**
+	 * Free a username previously claimed through this node.
+	 */
+	void releaseUsername(String username);
+
+	/**
+	 * @return {@code false} if the room already exists in the cluster
+	 */
+	boolean createRoom(String room);
+
+	boolean hasRoom(String room);
+
+	/**
+	 * @return A read-only view of the rooms of the cluster
+	 */
+	Set<String> getRooms();
+}
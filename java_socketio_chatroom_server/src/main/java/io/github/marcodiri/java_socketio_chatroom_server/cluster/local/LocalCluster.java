@@ -0,0 +1,55 @@
+package io.github.marcodiri.java_socketio_chatroom_server.cluster.local;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * In-process cluster shared by {@link LocalClusterBus} nodes. It holds the
+ * cluster-wide usernames and rooms and relays messages between the nodes
+ * that are open. Rooms live as long as at least one node is open.
+ */
+public class LocalCluster {
+
+	private final Set<LocalClusterBus> nodes = new CopyOnWriteArraySet<>();
+	private final ConcurrentHashMap<String, LocalClusterBus> usernameOwners = new ConcurrentHashMap<>();
+	private final Set<String> rooms = ConcurrentHashMap.newKeySet();
+
+	synchronized void join(LocalClusterBus node) {
+		nodes.add(node);
+	}
+
+	synchronized void leave(LocalClusterBus node) {
+		nodes.remove(node);
+		usernameOwners.values().removeIf(node::equals);
+		if (nodes.isEmpty()) {
+			rooms.clear();
+		}
+	}
+
+	void publish(LocalClusterBus sender, String room, Message message) {
+		for (LocalClusterBus node : nodes) {
+			if (node != sender) {
+				node.deliver(room, message);
+			}
+		}
+	}
+
+	boolean claimUsername(LocalClusterBus node, String username) {
+		return usernameOwners.putIfAbsent(username, node) == null;
+	}
+
+	void releaseUsername(LocalClusterBus node, String username) {
+		usernameOwners.remove(username, node);
+	}
+
+	Set<String> getRooms() {
+		return rooms;
+	}
+
+	int getNodeCount() {
+		return nodes.size();
+	}
+}
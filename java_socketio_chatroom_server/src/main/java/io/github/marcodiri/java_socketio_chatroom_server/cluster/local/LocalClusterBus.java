@@ -0,0 +1,86 @@
+package io.github.marcodiri.java_socketio_chatroom_server.cluster.local;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.cluster.ClusterBus;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * ClusterBus for nodes running in the same JVM. A bus created without a
+ * cluster is a single-node cluster, which is what a standalone server uses.
+ * Messages are delivered synchronously on the publishing thread.
+ */
+public class LocalClusterBus implements ClusterBus {
+
+	private final LocalCluster cluster;
+
+	private volatile BiConsumer<String, Message> listener = (room, message) -> {
+	};
+
+	private static final Logger LOGGER = LogManager.getLogger(LocalClusterBus.class);
+
+	public LocalClusterBus() {
+		this(new LocalCluster());
+	}
+
+	public LocalClusterBus(LocalCluster cluster) {
+		this.cluster = cluster;
+	}
+
+	@Override
+	public void open() {
+		cluster.join(this);
+		LOGGER.info("Node joined the local cluster");
+	}
+
+	@Override
+	public void close() {
+		cluster.leave(this);
+		LOGGER.info("Node left the local cluster");
+	}
+
+	@Override
+	public void setMessageListener(BiConsumer<String, Message> listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public void publish(String room, Message message) {
+		cluster.publish(this, room, message);
+	}
+
+	@Override
+	public boolean claimUsername(String username) {
+		return cluster.claimUsername(this, username);
+	}
+
+	@Override
+	public void releaseUsername(String username) {
+		cluster.releaseUsername(this, username);
+	}
+
+	@Override
+	public boolean createRoom(String room) {
+		return cluster.getRooms().add(room);
+	}
+
+	@Override
+	public boolean hasRoom(String room) {
+		return cluster.getRooms().contains(room);
+	}
+
+	@Override
+	public Set<String> getRooms() {
+		return Collections.unmodifiableSet(cluster.getRooms());
+	}
+
+	void deliver(String room, Message message) {
+		LOGGER.debug(() -> String.format("Received message for room %s from the cluster", room));
+		listener.accept(room, message);
+	}
+}
@@ -0,0 +1,43 @@
+package io.github.marcodiri.java_socketio_chatroom_server.metrics;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, such as the connections accepted so far.
+ */
+public final class Counter implements Metric {
+
+	private final LongAdder count = new LongAdder();
+
+	Counter() {
+	}
+
+	public void increment() {
+		count.increment();
+	}
+
+	public void add(long amount) {
+		count.add(amount);
+	}
+
+	public long get() {
+		return count.sum();
+	}
+
+	@Override
+	public String type() {
+		return "counter";
+	}
+
+	@Override
+	public void writeText(String name, PrintWriter out) {
+		out.print(name + " " + get() + "\n");
+	}
+
+	@Override
+	public void addValues(String name, Map<String, Object> values) {
+		values.put(name, get());
+	}
+}
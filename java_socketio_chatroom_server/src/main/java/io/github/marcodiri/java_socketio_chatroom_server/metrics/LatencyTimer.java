@@ -0,0 +1,130 @@
+package io.github.marcodiri.java_socketio_chatroom_server.metrics;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations with fixed buckets from 100 µs to 10 s, cheap
+ * enough to record on every message. Percentiles are estimated as the upper
+ * bound of the bucket they fall in, capped at the longest duration recorded.
+ */
+public final class LatencyTimer implements Metric {
+
+	/**
+	 * Upper bounds of the buckets, in nanoseconds; a last bucket takes the
+	 * longer durations.
+	 */
+	static final long[] BUCKET_BOUNDS = {
+			100_000, 250_000, 500_000,
+			1_000_000, 2_500_000, 5_000_000,
+			10_000_000, 25_000_000, 50_000_000,
+			100_000_000, 250_000_000, 500_000_000,
+			1_000_000_000, 2_500_000_000L, 5_000_000_000L,
+			10_000_000_000L
+	};
+
+	private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+	private final LongAdder sum = new LongAdder();
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	LatencyTimer() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * @param nanos A duration measured with {@link System#nanoTime()}
+	 */
+	public void record(long nanos) {
+		int bucket = Arrays.binarySearch(BUCKET_BOUNDS, nanos);
+		buckets[bucket >= 0 ? bucket : -bucket - 1].increment();
+		sum.add(nanos);
+		max.accumulate(nanos);
+	}
+
+	/**
+	 * Record the time elapsed since {@code startNanos}.
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (LongAdder bucket : buckets) {
+			count += bucket.sum();
+		}
+		return count;
+	}
+
+	/**
+	 * @param quantile Between 0 and 1
+	 * @return The estimated duration in nanoseconds below which that share of
+	 *         the durations falls, or 0 if none was recorded
+	 */
+	public long getQuantile(double quantile) {
+		long[] counts = counts();
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			seen += counts[i];
+			if (seen > 0 && seen >= rank)
+				return Math.min(BUCKET_BOUNDS[i], max.get());
+		}
+		return max.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	@Override
+	public String type() {
+		return "histogram";
+	}
+
+	@Override
+	public void writeText(String name, PrintWriter out) {
+		long[] counts = counts();
+		long cumulative = 0;
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			cumulative += counts[i];
+			out.print(name + "_bucket{le=\"" + seconds(BUCKET_BOUNDS[i]) + "\"} " + cumulative + "\n");
+		}
+		cumulative += counts[BUCKET_BOUNDS.length];
+		out.print(name + "_bucket{le=\"+Inf\"} " + cumulative + "\n");
+		out.print(name + "_sum " + seconds(sum.sum()) + "\n");
+		out.print(name + "_count " + cumulative + "\n");
+	}
+
+	@Override
+	public void addValues(String name, Map<String, Object> values) {
+		values.put(name + "_count", getCount());
+		values.put(name + "_p50", seconds(getQuantile(0.5)));
+		values.put(name + "_p99", seconds(getQuantile(0.99)));
+		values.put(name + "_max", seconds(getMax()));
+	}
+
+	private long[] counts() {
+		long[] counts = new long[buckets.length];
+		for (int i = 0; i < buckets.length; i++) {
+			counts[i] = buckets[i].sum();
+		}
+		return counts;
+	}
+
+	private static double seconds(long nanos) {
+		return nanos / NANOS_PER_SECOND;
+	}
+}
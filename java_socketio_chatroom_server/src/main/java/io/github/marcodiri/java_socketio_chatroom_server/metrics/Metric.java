@@ -0,0 +1,25 @@
+package io.github.marcodiri.java_socketio_chatroom_server.metrics;
+
+import java.io.PrintWriter;
+import java.util.Map;
+
+/**
+ * A value of {@link ServerMetrics}.
+ */
+interface Metric {
+
+	/**
+	 * @return The metric type of the Prometheus text format
+	 */
+	String type();
+
+	/**
+	 * Write the samples of the metric in the Prometheus text format.
+	 */
+	void writeText(String name, PrintWriter out);
+
+	/**
+	 * Add the current values of the metric, keyed by attribute name, for JMX.
+	 */
+	void addValues(String name, Map<String, Object> values);
+}
@@ -0,0 +1,205 @@
+package io.github.marcodiri.java_socketio_chatroom_server.metrics;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Named counters, gauges and latency timers of a server, readable in the
+ * Prometheus text format and as the attributes of an MBean.
+ * <p>
+ * Metrics are created once, usually when the server is built, and then
+ * updated without locking from any thread. Names follow the Prometheus
+ * conventions: counters end in {@code _total} and timers in
+ * {@code _seconds}.
+ */
+public class ServerMetrics {
+
+	public static final String TEXT_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final Map<String, Registered> metrics = new ConcurrentSkipListMap<>();
+	private ObjectName mBeanName;
+
+	public Counter counter(String name, String help) {
+		return register(name, help, new Counter());
+	}
+
+	public LatencyTimer timer(String name, String help) {
+		return register(name, help, new LatencyTimer());
+	}
+
+	/**
+	 * @param value Read every time the metrics are
+	 */
+	public void gauge(String name, String help, DoubleSupplier value) {
+		register(name, help, new Supplied("gauge", value));
+	}
+
+	/**
+	 * A counter kept by some other object, such as the queries a repository
+	 * has run so far.
+	 *
+	 * @param value Read every time the metrics are; must never go down
+	 */
+	public void counter(String name, String help, DoubleSupplier value) {
+		register(name, help, new Supplied("counter", value));
+	}
+
+	/**
+	 * Write every metric in the Prometheus text format, sorted by name.
+	 */
+	public void writeText(PrintWriter out) {
+		for (Map.Entry<String, Registered> entry : metrics.entrySet()) {
+			Registered registered = entry.getValue();
+			out.print("# HELP " + entry.getKey() + " " + registered.help + "\n");
+			out.print("# TYPE " + entry.getKey() + " " + registered.metric.type() + "\n");
+			registered.metric.writeText(entry.getKey(), out);
+		}
+		out.flush();
+	}
+
+	/**
+	 * @return The current value of every metric, by attribute name: counters
+	 *         and gauges by their own name, timers as their count and their
+	 *         median, 99th percentile and longest durations in seconds
+	 */
+	public Map<String, Object> values() {
+		Map<String, Object> values = new LinkedHashMap<>();
+		for (Map.Entry<String, Registered> entry : metrics.entrySet()) {
+			entry.getValue().metric.addValues(entry.getKey(), values);
+		}
+		return values;
+	}
+
+	/**
+	 * Register an MBean with the platform MBean server whose read-only
+	 * attributes are the {@link #values()}.
+	 *
+	 * @param name The object name of the MBean
+	 * @throws JMException If the name is not valid or taken
+	 */
+	public void registerMBean(String name) throws JMException {
+		ObjectName objectName = new ObjectName(name);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), objectName);
+		mBeanName = objectName;
+	}
+
+	/**
+	 * Unregister the MBean of {@link #registerMBean(String)}, if it was
+	 * registered.
+	 */
+	public void unregisterMBean() throws JMException {
+		if (mBeanName != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(mBeanName);
+			mBeanName = null;
+		}
+	}
+
+	private <T extends Metric> T register(String name, String help, T metric) {
+		if (metrics.putIfAbsent(name, new Registered(metric, help)) != null)
+			throw new IllegalArgumentException("Metric already registered: " + name);
+		return metric;
+	}
+
+	private static final class Registered {
+		private final Metric metric;
+		private final String help;
+
+		private Registered(Metric metric, String help) {
+			this.metric = metric;
+			this.help = help;
+		}
+	}
+
+	/**
+	 * A value read when the metrics are, such as the number of users.
+	 */
+	private static final class Supplied implements Metric {
+		private final String type;
+		private final DoubleSupplier value;
+
+		private Supplied(String type, DoubleSupplier value) {
+			this.type = type;
+			this.value = value;
+		}
+
+		@Override
+		public String type() {
+			return type;
+		}
+
+		@Override
+		public void writeText(String name, PrintWriter out) {
+			out.print(name + " " + value.getAsDouble() + "\n");
+		}
+
+		@Override
+		public void addValues(String name, Map<String, Object> values) {
+			values.put(name, value.getAsDouble());
+		}
+	}
+
+	/**
+	 * Reads the metrics on every call, so that metrics registered after the
+	 * MBean show up too.
+	 */
+	private final class MetricsMBean implements DynamicMBean {
+
+		@Override
+		public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			Object value = values().get(attribute);
+			if (value == null)
+				throw new AttributeNotFoundException(attribute);
+			return value;
+		}
+
+		@Override
+		public AttributeList getAttributes(String[] attributes) {
+			Map<String, Object> values = values();
+			AttributeList list = new AttributeList();
+			for (String attribute : attributes) {
+				if (values.containsKey(attribute))
+					list.add(new Attribute(attribute, values.get(attribute)));
+			}
+			return list;
+		}
+
+		@Override
+		public void setAttribute(Attribute attribute) {
+			throw new UnsupportedOperationException("Metrics are read-only");
+		}
+
+		@Override
+		public AttributeList setAttributes(AttributeList attributes) {
+			return new AttributeList();
+		}
+
+		@Override
+		public Object invoke(String actionName, Object[] params, String[] signature) {
+			throw new UnsupportedOperationException("Metrics have no operations");
+		}
+
+		@Override
+		public MBeanInfo getMBeanInfo() {
+			Map<String, Object> values = values();
+			MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[values.size()];
+			int i = 0;
+			for (Map.Entry<String, Object> value : values.entrySet()) {
+				attributes[i++] = new MBeanAttributeInfo(value.getKey(), value.getValue().getClass().getName(),
+						value.getKey(), true, false, false);
+			}
+			return new MBeanInfo(ServerMetrics.class.getName(), "Chatroom server metrics", attributes, null, null, null);
+		}
+	}
+}
@@ -2,17 +2,29 @@ package io.github.marcodiri.java_socketio_chatroom_server.model;
 
 import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
 
-import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoField;
 
 public final class ServerMessage extends Message {
 
-	public ServerMessage(Timestamp timestamp, String user, String message) {
+	/**
+	 * Same text as {@link java.sql.Timestamp#toString()}, in the server's time zone
+	 */
+	private static final DateTimeFormatter TIMESTAMP_FORMAT = new DateTimeFormatterBuilder()
+			.appendPattern("yyyy-MM-dd HH:mm:ss")
+			.appendFraction(ChronoField.NANO_OF_SECOND, 1, 9, true)
+			.toFormatter()
+			.withZone(ZoneId.systemDefault());
+
+	public ServerMessage(long timestamp, String user, String message) {
 		super(timestamp, user, message);
 	}
 
 	@Override
-	public String getFormattedMessage() {
-		return this.getTimestamp().toString() + " " + this.getUser() + ": " + this.getUserMessage();
+	protected String formatMessage() {
+		return TIMESTAMP_FORMAT.format(getInstant()) + " " + this.getUser() + ": " + this.getUserMessage();
 	}
 
 }
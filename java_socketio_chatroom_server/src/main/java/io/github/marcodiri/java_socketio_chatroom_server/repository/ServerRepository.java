@@ -2,10 +2,52 @@ package io.github.marcodiri.java_socketio_chatroom_server.repository;
 
 import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
 
+import java.sql.Timestamp;
 import java.util.List;
 
 public interface ServerRepository {
+	/**
+	 * Called by the server before it starts accepting connections.
+	 */
+	default void open() {
+	}
+
+	/**
+	 * Called by the server after it stopped accepting connections.
+	 */
+	default void close() {
+	}
+
+	/**
+	 * Retrieve the messages of every room. The server itself never calls
+	 * this; it is meant for tests and tools.
+	 */
 	List<Message> findAll();
 
-	void save(Message message);
+	/**
+	 * Retrieve the most recent messages of a room.
+	 *
+	 * @param room  The room the messages were sent to
+	 * @param limit The maximum number of messages to retrieve
+	 * @return The last {@code limit} messages, oldest first
+	 */
+	List<Message> findLatest(String room, int limit);
+
+	/**
+	 * Retrieve a page of messages of a room older than the given timestamp.
+	 *
+	 * @param room      The room the messages were sent to
+	 * @param timestamp The exclusive upper bound of the page
+	 * @param limit     The maximum number of messages to retrieve
+	 * @return The last {@code limit} messages before {@code timestamp}, oldest first
+	 */
+	List<Message> findBefore(String room, Timestamp timestamp, int limit);
+
+	void save(String room, Message message);
+
+	default void saveAll(String room, List<Message> messages) {
+		for (Message message : messages) {
+			save(room, message);
+		}
+	}
 }
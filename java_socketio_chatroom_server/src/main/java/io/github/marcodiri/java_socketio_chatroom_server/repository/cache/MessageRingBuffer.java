@@ -0,0 +1,101 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.cache;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-capacity buffer of the most recent messages, kept in timestamp order.
+ * Once full, adding a message evicts the oldest one. Not thread-safe.
+ */
+class MessageRingBuffer {
+
+	private final Message[] ring;
+	private int head = 0;
+	private int size = 0;
+
+	MessageRingBuffer(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+		this.ring = new Message[capacity];
+	}
+
+	int capacity() {
+		return ring.length;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Insert a message at its timestamp position, which is the tail
+	 * for messages arriving in order.
+	 *
+	 * @param message The message to insert
+	 * @return false if a message had to be evicted or was older than the whole window
+	 */
+	boolean add(Message message) {
+		long time = message.getTimestamp();
+		boolean lossless = true;
+		if (size == ring.length) {
+			if (time < get(0).getTimestamp())
+				return false;
+			ring[head] = null;
+			head = (head + 1) % ring.length;
+			size--;
+			lossless = false;
+		}
+		int i = size;
+		while (i > 0 && get(i - 1).getTimestamp() > time) {
+			set(i, get(i - 1));
+			i--;
+		}
+		set(i, message);
+		size++;
+		return lossless;
+	}
+
+	/**
+	 * @return The last {@code limit} buffered messages, oldest first
+	 */
+	List<Message> latest(int limit) {
+		return range(Math.max(0, size - limit), size);
+	}
+
+	/**
+	 * @return The last {@code limit} buffered messages strictly older than {@code time}, oldest first
+	 */
+	List<Message> before(long time, int limit) {
+		int end = size;
+		while (end > 0 && get(end - 1).getTimestamp() >= time) {
+			end--;
+		}
+		return range(Math.max(0, end - limit), end);
+	}
+
+	void clear() {
+		for (int i = 0; i < ring.length; i++) {
+			ring[i] = null;
+		}
+		head = 0;
+		size = 0;
+	}
+
+	private List<Message> range(int from, int to) {
+		List<Message> messages = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) {
+			messages.add(get(i));
+		}
+		return messages;
+	}
+
+	private Message get(int i) {
+		return ring[(head + i) % ring.length];
+	}
+
+	private void set(int i, Message message) {
+		ring[(head + i) % ring.length] = message;
+	}
+}
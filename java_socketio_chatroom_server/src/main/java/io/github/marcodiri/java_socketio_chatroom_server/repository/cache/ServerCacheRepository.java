@@ -0,0 +1,157 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.cache;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ServerRepository decorator that serves history reads from an in-memory
+ * window of the most recent messages of each room, falling back to the
+ * wrapped repository only when the window cannot answer the query.
+ * The window of a room is loaded the first time the room is read.
+ */
+public class ServerCacheRepository implements ServerRepository {
+
+	private final ServerRepository repository;
+	private final int capacity;
+	private final ConcurrentHashMap<String, RoomWindow> windows = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	private static final Logger LOGGER = LogManager.getLogger(ServerCacheRepository.class);
+
+	public ServerCacheRepository(ServerRepository repository, int capacity) {
+		this.repository = repository;
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive");
+		this.capacity = capacity;
+	}
+
+	@Override
+	public void open() {
+		windows.clear();
+		repository.open();
+	}
+
+	@Override
+	public void close() {
+		repository.close();
+		LOGGER.info("Cache closed with {} hits and {} misses", hits.get(), misses.get());
+	}
+
+	@Override
+	public List<Message> findAll() {
+		return miss(repository.findAll());
+	}
+
+	@Override
+	public List<Message> findLatest(String room, int limit) {
+		RoomWindow window = warmWindow(room);
+		synchronized (window) {
+			List<Message> page = window.buffer.latest(limit);
+			if (window.complete || page.size() == limit) {
+				return hit(page);
+			}
+		}
+		return miss(repository.findLatest(room, limit));
+	}
+
+	@Override
+	public List<Message> findBefore(String room, Timestamp timestamp, int limit) {
+		RoomWindow window = warmWindow(room);
+		synchronized (window) {
+			List<Message> page = window.buffer.before(timestamp.getTime(), limit);
+			if (window.complete || page.size() == limit) {
+				return hit(page);
+			}
+		}
+		return miss(repository.findBefore(room, timestamp, limit));
+	}
+
+	@Override
+	public void save(String room, Message message) {
+		RoomWindow window = window(room);
+		// saving under the lock keeps a concurrent warm-up from loading the
+		// message from the repository and then caching it a second time
+		synchronized (window) {
+			repository.save(room, message);
+			window.cache(message);
+		}
+	}
+
+	@Override
+	public void saveAll(String room, List<Message> messages) {
+		RoomWindow window = window(room);
+		synchronized (window) {
+			repository.saveAll(room, messages);
+			for (Message message : messages) {
+				window.cache(message);
+			}
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private RoomWindow window(String room) {
+		return windows.computeIfAbsent(room, r -> new RoomWindow(capacity));
+	}
+
+	private RoomWindow warmWindow(String room) {
+		RoomWindow window = window(room);
+		synchronized (window) {
+			if (!window.warm) {
+				List<Message> latest = repository.findLatest(room, capacity);
+				window.buffer.clear();
+				for (Message message : latest) {
+					window.buffer.add(message);
+				}
+				window.complete = latest.size() < capacity;
+				window.warm = true;
+				LOGGER.info("Cache of room {} warmed with {} messages", room, latest.size());
+			}
+		}
+		return window;
+	}
+
+	private List<Message> hit(List<Message> page) {
+		hits.incrementAndGet();
+		LOGGER.info("Served {} messages from cache", page.size());
+		return page;
+	}
+
+	private List<Message> miss(List<Message> page) {
+		misses.incrementAndGet();
+		LOGGER.info("Cache miss, served {} messages from repository", page.size());
+		return page;
+	}
+
+	private static final class RoomWindow {
+		private final MessageRingBuffer buffer;
+		private boolean warm = false;
+		private boolean complete = false;
+
+		private RoomWindow(int capacity) {
+			this.buffer = new MessageRingBuffer(capacity);
+		}
+
+		private void cache(Message message) {
+			if (!buffer.add(message)) {
+				complete = false;
+			}
+		}
+	}
+}
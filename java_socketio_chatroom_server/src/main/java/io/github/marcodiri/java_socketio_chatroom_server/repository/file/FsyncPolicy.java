@@ -0,0 +1,43 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.file;
+
+import java.util.Locale;
+
+/**
+ * When {@link ServerFileRepository} forces saved messages to the disk.
+ * Every policy forces them when the repository is closed.
+ */
+public enum FsyncPolicy {
+	/**
+	 * Before a save returns: no saved message is lost, at the cost of a disk
+	 * flush per save, or per batch with {@code saveAll}.
+	 */
+	EVERY_WRITE,
+	/**
+	 * On a background thread at a fixed interval: a crash loses at most the
+	 * messages of the last interval.
+	 */
+	PERIODIC,
+	/**
+	 * Whenever the operating system writes back its page cache: a crash of
+	 * the JVM loses nothing, a crash of the machine loses what was not
+	 * written back yet.
+	 */
+	OS;
+
+	/**
+	 * @param name The policy in lower case with dashes, as in
+	 *             {@code every-write}
+	 * @throws IllegalArgumentException If there is no such policy
+	 */
+	public static FsyncPolicy forName(String name) {
+		for (FsyncPolicy policy : values()) {
+			if (policy.getName().equals(name))
+				return policy;
+		}
+		throw new IllegalArgumentException("Unknown fsync policy: " + name);
+	}
+
+	public String getName() {
+		return name().toLowerCase(Locale.ROOT).replace('_', '-');
+	}
+}
@@ -0,0 +1,265 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.file;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A file of a room's log, preallocated to its capacity and filled with
+ * records from the start. A record is:
+ * <pre>
+ * int    length of the body
+ * int    CRC-32 of the body
+ * body:
+ * long   timestamp in milliseconds
+ * varint length of the user in bytes
+ * bytes  user in UTF-8
+ * bytes  message in UTF-8, up to the end of the body
+ * </pre>
+ * Records are appended with positional writes and read through a read-only
+ * mapping of the whole file, so reads make no system calls and share the
+ * page cache with the writes. The space after the last record is zeros.
+ */
+final class LogSegment implements Closeable {
+
+	static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+	private static final int MIN_BODY_SIZE = Long.BYTES + 1;
+	private static final int ZEROS_SIZE = 64 * 1024;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer mapped;
+	private final int capacity;
+	/** Guarded by the room log */
+	private int size;
+	private volatile boolean dirty = false;
+
+	private LogSegment(FileChannel channel, int capacity) throws IOException {
+		this.channel = channel;
+		this.capacity = capacity;
+		this.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, capacity);
+	}
+
+	/**
+	 * Create an empty segment.
+	 */
+	static LogSegment create(Path file, int capacity) throws IOException {
+		FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			channel.write(ByteBuffer.allocate(1), capacity - 1L);
+			return new LogSegment(channel, capacity);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open an existing segment, passing each of its records to
+	 * {@code listener}. Records are read up to the first one that is not
+	 * whole, as the last one written before a crash may be; it and what
+	 * follows are zeroed, to be overwritten by the next append.
+	 */
+	static LogSegment open(Path file, RecordListener listener) throws IOException {
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long capacity = channel.size();
+			if (capacity > Integer.MAX_VALUE)
+				throw new IOException("Log segment too large: " + file);
+			LogSegment segment = new LogSegment(channel, (int) capacity);
+			segment.recover(listener);
+			return segment;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return The encoded record of {@code message}, ready to be appended
+	 */
+	static ByteBuffer encode(Message message) {
+		byte[] user = message.getUser().getBytes(StandardCharsets.UTF_8);
+		byte[] text = message.getUserMessage().getBytes(StandardCharsets.UTF_8);
+		int bodySize = Long.BYTES + varintSize(user.length) + user.length + text.length;
+		ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + bodySize);
+		record.putInt(bodySize);
+		record.putInt(0);
+		record.putLong(message.getTimestamp());
+		putVarint(record, user.length);
+		record.put(user);
+		record.put(text);
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), HEADER_SIZE, bodySize);
+		record.putInt(Integer.BYTES, (int) crc.getValue());
+		record.flip();
+		return record;
+	}
+
+	int capacity() {
+		return capacity;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean fits(ByteBuffer record) {
+		return record.remaining() <= capacity - size;
+	}
+
+	/**
+	 * Write a record after the last one. The caller must have checked that
+	 * it {@link #fits(ByteBuffer)}.
+	 *
+	 * @return The position of the record
+	 */
+	int append(ByteBuffer record) throws IOException {
+		int position = size;
+		int end = position + record.remaining();
+		while (record.hasRemaining()) {
+			channel.write(record, end - record.remaining());
+		}
+		size = end;
+		dirty = true;
+		return position;
+	}
+
+	/**
+	 * @return Whether records were appended since the last flush
+	 */
+	boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Force the records appended since the last flush to the disk.
+	 */
+	void flush() throws IOException {
+		if (dirty) {
+			dirty = false;
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Decode the records between two positions that are older than
+	 * {@code before}, or all of them if {@code all}. Records that do not
+	 * qualify are skipped after reading their timestamp.
+	 *
+	 * @param from Position of the first record
+	 * @param to   End of the last record
+	 */
+	void read(int from, int to, long before, boolean all, List<Message> into) {
+		ByteBuffer view = mapped.duplicate();
+		int position = from;
+		while (position < to) {
+			int bodySize = view.getInt(position);
+			long timestamp = view.getLong(position + HEADER_SIZE);
+			int end = position + HEADER_SIZE + bodySize;
+			if (all || timestamp < before) {
+				view.position(position + HEADER_SIZE + Long.BYTES);
+				byte[] user = new byte[getVarint(view)];
+				view.get(user);
+				byte[] text = new byte[end - view.position()];
+				view.get(text);
+				into.add(new ServerMessage(timestamp,
+						new String(user, StandardCharsets.UTF_8), new String(text, StandardCharsets.UTF_8)));
+			}
+			position = end;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private void recover(RecordListener listener) throws IOException {
+		CRC32 crc = new CRC32();
+		ByteBuffer view = mapped.duplicate();
+		int position = 0;
+		while (capacity - position >= HEADER_SIZE + MIN_BODY_SIZE) {
+			int bodySize = view.getInt(position);
+			if (bodySize < MIN_BODY_SIZE || bodySize > capacity - position - HEADER_SIZE)
+				break;
+			view.limit(position + HEADER_SIZE + bodySize).position(position + HEADER_SIZE);
+			crc.reset();
+			crc.update(view);
+			view.clear();
+			if ((int) crc.getValue() != view.getInt(position + Integer.BYTES))
+				break;
+			listener.record(this, position, position + HEADER_SIZE + bodySize, view.getLong(position + HEADER_SIZE));
+			position += HEADER_SIZE + bodySize;
+		}
+		size = position;
+		if (position < capacity && !isZero(view, position, Math.min(capacity, position + HEADER_SIZE)))
+			zero(position);
+	}
+
+	private void zero(int from) throws IOException {
+		ByteBuffer zeros = ByteBuffer.allocate(ZEROS_SIZE);
+		for (int position = from; position < capacity; position += ZEROS_SIZE) {
+			zeros.clear().limit(Math.min(ZEROS_SIZE, capacity - position));
+			while (zeros.hasRemaining()) {
+				channel.write(zeros, position + zeros.position());
+			}
+		}
+		channel.force(false);
+	}
+
+	private static boolean isZero(ByteBuffer buffer, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) != 0)
+				return false;
+		}
+		return true;
+	}
+
+	private static int varintSize(int value) {
+		int size = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	private static void putVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static int getVarint(ByteBuffer buffer) {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Receives the records found when a segment is opened.
+	 */
+	interface RecordListener {
+		void record(LogSegment segment, int position, int end, long timestamp);
+	}
+}
@@ -0,0 +1,254 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.file;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The messages of a room, in the order they were saved, in a directory of
+ * {@link LogSegment}s named after their sequence number. The first segment
+ * is {@link #INITIAL_SEGMENT_SIZE} bytes and each next one twice the one
+ * before, up to the segment size, so a room with a few messages takes a few
+ * pages of disk rather than a whole segment.
+ * <p>
+ * Messages are saved in arrival order but read in timestamp order, and a
+ * client with a skewed clock can send a message older than the ones before
+ * it. A sparse index splits the log into chunks of about
+ * {@link #INDEX_INTERVAL} bytes and keeps, for each, the oldest timestamp in
+ * it and the newest timestamp up to its end. A page is read walking the
+ * chunks from the last one: chunks whose messages are all too new are
+ * skipped, and the walk stops at the first chunk that cannot hold a message
+ * newer than the ones already found. A message stamped far in the future
+ * keeps the walk going back to it, as it belongs to every page of latest
+ * messages.
+ * <p>
+ * Saves are serialized. Reads take no lock: a save fills or replaces a slot
+ * of the volatile {@code chunks} array, growing it into a new array when
+ * full, and only then writes the volatile {@code chunkCount}; a read takes
+ * the count first and then the array, so it sees every chunk up to the
+ * count, and a chunk only ever covers records written before it was
+ * published.
+ */
+final class RoomLog implements Closeable {
+
+	static final int INDEX_INTERVAL = 4 * 1024;
+	static final int INITIAL_SEGMENT_SIZE = 64 * 1024;
+
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private final Path directory;
+	private final int segmentSize;
+
+	/** Guarded by this */
+	private final List<LogSegment> segments = new ArrayList<>();
+	/** Guarded by this */
+	private long newest = Long.MIN_VALUE;
+
+	private volatile Chunk[] chunks = new Chunk[16];
+	private volatile int chunkCount = 0;
+
+	private RoomLog(Path directory, int segmentSize) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Open the log in {@code directory}, creating the directory if needed,
+	 * and index the messages already in it.
+	 */
+	static RoomLog open(Path directory, int segmentSize) throws IOException {
+		Files.createDirectories(directory);
+		RoomLog log = new RoomLog(directory, segmentSize);
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+			stream.forEach(files::add);
+		}
+		files.sort(Comparator.comparing(Path::getFileName));
+		try {
+			for (Path file : files) {
+				log.segments.add(LogSegment.open(file, log::index));
+			}
+		} catch (IOException e) {
+			log.close();
+			throw e;
+		}
+		return log;
+	}
+
+	/**
+	 * Append messages, rolling to a new segment when the last one is full.
+	 *
+	 * @param force Whether to force them to the disk before returning
+	 */
+	synchronized void append(List<Message> messages, boolean force) throws IOException {
+		for (Message message : messages) {
+			ByteBuffer record = LogSegment.encode(message);
+			LogSegment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+			if (segment == null || !segment.fits(record)) {
+				int capacity = segment == null
+						? Math.min(segmentSize, INITIAL_SEGMENT_SIZE)
+						: (int) Math.min(segmentSize, 2L * segment.capacity());
+				segment = LogSegment.create(directory.resolve(String.format("%020d%s", segments.size(), SEGMENT_SUFFIX)),
+						Math.max(capacity, record.remaining()));
+				segments.add(segment);
+			}
+			int position = segment.append(record);
+			index(segment, position, segment.size(), message.getTimestamp());
+		}
+		if (force)
+			flush();
+	}
+
+	/**
+	 * Force the messages appended since the last flush to the disk.
+	 */
+	synchronized void flush() throws IOException {
+		for (LogSegment segment : segments) {
+			segment.flush();
+		}
+	}
+
+	synchronized boolean isDirty() {
+		for (LogSegment segment : segments) {
+			if (segment.isDirty())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return The last {@code limit} messages, oldest first
+	 */
+	List<Message> latest(int limit) {
+		return page(0, true, limit);
+	}
+
+	/**
+	 * @return The last {@code limit} messages older than {@code before},
+	 *         oldest first
+	 */
+	List<Message> before(long before, int limit) {
+		return page(before, false, limit);
+	}
+
+	/**
+	 * @return Every message, in the order they were saved
+	 */
+	List<Message> all() {
+		int n = chunkCount;
+		Chunk[] snapshot = chunks;
+		List<Message> messages = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			Chunk chunk = snapshot[i];
+			chunk.segment.read(chunk.start, chunk.end, 0, true, messages);
+		}
+		return messages;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		IOException failure = null;
+		for (LogSegment segment : segments) {
+			try {
+				segment.flush();
+				segment.close();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		segments.clear();
+		if (failure != null)
+			throw failure;
+	}
+
+	private List<Message> page(long before, boolean all, int limit) {
+		List<Message> messages = new ArrayList<>();
+		if (limit <= 0)
+			return messages;
+		int n = chunkCount;
+		Chunk[] snapshot = chunks;
+		// pages of the chunks read, oldest first, and the newest timestamps found
+		Deque<List<Message>> pages = new ArrayDeque<>();
+		PriorityQueue<Long> newestFound = new PriorityQueue<>();
+		for (int i = n - 1; i >= 0; i--) {
+			Chunk chunk = snapshot[i];
+			if (newestFound.size() == limit && chunk.newest <= newestFound.peek())
+				break;
+			if (!all && chunk.oldest >= before)
+				continue;
+			List<Message> page = new ArrayList<>();
+			chunk.segment.read(chunk.start, chunk.end, before, all, page);
+			for (Message message : page) {
+				newestFound.add(message.getTimestamp());
+				if (newestFound.size() > limit)
+					newestFound.poll();
+			}
+			pages.addFirst(page);
+		}
+		for (List<Message> page : pages) {
+			messages.addAll(page);
+		}
+		// stable, so messages with the same timestamp keep their saving order
+		messages.sort(Comparator.comparingLong(Message::getTimestamp));
+		return messages.size() > limit
+				? new ArrayList<>(messages.subList(messages.size() - limit, messages.size()))
+				: messages;
+	}
+
+	/**
+	 * Add a record to the last chunk, or start a new chunk with it. The last
+	 * chunk is replaced rather than changed, so readers holding it see the
+	 * records it covered when they read it.
+	 */
+	private void index(LogSegment segment, int position, int end, long timestamp) {
+		newest = Math.max(newest, timestamp);
+		int n = chunkCount;
+		Chunk[] current = chunks;
+		Chunk last = n > 0 ? current[n - 1] : null;
+		if (last != null && last.segment == segment && last.end == position && last.end - last.start < INDEX_INTERVAL) {
+			current[n - 1] = new Chunk(segment, last.start, end, Math.min(last.oldest, timestamp), newest);
+			// publishes the new last chunk
+			chunkCount = n;
+			return;
+		}
+		if (n == current.length) {
+			current = Arrays.copyOf(current, n * 2);
+			chunks = current;
+		}
+		current[n] = new Chunk(segment, position, end, timestamp, newest);
+		chunkCount = n + 1;
+	}
+
+	/**
+	 * Consecutive records of a segment.
+	 */
+	private static final class Chunk {
+		private final LogSegment segment;
+		private final int start;
+		private final int end;
+		/** The oldest timestamp of the chunk */
+		private final long oldest;
+		/** The newest timestamp of the log up to the end of the chunk */
+		private final long newest;
+
+		private Chunk(LogSegment segment, int start, int end, long oldest, long newest) {
+			this.segment = segment;
+			this.start = start;
+			this.end = end;
+			this.oldest = oldest;
+			this.newest = newest;
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.file;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ServerRepository that appends the messages of each room to a log of
+ * files in a directory of its own, named {@code room-} and the hexadecimal
+ * UTF-8 bytes of the room. Names longer than {@link #MAX_HEX_NAME_BYTES}
+ * bytes would not fit in a file name, so their directory is named
+ * {@code hash-} and the SHA-256 of the room instead, and holds the room in a
+ * {@code room.name} file. The logs are indexed when the repository is
+ * opened, and a record cut short by a crash is dropped then.
+ * <p>
+ * Each log is a sequence of segments growing up to {@code segmentSize}
+ * bytes, read through memory mappings: pages of history are decoded
+ * straight from the page cache, without copying the files into the heap
+ * first. When saved messages are forced to the disk is up to the
+ * {@link FsyncPolicy}.
+ * <p>
+ * I/O errors are thrown as {@link UncheckedIOException}, and saves once
+ * the repository is closed are rejected with an
+ * {@link IllegalStateException}.
+ */
+public class ServerFileRepository implements ServerRepository {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+	public static final long DEFAULT_FSYNC_INTERVAL = 1000;
+
+	/** Longest room whose directory is named after its bytes, 245 characters */
+	static final int MAX_HEX_NAME_BYTES = 120;
+
+	private static final String ROOM_DIRECTORY_PREFIX = "room-";
+	private static final String HASHED_ROOM_DIRECTORY_PREFIX = "hash-";
+	private static final String ROOM_NAME_FILE = "room.name";
+
+	private final Path directory;
+	private final int segmentSize;
+	private final FsyncPolicy fsyncPolicy;
+	private final long fsyncInterval;
+
+	private final ConcurrentHashMap<String, RoomLog> rooms = new ConcurrentHashMap<>();
+	private ScheduledExecutorService flusher;
+	private volatile boolean open = false;
+
+	private static final Logger LOGGER = LogManager.getLogger(ServerFileRepository.class);
+
+	/**
+	 * @param directory     Where the logs of the rooms are, created if needed
+	 * @param segmentSize   Largest size of the files of a log in bytes; a
+	 *                      message larger than that gets a file of its own
+	 *                      size
+	 * @param fsyncPolicy   When saved messages are forced to the disk
+	 * @param fsyncInterval Milliseconds between forces with
+	 *                      {@link FsyncPolicy#PERIODIC}
+	 * @throws IllegalArgumentException If the segment size or the interval
+	 *                                  is not positive
+	 */
+	public ServerFileRepository(Path directory, int segmentSize, FsyncPolicy fsyncPolicy, long fsyncInterval) {
+		if (segmentSize <= 0)
+			throw new IllegalArgumentException("Segment size must be positive");
+		if (fsyncInterval <= 0)
+			throw new IllegalArgumentException("Fsync interval must be positive");
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.fsyncPolicy = fsyncPolicy;
+		this.fsyncInterval = fsyncInterval;
+	}
+
+	@Override
+	public void open() {
+		try {
+			Files.createDirectories(directory);
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+				for (Path roomDirectory : stream) {
+					String room = roomName(roomDirectory);
+					if (room != null)
+						rooms.put(room, RoomLog.open(roomDirectory, segmentSize));
+				}
+			}
+		} catch (IOException e) {
+			closeRooms();
+			throw new UncheckedIOException("Could not open the history in " + directory, e);
+		}
+		if (fsyncPolicy == FsyncPolicy.PERIODIC) {
+			flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "file-repository-flusher");
+				thread.setDaemon(true);
+				return thread;
+			});
+			flusher.scheduleWithFixedDelay(this::flush, fsyncInterval, fsyncInterval, TimeUnit.MILLISECONDS);
+		}
+		open = true;
+		LOGGER.info("File repository opened with {} rooms in {}, fsync {}",
+				rooms.size(), directory, fsyncPolicy.getName());
+	}
+
+	@Override
+	public void close() {
+		open = false;
+		if (flusher != null) {
+			flusher.shutdown();
+			try {
+				flusher.awaitTermination(fsyncInterval + 5000, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			flusher = null;
+		}
+		closeRooms();
+		LOGGER.info("File repository closed");
+	}
+
+	@Override
+	public List<Message> findAll() {
+		List<Message> all = new ArrayList<>();
+		for (RoomLog log : rooms.values()) {
+			all.addAll(log.all());
+		}
+		all.sort(Comparator.comparingLong(Message::getTimestamp));
+		return all;
+	}
+
+	@Override
+	public List<Message> findLatest(String room, int limit) {
+		RoomLog log = rooms.get(room);
+		return log != null ? log.latest(limit) : new ArrayList<>();
+	}
+
+	@Override
+	public List<Message> findBefore(String room, Timestamp timestamp, int limit) {
+		RoomLog log = rooms.get(room);
+		return log != null ? log.before(timestamp.getTime(), limit) : new ArrayList<>();
+	}
+
+	@Override
+	public void save(String room, Message message) {
+		saveAll(room, Collections.singletonList(message));
+	}
+
+	/**
+	 * Append the messages with a single force to the disk for
+	 * {@link FsyncPolicy#EVERY_WRITE}.
+	 *
+	 * @throws IllegalStateException If the repository is not open
+	 */
+	@Override
+	public void saveAll(String room, List<Message> messages) {
+		checkOpen();
+		try {
+			rooms.computeIfAbsent(room, this::openRoom).append(messages, fsyncPolicy == FsyncPolicy.EVERY_WRITE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not save " + messages.size() + " messages of room " + room, e);
+		}
+	}
+
+	/**
+	 * @return Whether saved messages are yet to be forced to the disk
+	 */
+	boolean isDirty() {
+		for (RoomLog log : rooms.values()) {
+			if (log.isDirty())
+				return true;
+		}
+		return false;
+	}
+
+	private void checkOpen() {
+		if (!open)
+			throw new IllegalStateException("File repository is closed");
+	}
+
+	/**
+	 * Checks again that the repository is open, so that a save racing with
+	 * {@link #close()} cannot create a log after the logs were closed.
+	 */
+	private RoomLog openRoom(String room) {
+		checkOpen();
+		try {
+			Path roomDirectory = directory.resolve(directoryName(room));
+			if (isHashed(room))
+				writeRoomName(roomDirectory, room);
+			return RoomLog.open(roomDirectory, segmentSize);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not create the history of room " + room, e);
+		}
+	}
+
+	private void flush() {
+		for (RoomLog log : rooms.values()) {
+			try {
+				log.flush();
+			} catch (IOException e) {
+				LOGGER.error("Could not force the history to the disk: {}", e.getMessage());
+			}
+		}
+	}
+
+	private void closeRooms() {
+		for (RoomLog log : rooms.values()) {
+			try {
+				log.close();
+			} catch (IOException e) {
+				LOGGER.error("Could not close the history: {}", e.getMessage());
+			}
+		}
+		rooms.clear();
+	}
+
+	static String directoryName(String room) {
+		byte[] bytes = room.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > MAX_HEX_NAME_BYTES)
+			return HASHED_ROOM_DIRECTORY_PREFIX + hex(sha256(bytes));
+		return ROOM_DIRECTORY_PREFIX + hex(bytes);
+	}
+
+	private static boolean isHashed(String room) {
+		return directoryName(room).startsWith(HASHED_ROOM_DIRECTORY_PREFIX);
+	}
+
+	/**
+	 * Write the room of a hashed directory before its first segment, or check
+	 * that the one already there is the same room.
+	 */
+	private static void writeRoomName(Path roomDirectory, String room) throws IOException {
+		Files.createDirectories(roomDirectory);
+		Path nameFile = roomDirectory.resolve(ROOM_NAME_FILE);
+		if (!Files.exists(nameFile)) {
+			// moved into place whole, so a crash cannot leave half a name
+			Path written = Files.write(roomDirectory.resolve(ROOM_NAME_FILE + ".tmp"), room.getBytes(StandardCharsets.UTF_8));
+			Files.move(written, nameFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			return;
+		}
+		String stored = new String(Files.readAllBytes(nameFile), StandardCharsets.UTF_8);
+		if (!stored.equals(room))
+			throw new IOException("Directory " + roomDirectory + " holds the history of another room");
+	}
+
+	/**
+	 * @return The room of a directory, or {@code null} if it is not the
+	 *         directory of a room
+	 */
+	private static String roomName(Path roomDirectory) throws IOException {
+		String name = roomDirectory.getFileName().toString();
+		if (!name.startsWith(HASHED_ROOM_DIRECTORY_PREFIX))
+			return roomName(name);
+		Path nameFile = roomDirectory.resolve(ROOM_NAME_FILE);
+		if (!Files.isRegularFile(nameFile)) {
+			LOGGER.warn("Ignored {}, which has no {} file", roomDirectory, ROOM_NAME_FILE);
+			return null;
+		}
+		String room = new String(Files.readAllBytes(nameFile), StandardCharsets.UTF_8);
+		if (!directoryName(room).equals(name)) {
+			LOGGER.warn("Ignored {}, whose {} file does not match its name", roomDirectory, ROOM_NAME_FILE);
+			return null;
+		}
+		return room;
+	}
+
+	/**
+	 * @return The room of a directory, or {@code null} if the name is not
+	 *         one given by {@link #directoryName(String)} to a room short
+	 *         enough to be named after its bytes
+	 */
+	static String roomName(String directoryName) {
+		if (!directoryName.startsWith(ROOM_DIRECTORY_PREFIX))
+			return null;
+		String hex = directoryName.substring(ROOM_DIRECTORY_PREFIX.length());
+		if (hex.length() % 2 != 0)
+			return null;
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			int high = Character.digit(hex.charAt(2 * i), 16);
+			int low = Character.digit(hex.charAt(2 * i + 1), 16);
+			if (high < 0 || low < 0)
+				return null;
+			bytes[i] = (byte) (high << 4 | low);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(2 * bytes.length);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	private static byte[] sha256(byte[] bytes) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.memory;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * ServerRepository that keeps messages in memory, for local runs and
+ * benchmarks without a database. History is lost when the JVM exits, and
+ * each room keeps only its latest {@code maxRoomMessages} messages.
+ * <p>
+ * The messages of a room are kept in timestamp order in a skip list, so a
+ * message older than the last one, which clients with skewed clocks can
+ * send, is inserted in logarithmic time like any other. Saves to a room are
+ * serialized while reads take no lock, and pages are located by seeking to
+ * their timestamp.
+ */
+public class ServerMemoryRepository implements ServerRepository {
+
+	public static final int DEFAULT_MAX_ROOM_MESSAGES = 100_000;
+
+	private final ConcurrentHashMap<String, RoomLog> rooms = new ConcurrentHashMap<>();
+	private final int maxRoomMessages;
+
+	private static final Logger LOGGER = LogManager.getLogger(ServerMemoryRepository.class);
+
+	public ServerMemoryRepository() {
+		this(DEFAULT_MAX_ROOM_MESSAGES);
+	}
+
+	/**
+	 * @param maxRoomMessages Messages kept per room; saving more drops the
+	 *                        oldest ones
+	 */
+	public ServerMemoryRepository(int maxRoomMessages) {
+		if (maxRoomMessages <= 0)
+			throw new IllegalArgumentException("Maximum messages per room must be positive");
+		this.maxRoomMessages = maxRoomMessages;
+	}
+
+	@Override
+	public void close() {
+		LOGGER.info("Memory repository closed with {} messages in {} rooms", count(), rooms.size());
+	}
+
+	@Override
+	public List<Message> findAll() {
+		List<Message> all = new ArrayList<>();
+		for (RoomLog log : rooms.values()) {
+			all.addAll(log.latest(Integer.MAX_VALUE));
+		}
+		all.sort(Comparator.comparingLong(Message::getTimestamp));
+		return all;
+	}
+
+	@Override
+	public List<Message> findLatest(String room, int limit) {
+		RoomLog log = rooms.get(room);
+		return log != null ? log.latest(limit) : new ArrayList<>();
+	}
+
+	@Override
+	public List<Message> findBefore(String room, Timestamp timestamp, int limit) {
+		RoomLog log = rooms.get(room);
+		return log != null ? log.before(timestamp.getTime(), limit) : new ArrayList<>();
+	}
+
+	@Override
+	public void save(String room, Message message) {
+		roomLog(room).append(message);
+	}
+
+	@Override
+	public void saveAll(String room, List<Message> messages) {
+		RoomLog log = roomLog(room);
+		synchronized (log) {
+			for (Message message : messages) {
+				log.append(message);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of messages of every room
+	 */
+	public long count() {
+		long count = 0;
+		for (RoomLog log : rooms.values()) {
+			count += log.size;
+		}
+		return count;
+	}
+
+	private RoomLog roomLog(String room) {
+		return rooms.computeIfAbsent(room, r -> new RoomLog(maxRoomMessages));
+	}
+
+	/**
+	 * Position of a message in its room: its timestamp, then the order it
+	 * was saved in among messages with the same timestamp.
+	 */
+	private static final class Key implements Comparable<Key> {
+		private final long timestamp;
+		private final long sequence;
+
+		private Key(long timestamp, long sequence) {
+			this.timestamp = timestamp;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Key other) {
+			int byTimestamp = Long.compare(timestamp, other.timestamp);
+			return byTimestamp != 0 ? byTimestamp : Long.compare(sequence, other.sequence);
+		}
+	}
+
+	/**
+	 * Messages of a room in timestamp order. Saves hold the log's lock;
+	 * readers take none and iterate the skip list while it changes, so a
+	 * reader may miss a message saved meanwhile but sees the others in order.
+	 */
+	private static final class RoomLog {
+		private final ConcurrentSkipListMap<Key, Message> messages = new ConcurrentSkipListMap<>();
+		private final int maxMessages;
+		// guarded by this
+		private long sequence = 0;
+		private volatile int size = 0;
+
+		private RoomLog(int maxMessages) {
+			this.maxMessages = maxMessages;
+		}
+
+		private synchronized void append(Message message) {
+			messages.put(new Key(message.getTimestamp(), sequence++), message);
+			if (size == maxMessages) {
+				messages.pollFirstEntry();
+			} else {
+				size++;
+			}
+		}
+
+		/**
+		 * @return The last {@code limit} messages, oldest first
+		 */
+		private List<Message> latest(int limit) {
+			return lastOf(messages.descendingMap().values(), limit);
+		}
+
+		/**
+		 * @return The last {@code limit} messages older than {@code before},
+		 *         oldest first
+		 */
+		private List<Message> before(long before, int limit) {
+			return lastOf(messages.headMap(new Key(before, Long.MIN_VALUE)).descendingMap().values(), limit);
+		}
+
+		/**
+		 * @param newestFirst Messages from the newest to the oldest
+		 */
+		private static List<Message> lastOf(Collection<Message> newestFirst, int limit) {
+			List<Message> page = new ArrayList<>();
+			Iterator<Message> iterator = newestFirst.iterator();
+			while (page.size() < limit && iterator.hasNext()) {
+				page.add(iterator.next());
+			}
+			Collections.reverse(page);
+			return page;
+		}
+	}
+}
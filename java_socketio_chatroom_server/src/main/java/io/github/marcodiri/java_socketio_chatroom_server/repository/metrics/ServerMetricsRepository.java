@@ -0,0 +1,86 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.metrics;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.metrics.Counter;
+import io.github.marcodiri.java_socketio_chatroom_server.metrics.LatencyTimer;
+import io.github.marcodiri.java_socketio_chatroom_server.metrics.ServerMetrics;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * ServerRepository decorator that times the reads and saves of the wrapped
+ * repository and counts the ones that fail. Failed calls are timed too,
+ * and their exceptions are rethrown unchanged.
+ */
+public class ServerMetricsRepository implements ServerRepository {
+
+	private final ServerRepository repository;
+
+	private final LatencyTimer finds;
+	private final LatencyTimer saves;
+	private final Counter errors;
+
+	public ServerMetricsRepository(ServerRepository repository, ServerMetrics metrics) {
+		this.repository = repository;
+		this.finds = metrics.timer("chatroom_repository_find_seconds", "Time to read a page of history");
+		this.saves = metrics.timer("chatroom_repository_save_seconds",
+				"Time to save a message or a batch of messages, or only to queue them when writes are batched");
+		this.errors = metrics.counter("chatroom_repository_errors_total", "History reads and saves that failed");
+	}
+
+	@Override
+	public void open() {
+		repository.open();
+	}
+
+	@Override
+	public void close() {
+		repository.close();
+	}
+
+	@Override
+	public List<Message> findAll() {
+		return timed(finds, repository::findAll);
+	}
+
+	@Override
+	public List<Message> findLatest(String room, int limit) {
+		return timed(finds, () -> repository.findLatest(room, limit));
+	}
+
+	@Override
+	public List<Message> findBefore(String room, Timestamp timestamp, int limit) {
+		return timed(finds, () -> repository.findBefore(room, timestamp, limit));
+	}
+
+	@Override
+	public void save(String room, Message message) {
+		timed(saves, () -> {
+			repository.save(room, message);
+			return null;
+		});
+	}
+
+	@Override
+	public void saveAll(String room, List<Message> messages) {
+		timed(saves, () -> {
+			repository.saveAll(room, messages);
+			return null;
+		});
+	}
+
+	private <T> T timed(LatencyTimer timer, Supplier<T> call) {
+		long start = System.nanoTime();
+		try {
+			return call.get();
+		} catch (RuntimeException e) {
+			errors.increment();
+			throw e;
+		} finally {
+			timer.recordSince(start);
+		}
+	}
+}
@@ -1,25 +1,53 @@
 package io.github.marcodiri.java_socketio_chatroom_server.repository.mongo;
 
 import com.mongodb.MongoClient;
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.result.UpdateResult;
 import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.ChatroomServer;
 import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
 import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
 
 public class ServerMongoRepository implements ServerRepository {
 	public static final String CHATROOM_DB_NAME = "chatroom";
 	public static final String MESSAGES_COLLECTION_NAME = "messages";
+
+	/**
+	 * The fields a message is built from: the room is known from the query
+	 * and the id is never needed.
+	 */
+	private static final Bson MESSAGE_FIELDS = Projections.fields(
+			Projections.include("timestamp", "user", "message"),
+			Projections.excludeId());
+
 	private final MongoCollection<Document> msgCollection;
 
+	private final AtomicLong queries = new AtomicLong();
+	private final AtomicLong queryNanos = new AtomicLong();
+	private final AtomicLong saves = new AtomicLong();
+	private final AtomicLong saveNanos = new AtomicLong();
+
 	private static final Logger LOGGER = LogManager.getLogger(ServerMongoRepository.class);
 
 	public ServerMongoRepository(MongoClient client) {
@@ -28,30 +56,146 @@ public class ServerMongoRepository implements ServerRepository {
 				.getCollection(MESSAGES_COLLECTION_NAME);
 	}
 
+	/**
+	 * Moves the messages saved before there were rooms, which have no room
+	 * field, to {@link ChatroomServer#DEFAULT_ROOM}, then creates the indexes
+	 * the queries rely on, if missing; this reaches the database, so it is
+	 * not done on construction.
+	 */
+	@Override
+	public void open() {
+		UpdateResult migrated = msgCollection.updateMany(Filters.exists("room", false),
+				Updates.set("room", ChatroomServer.DEFAULT_ROOM));
+		if (migrated.getModifiedCount() > 0)
+			LOGGER.info("Moved {} messages saved without a room to room {}",
+					migrated.getModifiedCount(), ChatroomServer.DEFAULT_ROOM);
+		// serves the history pages of a room, newest first
+		msgCollection.createIndex(Indexes.compoundIndex(Indexes.ascending("room"), Indexes.descending("timestamp")));
+	}
+
+	@Override
+	public void close() {
+		LOGGER.info("Served {} queries in {} ms", getQueryCount(), TimeUnit.NANOSECONDS.toMillis(getQueryNanos()));
+		LOGGER.info("Ran {} saves in {} ms", getSaveCount(), TimeUnit.NANOSECONDS.toMillis(getSaveNanos()));
+	}
+
+	/**
+	 * Sorts the whole collection without an index: the server never reads
+	 * every message, so keeping one up to date on each save would not pay.
+	 */
 	@Override
 	public List<Message> findAll() {
 		LOGGER.info("Retrieving all messages from db");
-		return StreamSupport.
-				stream(msgCollection.find().spliterator(), false)
+		return timed(() -> StreamSupport.
+				stream(msgCollection.find().projection(MESSAGE_FIELDS).sort(Sorts.ascending("timestamp")).spliterator(), false)
 				.map(this::fromDocumentToMessage)
-				.collect(Collectors.toList());
+				.collect(Collectors.toList()));
+	}
+
+	@Override
+	public List<Message> findLatest(String room, int limit) {
+		LOGGER.info("Retrieving last {} messages of room {} from db", limit, room);
+		return timed(() -> findPage(msgCollection.find(Filters.eq("room", room)), limit));
+	}
+
+	@Override
+	public List<Message> findBefore(String room, Timestamp timestamp, int limit) {
+		LOGGER.info("Retrieving {} messages of room {} before {} from db", limit, room, timestamp);
+		return timed(() -> findPage(msgCollection.find(Filters.and(
+				Filters.eq("room", room),
+				Filters.lt("timestamp", timestamp.getTime()))), limit));
+	}
+
+	@Override
+	public void save(String room, Message message) {
+		long start = System.nanoTime();
+		msgCollection.insertOne(fromMessageToDocument(room, message));
+		saved(start);
+		LOGGER.info("Saved {} of room {} in db", message, room);
 	}
 
 	@Override
-	public void save(Message message) {
-		msgCollection.insertOne(
-				new Document()
-						.append("timestamp", message.getTimestamp().getTime())
-						.append("user", message.getUser())
-						.append("message", message.getUserMessage()));
-		LOGGER.info("Saved {} in db", message);
+	public void saveAll(String room, List<Message> messages) {
+		if (messages.isEmpty())
+			return;
+		long start = System.nanoTime();
+		msgCollection.insertMany(messages.stream()
+				.map(message -> fromMessageToDocument(room, message))
+				.collect(Collectors.toList()));
+		saved(start);
+		LOGGER.info("Saved {} messages of room {} in db", messages.size(), room);
+	}
+
+	/**
+	 * @return The number of find queries run so far
+	 */
+	public long getQueryCount() {
+		return queries.get();
+	}
+
+	/**
+	 * @return The time spent running find queries and reading their results so far
+	 */
+	public long getQueryNanos() {
+		return queryNanos.get();
+	}
+
+	/**
+	 * @return The number of inserts run so far, one per message or batch of
+	 *         messages
+	 */
+	public long getSaveCount() {
+		return saves.get();
+	}
+
+	/**
+	 * @return The time spent running inserts so far
+	 */
+	public long getSaveNanos() {
+		return saveNanos.get();
+	}
+
+	private void saved(long startNanos) {
+		saves.incrementAndGet();
+		saveNanos.addAndGet(System.nanoTime() - startNanos);
+	}
+
+	private List<Message> timed(Supplier<List<Message>> find) {
+		long start = System.nanoTime();
+		List<Message> messages = find.get();
+		long elapsed = System.nanoTime() - start;
+		queries.incrementAndGet();
+		queryNanos.addAndGet(elapsed);
+		LOGGER.debug("Read {} messages in {} us", messages.size(), TimeUnit.NANOSECONDS.toMicros(elapsed));
+		return messages;
+	}
+
+	private List<Message> findPage(FindIterable<Document> documents, int limit) {
+		// MongoDB takes a limit of 0 as no limit at all
+		if (limit <= 0)
+			return new ArrayList<>();
+		List<Message> page = StreamSupport.
+				stream(documents.projection(MESSAGE_FIELDS).sort(Sorts.descending("timestamp")).limit(limit).spliterator(), false)
+				.map(this::fromDocumentToMessage)
+				.collect(Collectors.toList());
+		Collections.reverse(page);
+		return page;
+	}
+
+	private Document fromMessageToDocument(String room, Message message) {
+		return new Document()
+				.append("room", room)
+				.append("timestamp", message.getTimestamp())
+				.append("user", message.getUser())
+				.append("message", message.getUserMessage());
 	}
 
 	private Message fromDocumentToMessage(Document d) {
+		// documents written by other clients may store it as an int or a double
 		return new ServerMessage(
-				new Timestamp(Long.parseLong(d.get("timestamp").toString())),
-				"" + d.get("user"),
-				"" + d.get("message"));
+				((Number) d.get("timestamp")).longValue(),
+				d.getString("user"),
+				d.getString("message"));
 	}
 
 }
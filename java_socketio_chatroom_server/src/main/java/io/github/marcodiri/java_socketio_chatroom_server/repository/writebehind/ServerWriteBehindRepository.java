@@ -0,0 +1,306 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.writebehind;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * ServerRepository decorator that queues saved messages and persists them
+ * in batches on a background thread. A batch is written as soon as
+ * {@code batchSize} messages are pending or {@code flushInterval}
+ * milliseconds have passed, whichever comes first. When the queue is full
+ * {@link #save(String, Message)} waits up to one flush interval for room,
+ * then saves the message directly, so savers never wait on a backend that
+ * is down. Messages of different rooms share the queue and are split per
+ * room, in arrival order, when a batch is written. The messages of a room
+ * that fails to be written are kept and written again before any newer
+ * ones.
+ * <p>
+ * Reads do not wait for the queue: they add the messages not written yet
+ * to what the repository returns, leaving out the ones it already has.
+ * {@link #close()} drains the queue and logs the messages it could not
+ * write.
+ */
+public class ServerWriteBehindRepository implements ServerRepository {
+
+	private final ServerRepository repository;
+	private final int batchSize;
+	private final long flushInterval;
+
+	private final BlockingQueue<PendingMessage> queue;
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+	// messages drained from the queue but not written yet, guarded by flushLock
+	private final Map<String, List<PendingMessage>> unsaved = new LinkedHashMap<>();
+	// messages queued or unsaved, by arrival, read without locking
+	private final ConcurrentNavigableMap<Long, PendingMessage> notWritten = new ConcurrentSkipListMap<>();
+	private final AtomicLong arrivals = new AtomicLong();
+
+	private ScheduledExecutorService flusher;
+	private volatile boolean open = false;
+
+	private static final Logger LOGGER = LogManager.getLogger(ServerWriteBehindRepository.class);
+
+	/**
+	 * @throws IllegalArgumentException If the batch size, the flush interval
+	 *                                  or the queue capacity is not positive
+	 */
+	public ServerWriteBehindRepository(ServerRepository repository, int batchSize, long flushInterval, int queueCapacity) {
+		if (batchSize <= 0)
+			throw new IllegalArgumentException("Batch size must be positive");
+		if (flushInterval <= 0)
+			throw new IllegalArgumentException("Flush interval must be positive");
+		if (queueCapacity <= 0)
+			throw new IllegalArgumentException("Queue capacity must be positive");
+		this.repository = repository;
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.queue = new ArrayBlockingQueue<>(queueCapacity);
+	}
+
+	@Override
+	public void open() {
+		repository.open();
+		flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "write-behind-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+		open = true;
+		LOGGER.info("Write-behind started with batches of {} every {} ms", batchSize, flushInterval);
+	}
+
+	@Override
+	public void close() {
+		open = false;
+		if (flusher != null) {
+			flusher.shutdown();
+			try {
+				flusher.awaitTermination(flushInterval + 5000, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		flush();
+		flushLock.lock();
+		try {
+			// left queued by a flush that stopped at a failing batch
+			List<PendingMessage> queued = new ArrayList<>();
+			queue.drainTo(queued);
+			for (PendingMessage pending : queued) {
+				unsaved.computeIfAbsent(pending.room, room -> new ArrayList<>()).add(pending);
+			}
+			for (Map.Entry<String, List<PendingMessage>> room : unsaved.entrySet()) {
+				LOGGER.error("{} messages of room {} were not persisted", room.getValue().size(), room.getKey());
+			}
+			unsaved.clear();
+			notWritten.clear();
+		} finally {
+			flushLock.unlock();
+		}
+		repository.close();
+		LOGGER.info("Write-behind stopped");
+	}
+
+	@Override
+	public List<Message> findAll() {
+		List<Message> notYetWritten = notWritten(pending -> true);
+		return merge(repository.findAll(), notYetWritten, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public List<Message> findLatest(String room, int limit) {
+		List<Message> notYetWritten = notWritten(pending -> pending.room.equals(room));
+		return merge(repository.findLatest(room, limit), notYetWritten, limit);
+	}
+
+	@Override
+	public List<Message> findBefore(String room, Timestamp timestamp, int limit) {
+		List<Message> notYetWritten = notWritten(pending ->
+				pending.room.equals(room) && pending.message.getTimestamp() < timestamp.getTime());
+		return merge(repository.findBefore(room, timestamp, limit), notYetWritten, limit);
+	}
+
+	@Override
+	public void save(String room, Message message) {
+		if (open) {
+			PendingMessage pending = new PendingMessage(arrivals.incrementAndGet(), room, message);
+			notWritten.put(pending.arrival, pending);
+			if (enqueue(pending))
+				return;
+			notWritten.remove(pending.arrival);
+		}
+		repository.save(room, message);
+	}
+
+	/**
+	 * @return {@code false} if the message was not queued: the queue stayed
+	 *         full for a flush interval, the thread was interrupted, or the
+	 *         repository was closed meanwhile
+	 */
+	private boolean enqueue(PendingMessage pending) {
+		try {
+			if (!queue.offer(pending, flushInterval, TimeUnit.MILLISECONDS)) {
+				LOGGER.warn("Write-behind queue full for {} ms, saving {} directly", flushInterval, pending.message);
+				return false;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.warn("Interrupted while queueing {}, saving it directly", pending.message);
+			return false;
+		}
+		// close() may have drained the queue already; a message it missed is
+		// still in it and is saved directly instead
+		if (!open)
+			return !queue.remove(pending);
+		if (queue.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+			try {
+				flusher.execute(() -> {
+					flushRequested.set(false);
+					flush();
+				});
+			} catch (RejectedExecutionException e) {
+				// closing: close() drains the queue itself
+				flushRequested.set(false);
+			}
+		}
+		return true;
+	}
+
+	int pending() {
+		return queue.size();
+	}
+
+	/**
+	 * @return The messages drained from the queue that could not be written
+	 */
+	int unsaved() {
+		flushLock.lock();
+		try {
+			return unsaved.values().stream().mapToInt(List::size).sum();
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the queued messages batch by batch. It stops at the first batch
+	 * that fails, leaving the rest queued so that saves fall back to direct
+	 * saves once the queue is full rather than piling up messages that
+	 * cannot be written.
+	 */
+	private void flush() {
+		flushLock.lock();
+		try {
+			List<PendingMessage> batch = new ArrayList<>(batchSize);
+			while (writeUnsaved() && queue.drainTo(batch, batchSize) > 0) {
+				for (PendingMessage pending : batch) {
+					unsaved.computeIfAbsent(pending.room, room -> new ArrayList<>()).add(pending);
+				}
+				batch.clear();
+			}
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the unsaved messages room by room, keeping those of the rooms
+	 * that fail for the next flush.
+	 *
+	 * @return Whether every room was written
+	 */
+	private boolean writeUnsaved() {
+		Iterator<Map.Entry<String, List<PendingMessage>>> rooms = unsaved.entrySet().iterator();
+		while (rooms.hasNext()) {
+			Map.Entry<String, List<PendingMessage>> room = rooms.next();
+			List<Message> messages = new ArrayList<>(room.getValue().size());
+			for (PendingMessage pending : room.getValue()) {
+				messages.add(pending.message);
+			}
+			try {
+				repository.saveAll(room.getKey(), messages);
+				LOGGER.debug("Flushed {} messages of room {}", messages.size(), room.getKey());
+				rooms.remove();
+				for (PendingMessage pending : room.getValue()) {
+					notWritten.remove(pending.arrival);
+				}
+			} catch (RuntimeException e) {
+				LOGGER.error("Could not persist {} messages of room {}, retrying on the next flush: {}",
+						messages.size(), room.getKey(), e.getMessage());
+			}
+		}
+		return unsaved.isEmpty();
+	}
+
+	/**
+	 * @return The messages not written yet that match, in arrival order. They
+	 *         are taken before the repository is read, so a message written
+	 *         in between shows up in both rather than in neither.
+	 */
+	private List<Message> notWritten(Predicate<PendingMessage> filter) {
+		List<Message> messages = new ArrayList<>();
+		for (PendingMessage pending : notWritten.values()) {
+			if (filter.test(pending))
+				messages.add(pending.message);
+		}
+		return messages;
+	}
+
+	/**
+	 * @return The last {@code limit} of the stored messages and the ones not
+	 *         written yet that the repository did not return, oldest first
+	 */
+	private static List<Message> merge(List<Message> stored, List<Message> notYetWritten, int limit) {
+		if (notYetWritten.isEmpty())
+			return stored;
+		Set<Message> storedMessages = new HashSet<>(stored);
+		List<Message> merged = new ArrayList<>(stored);
+		for (Message message : notYetWritten) {
+			if (!storedMessages.contains(message))
+				merged.add(message);
+		}
+		// stable, so messages with the same timestamp keep their saving order
+		merged.sort(Comparator.comparingLong(Message::getTimestamp));
+		return merged.size() > limit
+				? new ArrayList<>(merged.subList(merged.size() - limit, merged.size()))
+				: merged;
+	}
+
+	private static final class PendingMessage {
+		private final long arrival;
+		private final String room;
+		private final Message message;
+
+		private PendingMessage(long arrival, String room, Message message) {
+			this.arrival = arrival;
+			this.room = room;
+			this.message = message;
+		}
+	}
+}
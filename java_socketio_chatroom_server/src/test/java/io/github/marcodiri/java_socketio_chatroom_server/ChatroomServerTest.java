@@ -1,27 +1,55 @@
 package io.github.marcodiri.java_socketio_chatroom_server;
 
+import io.github.marcodiri.java_socketio_chatroom_core.codec.BinaryMessageCodec;
+import io.github.marcodiri.java_socketio_chatroom_core.codec.MessageCodecs;
 import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.cluster.local.LocalCluster;
+import io.github.marcodiri.java_socketio_chatroom_server.cluster.local.LocalClusterBus;
+import io.github.marcodiri.java_socketio_chatroom_server.metrics.ServerMetrics;
 import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
 import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
 import io.socket.client.IO;
 import io.socket.client.Socket;
+import io.socket.engineio.client.transports.WebSocket;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
 import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
 
 import static java.util.Arrays.asList;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -36,14 +64,19 @@ public class ChatroomServerTest {
 	@Mock
 	private ServerRepository serverRepository;
 
-	@InjectMocks
 	private ChatroomServer chatroomServer;
 
+	private LocalClusterBus peer;
+
 	private AutoCloseable closeable;
 
 	@Before
 	public void setup() {
 		closeable = MockitoAnnotations.openMocks(this);
+		LocalCluster cluster = new LocalCluster();
+		chatroomServer = new ChatroomServer(serverRepository, new LocalClusterBus(cluster));
+		peer = new LocalClusterBus(cluster);
+		peer.open();
 		try {
 			chatroomServer.start();
 		} catch (Exception ignored) {
@@ -57,6 +90,7 @@ public class ChatroomServerTest {
 	public void closeConnectionsAndReleaseMocks() throws Exception {
 		clientSocket.disconnect();
 		chatroomServer.stop();
+		peer.close();
 		closeable.close();
 	}
 
@@ -74,6 +108,11 @@ public class ChatroomServerTest {
 		assertThat(chatroomServer.getNamespace().hasListeners("connection")).isTrue();
 	}
 
+	@Test
+	public void testStartOpensTheRepository() {
+		verify(serverRepository, times(1)).open();
+	}
+
 	@Test
 	public void testStartSendsConnectedEventToConnectedClients() {
 		AtomicBoolean connectedReceived = new AtomicBoolean(false);
@@ -98,28 +137,171 @@ public class ChatroomServerTest {
 		}
 	}
 
+	@Test
+	public void testStopClosesTheRepository() throws Exception {
+		chatroomServer.stop();
+		verify(serverRepository, times(1)).close();
+	}
+
 	@Test
 	public void testStopStopsClearsTheUsernameList() throws Exception {
-		chatroomServer.getUsernameList().put("Id", "user1");
+		chatroomServer.claimUsername("Id", "user1");
 		chatroomServer.stop();
 		assertThat(chatroomServer.getUsernameList()).isEmpty();
+		assertThat(chatroomServer.claimUsername("Id2", "user1")).isTrue();
+	}
+
+	@Test
+	public void testClaimUsernameRejectsTakenName() {
+		assertThat(chatroomServer.claimUsername("Id1", "user1")).isTrue();
+		assertThat(chatroomServer.claimUsername("Id2", "user1")).isFalse();
+		assertThat(chatroomServer.getUsernameList()).containsExactly(entry("Id1", "user1"));
+	}
+
+	@Test
+	public void testClaimUsernameRejectsSecondNameForTheSameSocket() {
+		assertThat(chatroomServer.claimUsername("Id1", "user1")).isTrue();
+		assertThat(chatroomServer.claimUsername("Id1", "user2")).isFalse();
+		assertThat(chatroomServer.claimUsername("Id2", "user2")).isTrue();
+	}
+
+	@Test
+	public void testReleaseUsernameFreesTheName() {
+		chatroomServer.claimUsername("Id1", "user1");
+		chatroomServer.releaseUsername("Id1");
+		chatroomServer.releaseUsername("Id1");
+
+		assertThat(chatroomServer.getUsernameList()).isEmpty();
+		assertThat(chatroomServer.claimUsername("Id2", "user1")).isTrue();
+	}
+
+	@Test
+	public void testConcurrentClaimsOfTheSameNameHaveOneWinner() throws Exception {
+		int claimers = 16;
+		ExecutorService executor = Executors.newFixedThreadPool(claimers);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int i = 0; i < claimers; i++) {
+			String socketId = "Id" + i;
+			results.add(executor.submit(() -> {
+				start.await();
+				return chatroomServer.claimUsername(socketId, "user");
+			}));
+		}
+		start.countDown();
+		int winners = 0;
+		for (Future<Boolean> result : results) {
+			if (result.get()) {
+				winners++;
+			}
+		}
+		executor.shutdown();
+
+		assertThat(winners).isEqualTo(1);
+		assertThat(chatroomServer.getUsernameList()).hasSize(1);
 	}
 
 	@Test
 	public void testServerRetrievesMessagesFromDbWhenClientJoinsWithFreeUsername() {
 		List<Message> history = new ArrayList<>();
-		ServerMessage msg1 = new ServerMessage(new Timestamp(0), "user1", "message1");
-		ServerMessage msg2 = new ServerMessage(new Timestamp(1), "user2", "message2");
+		ServerMessage msg1 = new ServerMessage(0, "user1", "message1");
+		ServerMessage msg2 = new ServerMessage(1, "user2", "message2");
 		history.add(msg1);
 		history.add(msg2);
-		when(serverRepository.findAll()).thenReturn(history);
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(history);
 
 		List<ServerMessage> retrievedMessages = new ArrayList<>();
-		clientSocket.on("msg", args -> {
-			JSONObject jsonMsg = (JSONObject) args[0];
-			ServerMessage incomingMessage = new ServerMessage(new Timestamp(jsonMsg.getLong("timestamp")), jsonMsg.getString("user"), jsonMsg.getString("message"));
-			retrievedMessages.add(incomingMessage);
+		clientSocket.on("history", args -> {
+			JSONArray jsonMsgs = (JSONArray) args[0];
+			for (int i = 0; i < jsonMsgs.length(); i++) {
+				JSONObject jsonMsg = jsonMsgs.getJSONObject(i);
+				retrievedMessages.add(new ServerMessage(jsonMsg.getLong("timestamp"), jsonMsg.getString("user"), jsonMsg.getString("message")));
+			}
+		});
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).until(() -> retrievedMessages.containsAll(asList(msg1, msg2)));
+		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
+			fail("Expected " + asList(msg1, msg2) + " but got " + retrievedMessages);
+		}
+		verify(serverRepository, times(1)).findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE);
+	}
+
+	@Test
+	public void testServerSendsHistoryInChunksOfConfiguredSize() {
+		List<Message> history = new ArrayList<>();
+		history.add(new ServerMessage(0, "user1", "message1"));
+		history.add(new ServerMessage(1, "user2", "message2"));
+		history.add(new ServerMessage(2, "user3", "message3"));
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(history);
+		chatroomServer.setHistoryChunkSize(2);
+
+		List<Integer> chunkSizes = new CopyOnWriteArrayList<>();
+		clientSocket.on("history", args -> chunkSizes.add(((JSONArray) args[0]).length()));
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(chunkSizes).containsExactly(2, 1));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testServerRetrievesConfiguredHistoryPageSizeWhenClientJoins() {
+		chatroomServer.setHistoryPageSize(10);
+
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(serverRepository, times(1)).findLatest(ChatroomServer.DEFAULT_ROOM, 10));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testHistoryChunkSizeMustBePositive() {
+		assertThatThrownBy(() -> chatroomServer.setHistoryChunkSize(0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("History chunk size must be positive");
+		assertThatThrownBy(() -> chatroomServer.setHistoryChunkSize(-1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testHistoryPageSizeMustBePositive() {
+		assertThatThrownBy(() -> chatroomServer.setHistoryPageSize(0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("History page size must be positive");
+		assertThatThrownBy(() -> chatroomServer.setHistoryPageSize(-1))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testServerSendsOlderMessagesWhenInRoomClientRequestsHistory() {
+		List<Message> page = new ArrayList<>();
+		ServerMessage msg1 = new ServerMessage(0, "user1", "message1");
+		ServerMessage msg2 = new ServerMessage(1, "user2", "message2");
+		page.add(msg1);
+		page.add(msg2);
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(new ArrayList<>());
+		// messages of the millisecond of the bound are included
+		when(serverRepository.findBefore(ChatroomServer.DEFAULT_ROOM, new Timestamp(3), ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(page);
+
+		List<ServerMessage> retrievedMessages = new ArrayList<>();
+		clientSocket.on("history", args -> {
+			JSONArray jsonMsgs = (JSONArray) args[0];
+			for (int i = 0; i < jsonMsgs.length(); i++) {
+				JSONObject jsonMsg = jsonMsgs.getJSONObject(i);
+				retrievedMessages.add(new ServerMessage(jsonMsg.getLong("timestamp"), jsonMsg.getString("user"), jsonMsg.getString("message")));
+			}
 		});
+		clientSocket.on("joined", args -> clientSocket.emit("loadHistory", new JSONObject().put("before", 2L)));
 		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
 		clientSocket.connect();
 
@@ -128,7 +310,21 @@ public class ChatroomServerTest {
 		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
 			fail("Expected " + asList(msg1, msg2) + " but got " + retrievedMessages);
 		}
-		verify(serverRepository, times(1)).findAll();
+	}
+
+	@Test
+	public void testServerIgnoresHistoryRequestFromANotInRoomClient() {
+		clientSocket.on("connected", args -> clientSocket.emit("loadHistory", new JSONObject().put("before", 2L)));
+		clientSocket.connect();
+
+		try {
+			await().during(2, SECONDS).atMost(3, SECONDS).untilAsserted(() -> {
+				verify(serverRepository).open();
+				verifyNoMoreInteractions(serverRepository);
+			});
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
 	}
 
 	@Test
@@ -156,13 +352,13 @@ public class ChatroomServerTest {
 			fail("Client cannot connect to server");
 		}
 
-		chatroomServer.getUsernameList().put(clientSocket.id(), "user1");
-		chatroomServer.getUsernameList().put("123", "user2");
+		chatroomServer.claimUsername(clientSocket.id(), "user1");
+		chatroomServer.claimUsername("123", "user2");
 
 		clientSocket.disconnect();
 		try {
 			await().atMost(2, SECONDS).untilAsserted(() ->
-					assertThat(chatroomServer.getUsernameList().keySet()).doesNotContain(clientSocket.id()));
+					assertThat(chatroomServer.getUsernameList()).containsExactly(entry("123", "user2")));
 		} catch (org.awaitility.core.ConditionTimeoutException e) {
 			fail(e.getMessage());
 		}
@@ -170,7 +366,7 @@ public class ChatroomServerTest {
 
 	@Test
 	public void testClientJoinWithOccupiedUsernameSendsErrorEvent() {
-		chatroomServer.getUsernameList().put("Id", "user1");
+		chatroomServer.claimUsername("Id", "user1");
 
 		AtomicReference<String> errorMessage = new AtomicReference<>();
 
@@ -211,15 +407,15 @@ public class ChatroomServerTest {
 
 	@Test
 	public void testClientReceivesItsMessages() {
-		ServerMessage originalMessage1 = new ServerMessage(new Timestamp(0), "user1", "message1");
-		ServerMessage originalMessage2 = new ServerMessage(new Timestamp(1), "user2", "message2");
+		ServerMessage originalMessage1 = new ServerMessage(0, "user1", "message1");
+		ServerMessage originalMessage2 = new ServerMessage(1, "user2", "message2");
 
-		when(serverRepository.findAll()).thenReturn(new ArrayList<>());
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(new ArrayList<>());
 
 		List<ServerMessage> retrievedMessages = new ArrayList<>();
 		clientSocket.on("msg", args -> {
 			JSONObject jsonMsg = (JSONObject) args[0];
-			ServerMessage incomingMessage = new ServerMessage(new Timestamp(jsonMsg.getLong("timestamp")), jsonMsg.getString("user"), jsonMsg.getString("message"));
+			ServerMessage incomingMessage = new ServerMessage(jsonMsg.getLong("timestamp"), jsonMsg.getString("user"), jsonMsg.getString("message"));
 			retrievedMessages.add(incomingMessage);
 		});
 		clientSocket.on("connected", args -> {
@@ -238,15 +434,15 @@ public class ChatroomServerTest {
 
 	@Test
 	public void testMessagesAreSavedInDb() {
-		ServerMessage originalMessage1 = new ServerMessage(new Timestamp(0), "user1", "message1");
-		ServerMessage originalMessage2 = new ServerMessage(new Timestamp(1), "user2", "message2");
+		ServerMessage originalMessage1 = new ServerMessage(0, "user1", "message1");
+		ServerMessage originalMessage2 = new ServerMessage(1, "user2", "message2");
 
-		when(serverRepository.findAll()).thenReturn(new ArrayList<>());
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(new ArrayList<>());
 
 		List<ServerMessage> retrievedMessages = new ArrayList<>();
 		clientSocket.on("msg", args -> {
 			JSONObject jsonMsg = (JSONObject) args[0];
-			ServerMessage incomingMessage = new ServerMessage(new Timestamp(jsonMsg.getLong("timestamp")), jsonMsg.getString("user"), jsonMsg.getString("message"));
+			ServerMessage incomingMessage = new ServerMessage(jsonMsg.getLong("timestamp"), jsonMsg.getString("user"), jsonMsg.getString("message"));
 			retrievedMessages.add(incomingMessage);
 		});
 		clientSocket.on("connected", args -> {
@@ -262,12 +458,138 @@ public class ChatroomServerTest {
 		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
 			fail("Expected " + asList(originalMessage1, originalMessage2) + " but got " + retrievedMessages);
 		}
-		verify(serverRepository, times(2)).save(argumentCaptor.capture());
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(serverRepository, times(2)).save(any(), any()));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+		verify(serverRepository, times(2)).save(eq(ChatroomServer.DEFAULT_ROOM), argumentCaptor.capture());
 		List<ServerMessage> capturedArgument = argumentCaptor.getAllValues();
 
 		assertThat(capturedArgument).contains(originalMessage1, originalMessage2);
 	}
 
+	@Test
+	public void testMetricsCountConnectionsMessagesAndHistoryRequests() {
+		ServerMessage msg = new ServerMessage(1, "user", "message");
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(new ArrayList<>());
+		AtomicBoolean received = new AtomicBoolean(false);
+		clientSocket.on("msg", args -> received.set(true));
+		clientSocket.on("joined", args -> {
+			clientSocket.emit("msg", msg.toJSON());
+			clientSocket.emit("loadHistory", new JSONObject().put("before", 1));
+		});
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilTrue(received);
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(chatroomServer.getMetrics().values())
+					.containsEntry("chatroom_connections_total", 1L)
+					.containsEntry("chatroom_connections", 1.0)
+					.containsEntry("chatroom_users", 1.0)
+					.containsEntry("chatroom_messages_received_total", 1L)
+					.containsEntry("chatroom_messages_delivered_total", 1L)
+					.containsEntry("chatroom_message_handling_seconds_count", 1L)
+					.containsEntry("chatroom_broadcast_seconds_count", 1L)
+					.containsEntry("chatroom_history_requests_total", 1L)
+					.containsEntry("chatroom_repository_save_seconds_count", 1L)
+					.containsEntry("chatroom_repository_find_seconds_count", 2L));
+
+			clientSocket.disconnect();
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(chatroomServer.getMetrics().values())
+					.containsEntry("chatroom_disconnections_total", 1L)
+					.containsEntry("chatroom_connections", 0.0)
+					.containsEntry("chatroom_users", 0.0));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMetricsDoNotCountMessagesSentOutsideARoom() {
+		ServerMessage msg = new ServerMessage(1, "user", "message");
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(new ArrayList<>());
+		AtomicBoolean joined = new AtomicBoolean(false);
+		clientSocket.on("joined", args -> joined.set(true));
+		clientSocket.on("connected", args -> {
+			clientSocket.emit("msg", msg.toJSON());
+			clientSocket.emit("join", "user");
+		});
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilTrue(joined);
+			assertThat(chatroomServer.getMetrics().values())
+					.containsEntry("chatroom_messages_received_total", 0L)
+					.containsEntry("chatroom_message_handling_seconds_count", 0L);
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMetricsCountMessagesFromTheClusterAndErrors() {
+		AtomicBoolean errorReceived = new AtomicBoolean(false);
+		clientSocket.on("error", args -> errorReceived.set(true));
+		clientSocket.on("connected", args -> {
+			clientSocket.emit("join", "user");
+			clientSocket.emit("createRoom", ChatroomServer.DEFAULT_ROOM);
+		});
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilTrue(errorReceived);
+			peer.publish(ChatroomServer.DEFAULT_ROOM, new ServerMessage(1, "user", "message"));
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(chatroomServer.getMetrics().values())
+					.containsEntry("chatroom_errors_sent_total", 1L)
+					.containsEntry("chatroom_cluster_messages_received_total", 1L)
+					.containsEntry("chatroom_messages_delivered_total", 1L)
+					.containsEntry("chatroom_messages_received_total", 0L));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMetricsAreServedAsText() throws Exception {
+		String metrics = poll("http://localhost:3000/metrics", null).body;
+
+		assertThat(metrics)
+				.contains("# TYPE chatroom_connections_total counter\nchatroom_connections_total 0\n")
+				.contains("# TYPE chatroom_rooms gauge\nchatroom_rooms 1.0\n")
+				.contains("# TYPE chatroom_broadcast_seconds histogram\n")
+				.contains("chatroom_repository_save_seconds_count 0\n");
+	}
+
+	@Test
+	public void testMetricsAreRegisteredWithJmxWhileTheServerRuns() throws Exception {
+		ObjectName name = new ObjectName(ChatroomServer.MBEAN_DOMAIN + ":type=ChatroomServer,port=3000");
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+		assertThat(mBeanServer.getAttribute(name, "chatroom_rooms")).isEqualTo(1.0);
+
+		chatroomServer.stop();
+		assertThat(mBeanServer.isRegistered(name)).isFalse();
+	}
+
+	@Test
+	public void testServerStartsWhenItsMetricsNameIsTaken() throws Exception {
+		ServerConfiguration configuration = new ServerConfiguration();
+		configuration.setPort(3001);
+		ServerMetrics other = new ServerMetrics();
+		other.registerMBean(ChatroomServer.MBEAN_DOMAIN + ":type=ChatroomServer,port=3001");
+		ChatroomServer server = new ChatroomServer(serverRepository, new LocalClusterBus(), configuration);
+		try {
+			server.start();
+
+			assertThat(server.isStarted()).isTrue();
+		} finally {
+			server.stop();
+			other.unregisterMBean();
+		}
+	}
+
 	@Test
 	public void testRoomSizeWhenClientJoins() {
 		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
@@ -282,7 +604,7 @@ public class ChatroomServerTest {
 
 	@Test
 	public void testServerIgnoresJoinFromAnInRoomClient() {
-		when(serverRepository.findAll()).thenReturn(new ArrayList<>());
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(new ArrayList<>());
 
 		clientSocket.on("connected", args -> {
 			clientSocket.emit("join", "user1");
@@ -301,7 +623,52 @@ public class ChatroomServerTest {
 			fail("Expected 1 but got " + roomSize.get());
 		}
 
-		verify(serverRepository, times(1)).findAll();
+		verify(serverRepository, times(1)).findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE);
+	}
+
+	@Test
+	public void testMalformedMessagesAreAnsweredWithAnErrorAndNotSaved() {
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(new ArrayList<>());
+		AtomicReference<String> errorMessage = new AtomicReference<>();
+		AtomicBoolean msgReceived = new AtomicBoolean(false);
+		clientSocket.on("error", args -> errorMessage.set(((JSONObject) args[0]).getString("message")));
+		clientSocket.on("msg", args -> msgReceived.set(true));
+		clientSocket.on("joined", args -> clientSocket.emit("msg", new JSONObject().put("user", "user")));
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).until(() -> errorMessage.get() != null);
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+		assertThat(errorMessage.get()).isEqualTo("Invalid message");
+		assertThat(msgReceived).isFalse();
+		verify(serverRepository, never()).save(any(), any());
+	}
+
+	@Test
+	public void testMalformedHistoryRequestsAreAnsweredWithAnErrorAndNotCounted() {
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(new ArrayList<>());
+		List<String> errorMessages = new CopyOnWriteArrayList<>();
+		clientSocket.on("error", args -> errorMessages.add(((JSONObject) args[0]).getString("message")));
+		clientSocket.on("joined", args -> {
+			clientSocket.emit("loadHistory", new JSONObject());
+			clientSocket.emit("loadHistory", new JSONObject().put("before", "yesterday"));
+			clientSocket.emit("loadHistory", "before");
+			clientSocket.emit("loadHistory");
+		});
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).until(() -> errorMessages.size() == 4);
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail("Expected 4 errors but got " + errorMessages);
+		}
+		assertThat(errorMessages).containsOnly("Invalid message");
+		assertThat(chatroomServer.getMetrics().values()).containsEntry("chatroom_history_requests_total", 0L);
+		verify(serverRepository, never()).findBefore(any(), any(), anyInt());
 	}
 
 	@Test
@@ -320,7 +687,7 @@ public class ChatroomServerTest {
 		}
 
 		clientSocket.on("connected", args -> {
-			Message msg = new ServerMessage(new Timestamp(0), "user", "message");
+			Message msg = new ServerMessage(0, "user", "message");
 			clientSocket.emit("msg", msg.toJSON());
 		});
 		clientSocket.connect();
@@ -329,23 +696,824 @@ public class ChatroomServerTest {
 			await().during(2, SECONDS).atMost(3, SECONDS).untilFalse(msgReceived);
 		} catch (org.awaitility.core.ConditionTimeoutException ignored) {
 			fail("An in room Client received a message from an out of room Client");
+		} finally {
+			clientSocket2.disconnect();
 		}
 	}
 
 	@Test
 	public void testServerDoesNotSaveMessagesFromANotInRoomClient() {
 		clientSocket.on("connected", args -> {
-			Message msg = new ServerMessage(new Timestamp(0), "user", "message");
+			Message msg = new ServerMessage(0, "user", "message");
 			clientSocket.emit("msg", msg.toJSON());
 		});
 		clientSocket.connect();
 
 		try {
-			await().during(2, SECONDS).atMost(3, SECONDS).untilAsserted(() ->
-					verifyNoInteractions(serverRepository));
+			await().during(2, SECONDS).atMost(3, SECONDS).untilAsserted(() -> {
+				verify(serverRepository).open();
+				verifyNoMoreInteractions(serverRepository);
+			});
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testCreateRoomCreatesTheRoomAndMovesTheClientIntoIt() {
+		List<String> joinedRooms = new CopyOnWriteArrayList<>();
+		clientSocket.on("joined", args -> {
+			String roomName = ((JSONObject) args[0]).getString("roomName");
+			joinedRooms.add(roomName);
+			if (roomName.equals(ChatroomServer.DEFAULT_ROOM))
+				clientSocket.emit("createRoom", "room1");
+		});
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(joinedRooms).containsExactly(ChatroomServer.DEFAULT_ROOM, "room1"));
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(serverRepository).findLatest("room1", ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+		assertThat(chatroomServer.getRooms()).contains("room1");
+		assertThat(chatroomServer.getNamespace().getAdapter().listClients("room1")).hasSize(1);
+		assertThat(chatroomServer.getNamespace().getAdapter().listClients(ChatroomServer.DEFAULT_ROOM)).isEmpty();
+	}
+
+	@Test
+	public void testCreateRoomSendsErrorWhenRoomAlreadyExists() {
+		AtomicReference<String> errorMessage = new AtomicReference<>();
+		clientSocket.on("error", args -> errorMessage.set(((JSONObject) args[0]).getString("message")));
+		clientSocket.on("joined", args -> clientSocket.emit("createRoom", ChatroomServer.DEFAULT_ROOM));
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(errorMessage.get()).isEqualTo("Room already exists"));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testJoinRoomMovesTheClientIntoAnExistingRoom() {
+		peer.createRoom("room1");
+		List<Message> history = new ArrayList<>();
+		ServerMessage msg = new ServerMessage(0, "user1", "message1");
+		history.add(msg);
+		when(serverRepository.findLatest("room1", ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(history);
+
+		List<ServerMessage> retrievedMessages = new CopyOnWriteArrayList<>();
+		clientSocket.on("history", args -> {
+			JSONArray jsonMsgs = (JSONArray) args[0];
+			for (int i = 0; i < jsonMsgs.length(); i++) {
+				JSONObject jsonMsg = jsonMsgs.getJSONObject(i);
+				retrievedMessages.add(new ServerMessage(jsonMsg.getLong("timestamp"), jsonMsg.getString("user"), jsonMsg.getString("message")));
+			}
+		});
+		clientSocket.on("joined", args -> {
+			if (((JSONObject) args[0]).getString("roomName").equals(ChatroomServer.DEFAULT_ROOM))
+				clientSocket.emit("joinRoom", "room1");
+		});
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(retrievedMessages).containsExactly(msg));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+		assertThat(chatroomServer.getNamespace().getAdapter().listClients("room1")).hasSize(1);
+	}
+
+	@Test
+	public void testJoinRoomSendsErrorWhenRoomDoesNotExist() {
+		AtomicReference<String> errorMessage = new AtomicReference<>();
+		clientSocket.on("error", args -> errorMessage.set(((JSONObject) args[0]).getString("message")));
+		clientSocket.on("joined", args -> clientSocket.emit("joinRoom", "room1"));
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(errorMessage.get()).isEqualTo("Room does not exist"));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+		assertThat(chatroomServer.getNamespace().getAdapter().listClients(ChatroomServer.DEFAULT_ROOM)).hasSize(1);
+	}
+
+	@Test
+	public void testServerIgnoresRoomEventsFromAClientWithoutUsername() {
+		peer.createRoom("room1");
+		clientSocket.on("connected", args -> {
+			clientSocket.emit("createRoom", "room2");
+			clientSocket.emit("joinRoom", "room1");
+		});
+		clientSocket.connect();
+
+		try {
+			await().during(2, SECONDS).atMost(3, SECONDS).untilAsserted(() -> {
+				assertThat(chatroomServer.getRooms()).containsExactlyInAnyOrder(ChatroomServer.DEFAULT_ROOM, "room1");
+				assertThat(chatroomServer.getNamespace().getAdapter().listClients("room1")).isEmpty();
+			});
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testLeaveRoomSendsLeftEventAndStopsMessagesOfTheClient() {
+		AtomicReference<String> leftRoom = new AtomicReference<>();
+		clientSocket.on("left", args -> {
+			leftRoom.set(((JSONObject) args[0]).getString("roomName"));
+			clientSocket.emit("msg", new ServerMessage(0, "user", "message").toJSON());
+		});
+		clientSocket.on("joined", args -> clientSocket.emit("leaveRoom"));
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(leftRoom.get()).isEqualTo(ChatroomServer.DEFAULT_ROOM));
+			await().during(1, SECONDS).atMost(2, SECONDS).untilAsserted(() -> verify(serverRepository, never()).save(any(), any()));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+		assertThat(chatroomServer.getNamespace().getAdapter().listClients(ChatroomServer.DEFAULT_ROOM)).isEmpty();
+	}
+
+	@Test
+	public void testLeaveRoomIsIgnoredWhenClientIsNotInARoom() {
+		AtomicBoolean leftReceived = new AtomicBoolean(false);
+		clientSocket.on("left", args -> leftReceived.set(true));
+		clientSocket.on("connected", args -> clientSocket.emit("leaveRoom"));
+		clientSocket.connect();
+
+		try {
+			await().during(2, SECONDS).atMost(3, SECONDS).untilFalse(leftReceived);
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMessagesAreBroadcastAndSavedOnlyInTheSenderRoom() {
+		AtomicBoolean msgReceived = new AtomicBoolean(false);
+
+		Socket clientSocket2 = IO.socket(URI.create("http://localhost:3000"), IO.Options.builder().build());
+		AtomicBoolean joined2 = new AtomicBoolean(false);
+		clientSocket2.on("joined", args -> joined2.set(true));
+		clientSocket2.on("connected", args -> clientSocket2.emit("join", "user2"));
+		clientSocket2.on("msg", args -> msgReceived.set(true));
+		clientSocket2.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilTrue(joined2);
+
+			ServerMessage msg = new ServerMessage(0, "user1", "message");
+			clientSocket.on("joined", args -> {
+				if (((JSONObject) args[0]).getString("roomName").equals("room1"))
+					clientSocket.emit("msg", msg.toJSON());
+				else
+					clientSocket.emit("createRoom", "room1");
+			});
+			clientSocket.on("connected", args -> clientSocket.emit("join", "user1"));
+			clientSocket.connect();
+
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(serverRepository).save("room1", msg));
+			await().during(1, SECONDS).atMost(2, SECONDS).untilFalse(msgReceived);
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		} finally {
+			clientSocket2.disconnect();
+		}
+	}
+
+	@Test
+	public void testStartCreatesTheDefaultRoom() {
+		assertThat(chatroomServer.getRooms()).containsExactly(ChatroomServer.DEFAULT_ROOM);
+	}
+
+	@Test
+	public void testStopForgetsCreatedRoomsWhenLastNodeOfTheClusterStops() throws Exception {
+		peer.createRoom("room1");
+		peer.close();
+
+		chatroomServer.stop();
+
+		assertThat(chatroomServer.getRooms()).isEmpty();
+	}
+
+	@Test
+	public void testStopReleasesUsernamesInTheCluster() throws Exception {
+		chatroomServer.claimUsername("Id", "user1");
+
+		chatroomServer.stop();
+
+		assertThat(peer.claimUsername("user1")).isTrue();
+	}
+
+	@Test
+	public void testClaimUsernameRejectsNameHeldByAnotherNode() {
+		peer.claimUsername("user1");
+
+		assertThat(chatroomServer.claimUsername("Id", "user1")).isFalse();
+		assertThat(chatroomServer.getUsernameList()).isEmpty();
+		assertThat(chatroomServer.claimUsername("Id", "user2")).isTrue();
+	}
+
+	@Test
+	public void testClaimUsernameReleasesClusterNameWhenSocketAlreadyHasOne() {
+		chatroomServer.claimUsername("Id", "user1");
+
+		assertThat(chatroomServer.claimUsername("Id", "user2")).isFalse();
+		assertThat(peer.claimUsername("user2")).isTrue();
+	}
+
+	@Test
+	public void testReleaseUsernameReleasesTheNameInTheCluster() {
+		chatroomServer.claimUsername("Id", "user1");
+
+		chatroomServer.releaseUsername("Id");
+
+		assertThat(peer.claimUsername("user1")).isTrue();
+	}
+
+	@Test
+	public void testRoomsCreatedOnAnotherNodeCanBeJoined() {
+		peer.createRoom("room1");
+		AtomicReference<String> joinedRoom = new AtomicReference<>();
+		clientSocket.on("joined", args -> {
+			String roomName = ((JSONObject) args[0]).getString("roomName");
+			joinedRoom.set(roomName);
+			if (roomName.equals(ChatroomServer.DEFAULT_ROOM))
+				clientSocket.emit("joinRoom", "room1");
+		});
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(joinedRoom.get()).isEqualTo("room1"));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	@Test
+	public void testMessagesArePublishedToTheOtherNodes() {
+		List<String> publishedRooms = new CopyOnWriteArrayList<>();
+		List<Message> publishedMessages = new CopyOnWriteArrayList<>();
+		peer.setMessageListener((room, message) -> {
+			publishedRooms.add(room);
+			publishedMessages.add(message);
+		});
+		ServerMessage msg = new ServerMessage(0, "user", "message");
+		clientSocket.on("joined", args -> clientSocket.emit("msg", msg.toJSON()));
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(publishedRooms).containsExactly(ChatroomServer.DEFAULT_ROOM));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+		assertThat(publishedMessages).containsExactly(msg);
+	}
+
+	@Test
+	public void testClientsOfDifferentServersOfTheClusterChatTogether() throws Exception {
+		LocalCluster cluster = new LocalCluster();
+		ServerConfiguration configuration = new ServerConfiguration();
+		configuration.setPort(3001);
+		ChatroomServer server1 = new ChatroomServer(serverRepository, new LocalClusterBus(cluster));
+		ChatroomServer server2 = new ChatroomServer(serverRepository, new LocalClusterBus(cluster), configuration);
+		chatroomServer.stop();
+		server1.start();
+		server2.start();
+
+		Socket clientSocket2 = IO.socket(URI.create("http://localhost:3001"), IO.Options.builder().build());
+		AtomicReference<String> error2 = new AtomicReference<>();
+		AtomicReference<JSONObject> received2 = new AtomicReference<>();
+		clientSocket2.on("error", args -> error2.set(((JSONObject) args[0]).getString("message")));
+		clientSocket2.on("msg", args -> received2.set((JSONObject) args[0]));
+		ServerMessage msg = new ServerMessage(0, "user", "message");
+		try {
+			clientSocket.on("joined", args -> clientSocket2.connect());
+			clientSocket2.on("connected", args -> clientSocket2.emit("join", "user"));
+			clientSocket2.on("joined", args -> clientSocket.emit("msg", msg.toJSON()));
+			clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+			clientSocket.connect();
+
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(error2.get()).isEqualTo("Username is already taken"));
+			clientSocket2.emit("join", "user2");
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(received2.get()).isNotNull());
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		} finally {
+			clientSocket2.disconnect();
+			server2.stop();
+			server1.stop();
+		}
+		assertThat(received2.get().getString("message")).isEqualTo("message");
+		verify(serverRepository, times(1)).save(ChatroomServer.DEFAULT_ROOM, msg);
+	}
+
+	@Test
+	public void testWebsocketOnlyServerAcceptsOnlyWebsocketClients() throws Exception {
+		ServerConfiguration configuration = new ServerConfiguration();
+		configuration.setPort(3001);
+		configuration.setWebsocketOnly(true);
+		ChatroomServer websocketServer = new ChatroomServer(serverRepository, new LocalClusterBus(), configuration);
+		websocketServer.start();
+
+		Socket websocketClient = IO.socket(URI.create("http://localhost:3001"),
+				IO.Options.builder().setTransports(new String[]{WebSocket.NAME}).build());
+		Socket pollingClient = IO.socket(URI.create("http://localhost:3001"), IO.Options.builder().setReconnection(false).build());
+		AtomicBoolean joined = new AtomicBoolean(false);
+		AtomicBoolean pollingRefused = new AtomicBoolean(false);
+		AtomicBoolean pollingConnected = new AtomicBoolean(false);
+		websocketClient.on("joined", args -> joined.set(true));
+		websocketClient.on("connected", args -> websocketClient.emit("join", "user"));
+		pollingClient.on(Socket.EVENT_CONNECT_ERROR, args -> pollingRefused.set(true));
+		pollingClient.on(Socket.EVENT_CONNECT, args -> pollingConnected.set(true));
+		try {
+			websocketClient.connect();
+			pollingClient.connect();
+
+			await().atMost(2, SECONDS).untilTrue(joined);
+			await().atMost(2, SECONDS).untilTrue(pollingRefused);
 		} catch (org.awaitility.core.ConditionTimeoutException e) {
 			fail(e.getMessage());
+		} finally {
+			websocketClient.disconnect();
+			pollingClient.disconnect();
+			websocketServer.stop();
+		}
+		assertThat(pollingConnected).isFalse();
+	}
+
+	@Test
+	public void testPollingResponsesAreGzippedAboveTheCompressionThreshold() throws Exception {
+		chatroomServer.setHistoryPageSize(mockLongHistory());
+
+		PollingResponse replay = replayHistoryOverPolling(3000);
+
+		assertThat(replay.body).contains("message number 499");
+		assertThat(replay.encoding).isEqualTo("gzip");
+		// measured on a 500 message replay: about 32 kB raw, under 3 kB on the wire
+		assertThat(replay.wireLength).isLessThan(replay.body.getBytes(StandardCharsets.UTF_8).length / 5);
+	}
+
+	@Test
+	public void testPollingResponsesAreNotCompressedWhenCompressionIsDisabled() throws Exception {
+		ServerConfiguration configuration = new ServerConfiguration();
+		configuration.setPort(3001);
+		configuration.setCompressionThreshold(-1);
+		ChatroomServer uncompressedServer = new ChatroomServer(serverRepository, new LocalClusterBus(), configuration);
+		uncompressedServer.setHistoryPageSize(mockLongHistory());
+		uncompressedServer.start();
+		try {
+			PollingResponse replay = replayHistoryOverPolling(3001);
+
+			assertThat(replay.body).contains("message number 499");
+			assertThat(replay.wireLength).isGreaterThan(ServerConfiguration.DEFAULT_COMPRESSION_THRESHOLD);
+			assertThat(replay.encoding).isNull();
+		} finally {
+			uncompressedServer.stop();
+		}
+	}
+
+	@Test
+	public void testWebsocketMessagesAreDeflatedOnlyAboveTheCompressionThreshold() throws Exception {
+		chatroomServer.setHistoryPageSize(mockLongHistory());
+
+		try (RawWebSocket webSocket = new RawWebSocket(3000)) {
+			assertThat(webSocket.extensions).contains("permessage-deflate");
+			webSocket.send("40");
+			webSocket.send("42[\"join\",\"user\"]");
+
+			List<RawWebSocket.Frame> small = new ArrayList<>();
+			RawWebSocket.Frame frame;
+			while (!(frame = webSocket.receive()).text().contains("\"history\"")) {
+				small.add(frame);
+			}
+
+			assertThat(small).extracting(f -> f.compressed).containsOnly(false);
+			assertThat(small).extracting(RawWebSocket.Frame::text).anyMatch(text -> text.contains("\"joined\""));
+			assertThat(frame.compressed).isTrue();
+			assertThat(frame.text()).contains("message number 99");
+			assertThat(frame.payload.length).isLessThan(frame.text().getBytes(StandardCharsets.UTF_8).length / 5);
+		}
+	}
+
+	@Test
+	public void testWebsocketCompressionIsNotNegotiatedWhenCompressionIsDisabled() throws Exception {
+		ServerConfiguration configuration = new ServerConfiguration();
+		configuration.setPort(3001);
+		configuration.setCompressionThreshold(-1);
+		ChatroomServer uncompressedServer = new ChatroomServer(serverRepository, new LocalClusterBus(), configuration);
+		uncompressedServer.start();
+		try (RawWebSocket webSocket = new RawWebSocket(3001)) {
+			assertThat(webSocket.extensions).isNull();
+		} finally {
+			uncompressedServer.stop();
+		}
+	}
+
+	@Test
+	public void testMessagesFromOtherNodesAreBroadcastButNotSaved() {
+		ServerMessage msg = new ServerMessage(0, "user2", "message");
+		AtomicReference<JSONObject> received = new AtomicReference<>();
+		clientSocket.on("msg", args -> received.set((JSONObject) args[0]));
+		clientSocket.on("joined", args -> peer.publish(ChatroomServer.DEFAULT_ROOM, msg));
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(received.get()).isNotNull());
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+		assertThat(received.get().getString("message")).isEqualTo("message");
+		verify(serverRepository, never()).save(any(), any());
+	}
+
+	@Test
+	public void testConnectedEventNamesTheCodecAskedForInTheHandshake() {
+		Socket binarySocket = binarySocket();
+		AtomicReference<Object> jsonCodec = new AtomicReference<>();
+		AtomicReference<Object> binaryCodec = new AtomicReference<>();
+		clientSocket.on("connected", args -> jsonCodec.set(args[0]));
+		binarySocket.on("connected", args -> binaryCodec.set(args[0]));
+		clientSocket.connect();
+		binarySocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> {
+				assertThat(jsonCodec.get()).isEqualTo("json");
+				assertThat(binaryCodec.get()).isEqualTo("binary");
+			});
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		} finally {
+			binarySocket.disconnect();
+		}
+	}
+
+	@Test
+	public void testBinaryAndJsonClientsOfARoomReceiveEachOthersMessages() {
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(new ArrayList<>());
+		ServerMessage jsonMessage = new ServerMessage(0, "user1", "message1");
+		ServerMessage binaryMessage = new ServerMessage(1, "user2", "message2");
+		Socket binarySocket = binarySocket();
+		List<Message> jsonReceived = new CopyOnWriteArrayList<>();
+		List<Message> binaryReceived = new CopyOnWriteArrayList<>();
+		clientSocket.on("msg", args -> jsonReceived.add(MessageCodecs.JSON.decode(args[0], ServerMessage::new)));
+		binarySocket.on("msg", args -> binaryReceived.add(MessageCodecs.BINARY.decode(args[0], ServerMessage::new)));
+		binarySocket.on("joined", args -> clientSocket.connect());
+		clientSocket.on("joined", args -> {
+			clientSocket.emit("msg", jsonMessage.toJSON());
+			binarySocket.emit("msg", MessageCodecs.BINARY.encode(binaryMessage));
+		});
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user1"));
+		binarySocket.on("connected", args -> binarySocket.emit("join", "user2"));
+		binarySocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> {
+				assertThat(jsonReceived).containsExactlyInAnyOrder(jsonMessage, binaryMessage);
+				assertThat(binaryReceived).containsExactlyInAnyOrder(jsonMessage, binaryMessage);
+			});
+			await().atMost(2, SECONDS).untilAsserted(() -> verify(serverRepository, times(2)).save(any(), any()));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		} finally {
+			binarySocket.disconnect();
+		}
+		verify(serverRepository).save(ChatroomServer.DEFAULT_ROOM, jsonMessage);
+		verify(serverRepository).save(ChatroomServer.DEFAULT_ROOM, binaryMessage);
+	}
+
+	@Test
+	public void testEveryBinaryClientOfARoomReceivesTheMessage() {
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(new ArrayList<>());
+		ServerMessage message = new ServerMessage(0, "user1", "message");
+		Socket binarySocket1 = binarySocket();
+		Socket binarySocket2 = binarySocket();
+		List<Object> received1 = new CopyOnWriteArrayList<>();
+		List<Object> received2 = new CopyOnWriteArrayList<>();
+		binarySocket1.on("msg", args -> received1.add(args[0]));
+		binarySocket2.on("msg", args -> received2.add(args[0]));
+		binarySocket1.on("joined", args -> binarySocket2.connect());
+		binarySocket2.on("joined", args -> binarySocket1.emit("msg", MessageCodecs.BINARY.encode(message)));
+		binarySocket1.on("connected", args -> binarySocket1.emit("join", "user1"));
+		binarySocket2.on("connected", args -> binarySocket2.emit("join", "user2"));
+		binarySocket1.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> {
+				assertThat(received1).hasSize(1);
+				assertThat(received2).hasSize(1);
+			});
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		} finally {
+			binarySocket1.disconnect();
+			binarySocket2.disconnect();
+		}
+		assertThat(MessageCodecs.BINARY.decode(received1.get(0), ServerMessage::new)).isEqualTo(message);
+		assertThat(MessageCodecs.BINARY.decode(received2.get(0), ServerMessage::new)).isEqualTo(message);
+	}
+
+	@Test
+	public void testHistoryIsSentWithTheCodecOfTheClient() {
+		List<Message> history = asList(
+				new ServerMessage(0, "user1", "message1"),
+				new ServerMessage(1, "user2", "message2"));
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, ChatroomServer.DEFAULT_HISTORY_PAGE_SIZE)).thenReturn(history);
+		Socket binarySocket = binarySocket();
+		AtomicReference<Object> received = new AtomicReference<>();
+		binarySocket.on("history", args -> received.set(args[0]));
+		binarySocket.on("connected", args -> binarySocket.emit("join", "user"));
+		binarySocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(received.get()).isInstanceOf(byte[].class));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		} finally {
+			binarySocket.disconnect();
+		}
+		assertThat(MessageCodecs.BINARY.decodeAll(received.get(), ServerMessage::new)).isEqualTo(history);
+	}
+
+	@Test
+	public void testCreateRoomRejectsNamesReservedForCodecRooms() {
+		AtomicReference<String> errorMessage = new AtomicReference<>();
+		clientSocket.on("error", args -> errorMessage.set(((JSONObject) args[0]).getString("message")));
+		clientSocket.on("joined", args -> clientSocket.emit("createRoom", "room\0binary"));
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).untilAsserted(() -> assertThat(errorMessage.get()).isEqualTo("Invalid room name"));
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+		assertThat(chatroomServer.getRooms()).containsExactly(ChatroomServer.DEFAULT_ROOM);
+	}
+
+	@Test
+	public void testCreateRoomRejectsEmptyNames() {
+		assertThat(createRoomError(" ")).isEqualTo("Room name must not be empty");
+		assertThat(chatroomServer.getRooms()).containsExactly(ChatroomServer.DEFAULT_ROOM);
+	}
+
+	@Test
+	public void testCreateRoomRejectsLongNames() {
+		char[] name = new char[ChatroomServer.MAX_ROOM_NAME_LENGTH + 1];
+		Arrays.fill(name, 'r');
+
+		assertThat(createRoomError(new String(name))).isEqualTo("Room name is too long");
+		assertThat(chatroomServer.getRooms()).containsExactly(ChatroomServer.DEFAULT_ROOM);
+	}
+
+	@Test
+	public void testCreateRoomRejectsRoomsAboveTheMaximum() {
+		chatroomServer.setMaxRooms(1);
+
+		assertThat(createRoomError("room1")).isEqualTo("Too many rooms");
+		assertThat(chatroomServer.getRooms()).containsExactly(ChatroomServer.DEFAULT_ROOM);
+	}
+
+	@Test
+	public void testMaxRoomsMustBePositive() {
+		assertThatThrownBy(() -> chatroomServer.setMaxRooms(0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Maximum rooms must be positive");
+	}
+
+	/**
+	 * @return The error the server answers a request to create the room with
+	 */
+	private String createRoomError(String room) {
+		AtomicReference<String> errorMessage = new AtomicReference<>();
+		clientSocket.on("error", args -> errorMessage.set(((JSONObject) args[0]).getString("message")));
+		clientSocket.on("joined", args -> clientSocket.emit("createRoom", room));
+		clientSocket.on("connected", args -> clientSocket.emit("join", "user"));
+		clientSocket.connect();
+
+		try {
+			await().atMost(2, SECONDS).until(() -> errorMessage.get() != null);
+		} catch (org.awaitility.core.ConditionTimeoutException e) {
+			fail(e.getMessage());
+		}
+		return errorMessage.get();
+	}
+
+	private static Socket binarySocket() {
+		return IO.socket(URI.create("http://localhost:3000"), IO.Options.builder()
+				.setQuery(MessageCodecs.QUERY_PARAMETER + "=" + BinaryMessageCodec.NAME).build());
+	}
+
+	/**
+	 * Makes the repository answer the latest history of the default room
+	 * with 500 messages, about 32 kB as JSON.
+	 *
+	 * @return The page size that asks for all of them
+	 */
+	private int mockLongHistory() {
+		List<Message> history = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			history.add(new ServerMessage(i, "user" + (i % 5), "message number " + i));
+		}
+		when(serverRepository.findLatest(ChatroomServer.DEFAULT_ROOM, history.size())).thenReturn(history);
+		return history.size();
+	}
+
+	/**
+	 * Joins the default room over HTTP long-polling.
+	 *
+	 * @return The first response that carries the history of the room
+	 */
+	private static PollingResponse replayHistoryOverPolling(int port) throws IOException {
+		String url = "http://localhost:" + port + "/socket.io/?EIO=4&transport=polling";
+		PollingResponse handshake = poll(url, null);
+		assertThat(handshake.encoding).isNull();
+		String sid = new JSONObject(handshake.body.substring(1)).getString("sid");
+		url += "&sid=" + sid;
+		poll(url, "40");
+		poll(url, "42[\"join\",\"user\"]");
+
+		PollingResponse replay = null;
+		for (int i = 0; i < 10 && (replay == null || !replay.body.contains("\"history\"")); i++) {
+			replay = poll(url, null);
+		}
+		poll(url, "1");
+		return replay;
+	}
+
+	/**
+	 * Engine.io WebSocket connection on a plain socket, which offers
+	 * permessage-deflate and exposes whether each frame the server sends is
+	 * compressed.
+	 */
+	private static class RawWebSocket implements AutoCloseable {
+
+		private static class Frame {
+			private final boolean compressed;
+			private final byte[] payload;
+
+			private Frame(boolean compressed, byte[] payload) {
+				this.compressed = compressed;
+				this.payload = payload;
+			}
+
+			private String text() {
+				if (!compressed)
+					return new String(payload, StandardCharsets.UTF_8);
+				// the sender drops the empty block that ends each message
+				byte[] message = Arrays.copyOf(payload, payload.length + 4);
+				message[message.length - 2] = (byte) 0xff;
+				message[message.length - 1] = (byte) 0xff;
+				Inflater inflater = new Inflater(true);
+				inflater.setInput(message);
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				try {
+					int inflated;
+					while ((inflated = inflater.inflate(buffer)) > 0) {
+						out.write(buffer, 0, inflated);
+					}
+				} catch (DataFormatException e) {
+					throw new IllegalStateException(e);
+				} finally {
+					inflater.end();
+				}
+				return new String(out.toByteArray(), StandardCharsets.UTF_8);
+			}
+		}
+
+		private final java.net.Socket socket;
+		private final DataInputStream in;
+		private final OutputStream out;
+		private final String extensions;
+
+		private RawWebSocket(int port) throws IOException {
+			socket = new java.net.Socket("localhost", port);
+			socket.setSoTimeout(2000);
+			in = new DataInputStream(socket.getInputStream());
+			out = socket.getOutputStream();
+			out.write(("GET /socket.io/?EIO=4&transport=websocket HTTP/1.1\r\n"
+					+ "Host: localhost:" + port + "\r\n"
+					+ "Upgrade: websocket\r\n"
+					+ "Connection: Upgrade\r\n"
+					+ "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n"
+					+ "Sec-WebSocket-Version: 13\r\n"
+					+ "Sec-WebSocket-Extensions: permessage-deflate\r\n"
+					+ "\r\n").getBytes(StandardCharsets.US_ASCII));
+			String status = readLine();
+			assertThat(status).startsWith("HTTP/1.1 101");
+			String extensionsHeader = null;
+			String header;
+			while (!(header = readLine()).isEmpty()) {
+				if (header.toLowerCase().startsWith("sec-websocket-extensions:"))
+					extensionsHeader = header.substring(header.indexOf(':') + 1).trim();
+			}
+			extensions = extensionsHeader;
+		}
+
+		private String readLine() throws IOException {
+			StringBuilder line = new StringBuilder();
+			int c;
+			while ((c = in.read()) != '\n') {
+				if (c == -1)
+					throw new EOFException();
+				if (c != '\r')
+					line.append((char) c);
+			}
+			return line.toString();
+		}
+
+		/**
+		 * Sends a masked text frame, as clients must.
+		 */
+		private void send(String text) throws IOException {
+			byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+			byte[] mask = {1, 2, 3, 4};
+			out.write(0x81);
+			out.write(0x80 | payload.length);
+			out.write(mask);
+			for (int i = 0; i < payload.length; i++) {
+				out.write(payload[i] ^ mask[i % 4]);
+			}
+			out.flush();
+		}
+
+		private Frame receive() throws IOException {
+			int first = in.readUnsignedByte();
+			long length = in.readUnsignedByte() & 0x7f;
+			if (length == 126)
+				length = in.readUnsignedShort();
+			else if (length == 127)
+				length = in.readLong();
+			byte[] payload = new byte[(int) length];
+			in.readFully(payload);
+			return new Frame((first & 0x40) != 0, payload);
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+
+	private static class PollingResponse {
+		private final String body;
+		private final String encoding;
+		private final int wireLength;
+
+		private PollingResponse(String body, String encoding, int wireLength) {
+			this.body = body;
+			this.encoding = encoding;
+			this.wireLength = wireLength;
+		}
+	}
+
+	/**
+	 * Sends one engine.io polling request; a GET when {@code payload} is
+	 * null, a POST of the payload otherwise.
+	 */
+	private static PollingResponse poll(String url, String payload) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		if (payload != null) {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(payload.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		connection.getResponseCode();
+		InputStream stream = connection.getErrorStream() != null ? connection.getErrorStream() : connection.getInputStream();
+		byte[] wire = readAll(stream);
+		String encoding = connection.getContentEncoding();
+		byte[] body = "gzip".equals(encoding) ? readAll(new GZIPInputStream(new ByteArrayInputStream(wire))) : wire;
+		connection.disconnect();
+		return new PollingResponse(new String(body, StandardCharsets.UTF_8), encoding, wire.length);
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		try (InputStream input = in) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = input.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
 		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package io.github.marcodiri.java_socketio_chatroom_server;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ServerConfigurationTest {
+
+	@Test
+	public void testDefaults() {
+		ServerConfiguration configuration = new ServerConfiguration();
+
+		assertThat(configuration.getPort()).isEqualTo(ServerConfiguration.DEFAULT_PORT);
+		assertThat(configuration.getMinThreads()).isEqualTo(ServerConfiguration.DEFAULT_MIN_THREADS);
+		assertThat(configuration.getMaxThreads()).isEqualTo(ServerConfiguration.DEFAULT_MAX_THREADS);
+		assertThat(configuration.getAcceptors()).isEqualTo(ServerConfiguration.DEFAULT_ACCEPTORS);
+		assertThat(configuration.getSelectors()).isEqualTo(ServerConfiguration.DEFAULT_SELECTORS);
+		assertThat(configuration.getIdleTimeout()).isEqualTo(ServerConfiguration.DEFAULT_IDLE_TIMEOUT);
+		assertThat(configuration.getAcceptQueueSize()).isEqualTo(ServerConfiguration.DEFAULT_ACCEPT_QUEUE_SIZE);
+		assertThat(configuration.isVirtualThreads()).isFalse();
+		assertThat(configuration.isWebsocketOnly()).isFalse();
+		assertThat(configuration.getCompressionThreshold()).isEqualTo(ServerConfiguration.DEFAULT_COMPRESSION_THRESHOLD);
+	}
+
+	@Test
+	public void testFromPropertiesReadsEveryKey() {
+		Properties properties = new Properties();
+		properties.setProperty("server.port", "4000");
+		properties.setProperty("server.threads.min", "16");
+		properties.setProperty("server.threads.max", " 500 ");
+		properties.setProperty("server.acceptors", "2");
+		properties.setProperty("server.selectors", "4");
+		properties.setProperty("server.idle.timeout", "60000");
+		properties.setProperty("server.accept.queue.size", "1024");
+		properties.setProperty("server.virtual.threads", "true ");
+		properties.setProperty("server.websocket.only", "TRUE");
+		properties.setProperty("server.compression.threshold", "-1");
+
+		ServerConfiguration configuration = ServerConfiguration.fromProperties(properties);
+
+		assertThat(configuration.getPort()).isEqualTo(4000);
+		assertThat(configuration.getMinThreads()).isEqualTo(16);
+		assertThat(configuration.getMaxThreads()).isEqualTo(500);
+		assertThat(configuration.getAcceptors()).isEqualTo(2);
+		assertThat(configuration.getSelectors()).isEqualTo(4);
+		assertThat(configuration.getIdleTimeout()).isEqualTo(60000);
+		assertThat(configuration.getAcceptQueueSize()).isEqualTo(1024);
+		assertThat(configuration.isVirtualThreads()).isTrue();
+		assertThat(configuration.isWebsocketOnly()).isTrue();
+		assertThat(configuration.getCompressionThreshold()).isEqualTo(-1);
+		assertThat(configuration).hasToString("ServerConfiguration{port=4000, threads=16-500, acceptors=2, "
+				+ "selectors=4, idleTimeout=60000, acceptQueueSize=1024, virtualThreads=true, websocketOnly=true, "
+				+ "compressionThreshold=-1}");
+	}
+
+	@Test
+	public void testFromPropertiesKeepsDefaultsOfMissingKeys() {
+		Properties properties = new Properties();
+		properties.setProperty("server.port", "4000");
+
+		ServerConfiguration configuration = ServerConfiguration.fromProperties(properties);
+
+		assertThat(configuration.getPort()).isEqualTo(4000);
+		assertThat(configuration.getMaxThreads()).isEqualTo(ServerConfiguration.DEFAULT_MAX_THREADS);
+		assertThat(configuration.getIdleTimeout()).isEqualTo(ServerConfiguration.DEFAULT_IDLE_TIMEOUT);
+	}
+
+	@Test
+	public void testFromPropertiesRejectsNonNumericValues() {
+		Properties intProperties = new Properties();
+		intProperties.setProperty("server.port", "abc");
+		Properties longProperties = new Properties();
+		longProperties.setProperty("server.idle.timeout", "1s");
+
+		assertThatThrownBy(() -> ServerConfiguration.fromProperties(intProperties))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Invalid value for server.port: abc");
+		assertThatThrownBy(() -> ServerConfiguration.fromProperties(longProperties))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Invalid value for server.idle.timeout: 1s");
+	}
+
+	@Test
+	public void testSettersRejectOutOfRangeValues() {
+		ServerConfiguration configuration = new ServerConfiguration();
+
+		assertThatThrownBy(() -> configuration.setPort(-1))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Port must be between 0 and 65535");
+		assertThatThrownBy(() -> configuration.setPort(65536))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Port must be between 0 and 65535");
+		assertThatThrownBy(() -> configuration.setThreads(0, 10))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Minimum threads must be positive");
+		assertThatThrownBy(() -> configuration.setThreads(10, 5))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Maximum threads must not be less than minimum threads");
+		assertThatThrownBy(() -> configuration.setAcceptors(-2))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Acceptors must be -1 or more");
+		assertThatThrownBy(() -> configuration.setSelectors(0))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Selectors must be -1 or positive");
+		assertThatThrownBy(() -> configuration.setSelectors(-2))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Selectors must be -1 or positive");
+		assertThatThrownBy(() -> configuration.setIdleTimeout(0))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Idle timeout must be positive");
+		assertThatThrownBy(() -> configuration.setAcceptQueueSize(-1))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Accept queue size must not be negative");
+		assertThatThrownBy(() -> configuration.setCompressionThreshold(-2))
+				.isInstanceOf(IllegalArgumentException.class).hasMessage("Compression threshold must be -1 or more");
+	}
+
+	@Test
+	public void testSettersAcceptBoundaryValues() {
+		ServerConfiguration configuration = new ServerConfiguration();
+
+		configuration.setPort(0);
+		configuration.setThreads(1, 1);
+		configuration.setAcceptors(0);
+		configuration.setSelectors(1);
+		configuration.setCompressionThreshold(0);
+
+		assertThat(configuration.getPort()).isZero();
+		assertThat(configuration.getMaxThreads()).isEqualTo(1);
+		assertThat(configuration.getAcceptors()).isZero();
+		assertThat(configuration.getSelectors()).isEqualTo(1);
+		assertThat(configuration.getCompressionThreshold()).isZero();
+	}
+}
@@ -0,0 +1,151 @@
+package io.github.marcodiri.java_socketio_chatroom_server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SocketOutboxTest {
+
+	private final List<String> sent = new CopyOnWriteArrayList<>();
+
+	@Test
+	public void testEventsAreSentInOrder() {
+		SocketOutbox outbox = new SocketOutbox((event, payload) -> sent.add(event + ":" + payload));
+
+		outbox.send("joined", "room");
+		outbox.send("history", "messages");
+
+		assertThat(sent).containsExactly("joined:room", "history:messages");
+	}
+
+	@Test
+	public void testEventIsDroppedWhenItsConditionNoLongerHolds() {
+		SocketOutbox outbox = new SocketOutbox((event, payload) -> sent.add(event));
+		AtomicBoolean inRoom = new AtomicBoolean(true);
+
+		outbox.send("history", "old", inRoom::get);
+		inRoom.set(false);
+		outbox.send("history", "stale", inRoom::get);
+
+		assertThat(sent).containsExactly("history");
+	}
+
+	@Test
+	public void testEventQueuedWhileSendingIsSentAfterTheCurrentOne() {
+		List<String> log = new ArrayList<>();
+		SocketOutbox[] outbox = new SocketOutbox[1];
+		outbox[0] = new SocketOutbox((event, payload) -> {
+			log.add("start " + event);
+			if (event.equals("msg")) {
+				outbox[0].send("error", null);
+			}
+			log.add("end " + event);
+		});
+
+		outbox[0].send("msg", null);
+
+		assertThat(log).containsExactly("start msg", "end msg", "start error", "end error");
+	}
+
+	@Test
+	public void testSendDoesNotWaitForAnotherThreadSending() throws Exception {
+		CountDownLatch sending = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		SocketOutbox outbox = new SocketOutbox((event, payload) -> {
+			sent.add(event);
+			if (event.equals("slow")) {
+				sending.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> slow = executor.submit(() -> outbox.send("slow", null));
+			assertThat(sending.await(2, SECONDS)).isTrue();
+
+			outbox.send("queued", null);
+
+			assertThat(sent).containsExactly("slow");
+			release.countDown();
+			slow.get(2, SECONDS);
+			assertThat(sent).containsExactly("slow", "queued");
+		} finally {
+			release.countDown();
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testSendsFromManyThreadsNeverOverlap() throws Exception {
+		int threads = 4;
+		int eventsPerThread = 1000;
+		AtomicInteger inSend = new AtomicInteger();
+		AtomicBoolean overlapped = new AtomicBoolean(false);
+		SocketOutbox outbox = new SocketOutbox((event, payload) -> {
+			if (inSend.incrementAndGet() > 1)
+				overlapped.set(true);
+			sent.add(event);
+			inSend.decrementAndGet();
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<?>> senders = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				String thread = "t" + t;
+				senders.add(executor.submit(() -> {
+					for (int i = 0; i < eventsPerThread; i++) {
+						outbox.send(thread + "-" + i, null);
+					}
+				}));
+			}
+			for (Future<?> sender : senders) {
+				sender.get(5, SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(overlapped).isFalse();
+		assertThat(sent).hasSize(threads * eventsPerThread);
+		for (String thread : asList("t0", "t1", "t2", "t3")) {
+			List<String> ofThread = new ArrayList<>();
+			for (String event : sent) {
+				if (event.startsWith(thread + "-"))
+					ofThread.add(event);
+			}
+			for (int i = 0; i < eventsPerThread; i++) {
+				assertThat(ofThread.get(i)).isEqualTo(thread + "-" + i);
+			}
+		}
+	}
+
+	@Test
+	public void testFailedSendDoesNotStopLaterEvents() {
+		SocketOutbox outbox = new SocketOutbox((event, payload) -> {
+			if (event.equals("bad"))
+				throw new IllegalArgumentException("bad payload");
+			sent.add(event);
+		});
+
+		outbox.send("bad", null);
+		outbox.send("good", null);
+
+		assertThat(sent).containsExactly("good");
+	}
+}
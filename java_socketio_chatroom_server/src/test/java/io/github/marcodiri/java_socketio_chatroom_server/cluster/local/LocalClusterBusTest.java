@@ -0,0 +1,129 @@
+package io.github.marcodiri.java_socketio_chatroom_server.cluster.local;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LocalClusterBusTest {
+
+	private LocalCluster cluster;
+
+	private LocalClusterBus node1;
+	private LocalClusterBus node2;
+
+	@Before
+	public void setup() {
+		cluster = new LocalCluster();
+		node1 = new LocalClusterBus(cluster);
+		node2 = new LocalClusterBus(cluster);
+		node1.open();
+		node2.open();
+	}
+
+	@Test
+	public void testPublishDeliversToTheOtherNodesOnly() {
+		List<String> received1 = new ArrayList<>();
+		List<String> received2 = new ArrayList<>();
+		node1.setMessageListener((room, message) -> received1.add(room + ":" + message.getUserMessage()));
+		node2.setMessageListener((room, message) -> received2.add(room + ":" + message.getUserMessage()));
+
+		node1.publish("room", new ServerMessage(0, "user", "hello"));
+
+		assertThat(received1).isEmpty();
+		assertThat(received2).containsExactly("room:hello");
+	}
+
+	@Test
+	public void testPublishWithoutListenerIsIgnored() {
+		node1.publish("room", new ServerMessage(0, "user", "message"));
+
+		assertThat(cluster.getNodeCount()).isEqualTo(2);
+	}
+
+	@Test
+	public void testClosedNodeNoLongerReceivesMessages() {
+		List<Message> received = new ArrayList<>();
+		node2.setMessageListener((room, message) -> received.add(message));
+
+		node2.close();
+		node1.publish("room", new ServerMessage(0, "user", "message"));
+
+		assertThat(received).isEmpty();
+		assertThat(cluster.getNodeCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void testUsernameCanBeClaimedByOneNodeOnly() {
+		assertThat(node1.claimUsername("user")).isTrue();
+		assertThat(node2.claimUsername("user")).isFalse();
+		assertThat(node1.claimUsername("user")).isFalse();
+	}
+
+	@Test
+	public void testReleaseUsernameOnlyFreesNamesOfTheNode() {
+		node1.claimUsername("user");
+
+		node2.releaseUsername("user");
+		assertThat(node2.claimUsername("user")).isFalse();
+
+		node1.releaseUsername("user");
+		assertThat(node2.claimUsername("user")).isTrue();
+	}
+
+	@Test
+	public void testCloseReleasesUsernamesOfTheNode() {
+		node1.claimUsername("user1");
+		node2.claimUsername("user2");
+
+		node1.close();
+
+		assertThat(node2.claimUsername("user1")).isTrue();
+		assertThat(node2.claimUsername("user2")).isFalse();
+	}
+
+	@Test
+	public void testRoomsAreSharedBetweenNodes() {
+		assertThat(node1.createRoom("room")).isTrue();
+
+		assertThat(node2.createRoom("room")).isFalse();
+		assertThat(node2.hasRoom("room")).isTrue();
+		assertThat(node2.hasRoom("other")).isFalse();
+		assertThat(node2.getRooms()).containsExactly("room");
+	}
+
+	@Test
+	public void testGetRoomsIsReadOnly() {
+		assertThatThrownBy(() -> node1.getRooms().add("room"))
+				.isInstanceOf(UnsupportedOperationException.class);
+	}
+
+	@Test
+	public void testRoomsAreForgottenWhenTheLastNodeCloses() {
+		node1.createRoom("room");
+
+		node1.close();
+		assertThat(node2.hasRoom("room")).isTrue();
+
+		node2.close();
+		assertThat(node2.getRooms()).isEmpty();
+	}
+
+	@Test
+	public void testDefaultConstructorCreatesASingleNodeCluster() {
+		LocalClusterBus standalone = new LocalClusterBus();
+		standalone.open();
+
+		assertThat(standalone.claimUsername("user")).isTrue();
+		assertThat(node1.claimUsername("user")).isTrue();
+
+		standalone.close();
+	}
+}
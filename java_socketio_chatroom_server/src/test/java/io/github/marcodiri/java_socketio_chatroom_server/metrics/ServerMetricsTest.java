@@ -0,0 +1,200 @@
+package io.github.marcodiri.java_socketio_chatroom_server.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.RuntimeMBeanException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+public class ServerMetricsTest {
+
+	private static final String MBEAN_NAME = "io.github.marcodiri.java_socketio_chatroom_server:type=ServerMetricsTest";
+
+	private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+	private ServerMetrics metrics;
+
+	@Before
+	public void setup() {
+		metrics = new ServerMetrics();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		metrics.unregisterMBean();
+	}
+
+	@Test
+	public void testCounterAddsUp() {
+		Counter counter = metrics.counter("test_total", "Test");
+		counter.increment();
+		counter.add(2);
+
+		assertThat(counter.get()).isEqualTo(3);
+		assertThat(metrics.values()).containsEntry("test_total", 3L);
+	}
+
+	@Test
+	public void testGaugeIsReadEveryTime() {
+		AtomicInteger value = new AtomicInteger(1);
+		metrics.gauge("test", "Test", value::get);
+
+		assertThat(metrics.values()).containsEntry("test", 1.0);
+		value.set(2);
+		assertThat(metrics.values()).containsEntry("test", 2.0);
+	}
+
+	@Test
+	public void testSuppliedCounterIsReadEveryTimeAndTypedAsACounter() {
+		AtomicInteger value = new AtomicInteger(1);
+		metrics.counter("test_total", "Test", value::get);
+
+		assertThat(metrics.values()).containsEntry("test_total", 1.0);
+		value.set(2);
+		assertThat(metrics.values()).containsEntry("test_total", 2.0);
+		StringWriter text = new StringWriter();
+		metrics.writeText(new PrintWriter(text));
+		assertThat(text.toString()).contains("# TYPE test_total counter\ntest_total 2.0\n");
+	}
+
+	@Test
+	public void testNamesAreUnique() {
+		metrics.counter("test_total", "Test");
+
+		assertThatThrownBy(() -> metrics.timer("test_total", "Test"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Metric already registered: test_total");
+	}
+
+	@Test
+	public void testTimerEstimatesPercentilesFromItsBuckets() {
+		LatencyTimer timer = metrics.timer("test_seconds", "Test");
+		assertThat(timer.getQuantile(0.5)).isZero();
+
+		for (int i = 0; i < 98; i++) {
+			timer.record(TimeUnit.MICROSECONDS.toNanos(700));
+		}
+		timer.record(TimeUnit.MILLISECONDS.toNanos(3));
+		timer.record(TimeUnit.MILLISECONDS.toNanos(40));
+
+		assertThat(timer.getCount()).isEqualTo(100);
+		assertThat(timer.getQuantile(0.5)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1));
+		assertThat(timer.getQuantile(0.99)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+		// capped at the longest duration rather than the bound of its bucket
+		assertThat(timer.getQuantile(1)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(40));
+		assertThat(timer.getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(40));
+		assertThat((double) metrics.values().get("test_seconds_p99")).isCloseTo(0.005, within(1e-9));
+	}
+
+	@Test
+	public void testTimerKeepsDurationsLongerThanItsLastBucket() {
+		LatencyTimer timer = metrics.timer("test_seconds", "Test");
+		timer.record(TimeUnit.SECONDS.toNanos(30));
+		long start = System.nanoTime();
+		timer.recordSince(start);
+
+		assertThat(timer.getCount()).isEqualTo(2);
+		assertThat(timer.getQuantile(1)).isEqualTo(TimeUnit.SECONDS.toNanos(30));
+		assertThat(timer.getQuantile(0.5)).isLessThanOrEqualTo(LatencyTimer.BUCKET_BOUNDS[0]);
+	}
+
+	@Test
+	public void testTextFormat() {
+		metrics.counter("b_total", "Counter").add(5);
+		metrics.gauge("a", "Gauge", () -> 1.5);
+		LatencyTimer timer = metrics.timer("c_seconds", "Timer");
+		timer.record(TimeUnit.MILLISECONDS.toNanos(2));
+		timer.record(TimeUnit.SECONDS.toNanos(20));
+
+		StringWriter text = new StringWriter();
+		metrics.writeText(new PrintWriter(text));
+
+		assertThat(text.toString().split("\n")).startsWith(
+				"# HELP a Gauge",
+				"# TYPE a gauge",
+				"a 1.5",
+				"# HELP b_total Counter",
+				"# TYPE b_total counter",
+				"b_total 5",
+				"# HELP c_seconds Timer",
+				"# TYPE c_seconds histogram",
+				"c_seconds_bucket{le=\"1.0E-4\"} 0",
+				"c_seconds_bucket{le=\"2.5E-4\"} 0",
+				"c_seconds_bucket{le=\"5.0E-4\"} 0",
+				"c_seconds_bucket{le=\"0.001\"} 0",
+				"c_seconds_bucket{le=\"0.0025\"} 1"
+		).endsWith(
+				"c_seconds_bucket{le=\"10.0\"} 1",
+				"c_seconds_bucket{le=\"+Inf\"} 2",
+				"c_seconds_sum 20.002",
+				"c_seconds_count 2"
+		);
+	}
+
+	@Test
+	public void testMBeanServesTheValues() throws Exception {
+		metrics.counter("test_total", "Test").increment();
+		metrics.registerMBean(MBEAN_NAME);
+		// registered after the MBean
+		metrics.timer("test_seconds", "Test");
+		ObjectName name = new ObjectName(MBEAN_NAME);
+
+		assertThat(mBeanServer.getAttribute(name, "test_total")).isEqualTo(1L);
+		assertThat(mBeanServer.getAttribute(name, "test_seconds_count")).isEqualTo(0L);
+		assertThat(mBeanServer.getAttributes(name, new String[]{"test_total", "missing"}).asList())
+				.containsExactly(new Attribute("test_total", 1L));
+		assertThat(mBeanServer.getMBeanInfo(name).getAttributes())
+				.extracting(MBeanAttributeInfo::getName)
+				.containsExactly("test_seconds_count", "test_seconds_p50", "test_seconds_p99", "test_seconds_max", "test_total");
+		assertThatThrownBy(() -> mBeanServer.getAttribute(name, "missing"))
+				.isInstanceOf(AttributeNotFoundException.class);
+	}
+
+	@Test
+	public void testMBeanIsReadOnly() throws Exception {
+		metrics.counter("test_total", "Test");
+		metrics.registerMBean(MBEAN_NAME);
+		ObjectName name = new ObjectName(MBEAN_NAME);
+
+		assertThatThrownBy(() -> mBeanServer.setAttribute(name, new Attribute("test_total", 2L)))
+				.isInstanceOf(RuntimeMBeanException.class);
+		assertThat(mBeanServer.setAttributes(name, new AttributeList())).isEmpty();
+		assertThatThrownBy(() -> mBeanServer.invoke(name, "reset", new Object[0], new String[0]))
+				.isInstanceOf(RuntimeMBeanException.class);
+	}
+
+	@Test
+	public void testMBeanIsUnregistered() throws Exception {
+		metrics.registerMBean(MBEAN_NAME);
+		metrics.unregisterMBean();
+
+		assertThat(mBeanServer.isRegistered(new ObjectName(MBEAN_NAME))).isFalse();
+	}
+
+	@Test
+	public void testMBeanNameMustBeValidAndFree() throws Exception {
+		assertThatThrownBy(() -> metrics.registerMBean("no domain"))
+				.isInstanceOf(MalformedObjectNameException.class);
+
+		metrics.registerMBean(MBEAN_NAME);
+		assertThatThrownBy(() -> new ServerMetrics().registerMBean(MBEAN_NAME))
+				.isInstanceOf(InstanceAlreadyExistsException.class);
+	}
+}
@@ -0,0 +1,18 @@
+package io.github.marcodiri.java_socketio_chatroom_server.model;
+
+import org.junit.Test;
+
+import java.sql.Timestamp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ServerMessageTest {
+
+	@Test
+	public void testFormattedTimestampMatchesTimestampToString() {
+		for (long timestamp : new long[]{0, 1, 10, 120, 1_600_000_000_123L}) {
+			assertThat(new ServerMessage(timestamp, "user", "message").getFormattedMessage())
+					.isEqualTo(new Timestamp(timestamp) + " user: message");
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.cache;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MessageRingBufferTest {
+
+	private MessageRingBuffer buffer;
+
+	@Before
+	public void setup() {
+		buffer = new MessageRingBuffer(3);
+	}
+
+	@Test
+	public void testNonPositiveCapacityIsRejected() {
+		assertThatThrownBy(() -> new MessageRingBuffer(0)).isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Capacity must be positive");
+	}
+
+	@Test
+	public void testAddKeepsMessagesInTimestampOrder() {
+		Message msg1 = message(0);
+		Message msg2 = message(1);
+		Message msg3 = message(2);
+
+		assertThat(buffer.add(msg3)).isTrue();
+		assertThat(buffer.add(msg1)).isTrue();
+		assertThat(buffer.add(msg2)).isTrue();
+
+		assertThat(buffer.size()).isEqualTo(3);
+		assertThat(buffer.latest(3)).containsExactly(msg1, msg2, msg3);
+	}
+
+	@Test
+	public void testAddEvictsOldestMessageWhenFull() {
+		buffer.add(message(0));
+		Message msg2 = message(1);
+		Message msg3 = message(2);
+		Message msg4 = message(3);
+		buffer.add(msg2);
+		buffer.add(msg3);
+
+		assertThat(buffer.add(msg4)).isFalse();
+
+		assertThat(buffer.size()).isEqualTo(3);
+		assertThat(buffer.latest(3)).containsExactly(msg2, msg3, msg4);
+	}
+
+	@Test
+	public void testAddDropsMessageOlderThanTheWholeWindowWhenFull() {
+		Message msg2 = message(1);
+		Message msg3 = message(2);
+		Message msg4 = message(3);
+		buffer.add(msg2);
+		buffer.add(msg3);
+		buffer.add(msg4);
+
+		assertThat(buffer.add(message(0))).isFalse();
+
+		assertThat(buffer.latest(3)).containsExactly(msg2, msg3, msg4);
+	}
+
+	@Test
+	public void testLatestReturnsMostRecentMessages() {
+		Message msg2 = message(1);
+		buffer.add(message(0));
+		buffer.add(msg2);
+
+		assertThat(buffer.latest(1)).containsExactly(msg2);
+		assertThat(buffer.latest(5)).hasSize(2);
+	}
+
+	@Test
+	public void testBeforeReturnsMessagesStrictlyOlderThanTimestamp() {
+		Message msg1 = message(0);
+		Message msg2 = message(1);
+		buffer.add(msg1);
+		buffer.add(msg2);
+		buffer.add(message(2));
+
+		assertThat(buffer.before(2, 5)).containsExactly(msg1, msg2);
+		assertThat(buffer.before(2, 1)).containsExactly(msg2);
+		assertThat(buffer.before(0, 5)).isEmpty();
+	}
+
+	@Test
+	public void testClearEmptiesTheBuffer() {
+		buffer.add(message(0));
+		buffer.add(message(1));
+
+		buffer.clear();
+
+		assertThat(buffer.size()).isZero();
+		assertThat(buffer.latest(3)).isEmpty();
+		Message msg = message(2);
+		buffer.add(msg);
+		assertThat(buffer.latest(3)).containsExactly(msg);
+	}
+
+	private Message message(long time) {
+		return new ServerMessage(time, "user" + time, "message" + time);
+	}
+}
@@ -0,0 +1,198 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.cache;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+public class ServerCacheRepositoryTest {
+
+	private static final int CAPACITY = 3;
+
+	private static final String ROOM = "room";
+	private static final String OTHER_ROOM = "other";
+
+	private ServerRepository repository;
+
+	private ServerCacheRepository cacheRepository;
+
+	@Before
+	public void setup() {
+		repository = mock(ServerRepository.class);
+		cacheRepository = new ServerCacheRepository(repository, CAPACITY);
+	}
+
+	@Test
+	public void testConstructorRejectsNonPositiveCapacity() {
+		assertThatThrownBy(() -> new ServerCacheRepository(repository, 0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Capacity must be positive");
+	}
+
+	@Test
+	public void testOpenOpensTheRepository() {
+		cacheRepository.open();
+
+		verify(repository).open();
+	}
+
+	@Test
+	public void testCloseClosesTheRepository() {
+		cacheRepository.close();
+
+		verify(repository).close();
+	}
+
+	@Test
+	public void testFirstReadOfARoomWarmsItsWindow() {
+		Message msg1 = message(0);
+		Message msg2 = message(1);
+		when(repository.findLatest(ROOM, CAPACITY)).thenReturn(asList(msg1, msg2));
+
+		assertThat(cacheRepository.findLatest(ROOM, 2)).containsExactly(msg1, msg2);
+		assertThat(cacheRepository.findLatest(ROOM, 1)).containsExactly(msg2);
+
+		verify(repository, times(1)).findLatest(ROOM, CAPACITY);
+		verify(repository, never()).findLatest(ROOM, 2);
+		assertThat(cacheRepository.getHits()).isEqualTo(2);
+		assertThat(cacheRepository.getMisses()).isZero();
+	}
+
+	@Test
+	public void testOpenDiscardsWarmedWindows() {
+		when(repository.findLatest(ROOM, CAPACITY)).thenReturn(new ArrayList<>());
+		cacheRepository.findLatest(ROOM, 1);
+
+		cacheRepository.open();
+		cacheRepository.findLatest(ROOM, 1);
+
+		verify(repository, times(2)).findLatest(ROOM, CAPACITY);
+	}
+
+	@Test
+	public void testRoomsHaveSeparateWindows() {
+		Message msg1 = message(0);
+		Message msg2 = message(1);
+		when(repository.findLatest(ROOM, CAPACITY)).thenReturn(asList(msg1));
+		when(repository.findLatest(OTHER_ROOM, CAPACITY)).thenReturn(asList(msg2));
+
+		assertThat(cacheRepository.findLatest(ROOM, 5)).containsExactly(msg1);
+		assertThat(cacheRepository.findLatest(OTHER_ROOM, 5)).containsExactly(msg2);
+		assertThat(cacheRepository.getHits()).isEqualTo(2);
+	}
+
+	@Test
+	public void testFindAllAlwaysReadsTheRepository() {
+		List<Message> all = asList(message(0));
+		when(repository.findAll()).thenReturn(all);
+
+		assertThat(cacheRepository.findAll()).isEqualTo(all);
+		assertThat(cacheRepository.getMisses()).isEqualTo(1);
+	}
+
+	@Test
+	public void testReadsHitWhenWindowHoldsTheWholeHistoryOfTheRoom() {
+		Message msg1 = message(0);
+		Message msg2 = message(1);
+		when(repository.findLatest(ROOM, CAPACITY)).thenReturn(asList(msg1, msg2));
+
+		assertThat(cacheRepository.findLatest(ROOM, 5)).containsExactly(msg1, msg2);
+		assertThat(cacheRepository.findBefore(ROOM, new Timestamp(1), 5)).containsExactly(msg1);
+
+		verify(repository, never()).findLatest(ROOM, 5);
+		verify(repository, never()).findBefore(any(), any(), anyInt());
+		assertThat(cacheRepository.getHits()).isEqualTo(2);
+	}
+
+	@Test
+	public void testReadsBeyondTheWindowMissWhenHistoryIsLongerThanCapacity() {
+		Message msg2 = message(1);
+		Message msg3 = message(2);
+		Message msg4 = message(3);
+		when(repository.findLatest(ROOM, CAPACITY)).thenReturn(asList(msg2, msg3, msg4));
+		List<Message> older = asList(message(0));
+		when(repository.findBefore(ROOM, new Timestamp(1), 2)).thenReturn(older);
+		when(repository.findLatest(ROOM, 4)).thenReturn(new ArrayList<>());
+
+		assertThat(cacheRepository.findLatest(ROOM, CAPACITY)).containsExactly(msg2, msg3, msg4);
+		assertThat(cacheRepository.findBefore(ROOM, new Timestamp(3), 2)).containsExactly(msg2, msg3);
+		assertThat(cacheRepository.getHits()).isEqualTo(2);
+
+		assertThat(cacheRepository.findBefore(ROOM, new Timestamp(1), 2)).isEqualTo(older);
+		cacheRepository.findLatest(ROOM, 4);
+		assertThat(cacheRepository.getMisses()).isEqualTo(2);
+	}
+
+	@Test
+	public void testSaveStoresMessageInRepositoryAndCache() {
+		when(repository.findLatest(ROOM, CAPACITY)).thenReturn(new ArrayList<>());
+		cacheRepository.findLatest(ROOM, 1);
+
+		Message msg = message(0);
+		cacheRepository.save(ROOM, msg);
+
+		verify(repository).save(ROOM, msg);
+		assertThat(cacheRepository.findLatest(ROOM, 5)).containsExactly(msg);
+		assertThat(cacheRepository.findLatest(OTHER_ROOM, 5)).isEmpty();
+	}
+
+	@Test
+	public void testSaveAllStoresMessagesInRepositoryAndCache() {
+		when(repository.findLatest(ROOM, CAPACITY)).thenReturn(new ArrayList<>());
+		cacheRepository.findLatest(ROOM, 1);
+
+		List<Message> messages = asList(message(0), message(1));
+		cacheRepository.saveAll(ROOM, messages);
+
+		verify(repository).saveAll(ROOM, messages);
+		assertThat(cacheRepository.findLatest(ROOM, 5)).isEqualTo(messages);
+	}
+
+	@Test
+	public void testSaveAllEvictionMakesOlderReadsMiss() {
+		when(repository.findLatest(ROOM, CAPACITY)).thenReturn(new ArrayList<>());
+		cacheRepository.findLatest(ROOM, 1);
+
+		cacheRepository.saveAll(ROOM, asList(message(0), message(1), message(2), message(3)));
+
+		cacheRepository.findBefore(ROOM, new Timestamp(1), 1);
+		verify(repository).findBefore(ROOM, new Timestamp(1), 1);
+	}
+
+	@Test
+	public void testSaveEvictionMakesOlderReadsMiss() {
+		when(repository.findLatest(ROOM, CAPACITY)).thenReturn(new ArrayList<>());
+		cacheRepository.findLatest(ROOM, 1);
+
+		for (int i = 0; i <= CAPACITY; i++) {
+			cacheRepository.save(ROOM, message(i));
+		}
+
+		cacheRepository.findBefore(ROOM, new Timestamp(1), 1);
+		verify(repository).findBefore(ROOM, new Timestamp(1), 1);
+		assertThat(cacheRepository.getMisses()).isEqualTo(1);
+	}
+
+	@Test
+	public void testMessagesSavedBeforeWarmUpAreNotCachedTwice() {
+		Message msg = message(0);
+		cacheRepository.save(ROOM, msg);
+		when(repository.findLatest(ROOM, CAPACITY)).thenReturn(asList(msg));
+
+		assertThat(cacheRepository.findLatest(ROOM, 5)).containsExactly(msg);
+	}
+
+	private Message message(long time) {
+		return new ServerMessage(time, "user" + time, "message" + time);
+	}
+}
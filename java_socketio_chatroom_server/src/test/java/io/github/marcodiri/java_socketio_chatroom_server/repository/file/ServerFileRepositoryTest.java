@@ -0,0 +1,401 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.file;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.memory.ServerMemoryRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+public class ServerFileRepositoryTest {
+
+	private static final String ROOM = "room";
+	private static final String OTHER_ROOM = "other";
+	private static final int SMALL_SEGMENT_SIZE = 256;
+	private static final long FSYNC_INTERVAL = 10;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path directory;
+	private ServerFileRepository repository;
+
+	@Before
+	public void setup() throws IOException {
+		directory = folder.newFolder("history").toPath();
+		repository = open(ServerFileRepository.DEFAULT_SEGMENT_SIZE, FsyncPolicy.OS);
+	}
+
+	@After
+	public void tearDown() {
+		repository.close();
+	}
+
+	@Test
+	public void testUnknownRoomHasNoMessages() {
+		assertThat(repository.findLatest(ROOM, 10)).isEmpty();
+		assertThat(repository.findBefore(ROOM, new Timestamp(10), 10)).isEmpty();
+		assertThat(repository.findAll()).isEmpty();
+	}
+
+	@Test
+	public void testFindLatestReturnsTheLastMessagesOldestFirst() {
+		Message msg1 = message(1);
+		Message msg2 = message(2);
+		Message msg3 = message(3);
+		repository.save(ROOM, msg1);
+		repository.save(ROOM, msg2);
+		repository.save(ROOM, msg3);
+
+		assertThat(repository.findLatest(ROOM, 2)).containsExactly(msg2, msg3);
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(msg1, msg2, msg3);
+		assertThat(repository.findLatest(ROOM, 0)).isEmpty();
+	}
+
+	@Test
+	public void testFindBeforeExcludesTheBound() {
+		Message msg1 = message(1);
+		Message msg2 = message(2);
+		Message msg3 = message(3);
+		repository.saveAll(ROOM, asList(msg1, msg2, msg3));
+
+		assertThat(repository.findBefore(ROOM, new Timestamp(3), 10)).containsExactly(msg1, msg2);
+		assertThat(repository.findBefore(ROOM, new Timestamp(3), 1)).containsExactly(msg2);
+		assertThat(repository.findBefore(ROOM, new Timestamp(1), 10)).isEmpty();
+	}
+
+	@Test
+	public void testRoomsAreKeptApart() {
+		Message msg1 = message(1);
+		Message msg2 = message(2);
+		repository.save(ROOM, msg1);
+		repository.save(OTHER_ROOM, msg2);
+
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(msg1);
+		assertThat(repository.findLatest(OTHER_ROOM, 10)).containsExactly(msg2);
+	}
+
+	@Test
+	public void testFindAllIsSortedByTimestampAcrossRooms() {
+		Message msg1 = message(1);
+		Message msg2 = message(2);
+		Message msg3 = message(3);
+		repository.save(ROOM, msg3);
+		repository.save(OTHER_ROOM, msg2);
+		repository.save(ROOM, msg1);
+
+		assertThat(repository.findAll()).containsExactly(msg1, msg2, msg3);
+	}
+
+	@Test
+	public void testOlderMessagesAreReadInTimestampOrder() {
+		Message msg1 = message(1);
+		Message msg2 = message(2);
+		Message msg3 = message(3);
+		Message otherMsg2 = new ServerMessage(2, "other", "message");
+		repository.save(ROOM, msg1);
+		repository.save(ROOM, msg3);
+		repository.save(ROOM, msg2);
+		repository.save(ROOM, otherMsg2);
+
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(msg1, msg2, otherMsg2, msg3);
+		assertThat(repository.findLatest(ROOM, 1)).containsExactly(msg3);
+	}
+
+	@Test
+	public void testMessagesOutliveTheRepository() {
+		Message msg1 = message(1);
+		Message msg2 = new ServerMessage(2, "üsér", "mëssage ✓");
+		Message msg3 = message(3);
+		repository.saveAll(ROOM, asList(msg1, msg2));
+		repository.save("røøm", msg3);
+		repository.close();
+
+		repository = open(ServerFileRepository.DEFAULT_SEGMENT_SIZE, FsyncPolicy.OS);
+
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(msg1, msg2);
+		assertThat(repository.findLatest("røøm", 10)).containsExactly(msg3);
+		repository.save(ROOM, msg3);
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(msg1, msg2, msg3);
+	}
+
+	@Test
+	public void testSavesAfterCloseAreRejected() {
+		repository.save(ROOM, message(1));
+		repository.close();
+
+		assertThatThrownBy(() -> repository.save(OTHER_ROOM, message(2)))
+				.isInstanceOf(IllegalStateException.class);
+		assertThatThrownBy(() -> repository.saveAll(ROOM, asList(message(3))))
+				.isInstanceOf(IllegalStateException.class);
+		assertThat(directory.resolve(ServerFileRepository.directoryName(OTHER_ROOM))).doesNotExist();
+
+		repository = open(ServerFileRepository.DEFAULT_SEGMENT_SIZE, FsyncPolicy.OS);
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(message(1));
+	}
+
+	@Test
+	public void testLogsRollToNewSegments() throws IOException {
+		repository.close();
+		repository = open(SMALL_SEGMENT_SIZE, FsyncPolicy.OS);
+		List<Message> messages = messages(0, 100);
+		repository.saveAll(ROOM, messages);
+
+		assertThat(segments(ROOM)).hasSizeGreaterThan(10);
+		assertThat(repository.findLatest(ROOM, 100)).containsExactlyElementsOf(messages);
+		assertThat(repository.findBefore(ROOM, new Timestamp(50), 3)).containsExactlyElementsOf(messages.subList(47, 50));
+
+		repository.close();
+		repository = open(SMALL_SEGMENT_SIZE, FsyncPolicy.OS);
+		assertThat(repository.findLatest(ROOM, 100)).containsExactlyElementsOf(messages);
+	}
+
+	@Test
+	public void testMessageLargerThanASegmentGetsASegmentOfItsOwn() throws IOException {
+		repository.close();
+		repository = open(SMALL_SEGMENT_SIZE, FsyncPolicy.OS);
+		char[] text = new char[SMALL_SEGMENT_SIZE * 4];
+		Arrays.fill(text, 'x');
+		Message large = new ServerMessage(2, "user", new String(text));
+		repository.save(ROOM, message(1));
+		repository.save(ROOM, large);
+		repository.save(ROOM, message(3));
+
+		assertThat(segments(ROOM)).hasSize(3);
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(message(1), large, message(3));
+	}
+
+	@Test
+	public void testSegmentsGrowUpToTheSegmentSize() throws IOException {
+		repository.close();
+		repository = open(4 * RoomLog.INITIAL_SEGMENT_SIZE, FsyncPolicy.OS);
+		char[] text = new char[40 * 1024];
+		Arrays.fill(text, 'x');
+		List<Message> messages = new ArrayList<>();
+		for (long timestamp = 0; timestamp < 12; timestamp++) {
+			messages.add(new ServerMessage(timestamp, "user", new String(text)));
+		}
+		repository.saveAll(ROOM, messages);
+
+		List<Long> sizes = new ArrayList<>();
+		for (Path segment : segments(ROOM)) {
+			sizes.add(Files.size(segment));
+		}
+		long initial = RoomLog.INITIAL_SEGMENT_SIZE;
+		assertThat(sizes).containsExactly(initial, 2 * initial, 4 * initial, 4 * initial);
+		assertThat(repository.findLatest(ROOM, 12)).containsExactlyElementsOf(messages);
+	}
+
+	@Test
+	public void testRecordCutShortByACrashIsDropped() throws IOException {
+		Message msg1 = message(1);
+		Message msg2 = message(2);
+		repository.saveAll(ROOM, asList(msg1, msg2));
+		repository.close();
+		Path segment = segments(ROOM).get(0);
+		long end = LogSegment.encode(msg1).remaining() + (long) LogSegment.encode(msg2).remaining();
+		try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+			// a record whose body was only partly written
+			file.seek(end);
+			file.writeInt(100);
+			file.writeInt(12345);
+			file.writeLong(3);
+		}
+
+		repository = open(ServerFileRepository.DEFAULT_SEGMENT_SIZE, FsyncPolicy.OS);
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(msg1, msg2);
+
+		Message msg3 = message(3);
+		repository.save(ROOM, msg3);
+		repository.close();
+		repository = open(ServerFileRepository.DEFAULT_SEGMENT_SIZE, FsyncPolicy.OS);
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(msg1, msg2, msg3);
+	}
+
+	@Test
+	public void testEveryWritePolicyForcesEachSave() {
+		repository.close();
+		repository = open(SMALL_SEGMENT_SIZE, FsyncPolicy.EVERY_WRITE);
+		Message msg = message(1);
+		repository.save(ROOM, msg);
+
+		assertThat(repository.isDirty()).isFalse();
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(msg);
+	}
+
+	@Test
+	public void testPeriodicPolicyForcesSavesInTheBackground() {
+		repository.close();
+		repository = open(SMALL_SEGMENT_SIZE, FsyncPolicy.PERIODIC);
+		repository.saveAll(ROOM, messages(0, 10));
+
+		await().atMost(5, TimeUnit.SECONDS).until(() -> !repository.isDirty());
+	}
+
+	@Test
+	public void testOsPolicyLeavesSavesToTheOperatingSystem() {
+		repository.save(ROOM, message(1));
+
+		assertThat(repository.isDirty()).isTrue();
+	}
+
+	@Test
+	public void testPagesMatchTheMemoryRepositoryWithSkewedClocks() {
+		repository.close();
+		repository = open(64 * 1024, FsyncPolicy.OS);
+		ServerMemoryRepository expected = new ServerMemoryRepository();
+		Random random = new Random(42);
+		for (int i = 0; i < 5000; i++) {
+			// most clients are on time, some are a little behind and a few far behind
+			int skew = random.nextInt(100) < 90 ? 0 : random.nextInt(100) < 90 ? random.nextInt(50) : random.nextInt(5000);
+			Message message = new ServerMessage(i * 10L - skew, "user" + random.nextInt(10), "message" + i);
+			repository.save(ROOM, message);
+			expected.save(ROOM, message);
+		}
+
+		for (int limit : new int[]{1, 10, 100}) {
+			assertThat(timestamps(repository.findLatest(ROOM, limit)))
+					.isEqualTo(timestamps(expected.findLatest(ROOM, limit)));
+			for (long before = 50_000; before > -5000; before -= 997) {
+				assertThat(timestamps(repository.findBefore(ROOM, new Timestamp(before), limit)))
+						.as("%d before %d", limit, before)
+						.isEqualTo(timestamps(expected.findBefore(ROOM, new Timestamp(before), limit)));
+			}
+		}
+		assertThat(timestamps(repository.findAll())).isEqualTo(timestamps(expected.findAll()));
+	}
+
+	@Test
+	public void testOtherFilesInTheDirectoryAreIgnored() throws IOException {
+		Files.createDirectory(directory.resolve("not-a-room"));
+		Files.createDirectory(directory.resolve("room-abc"));
+		Files.createDirectory(directory.resolve("room-zz"));
+		Files.createFile(directory.resolve("room-00"));
+		Files.createDirectory(directory.resolve("hash-abc"));
+		Path wrongName = Files.createDirectory(directory.resolve("hash-def"));
+		Files.write(wrongName.resolve("room.name"), ROOM.getBytes(StandardCharsets.UTF_8));
+		repository.close();
+
+		repository = open(ServerFileRepository.DEFAULT_SEGMENT_SIZE, FsyncPolicy.OS);
+
+		assertThat(repository.findAll()).isEmpty();
+	}
+
+	@Test
+	public void testRoomDirectoryNames() {
+		assertThat(ServerFileRepository.directoryName("")).isEqualTo("room-");
+		assertThat(ServerFileRepository.directoryName("a/ø")).isEqualTo("room-612fc3b8");
+		assertThat(ServerFileRepository.roomName("room-612fc3b8")).isEqualTo("a/ø");
+		assertThat(ServerFileRepository.roomName("room-")).isEmpty();
+	}
+
+	@Test
+	public void testLongRoomNamesAreHashed() {
+		char[] name = new char[ServerFileRepository.MAX_HEX_NAME_BYTES + 1];
+		Arrays.fill(name, 'a');
+		String longest = new String(name, 0, ServerFileRepository.MAX_HEX_NAME_BYTES);
+		String tooLong = new String(name);
+
+		assertThat(ServerFileRepository.directoryName(longest)).startsWith("room-").hasSize(245);
+		assertThat(ServerFileRepository.directoryName(tooLong)).startsWith("hash-").hasSize(69);
+		assertThat(ServerFileRepository.directoryName(tooLong + "b"))
+				.isNotEqualTo(ServerFileRepository.directoryName(tooLong));
+	}
+
+	@Test
+	public void testRoomsWithLongNamesOutliveTheRepository() throws IOException {
+		char[] name = new char[1000];
+		Arrays.fill(name, 'ø');
+		String room = new String(name);
+		repository.saveAll(room, messages(0, 3));
+		repository.save(ROOM, message(3));
+		repository.close();
+
+		repository = open(ServerFileRepository.DEFAULT_SEGMENT_SIZE, FsyncPolicy.OS);
+
+		assertThat(repository.findLatest(room, 10)).containsExactlyElementsOf(messages(0, 3));
+		assertThat(repository.findAll()).containsExactlyElementsOf(messages(0, 4));
+		repository.save(room, message(4));
+		assertThat(repository.findLatest(room, 10)).containsExactly(message(0), message(1), message(2), message(4));
+	}
+
+	@Test
+	public void testOpenFailsIfTheDirectoryIsAFile() throws IOException {
+		repository.close();
+		repository = new ServerFileRepository(folder.newFile().toPath(), SMALL_SEGMENT_SIZE, FsyncPolicy.OS, FSYNC_INTERVAL);
+
+		assertThatThrownBy(repository::open).isInstanceOf(UncheckedIOException.class);
+	}
+
+	@Test
+	public void testInvalidSettingsAreRejected() {
+		assertThatThrownBy(() -> new ServerFileRepository(directory, 0, FsyncPolicy.OS, FSYNC_INTERVAL))
+				.isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new ServerFileRepository(directory, SMALL_SEGMENT_SIZE, FsyncPolicy.OS, 0))
+				.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	public void testFsyncPolicyNames() {
+		assertThat(FsyncPolicy.forName("every-write")).isEqualTo(FsyncPolicy.EVERY_WRITE);
+		assertThat(FsyncPolicy.forName("periodic")).isEqualTo(FsyncPolicy.PERIODIC);
+		assertThat(FsyncPolicy.forName("os")).isEqualTo(FsyncPolicy.OS);
+		assertThatThrownBy(() -> FsyncPolicy.forName("never"))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Unknown fsync policy: never");
+	}
+
+	private ServerFileRepository open(int segmentSize, FsyncPolicy policy) {
+		ServerFileRepository opened = new ServerFileRepository(directory, segmentSize, policy, FSYNC_INTERVAL);
+		opened.open();
+		return opened;
+	}
+
+	private List<Path> segments(String room) throws IOException {
+		try (Stream<Path> files = Files.list(directory.resolve(ServerFileRepository.directoryName(room)))) {
+			return files.sorted().collect(Collectors.toList());
+		}
+	}
+
+	private static List<Long> timestamps(List<Message> messages) {
+		List<Long> timestamps = new ArrayList<>();
+		for (Message message : messages) {
+			timestamps.add(message.getTimestamp());
+		}
+		return timestamps;
+	}
+
+	private static List<Message> messages(long from, long to) {
+		List<Message> messages = new ArrayList<>();
+		for (long timestamp = from; timestamp < to; timestamp++) {
+			messages.add(message(timestamp));
+		}
+		return messages;
+	}
+
+	private static Message message(long timestamp) {
+		return new ServerMessage(timestamp, "user", "message" + timestamp);
+	}
+}
@@ -0,0 +1,177 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.memory;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ServerMemoryRepositoryTest {
+
+	private static final String ROOM = "room";
+	private static final String OTHER_ROOM = "other";
+
+	private ServerMemoryRepository repository;
+
+	@Before
+	public void setup() {
+		repository = new ServerMemoryRepository();
+	}
+
+	@Test
+	public void testUnknownRoomHasNoMessages() {
+		assertThat(repository.findLatest(ROOM, 10)).isEmpty();
+		assertThat(repository.findBefore(ROOM, new Timestamp(10), 10)).isEmpty();
+		assertThat(repository.findAll()).isEmpty();
+		assertThat(repository.count()).isZero();
+	}
+
+	@Test
+	public void testFindLatestReturnsTheLastMessagesOldestFirst() {
+		Message msg1 = message(1);
+		Message msg2 = message(2);
+		Message msg3 = message(3);
+		repository.save(ROOM, msg1);
+		repository.save(ROOM, msg2);
+		repository.save(ROOM, msg3);
+
+		assertThat(repository.findLatest(ROOM, 2)).containsExactly(msg2, msg3);
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(msg1, msg2, msg3);
+	}
+
+	@Test
+	public void testFindBeforeExcludesTheBound() {
+		Message msg1 = message(1);
+		Message msg2 = message(2);
+		Message msg3 = message(3);
+		repository.saveAll(ROOM, asList(msg1, msg2, msg3));
+
+		assertThat(repository.findBefore(ROOM, new Timestamp(3), 10)).containsExactly(msg1, msg2);
+		assertThat(repository.findBefore(ROOM, new Timestamp(3), 1)).containsExactly(msg2);
+		assertThat(repository.findBefore(ROOM, new Timestamp(1), 10)).isEmpty();
+	}
+
+	@Test
+	public void testRoomsAreKeptApart() {
+		Message msg1 = message(1);
+		Message msg2 = message(2);
+		repository.save(ROOM, msg1);
+		repository.save(OTHER_ROOM, msg2);
+
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(msg1);
+		assertThat(repository.findLatest(OTHER_ROOM, 10)).containsExactly(msg2);
+	}
+
+	@Test
+	public void testOlderMessagesAreInsertedInTimestampOrder() {
+		Message msg1 = message(1);
+		Message msg2 = message(2);
+		Message msg3 = message(3);
+		Message otherMsg2 = new ServerMessage(2, "other", "message");
+		repository.save(ROOM, msg1);
+		repository.save(ROOM, msg3);
+		repository.save(ROOM, msg2);
+		repository.save(ROOM, otherMsg2);
+
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(msg1, msg2, otherMsg2, msg3);
+	}
+
+	@Test
+	public void testFindAllIsSortedByTimestampAcrossRooms() {
+		Message msg1 = message(1);
+		Message msg2 = message(2);
+		Message msg3 = message(3);
+		repository.save(ROOM, msg1);
+		repository.save(OTHER_ROOM, msg2);
+		repository.save(ROOM, msg3);
+
+		assertThat(repository.findAll()).containsExactly(msg1, msg2, msg3);
+	}
+
+	@Test
+	public void testLateMessagesArePagedByTimestamp() {
+		List<Message> messages = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			messages.add(message(i));
+		}
+		repository.saveAll(ROOM, messages);
+		repository.save(ROOM, message(-1));
+		repository.save(ROOM, message(100));
+
+		assertThat(repository.findLatest(ROOM, 3)).containsExactlyElementsOf(messages.subList(messages.size() - 3, messages.size()));
+		assertThat(repository.findBefore(ROOM, new Timestamp(0), 10)).containsExactly(message(-1));
+		assertThat(repository.findBefore(ROOM, new Timestamp(101), 3)).containsExactly(message(99), message(100), message(100));
+		assertThat(repository.count()).isEqualTo(messages.size() + 2);
+	}
+
+	@Test
+	public void testOldestMessagesAreDroppedAboveTheRoomMaximum() {
+		repository = new ServerMemoryRepository(3);
+		repository.saveAll(ROOM, asList(message(1), message(2), message(4)));
+		repository.save(ROOM, message(5));
+		repository.save(ROOM, message(3));
+		repository.save(OTHER_ROOM, message(1));
+
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(message(3), message(4), message(5));
+		assertThat(repository.findLatest(OTHER_ROOM, 10)).containsExactly(message(1));
+		assertThat(repository.count()).isEqualTo(4);
+	}
+
+	@Test
+	public void testMaxRoomMessagesMustBePositive() {
+		assertThatThrownBy(() -> new ServerMemoryRepository(0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Maximum messages per room must be positive");
+	}
+
+	@Test
+	public void testReadersSeeOrderedPagesWhileMessagesAreSaved() throws InterruptedException {
+		int messages = 10_000;
+		AtomicReference<String> failure = new AtomicReference<>();
+		Thread reader = new Thread(() -> {
+			int seen = 0;
+			while (seen < messages && failure.get() == null) {
+				List<Message> page = repository.findLatest(ROOM, 100);
+				for (int i = 1; i < page.size(); i++) {
+					if (page.get(i - 1).getTimestamp() > page.get(i).getTimestamp())
+						failure.set("Page out of order: " + page);
+				}
+				seen = repository.findLatest(ROOM, Integer.MAX_VALUE).size();
+			}
+		});
+		reader.start();
+		for (int i = 0; i < messages; i++) {
+			// every tenth message is late, as if from a client with a slow clock
+			repository.save(ROOM, message(i % 10 == 0 ? i - 5 : i));
+		}
+		reader.join(10_000);
+
+		assertThat(reader.isAlive()).isFalse();
+		assertThat(failure.get()).isNull();
+		assertThat(repository.findLatest(ROOM, Integer.MAX_VALUE)).hasSize(messages)
+				.isSortedAccordingTo((m1, m2) -> Long.compare(m1.getTimestamp(), m2.getTimestamp()));
+	}
+
+	@Test
+	public void testMessagesOutliveClose() {
+		Message msg = message(1);
+		repository.save(ROOM, msg);
+
+		repository.close();
+		repository.open();
+
+		assertThat(repository.findLatest(ROOM, 10)).containsExactly(msg);
+	}
+
+	private static Message message(long timestamp) {
+		return new ServerMessage(timestamp, "user", "message" + timestamp);
+	}
+}
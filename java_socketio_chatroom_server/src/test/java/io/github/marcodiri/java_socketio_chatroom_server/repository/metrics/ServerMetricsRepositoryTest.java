@@ -0,0 +1,84 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.metrics;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.metrics.ServerMetrics;
+import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+public class ServerMetricsRepositoryTest {
+
+	private static final String ROOM = "room";
+
+	private ServerRepository wrapped;
+	private ServerMetrics metrics;
+	private ServerMetricsRepository repository;
+
+	@Before
+	public void setup() {
+		wrapped = mock(ServerRepository.class);
+		metrics = new ServerMetrics();
+		repository = new ServerMetricsRepository(wrapped, metrics);
+	}
+
+	@Test
+	public void testOpenAndCloseAreDelegated() {
+		repository.open();
+		repository.close();
+
+		verify(wrapped).open();
+		verify(wrapped).close();
+	}
+
+	@Test
+	public void testReadsAreDelegatedAndTimed() {
+		List<Message> page = singletonList(new ServerMessage(1, "user", "message"));
+		when(wrapped.findAll()).thenReturn(page);
+		when(wrapped.findLatest(ROOM, 10)).thenReturn(page);
+		when(wrapped.findBefore(ROOM, new Timestamp(2), 10)).thenReturn(page);
+
+		assertThat(repository.findAll()).isSameAs(page);
+		assertThat(repository.findLatest(ROOM, 10)).isSameAs(page);
+		assertThat(repository.findBefore(ROOM, new Timestamp(2), 10)).isSameAs(page);
+
+		assertThat(metrics.values())
+				.containsEntry("chatroom_repository_find_seconds_count", 3L)
+				.containsEntry("chatroom_repository_save_seconds_count", 0L);
+	}
+
+	@Test
+	public void testSavesAreDelegatedAndTimed() {
+		Message msg1 = new ServerMessage(1, "user", "message");
+		Message msg2 = new ServerMessage(2, "user", "message");
+
+		repository.save(ROOM, msg1);
+		repository.saveAll(ROOM, asList(msg1, msg2));
+
+		verify(wrapped).save(ROOM, msg1);
+		verify(wrapped).saveAll(ROOM, asList(msg1, msg2));
+		assertThat(metrics.values()).containsEntry("chatroom_repository_save_seconds_count", 2L);
+	}
+
+	@Test
+	public void testFailuresAreCountedAndRethrown() {
+		Message msg = new ServerMessage(1, "user", "message");
+		IllegalStateException failure = new IllegalStateException("down");
+		doThrow(failure).when(wrapped).save(ROOM, msg);
+
+		assertThatThrownBy(() -> repository.save(ROOM, msg)).isSameAs(failure);
+
+		assertThat(metrics.values())
+				.containsEntry("chatroom_repository_errors_total", 1L)
+				.containsEntry("chatroom_repository_save_seconds_count", 1L);
+	}
+}
@@ -0,0 +1,361 @@
+package io.github.marcodiri.java_socketio_chatroom_server.repository.writebehind;
+
+import io.github.marcodiri.java_socketio_chatroom_core.model.Message;
+import io.github.marcodiri.java_socketio_chatroom_server.model.ServerMessage;
+import io.github.marcodiri.java_socketio_chatroom_server.repository.ServerRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.*;
+
+public class ServerWriteBehindRepositoryTest {
+
+	private static final String ROOM = "room";
+
+	private ServerRepository repository;
+
+	private ServerWriteBehindRepository writeBehindRepository;
+
+	private final List<List<Message>> flushedBatches = Collections.synchronizedList(new ArrayList<>());
+
+	@Before
+	public void setup() {
+		repository = mock(ServerRepository.class);
+		doAnswer(invocation -> {
+			List<Message> batch = invocation.getArgument(1);
+			flushedBatches.add(new ArrayList<>(batch));
+			return null;
+		}).when(repository).saveAll(anyString(), anyList());
+	}
+
+	@After
+	public void closeRepository() {
+		if (writeBehindRepository != null)
+			writeBehindRepository.close();
+	}
+
+	@Test
+	public void testOpenOpensTheRepository() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 10, 10000, 100);
+		writeBehindRepository.open();
+
+		verify(repository).open();
+	}
+
+	@Test
+	public void testSaveFlushesWhenBatchIsFull() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 2, 10000, 100);
+		writeBehindRepository.open();
+		Message msg1 = message(0);
+		Message msg2 = message(1);
+
+		writeBehindRepository.save(ROOM, msg1);
+		writeBehindRepository.save(ROOM, msg2);
+
+		await().atMost(2, SECONDS).untilAsserted(() -> assertThat(flushedBatches).containsExactly(asList(msg1, msg2)));
+		verify(repository, never()).save(any(), any());
+	}
+
+	@Test
+	public void testSaveFlushesPartialBatchAfterInterval() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 10, 50, 100);
+		writeBehindRepository.open();
+		Message msg = message(0);
+
+		writeBehindRepository.save(ROOM, msg);
+
+		await().atMost(2, SECONDS).untilAsserted(() -> assertThat(flushedBatches).containsExactly(asList(msg)));
+	}
+
+	@Test
+	public void testFlushSplitsPendingMessagesIntoBatches() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 2, 10000, 100);
+		writeBehindRepository.open();
+		Message msg1 = message(0);
+		Message msg2 = message(1);
+		Message msg3 = message(2);
+		writeBehindRepository.save(ROOM, msg1);
+		writeBehindRepository.save(ROOM, msg2);
+		writeBehindRepository.save(ROOM, msg3);
+
+		writeBehindRepository.close();
+
+		assertThat(flushedBatches).containsExactly(asList(msg1, msg2), asList(msg3));
+	}
+
+	@Test
+	public void testFlushSplitsBatchPerRoomKeepingArrivalOrder() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 10, 10000, 100);
+		writeBehindRepository.open();
+		Message msg1 = message(0);
+		Message msg2 = message(1);
+		Message msg3 = message(2);
+		writeBehindRepository.save(ROOM, msg1);
+		writeBehindRepository.save("other", msg2);
+		writeBehindRepository.save(ROOM, msg3);
+
+		writeBehindRepository.close();
+
+		InOrder inOrder = inOrder(repository);
+		inOrder.verify(repository).saveAll(ROOM, asList(msg1, msg3));
+		inOrder.verify(repository).saveAll("other", asList(msg2));
+	}
+
+	@Test
+	public void testSaveFallsBackToDirectSaveWhenQueueStaysFull() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 10, 50, 1);
+		doThrow(new RuntimeException("db down")).when(repository).saveAll(anyString(), anyList());
+		writeBehindRepository.open();
+		writeBehindRepository.save(ROOM, message(0));
+		await().atMost(2, SECONDS).untilAsserted(() -> assertThat(writeBehindRepository.unsaved()).isEqualTo(1));
+		writeBehindRepository.save(ROOM, message(1));
+		Message msg = message(2);
+
+		long start = System.nanoTime();
+		writeBehindRepository.save(ROOM, msg);
+
+		assertThat(System.nanoTime() - start).isLessThan(SECONDS.toNanos(2));
+		verify(repository).save(ROOM, msg);
+		assertThat(writeBehindRepository.pending()).isEqualTo(1);
+	}
+
+	@Test
+	public void testCloseDoesNotWaitForABackendThatIsDown() throws InterruptedException {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 10, 50, 1);
+		doThrow(new RuntimeException("db down")).when(repository).saveAll(anyString(), anyList());
+		doThrow(new RuntimeException("db down")).when(repository).save(anyString(), any());
+		writeBehindRepository.open();
+		writeBehindRepository.save(ROOM, message(0));
+		await().atMost(2, SECONDS).untilAsserted(() -> assertThat(writeBehindRepository.unsaved()).isEqualTo(1));
+		writeBehindRepository.save(ROOM, message(1));
+		Thread producer = new Thread(() -> {
+			try {
+				writeBehindRepository.save(ROOM, message(2));
+			} catch (RuntimeException expected) {
+				// the direct save fails too
+			}
+		});
+		producer.start();
+
+		writeBehindRepository.close();
+		producer.join(2000);
+
+		assertThat(producer.isAlive()).isFalse();
+		assertThat(writeBehindRepository.unsaved()).isZero();
+		assertThat(writeBehindRepository.pending()).isZero();
+		verify(repository).close();
+	}
+
+	@Test
+	public void testSaveFallsBackToDirectSaveWhenInterrupted() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 10, 10000, 1);
+		writeBehindRepository.open();
+		Message msg1 = message(0);
+		Message msg2 = message(1);
+		writeBehindRepository.save(ROOM, msg1);
+
+		Thread.currentThread().interrupt();
+		writeBehindRepository.save(ROOM, msg2);
+
+		assertThat(Thread.interrupted()).isTrue();
+		verify(repository).save(ROOM, msg2);
+	}
+
+	@Test
+	public void testSaveWritesDirectlyWhenNotOpen() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 10, 10000, 100);
+		Message msg = message(0);
+
+		writeBehindRepository.save(ROOM, msg);
+
+		verify(repository).save(ROOM, msg);
+		assertThat(writeBehindRepository.pending()).isZero();
+	}
+
+	@Test
+	public void testReadsIncludeMessagesNotWrittenYet() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 10, 10000, 100);
+		writeBehindRepository.open();
+		Message msg1 = message(0);
+		Message msg2 = message(1);
+		Message other = message(2);
+		// msg1 was written while the read ran
+		when(repository.findLatest(ROOM, 5)).thenReturn(asList(msg1));
+		when(repository.findLatest(ROOM, 1)).thenReturn(asList(msg1));
+		when(repository.findBefore(ROOM, new Timestamp(1), 5)).thenReturn(new ArrayList<>());
+		when(repository.findAll()).thenReturn(new ArrayList<>());
+
+		writeBehindRepository.save(ROOM, msg1);
+		writeBehindRepository.save(ROOM, msg2);
+		writeBehindRepository.save("other", other);
+
+		assertThat(writeBehindRepository.findLatest(ROOM, 5)).containsExactly(msg1, msg2);
+		assertThat(writeBehindRepository.findLatest(ROOM, 1)).containsExactly(msg2);
+		assertThat(writeBehindRepository.findBefore(ROOM, new Timestamp(1), 5)).containsExactly(msg1);
+		assertThat(writeBehindRepository.findAll()).containsExactly(msg1, msg2, other);
+		verify(repository, never()).saveAll(anyString(), anyList());
+	}
+
+	@Test
+	public void testReadsDoNotWaitForAFailingFlush() throws InterruptedException {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 1, 10000, 100);
+		CountDownLatch writing = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			writing.countDown();
+			release.await();
+			throw new RuntimeException("db down");
+		}).when(repository).saveAll(anyString(), anyList());
+		when(repository.findLatest(ROOM, 5)).thenReturn(new ArrayList<>());
+		writeBehindRepository.open();
+		Message msg = message(0);
+		writeBehindRepository.save(ROOM, msg);
+
+		try {
+			assertThat(writing.await(2, SECONDS)).isTrue();
+			assertThat(writeBehindRepository.findLatest(ROOM, 5)).containsExactly(msg);
+		} finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void testCloseDrainsQueueBeforeClosingTheRepository() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 10, 10000, 100);
+		writeBehindRepository.open();
+		Message msg = message(0);
+		writeBehindRepository.save(ROOM, msg);
+
+		writeBehindRepository.close();
+
+		InOrder inOrder = inOrder(repository);
+		inOrder.verify(repository).saveAll(ROOM, asList(msg));
+		inOrder.verify(repository).close();
+		assertThat(writeBehindRepository.pending()).isZero();
+	}
+
+	@Test
+	public void testCloseWhenInterruptedStillDrainsTheQueue() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 10, 10000, 100);
+		writeBehindRepository.open();
+		Message msg = message(0);
+		writeBehindRepository.save(ROOM, msg);
+
+		Thread.currentThread().interrupt();
+		writeBehindRepository.close();
+
+		assertThat(Thread.interrupted()).isTrue();
+		assertThat(flushedBatches).containsExactly(asList(msg));
+	}
+
+	@Test
+	public void testFailedFlushIsRetried() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 10, 50, 100);
+		doThrow(new RuntimeException("db down")).doAnswer(invocation -> {
+			List<Message> batch = invocation.getArgument(1);
+			flushedBatches.add(new ArrayList<>(batch));
+			return null;
+		}).when(repository).saveAll(anyString(), anyList());
+		writeBehindRepository.open();
+		Message msg1 = message(0);
+		Message msg2 = message(1);
+
+		writeBehindRepository.save(ROOM, msg1);
+		await().atMost(2, SECONDS).untilAsserted(() -> assertThat(writeBehindRepository.pending()).isZero());
+		writeBehindRepository.save(ROOM, msg2);
+
+		await().atMost(2, SECONDS).untilAsserted(() ->
+				assertThat(flushedBatches).flatExtracting(batch -> batch).containsExactly(msg1, msg2));
+		assertThat(writeBehindRepository.unsaved()).isZero();
+	}
+
+	@Test
+	public void testFailedFlushLeavesNewerMessagesQueued() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 1, 10000, 100);
+		doThrow(new RuntimeException("db down")).when(repository).saveAll(anyString(), anyList());
+		writeBehindRepository.open();
+		Message msg1 = message(0);
+		Message msg2 = message(1);
+		writeBehindRepository.save(ROOM, msg1);
+		await().atMost(2, SECONDS).untilAsserted(() -> assertThat(writeBehindRepository.unsaved()).isEqualTo(1));
+		writeBehindRepository.save("other", msg2);
+
+		await().during(200, MILLISECONDS).atMost(2, SECONDS).untilAsserted(() -> {
+			assertThat(writeBehindRepository.unsaved()).isEqualTo(1);
+			assertThat(writeBehindRepository.pending()).isEqualTo(1);
+		});
+		verify(repository, never()).saveAll("other", asList(msg2));
+	}
+
+	@Test
+	public void testCloseReportsMessagesThatCouldNotBeWritten() {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 10, 10000, 100);
+		doThrow(new RuntimeException("db down")).when(repository).saveAll(anyString(), anyList());
+		writeBehindRepository.open();
+		writeBehindRepository.save(ROOM, message(0));
+
+		writeBehindRepository.close();
+
+		assertThat(writeBehindRepository.unsaved()).isZero();
+		verify(repository).close();
+	}
+
+	@Test
+	public void testSavesDuringCloseAreNotLost() throws InterruptedException {
+		writeBehindRepository = new ServerWriteBehindRepository(repository, 5, 10000, 10);
+		writeBehindRepository.open();
+		List<Message> saved = Collections.synchronizedList(new ArrayList<>());
+		doAnswer(invocation -> saved.add(invocation.getArgument(1))).when(repository).save(anyString(), any());
+		List<Thread> producers = new ArrayList<>();
+		for (int p = 0; p < 4; p++) {
+			int first = p * 1000;
+			producers.add(new Thread(() -> {
+				for (int i = first; i < first + 1000; i++) {
+					writeBehindRepository.save(ROOM, message(i));
+				}
+			}));
+		}
+		producers.forEach(Thread::start);
+
+		writeBehindRepository.close();
+		for (Thread producer : producers) {
+			producer.join(5000);
+		}
+
+		saved.addAll(flushedBatches.stream().flatMap(List::stream).collect(Collectors.toList()));
+		assertThat(saved).hasSize(4000).doesNotHaveDuplicates();
+		assertThat(writeBehindRepository.pending()).isZero();
+	}
+
+	@Test
+	public void testSettingsMustBePositive() {
+		assertThatThrownBy(() -> new ServerWriteBehindRepository(repository, 0, 10000, 100))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Batch size must be positive");
+		assertThatThrownBy(() -> new ServerWriteBehindRepository(repository, 10, 0, 100))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Flush interval must be positive");
+		assertThatThrownBy(() -> new ServerWriteBehindRepository(repository, 10, 10000, 0))
+				.isInstanceOf(IllegalArgumentException.class)
+				.hasMessage("Queue capacity must be positive");
+	}
+
+	private Message message(long time) {
+		return new ServerMessage(time, "user" + time, "message" + time);
+	}
+}
@@ -10,7 +10,6 @@ import java.util.concurrent.ConcurrentMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.json.JSONObject;
 
 public class ChatroomServerMock {
 
@@ -71,7 +70,7 @@ public class ChatroomServerMock {
 		}
 	}
 
-	public void sendEvent(String event, JSONObject msg) throws NullPointerException {
+	public void sendEvent(String event, Object msg) throws NullPointerException {
 		if (socket != null) {
 			socket.send(event, msg);
 			LOGGER.info("Sent {event: \"{}\", message: \"{}\"} to Socket {}", event, msg, socket.getId());